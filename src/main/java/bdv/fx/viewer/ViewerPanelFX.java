@@ -58,10 +58,12 @@ import java.lang.invoke.MethodHandles;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.CopyOnWriteArrayList;
 import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
-import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinWorkerThread;
 import java.util.concurrent.atomic.AtomicInteger;
 import java.util.function.Function;
 
@@ -80,6 +82,14 @@ public class ViewerPanelFX
 
 	private static final Logger LOG = LoggerFactory.getLogger(MethodHandles.lookup().lookupClass());
 
+	/**
+	 * Work-stealing pools that render the tiles of all {@link ViewerPanelFX viewers}, one per
+	 * {@link ViewerOptions.Values#getNumRenderingThreads() number of rendering threads}. Viewers with the same options
+	 * share a single pool, which allows every viewer to use all rendering threads while it is the only one that is
+	 * rendering, e.g. while navigating in a single orthogonal view.
+	 */
+	private static final Map<Integer, ExecutorService> SHARED_RENDERING_EXECUTOR_SERVICES = new ConcurrentHashMap<>();
+
 	private final RenderUnit renderUnit;
 
 	private final CanvasPane canvasPane = new CanvasPane(1, 1);
@@ -181,8 +191,8 @@ public class ViewerPanelFX
 	{
 		super();
 		super.getChildren().setAll(canvasPane, overlayPane);
-		this.renderingExecutorService = Executors.newFixedThreadPool(optional.values.getNumRenderingThreads(), new RenderThreadFactory());
 		options = optional.values;
+		this.renderingExecutorService = sharedRenderingExecutorService(options.getNumRenderingThreads());
 
 		this.state = new ViewerState(axisOrder);
 
@@ -346,6 +356,34 @@ public class ViewerPanelFX
 		renderUnit.requestRepaint(min, max);
 	}
 
+	/**
+	 * Repaint the screen-space bounding box of a region in global coordinates as soon as possible. Nothing is
+	 * repainted if the region does not intersect the currently displayed plane.
+	 *
+	 * @param globalInterval
+	 * 		region in global coordinates
+	 */
+	public void requestRepaint(final RealInterval globalInterval)
+	{
+		final AffineTransform3D globalToViewer = new AffineTransform3D();
+		state.getViewerTransform(globalToViewer);
+		final RealInterval viewerInterval = globalToViewer.estimateBounds(globalInterval);
+		// the displayed plane is at z = 0 in viewer coordinates
+		if (viewerInterval.realMin(2) > 0.5 || viewerInterval.realMax(2) < -0.5)
+			return;
+		final long[] min = {
+				(long) Math.floor(viewerInterval.realMin(0)),
+				(long) Math.floor(viewerInterval.realMin(1))
+		};
+		final long[] max = {
+				(long) Math.ceil(viewerInterval.realMax(0)),
+				(long) Math.ceil(viewerInterval.realMax(1))
+		};
+		if (max[0] < 0 || max[1] < 0 || min[0] >= getWidth() || min[1] >= getHeight())
+			return;
+		requestRepaint(min, max);
+	}
+
 	@Override
 	public synchronized void transformChanged(final AffineTransform3D transform)
 	{
@@ -415,39 +453,32 @@ public class ViewerPanelFX
 	}
 
 	/**
-	 * Shutdown the {@link ExecutorService} used for rendering tiles onto the screen.
+	 * Stop rendering. The {@link ExecutorService} used for rendering tiles onto the screen is shared between all
+	 * {@link ViewerPanelFX viewers} and is not shut down. Its (daemon) threads terminate when idle.
 	 */
 	public void stop()
 	{
-		renderingExecutorService.shutdown();
+		renderUnit.stopRendering();
 	}
 
-	private static final AtomicInteger panelNumber = new AtomicInteger(1);
+	private static ExecutorService sharedRenderingExecutorService(final int numRenderingThreads)
+	{
+		return SHARED_RENDERING_EXECUTOR_SERVICES.computeIfAbsent(
+				Math.max(1, numRenderingThreads),
+				n -> new ForkJoinPool(n, new RenderThreadFactory(), null, true));
+	}
 
-	protected class RenderThreadFactory implements ThreadFactory
+	private static class RenderThreadFactory implements ForkJoinPool.ForkJoinWorkerThreadFactory
 	{
-		private final String threadNameFormat;
 
 		private final AtomicInteger threadNumber = new AtomicInteger(1);
 
-		RenderThreadFactory()
-		{
-			this.threadNameFormat = String.format("viewer-panel-fx-%d-thread-%%d", panelNumber.getAndIncrement());
-			LOG.debug("Created {} with format {}", getClass().getSimpleName(), threadNameFormat);
-		}
-
 		@Override
-		public Thread newThread(final Runnable r)
+		public ForkJoinWorkerThread newThread(final ForkJoinPool pool)
 		{
-			final Thread t = new Thread(threadGroup, r,
-					String.format(threadNameFormat, threadNumber.getAndIncrement()),
-					0
-			);
+			final ForkJoinWorkerThread t = ForkJoinPool.defaultForkJoinWorkerThreadFactory.newThread(pool);
+			t.setName(String.format("viewer-panel-fx-render-thread-%d", threadNumber.getAndIncrement()));
 			LOG.debug("Creating thread with name {}", t.getName());
-			if (!t.isDaemon())
-				t.setDaemon(true);
-			if (t.getPriority() != Thread.NORM_PRIORITY)
-				t.setPriority(Thread.NORM_PRIORITY);
 			return t;
 		}
 	}
@@ -0,0 +1,65 @@
+package bdv.fx.viewer.project;
+
+/**
+ * Partition of a 2D render target of size {@code width x height} into rectangular tiles of (at most)
+ * {@code tileSize x tileSize} pixels. Tiles are small enough to keep source and target data of a tile in cache and
+ * numerous enough to balance load across many rendering threads.
+ *
+ * Tile coordinates are relative to the min of the render target.
+ */
+class RenderTiles
+{
+
+	public static final int DEFAULT_TILE_SIZE = 64;
+
+	private final int width;
+
+	private final int height;
+
+	private final int tileSize;
+
+	private final int numTilesX;
+
+	private final int numTiles;
+
+	RenderTiles(final int width, final int height)
+	{
+		this(width, height, DEFAULT_TILE_SIZE);
+	}
+
+	RenderTiles(final int width, final int height, final int tileSize)
+	{
+		this.width = width;
+		this.height = height;
+		this.tileSize = tileSize;
+		this.numTilesX = (width + tileSize - 1) / tileSize;
+		final int numTilesY = (height + tileSize - 1) / tileSize;
+		this.numTiles = numTilesX * numTilesY;
+	}
+
+	public int numTiles()
+	{
+		return numTiles;
+	}
+
+	public int minX(final int tile)
+	{
+		return (tile % numTilesX) * tileSize;
+	}
+
+	public int minY(final int tile)
+	{
+		return (tile / numTilesX) * tileSize;
+	}
+
+	public int width(final int tile)
+	{
+		return Math.min(tileSize, width - minX(tile));
+	}
+
+	public int height(final int tile)
+	{
+		return Math.min(tileSize, height - minY(tile));
+	}
+
+}
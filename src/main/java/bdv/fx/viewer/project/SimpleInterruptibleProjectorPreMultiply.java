@@ -101,49 +101,39 @@ public class SimpleInterruptibleProjectorPreMultiply<A> extends AbstractInterrup
 		max[0] = target.max(0);
 		max[1] = target.max(1);
 
-		final long cr = -target.dimension(0);
-
-		final int width  = (int) target.dimension(0);
-		final int height = (int) target.dimension(1);
+		final RenderTiles tiles = new RenderTiles((int) target.dimension(0), (int) target.dimension(1));
 
 		final boolean         createExecutor = executorService == null;
 		final ExecutorService ex             = createExecutor
 		                                       ? Executors.newFixedThreadPool(numThreads)
 		                                       : executorService;
-		final int             numTasks;
-		if (numThreads > 1)
-		{
-			numTasks = Math.min(numThreads * 10, height);
-		}
-		else
-			numTasks = 1;
-		final double                    taskHeight = (double) height / numTasks;
-		final ArrayList<Callable<Void>> tasks      = new ArrayList<>(numTasks);
+		final int                       numTasks = tiles.numTiles();
+		final ArrayList<Callable<Void>> tasks    = new ArrayList<>(numTasks);
 		for (int taskNum = 0; taskNum < numTasks; ++taskNum)
 		{
-			final long myMinY   = min[1] + (int) (taskNum * taskHeight);
-			final long myHeight = (taskNum == numTasks - 1
-			                       ? height
-			                       : (int) ((taskNum + 1) * taskHeight)) - myMinY - min[1];
+			final long myMinX   = min[0] + tiles.minX(taskNum);
+			final long myMinY   = min[1] + tiles.minY(taskNum);
+			final int  myWidth  = tiles.width(taskNum);
+			final int  myHeight = tiles.height(taskNum);
 
 			final Callable<Void> r = () -> {
 				if (interrupted.get())
 					return null;
 
-				System.out.println("WTF!");
 				final RandomAccess<A>        sourceRandomAccess = source.randomAccess(
 						SimpleInterruptibleProjectorPreMultiply.this);
 				final RandomAccess<ARGBType> targetRandomAccess = target.randomAccess(target);
 
 				sourceRandomAccess.setPosition(min);
+				sourceRandomAccess.setPosition(myMinX, 0);
 				sourceRandomAccess.setPosition(myMinY, 1);
-				targetRandomAccess.setPosition(min[0], 0);
+				targetRandomAccess.setPosition(myMinX, 0);
 				targetRandomAccess.setPosition(myMinY, 1);
 				for (int y = 0; y < myHeight; ++y)
 				{
 					if (interrupted.get())
 						return null;
-					for (int x = 0; x < width; ++x)
+					for (int x = 0; x < myWidth; ++x)
 					{
 						final ARGBType argb = targetRandomAccess.get();
 						converter.convert(sourceRandomAccess.get(), argb);
@@ -152,8 +142,8 @@ public class SimpleInterruptibleProjectorPreMultiply<A> extends AbstractInterrup
 						sourceRandomAccess.fwd(0);
 						targetRandomAccess.fwd(0);
 					}
-					sourceRandomAccess.move(cr, 0);
-					targetRandomAccess.move(cr, 0);
+					sourceRandomAccess.move(-myWidth, 0);
+					targetRandomAccess.move(-myWidth, 0);
 					sourceRandomAccess.fwd(1);
 					targetRandomAccess.fwd(1);
 				}
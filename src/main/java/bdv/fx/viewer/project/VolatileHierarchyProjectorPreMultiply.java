@@ -93,6 +93,16 @@ public class VolatileHierarchyProjectorPreMultiply<A extends Volatile<?>>
 	protected long lastFrameIoNanoTime; // TODO move to derived implementation
 	// for local sources only
 
+	/**
+	 * Partition of the target into tiles that are rendered independently.
+	 */
+	private final RenderTiles tiles;
+
+	/**
+	 * Tiles in which all pixels have been rendered from the best source. These are skipped until {@link #clearMask()}.
+	 */
+	private final boolean[] tileComplete;
+
 	/**
 	 * temporary variable to store the number of invalid pixels in the current rendering pass.
 	 */
@@ -148,6 +158,9 @@ public class VolatileHierarchyProjectorPreMultiply<A extends Volatile<?>>
 		this.numThreads = numThreads;
 		this.executorService = executorService;
 
+		tiles = new RenderTiles(width, height);
+		tileComplete = new boolean[tiles.numTiles()];
+
 		lastFrameRenderNanoTime = -1;
 		clearMask();
 	}
@@ -182,6 +195,7 @@ public class VolatileHierarchyProjectorPreMultiply<A extends Volatile<?>>
 	{
 		for (final ByteType val : Views.iterable(mask))
 			val.set(Byte.MAX_VALUE);
+		Arrays.fill(tileComplete, false);
 		numInvalidLevels = sources.size();
 	}
 
@@ -214,19 +228,16 @@ public class VolatileHierarchyProjectorPreMultiply<A extends Volatile<?>>
 		final long         startTimeIoCumulative = iostat.getCumulativeIoNanoTime();
 		//		final long startIoBytes = iostat.getIoBytes();
 
-		final int numTasks;
-		if (numThreads > 1)
-		{
-			numTasks = Math.min(numThreads * 10, height);
-		}
-		else
-			numTasks = 1;
-		final double taskHeight = (double) height / numTasks;
-
 		int i;
 
 		valid = false;
 
+		// tiles that may contain pixels that can be improved by the current level
+		final int numTiles = tiles.numTiles();
+		final boolean[] tileNeedsLevel = new boolean[numTiles];
+		for (int t = 0; t < numTiles; ++t)
+			tileNeedsLevel[t] = !tileComplete[t];
+
 		final boolean         createExecutor = executorService == null;
 		final ExecutorService ex             = createExecutor
 		                                       ? Executors.newFixedThreadPool(numThreads)
@@ -238,42 +249,47 @@ public class VolatileHierarchyProjectorPreMultiply<A extends Volatile<?>>
 			valid = true;
 			numInvalidPixels.set(0);
 
-			final ArrayList<Callable<Void>> tasks = new ArrayList<>(numTasks);
-			for (int taskNum = 0; taskNum < numTasks; ++taskNum)
+			final ArrayList<Callable<Void>> tasks = new ArrayList<>();
+			for (int tile = 0; tile < numTiles; ++tile)
 			{
-				final int  myOffset = width * (int) (taskNum * taskHeight);
-				final long myMinY   = min[1] + (int) (taskNum * taskHeight);
-				final int  myHeight = (int) ((taskNum == numTasks - 1
-				                              ? height
-				                              : (int) ((taskNum + 1) * taskHeight)) - myMinY - min[1]);
+				if (!tileNeedsLevel[tile])
+					continue;
+
+				final int myTile   = tile;
+				final int myMinX   = tiles.minX(tile);
+				final int myMinY   = tiles.minY(tile);
+				final int myWidth  = tiles.width(tile);
+				final int myHeight = tiles.height(tile);
 
 				final Callable<Void> r = () -> {
 					if (interrupted.get())
 						return null;
 
 					final RandomAccess<ARGBType> targetRandomAccess = target.randomAccess(target);
-					final Cursor<ByteType>       maskCursor         = Views.iterable(mask).cursor();
+					final RandomAccess<ByteType> maskRandomAccess   = mask.randomAccess(mask);
 					final RandomAccess<A>        sourceRandomAccess = sources.get(iFinal).randomAccess(sourceInterval);
 					int                          myNumInvalidPixels = 0;
 
 					final long[] smin = new long[n];
 					System.arraycopy(min, 0, smin, 0, n);
-					smin[1] = myMinY;
+					smin[0] += myMinX;
+					smin[1] += myMinY;
 					sourceRandomAccess.setPosition(smin);
 
-					targetRandomAccess.setPosition(min[0], 0);
-					targetRandomAccess.setPosition(myMinY, 1);
+					targetRandomAccess.setPosition(smin[0], 0);
+					targetRandomAccess.setPosition(smin[1], 1);
 
-					maskCursor.jumpFwd(myOffset);
+					maskRandomAccess.setPosition(mask.min(0) + myMinX, 0);
+					maskRandomAccess.setPosition(mask.min(1) + myMinY, 1);
 
 					for (int y = 0; y < myHeight; ++y)
 					{
 						if (interrupted.get())
 							return null;
 
-						for (int x = 0; x < width; ++x)
+						for (int x = 0; x < myWidth; ++x)
 						{
-							final ByteType m = maskCursor.next();
+							final ByteType m = maskRandomAccess.get();
 							if (m.get() > iFinal)
 							{
 								final A       a = sourceRandomAccess.get();
@@ -290,15 +306,22 @@ public class VolatileHierarchyProjectorPreMultiply<A extends Volatile<?>>
 							}
 							sourceRandomAccess.fwd(0);
 							targetRandomAccess.fwd(0);
+							maskRandomAccess.fwd(0);
 						}
 						++smin[1];
 						sourceRandomAccess.setPosition(smin);
-						targetRandomAccess.move(cr, 0);
+						targetRandomAccess.move(-myWidth, 0);
 						targetRandomAccess.fwd(1);
+						maskRandomAccess.move(-myWidth, 0);
+						maskRandomAccess.fwd(1);
 					}
 					numInvalidPixels.addAndGet(myNumInvalidPixels);
 					if (myNumInvalidPixels != 0)
 						valid = false;
+					// tiles without invalid pixels cannot be improved by coarser levels
+					tileNeedsLevel[myTile] = myNumInvalidPixels != 0;
+					if (iFinal == 0 && myNumInvalidPixels == 0)
+						tileComplete[myTile] = true;
 					return null;
 				};
 				tasks.add(r);
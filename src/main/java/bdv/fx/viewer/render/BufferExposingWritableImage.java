@@ -4,11 +4,14 @@ import com.pivovarit.function.ThrowingRunnable;
 import com.sun.javafx.tk.PlatformImage;
 import javafx.scene.image.Image;
 import javafx.scene.image.WritableImage;
+import net.imglib2.FinalInterval;
+import net.imglib2.Interval;
 import net.imglib2.img.array.ArrayImg;
 import net.imglib2.img.array.ArrayImgs;
 import net.imglib2.img.basictypeaccess.IntAccess;
 import net.imglib2.img.basictypeaccess.array.IntArray;
 import net.imglib2.type.numeric.ARGBType;
+import net.imglib2.util.Intervals;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -34,6 +37,12 @@ public class BufferExposingWritableImage extends WritableImage
 
 	private final com.sun.prism.Image prismImage;
 
+	/**
+	 * Region that was written to since the last call to {@link #getAndClearDirtyInterval()}, {@code null} if
+	 * nothing was written. Initially, the entire image is dirty.
+	 */
+	private Interval dirtyInterval;
+
 	@SuppressWarnings("restriction")
 	public BufferExposingWritableImage(final int width, final int height) throws
 			NoSuchMethodException,
@@ -49,6 +58,7 @@ public class BufferExposingWritableImage extends WritableImage
 		this.setWritablePlatformImage.setAccessible(true);
 
 		this.store = new int[width * height];
+		this.dirtyInterval = new FinalInterval(width, height);
 		this.prismImage = com.sun.prism.Image.fromIntArgbPreData(store, width, height);
 		this.setWritablePlatformImage.invoke(this, prismImage);
 
@@ -71,6 +81,27 @@ public class BufferExposingWritableImage extends WritableImage
 		         );
 	}
 
+	/**
+	 * Mark {@code interval} as written to.
+	 *
+	 * @param interval region of the image that was written to
+	 */
+	public synchronized void markDirty(final Interval interval)
+	{
+		this.dirtyInterval = this.dirtyInterval == null ? interval : Intervals.union(this.dirtyInterval, interval);
+	}
+
+	/**
+	 *
+	 * @return region of the image that was written to since the last call, or {@code null} if nothing was written.
+	 */
+	public synchronized Interval getAndClearDirtyInterval()
+	{
+		final Interval dirty = this.dirtyInterval;
+		this.dirtyInterval = null;
+		return dirty;
+	}
+
 	public void setPixelsDirty()
 	{
 		this.callPixelsDirty.run();
@@ -143,4 +143,10 @@ public class MultiResolutionRendererFX extends MultiResolutionRendererGeneric<Bu
 		     );
 	}
 
+	@Override
+	protected void markDirty(final BufferExposingWritableImage image, final Interval interval)
+	{
+		image.markDirty(interval);
+	}
+
 }
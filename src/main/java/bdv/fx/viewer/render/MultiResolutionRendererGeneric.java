@@ -98,6 +98,11 @@ public class MultiResolutionRendererGeneric<T>
 
 	private static final Logger LOG = LoggerFactory.getLogger(MethodHandles.lookup().lookupClass());
 
+	/**
+	 * Weight of the most recent measurement in the exponential moving average of {@link #renderNanosPerPixel}.
+	 */
+	private static final double RENDER_TIME_SMOOTHING = 0.3;
+
 	public interface ImageGenerator<T>
 	{
 
@@ -196,21 +201,42 @@ public class MultiResolutionRendererGeneric<T>
 	private RealInterval lastRenderTargetRealInterval;
 
 	/**
-	 * If the rendering time (in nanoseconds) for the (currently) highest scaled screen image is above this threshold,
-	 * increase the {@link #maxScreenScaleIndex index} of the highest screen scale to use. Similarly, if the rendering
-	 * time for the (currently) second-highest scaled screen image is below this threshold, decrease the {@link
-	 * #maxScreenScaleIndex index} of the highest screen scale to use.
+	 * Target rendering time (in nanoseconds) for the first frame after a {@link #requestRepaint(Interval) repaint
+	 * request}. The {@link #maxScreenScaleIndex screen scale} to start with is the highest resolution screen scale
+	 * for which the predicted rendering time of the requested interval does not exceed this threshold.
 	 */
 	private final long targetRenderNanos;
 
 	/**
 	 * The index of the (coarsest) screen scale with which to start rendering. Once this level is painted, rendering
-	 * proceeds to lower screen scales until index 0 (full resolution) has been reached. While rendering, the
-	 * maxScreenScaleIndex is adapted such that it is the highest index for which rendering in {@link
-	 * #targetRenderNanos} nanoseconds is still possible.
+	 * proceeds to lower screen scales until index 0 (full resolution) has been reached. The maxScreenScaleIndex is
+	 * re-evaluated for every {@link #requestRepaint(Interval) new frame}, such that it is the lowest index for which
+	 * rendering in {@link #targetRenderNanos} nanoseconds is still possible. The configured {@link #screenScales}
+	 * are thus an upper bound: coarse screen scales are skipped if they are not needed to meet the target.
 	 */
 	private int maxScreenScaleIndex;
 
+	/**
+	 * Smoothed rendering time per render target pixel (in nanoseconds) for each screen scale, measured for the frames
+	 * rendered by this renderer. {@link Double#NaN} if nothing has been rendered at a screen scale yet.
+	 */
+	private double[] renderNanosPerPixel;
+
+	/**
+	 * Number of render target pixels of the current {@link #projector}.
+	 */
+	private long projectorNumPixels;
+
+	/**
+	 * Image that the current {@link #projector} renders to.
+	 */
+	private T projectorRenderTarget;
+
+	/**
+	 * Region of {@link #projectorRenderTarget} that the current {@link #projector} renders to.
+	 */
+	private Interval projectorRenderTargetInterval;
+
 	/**
 	 * The index of the screen scale which should be rendered next.
 	 */
@@ -560,6 +586,9 @@ public class MultiResolutionRendererGeneric<T>
 
 					lastRenderedScreenInterval = repaintScreenInterval;
 					lastRenderTargetRealInterval = renderTargetRealInterval;
+					projectorNumPixels = Intervals.numElements(renderTargetPaddedInterval);
+					projectorRenderTarget = renderTarget;
+					projectorRenderTargetInterval = renderTargetPaddedInterval;
 				}
 				projector = p;
 			}
@@ -574,13 +603,14 @@ public class MultiResolutionRendererGeneric<T>
 
 		// try rendering
 		final boolean success = p.map(createProjector);
-//		final long rendertime = p.getLastFrameRenderNanoTime();
+		final long rendertime = p.getLastFrameRenderNanoTime();
 
 		synchronized (this)
 		{
 			// if rendering was not cancelled...
 			if (success)
 			{
+				markDirty(projectorRenderTarget, projectorRenderTargetInterval);
 				if (createProjector)
 				{
 					final T bi = display.setBufferedImageAndTransform(bufferedImage, currentProjectorTransform);
@@ -591,33 +621,7 @@ public class MultiResolutionRendererGeneric<T>
 						if (id != null)
 							renderIdQueue.add(id);
 					}
-
-					/**
-					 * TODO: design a better algorithm for adjusting maxScreenScaleIndex or remove and always use all screen scales.
-					 *
-					 * The current heuristic does not work well in the following cases:
-					 *
-					 * 1) With vastly different screen scale values such as [1.0, 0.1], it will switch between the two scales every frame.
-					 * At screen scale 0.1 rendering is fast, and after a frame is rendered, it switches maxScreenScaleIndex to 0.
-					 * However, at screen scale 1.0 rendering is slower than targetRenderNanos, so when the next frame is rendered, it switches maxScreenScaleIndex back to 1.
-					 * This causes annoying delays because when maxScreenScaleIndex is switched to 0, renderingMayBeCancelled is in turn set to false, and the algorithm has to wait
-					 * until the current high-res frame is fully rendered.
-					 *
-					 * 2) When the user starts painting, it re-renders only the affected interval which is usually very small compared to the size of the screen.
-					 * Usually rendering is very fast in this case, and maxScreenScaleIndex is quickly changed to 0.
-					 * When the user finishes painting and starts navigating again, there may be a delay in rendering the first few frames because
-					 * it starts from the highest available resolution and then gradually decreases the resolution until the rendertime is within the targetRenderNanos threshold.
-					 */
-//					if (currentScreenScaleIndex == maxScreenScaleIndex)
-//					{
-//						if (rendertime > targetRenderNanos && maxScreenScaleIndex < screenScales.length - 1)
-//							maxScreenScaleIndex++;
-//						else if (rendertime < targetRenderNanos / 3 && maxScreenScaleIndex > 0)
-//							maxScreenScaleIndex--;
-//					}
-//					else if (currentScreenScaleIndex == maxScreenScaleIndex - 1)
-//						if (rendertime < targetRenderNanos && maxScreenScaleIndex > 0)
-//							maxScreenScaleIndex--;
+					updateRenderTimeEstimate(currentScreenScaleIndex, rendertime, projectorNumPixels);
 				}
 
 				if (currentScreenScaleIndex > 0)
@@ -648,6 +652,17 @@ public class MultiResolutionRendererGeneric<T>
 		}
 	}
 
+	/**
+	 * Called after {@code interval} of {@code image} was rendered to. Implementations can use this to restrict
+	 * updates of the displayed image to regions that changed. The default implementation does nothing.
+	 *
+	 * @param image render target
+	 * @param interval region of {@code image} that was rendered to
+	 */
+	protected void markDirty(final T image, final Interval interval)
+	{
+	}
+
 	public synchronized Interval getLastRenderedScreenInterval()
 	{
 		return lastRenderedScreenInterval;
@@ -664,6 +679,8 @@ public class MultiResolutionRendererGeneric<T>
 	public synchronized void requestRepaint(final Interval interval)
 	{
 		newFrameRequest = true;
+		if (!Intervals.isEmpty(interval))
+			maxScreenScaleIndex = startScreenScaleIndex(interval);
 		requestRepaint(interval, maxScreenScaleIndex);
 	}
 
@@ -697,6 +714,62 @@ public class MultiResolutionRendererGeneric<T>
 		painterThread.requestRepaint();
 	}
 
+	/**
+	 * Find the lowest screen scale index (highest resolution) for which rendering {@code screenInterval} is predicted
+	 * to take no longer than {@link #targetRenderNanos}. Screen scales without any measurements are skipped, i.e.
+	 * rendering starts at the coarsest screen scale until render times have been measured.
+	 *
+	 * @param screenInterval requested interval in screen coordinates
+	 * @return index of the screen scale to start rendering with
+	 */
+	private int startScreenScaleIndex(final Interval screenInterval)
+	{
+		final int coarsestScreenScaleIndex = screenScales.length - 1;
+		final long numScreenPixels = Intervals.numElements(screenInterval);
+		for (int i = 0; i < coarsestScreenScaleIndex; ++i)
+		{
+			final double nanosPerPixel = estimateRenderNanosPerPixel(i);
+			if (Double.isNaN(nanosPerPixel))
+				continue;
+			final double predictedNanos = nanosPerPixel * numScreenPixels * screenScales[i] * screenScales[i];
+			if (predictedNanos <= targetRenderNanos)
+			{
+				LOG.trace("Start rendering at screen scale {} (predicted render time {}ns)", screenScales[i], predictedNanos);
+				return i;
+			}
+		}
+		return Math.max(coarsestScreenScaleIndex, 0);
+	}
+
+	/**
+	 * @return measured rendering time per pixel at {@code screenScaleIndex}, or, if nothing has been rendered at that
+	 * screen scale yet, the measurement of the closest coarser (or, if not available, finer) screen scale.
+	 * {@link Double#NaN} if nothing has been rendered at all.
+	 */
+	private double estimateRenderNanosPerPixel(final int screenScaleIndex)
+	{
+		if (!Double.isNaN(renderNanosPerPixel[screenScaleIndex]))
+			return renderNanosPerPixel[screenScaleIndex];
+		for (int i = screenScaleIndex + 1; i < renderNanosPerPixel.length; ++i)
+			if (!Double.isNaN(renderNanosPerPixel[i]))
+				return renderNanosPerPixel[i];
+		for (int i = screenScaleIndex - 1; i >= 0; --i)
+			if (!Double.isNaN(renderNanosPerPixel[i]))
+				return renderNanosPerPixel[i];
+		return Double.NaN;
+	}
+
+	private void updateRenderTimeEstimate(final int screenScaleIndex, final long renderNanos, final long numPixels)
+	{
+		if (renderNanos <= 0 || numPixels <= 0 || screenScaleIndex >= renderNanosPerPixel.length)
+			return;
+		final double nanosPerPixel = renderNanos / (double) numPixels;
+		final double previous = renderNanosPerPixel[screenScaleIndex];
+		renderNanosPerPixel[screenScaleIndex] = Double.isNaN(previous)
+				? nanosPerPixel
+				: RENDER_TIME_SMOOTHING * nanosPerPixel + (1.0 - RENDER_TIME_SMOOTHING) * previous;
+	}
+
 	private VolatileProjector createProjector(
 			final List<SourceAndConverter<?>> sacs,
 			final Function<Source<?>, AxisOrder> axisOrders,
@@ -1088,6 +1161,8 @@ public class MultiResolutionRendererGeneric<T>
 		}
 		screenScaleTransforms = new AffineTransform3D[screenScales.length];
 		pendingRepaintRequests = new Interval[screenScales.length];
+		renderNanosPerPixel = new double[screenScales.length];
+		Arrays.fill(renderNanosPerPixel, Double.NaN);
 		maxScreenScaleIndex = screenScales.length - 1;
 		requestedScreenScaleIndex = maxScreenScaleIndex;
 	}
@@ -164,14 +164,24 @@ public class RenderUnit implements PainterThread.Paintable {
 			renderer.setScreenScales(screenScales);
 	}
 
-	private synchronized void update()
+	/**
+	 * Stop the painter thread. No more frames are rendered until the {@link RenderUnit} is updated, e.g. through
+	 * {@link #setDimensions(long, long)}.
+	 */
+	public synchronized void stopRendering()
 	{
-		LOG.debug("Updating render unit");
-
-		if (painterThread != null) {
+		if (painterThread != null)
+		{
 			painterThread.stopRendering();
 			painterThread.interrupt();
 		}
+	}
+
+	private synchronized void update()
+	{
+		LOG.debug("Updating render unit");
+
+		stopRendering();
 
 		renderTarget = new TransformAwareBufferedImageOverlayRendererFX();
 		renderTarget.setCanvasSize((int) dimensions[0], (int) dimensions[1]);
@@ -34,9 +34,11 @@ import java.util.concurrent.CopyOnWriteArrayList;
 import java.util.function.Consumer;
 
 import javafx.scene.image.Image;
+import net.imglib2.Interval;
 import net.imglib2.realtransform.AffineTransform3D;
 import net.imglib2.type.numeric.ARGBType;
 import net.imglib2.ui.TransformListener;
+import net.imglib2.view.Views;
 import org.janelia.saalfeldlab.fx.util.InvokeOnJavaFXApplicationThread;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -116,8 +118,11 @@ public class TransformAwareBufferedImageOverlayRendererFX
 				 *
 				 * https://docs.oracle.com/javase/8/javafx/api/javafx/scene/effect/BlendMode.html
 				 */
-				for (final ARGBType px : sourceImage.asArrayImg())
-					px.set(px.get() | FULL_OPACITY);
+				// only pixels that were rendered since the image was last drawn need to be updated
+				final Interval dirtyInterval = sourceImage.getAndClearDirtyInterval();
+				if (dirtyInterval != null)
+					for (final ARGBType px : Views.interval(sourceImage.asArrayImg(), dirtyInterval))
+						px.set(px.get() | FULL_OPACITY);
 
 				sourceImage.setPixelsDirty();
 				g.accept(sourceImage);
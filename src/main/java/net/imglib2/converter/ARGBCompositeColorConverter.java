@@ -43,6 +43,11 @@ public abstract class ARGBCompositeColorConverter<R extends RealType<R>, C exten
 
 	protected final double[] scaleB;
 
+	/**
+	 * Immutable snapshot of the per-channel parameters, replaced on every {@link #update()}.
+	 */
+	private volatile ChannelTables tables;
+
 	public ARGBCompositeColorConverter(final int numChannels) {
 		this(numChannels, 0, 255);
 	}
@@ -129,8 +134,9 @@ public abstract class ARGBCompositeColorConverter<R extends RealType<R>, C exten
 		return this.numChannels;
 	}
 
-	private void update() {
+	private synchronized void update() {
 		A = (int) Math.min(Math.max(Math.round(255 * alphaProperty().get()), 0), 255);
+		final double[] offsets = new double[numChannels];
 		for (int channel = 0; channel < numChannels; ++channel) {
 			final double scale = 1.0 / (max[channel].get() - min[channel].get());
 			final int value = color[channel].get().get();
@@ -138,7 +144,9 @@ public abstract class ARGBCompositeColorConverter<R extends RealType<R>, C exten
 			scaleR[channel] = ARGBType.red(value) * scale * a;
 			scaleG[channel] = ARGBType.green(value) * scale * a;
 			scaleB[channel] = ARGBType.blue(value) * scale * a;
+			offsets[channel] = min[channel].get();
 		}
+		this.tables = new ChannelTables(offsets, scaleR.clone(), scaleG.clone(), scaleB.clone(), A);
 		LOG.debug("Updated red   scales to {}", scaleR);
 		LOG.debug("Updated green scales to {}", scaleG);
 		LOG.debug("Updated blue  scales to {}", scaleB);
@@ -172,28 +180,45 @@ public abstract class ARGBCompositeColorConverter<R extends RealType<R>, C exten
 		return new InvertingImp1<>(numChannels, min, max);
 	}
 
-	private static <
-			R extends RealType<R>,
-			C extends RealComposite<R>,
-			V extends Volatile<C>> void convertInverting(
-			V input,
-			final ARGBType output,
-			final int numChannels,
-			final DoubleProperty[] min,
-			final double[] scaleR,
-			final double[] scaleG,
-			final double[] scaleB,
-			final int A
-	) {
+	protected void convertComposite(final V input, final ARGBType output) {
+		final RealComposite<R> c = input.get();
+		ChannelTables tables = this.tables;
+		if (!tables.hasLookupTables() && tables.lookupTableSize != ChannelTables.NO_LOOKUP_TABLE)
+			tables = createLookupTables(c.get(0));
+
 		double rd = 0.0;
 		double gd = 0.0;
 		double bd = 0.0;
-		final RealComposite<? extends RealType<?>> c = input.get();
-		for (int channel = 0; channel < numChannels; ++channel) {
-			final double v = c.get(channel).getRealDouble() - min[channel].get();
-			rd += scaleR[channel] * v;
-			gd += scaleG[channel] * v;
-			bd += scaleB[channel] * v;
+		if (tables.hasLookupTables()) {
+			final int size = tables.lookupTableSize;
+			final float[][] lutR = tables.lutR;
+			final float[][] lutG = tables.lutG;
+			final float[][] lutB = tables.lutB;
+			for (int channel = 0; channel < numChannels; ++channel) {
+				final double realValue = c.get(channel).getRealDouble();
+				final int v = (int) realValue;
+				if (v == realValue && v >= 0 && v < size) {
+					rd += lutR[channel][v];
+					gd += lutG[channel][v];
+					bd += lutB[channel][v];
+				} else {
+					final double d = realValue - tables.offsets[channel];
+					rd += tables.scaleR[channel] * d;
+					gd += tables.scaleG[channel] * d;
+					bd += tables.scaleB[channel] * d;
+				}
+			}
+		} else {
+			final double[] offsets = tables.offsets;
+			final double[] sr = tables.scaleR;
+			final double[] sg = tables.scaleG;
+			final double[] sb = tables.scaleB;
+			for (int channel = 0; channel < numChannels; ++channel) {
+				final double v = c.get(channel).getRealDouble() - offsets[channel];
+				rd += sr[channel] * v;
+				gd += sg[channel] * v;
+				bd += sb[channel] * v;
+			}
 		}
 		final int r0 = (int) (rd + 0.5);
 		final int g0 = (int) (gd + 0.5);
@@ -201,7 +226,122 @@ public abstract class ARGBCompositeColorConverter<R extends RealType<R>, C exten
 		final int r = Math.min(255, Math.max(r0, 0));
 		final int g = Math.min(255, Math.max(g0, 0));
 		final int b = Math.min(255, Math.max(b0, 0));
-		output.set(ARGBType.rgba(r, g, b, A));
+		output.set(ARGBType.rgba(r, g, b, tables.A));
+	}
+
+	/**
+	 * Create lookup tables of per-channel color contributions if channels are of an unsigned integer type of at most
+	 * 16 bit. The tables are re-created on the first conversion after every change of min, max, color, or alpha. For
+	 * 16 bit types, that is three 64K-entry tables per channel, which takes well below a millisecond per channel. All
+	 * other types use the arithmetic path. The type is determined from the first channel.
+	 *
+	 * Channels are still composited per pixel through this converter: Compositing scanlines directly from primitive
+	 * cell arrays would require a dedicated projector that bypasses the converter-based rendering pipeline shared by
+	 * all sources, and is not implemented.
+	 */
+	private synchronized ChannelTables createLookupTables(final RealType<?> type) {
+		// tables may have been updated or created by another thread in the meantime
+		final ChannelTables current = this.tables;
+		if (current.hasLookupTables() || current.lookupTableSize == ChannelTables.NO_LOOKUP_TABLE)
+			return current;
+
+		final double typeMin = type.getMinValue();
+		final double typeMax = type.getMaxValue();
+		final ChannelTables withTables = typeMin == 0.0 && typeMax < ChannelTables.MAX_LOOKUP_TABLE_SIZE
+				? current.withLookupTables((int) typeMax + 1)
+				: current.withoutLookupTables();
+		LOG.debug("Created lookup tables of size {} for type {}", withTables.lookupTableSize, type.getClass().getSimpleName());
+		this.tables = withTables;
+		return withTables;
+	}
+
+	private static class ChannelTables {
+
+		private static final int NO_LOOKUP_TABLE = -1;
+
+		private static final int MAX_LOOKUP_TABLE_SIZE = 1 << 16;
+
+		private final double[] offsets;
+
+		private final double[] scaleR;
+
+		private final double[] scaleG;
+
+		private final double[] scaleB;
+
+		private final int A;
+
+		/**
+		 * 0 if not determined yet.
+		 */
+		private final int lookupTableSize;
+
+		private final float[][] lutR;
+
+		private final float[][] lutG;
+
+		private final float[][] lutB;
+
+		private ChannelTables(
+				final double[] offsets,
+				final double[] scaleR,
+				final double[] scaleG,
+				final double[] scaleB,
+				final int A) {
+			this(offsets, scaleR, scaleG, scaleB, A, 0, null, null, null);
+		}
+
+		private ChannelTables(
+				final double[] offsets,
+				final double[] scaleR,
+				final double[] scaleG,
+				final double[] scaleB,
+				final int A,
+				final int lookupTableSize,
+				final float[][] lutR,
+				final float[][] lutG,
+				final float[][] lutB) {
+			this.offsets = offsets;
+			this.scaleR = scaleR;
+			this.scaleG = scaleG;
+			this.scaleB = scaleB;
+			this.A = A;
+			this.lookupTableSize = lookupTableSize;
+			this.lutR = lutR;
+			this.lutG = lutG;
+			this.lutB = lutB;
+		}
+
+		private boolean hasLookupTables() {
+			return lutR != null;
+		}
+
+		private ChannelTables withoutLookupTables() {
+			return new ChannelTables(offsets, scaleR, scaleG, scaleB, A, NO_LOOKUP_TABLE, null, null, null);
+		}
+
+		private ChannelTables withLookupTables(final int size) {
+			final int numChannels = offsets.length;
+			final float[][] lutR = new float[numChannels][size];
+			final float[][] lutG = new float[numChannels][size];
+			final float[][] lutB = new float[numChannels][size];
+			for (int channel = 0; channel < numChannels; ++channel) {
+				final float[] r = lutR[channel];
+				final float[] g = lutG[channel];
+				final float[] b = lutB[channel];
+				final double offset = offsets[channel];
+				final double sr = scaleR[channel];
+				final double sg = scaleG[channel];
+				final double sb = scaleB[channel];
+				for (int v = 0; v < size; ++v) {
+					final double d = v - offset;
+					r[v] = (float) (sr * d);
+					g[v] = (float) (sg * d);
+					b[v] = (float) (sb * d);
+				}
+			}
+			return new ChannelTables(offsets, scaleR, scaleG, scaleB, A, size, lutR, lutG, lutB);
+		}
 	}
 
 	public static class InvertingImp0<
@@ -219,7 +359,7 @@ public abstract class ARGBCompositeColorConverter<R extends RealType<R>, C exten
 
 		@Override
 		public void convert(final V input, final ARGBType output) {
-			ARGBCompositeColorConverter.convertInverting(input, output, numChannels, min, scaleR, scaleG, scaleB, A);
+			convertComposite(input, output);
 		}
 	}
 
@@ -238,7 +378,7 @@ public abstract class ARGBCompositeColorConverter<R extends RealType<R>, C exten
 
 		@Override
 		public void convert(final V input, final ARGBType output) {
-			ARGBCompositeColorConverter.convertInverting(input, output, numChannels, min, scaleR, scaleG, scaleB, A);
+			convertComposite(input, output);
 		}
 	}
 }
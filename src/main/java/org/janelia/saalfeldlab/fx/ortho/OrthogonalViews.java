@@ -23,6 +23,7 @@ import javafx.event.EventHandler;
 import javafx.event.EventType;
 import javafx.scene.Node;
 import javafx.scene.layout.GridPane;
+import net.imglib2.RealInterval;
 import net.imglib2.realtransform.AffineTransform3D;
 
 /**
@@ -194,6 +195,17 @@ public class OrthogonalViews<BR extends Node>
 		applyToAll(vp -> vp.requestRepaint(min, max));
 	}
 
+	/**
+	 * {@link ViewerPanelFX#requestRepaint(RealInterval)}} for all {@link ViewerPanelFX viewer children} (top left, top right, bottom left)
+	 *
+	 * @param globalInterval
+	 * 		region in global coordinates to be repainted
+	 */
+	public void requestRepaint(final RealInterval globalInterval)
+	{
+		applyToAll(vp -> vp.requestRepaint(globalInterval));
+	}
+
 	/**
 	 * {@link ViewerPanelFX#setAllSources(Collection)}} for all {@link ViewerPanelFX viewer children} (top left, top right, bottom left)
 	 *
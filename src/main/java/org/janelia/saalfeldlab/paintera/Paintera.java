@@ -44,9 +44,9 @@ import picocli.CommandLine;
 import java.io.File;
 import java.io.IOException;
 import java.lang.invoke.MethodHandles;
-import java.util.HashMap;
 import java.util.Map;
 import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
 
 public class Paintera extends Application
 {
@@ -181,7 +181,7 @@ public class Paintera extends Application
 
 		// TODO this can probably be hidden in
 		// Properties.fromSerializedProperties
-		final Map<Integer, SourceState<?, ?>> indexToState = new HashMap<>();
+		final Map<Integer, SourceState<?, ?>> indexToState = new ConcurrentHashMap<>();
 
 		final Properties properties = loadedProperties
 				.map(ThrowingFunction.unchecked(lp -> Properties.fromSerializedProperties(
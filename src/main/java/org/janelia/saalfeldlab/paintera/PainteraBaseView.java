@@ -28,6 +28,7 @@ import org.janelia.saalfeldlab.fx.util.InvokeOnJavaFXApplicationThread;
 import org.janelia.saalfeldlab.paintera.cache.DiscoverableMemoryUsage;
 import org.janelia.saalfeldlab.paintera.cache.Invalidate;
 import org.janelia.saalfeldlab.paintera.cache.MemoryBoundedSoftRefLoaderCache;
+import org.janelia.saalfeldlab.paintera.cache.global.AdaptiveFetcherThreads;
 import org.janelia.saalfeldlab.paintera.cache.global.GlobalCache;
 import org.janelia.saalfeldlab.paintera.composition.CompositeProjectorPreMultiply;
 import org.janelia.saalfeldlab.paintera.config.CoordinateConfigNode;
@@ -134,7 +135,7 @@ public class PainteraBaseView
 
 	/**
 	 *
-	 * @param numFetcherThreads number of threads used for {@link net.imglib2.cache.queue.FetcherThreads}
+	 * @param numFetcherThreads initial number of threads used for {@link org.janelia.saalfeldlab.paintera.cache.global.AdaptiveFetcherThreads}
 	 * @param viewerOptions options passed down to {@link OrthogonalViews viewers}
 	 */
 	public PainteraBaseView(
@@ -149,7 +150,7 @@ public class PainteraBaseView
 				// .accumulateProjectorFactory( new
 				// ClearingCompositeProjector.ClearingCompositeProjectorFactory<>(
 				// sourceInfo.composites(), new ARGBType() ) )
-				.numRenderingThreads(Math.min(3, Math.max(1, Runtime.getRuntime().availableProcessors() / 3)));
+				.numRenderingThreads(Math.max(1, Runtime.getRuntime().availableProcessors()));
 		this.views = new OrthogonalViews<>(
 				manager,
 				this.globalCache,
@@ -480,6 +481,7 @@ public class PainteraBaseView
 		this.meshWorkerExecutorService.shutdownNow();
 		this.paintQueue.shutdownNow();
 		this.propagationQueue.shutdownNow();
+		this.globalCache.getFetcherThreads().ifPresent(AdaptiveFetcherThreads::stop);
 		this.orthogonalViews().topLeft().viewer().stop();
 		this.orthogonalViews().topRight().viewer().stop();
 		this.orthogonalViews().bottomLeft().viewer().stop();
@@ -487,7 +489,8 @@ public class PainteraBaseView
 	}
 
 	/**
-	 * Determine a good number of fetcher threads.
+	 * Determine a good initial number of fetcher threads. The actual number of fetcher threads is adjusted
+	 * at runtime by {@link AdaptiveFetcherThreads} according to observed latency and throughput.
 	 * @return half of all available processor, but no more than eight and no less than 1.
 	 */
 	public static int reasonableNumFetcherThreads()
@@ -36,6 +36,7 @@ import org.janelia.saalfeldlab.paintera.control.lock.LockedSegmentsState;
 import org.janelia.saalfeldlab.paintera.control.selection.SelectedIds;
 import org.janelia.saalfeldlab.paintera.control.selection.SelectedSegments;
 import org.janelia.saalfeldlab.paintera.data.DataSource;
+import org.janelia.saalfeldlab.paintera.data.LabelBlockIndexer;
 import org.janelia.saalfeldlab.paintera.data.mask.Masks;
 import org.janelia.saalfeldlab.paintera.data.n5.CommitCanvasN5;
 import org.janelia.saalfeldlab.paintera.data.n5.DataTypeNotSupported;
@@ -748,6 +749,7 @@ public class PainteraCommandLineArgs implements Callable<Boolean>
 			final DataSource<D, T> source = N5Data.openAsLabelSource(container, group, transform, viewer.getGlobalCache(), 0, name);
 			final Supplier<String> tmpDirSupplier = Masks.canvasTmpDirDirectorySupplier(projectDirectory);
 			final DataSource<D, T> maskedSource = Masks.mask(source, tmpDirSupplier.get(), tmpDirSupplier, new CommitCanvasN5(container, group), viewer.getPropagationQueue());
+			Masks.journal(maskedSource, Masks.canvasJournalDirectory(projectDirectory, null));
 
 			final FragmentSegmentAssignmentState assignment = N5Helpers.assignments(container, group);
 			final SelectedIds selectedIds = new SelectedIds(new TLongHashSet());
@@ -755,7 +757,10 @@ public class PainteraCommandLineArgs implements Callable<Boolean>
 			final LockedSegmentsState lockedSegments = new LockedSegmentsOnlyLocal(locked -> {});
 			final IdService idService = N5Helpers.idService(container, group, ThrowingSupplier.unchecked(() -> idServiceFallback.get(container, group, source)));
 			final ModalGoldenAngleSaturatedHighlightingARGBStream stream = new ModalGoldenAngleSaturatedHighlightingARGBStream(selectedSegments, lockedSegments);
-			final LabelBlockLookup lookup = N5Helpers.getLabelBlockLookupWithFallback(container, group, (c, g) -> labelBlockLookupFallback.get(c, g, source));//PainteraAlerts.getLabelBlockLookupFromN5DataSource(c, g, source));
+			final LabelBlockLookup lookup = LabelBlockIndexer.indexInBackgroundIfAllBlocks(
+					N5Helpers.getLabelBlockLookupWithFallback(container, group, (c, g) -> labelBlockLookupFallback.get(c, g, source)),//PainteraAlerts.getLabelBlockLookupFromN5DataSource(c, g, source));
+					source,
+					projectDirectory);
 
 			final IntFunction<InterruptibleFunction<Long, Interval[]>> loaderForLevelFactory = level -> InterruptibleFunction.fromFunction(
 					MakeUnchecked.function(
@@ -57,6 +57,7 @@ import org.janelia.saalfeldlab.paintera.control.actions.MenuActionType;
 import org.janelia.saalfeldlab.paintera.control.actions.NavigationActionType;
 import org.janelia.saalfeldlab.paintera.control.navigation.AffineTransformWithListeners;
 import org.janelia.saalfeldlab.paintera.control.navigation.DisplayTransformUpdateOnResize;
+import org.janelia.saalfeldlab.paintera.state.LabelSourceState;
 import org.janelia.saalfeldlab.paintera.state.SourceInfo;
 import org.janelia.saalfeldlab.paintera.state.SourceState;
 import org.janelia.saalfeldlab.paintera.ui.ARGBStreamSeedSetter;
@@ -286,7 +287,11 @@ public class PainteraDefaultHandlers
 		final OrthogonalViewsValueDisplayListener vdl = new OrthogonalViewsValueDisplayListener(
 				paneWithStatus::setCurrentValue,
 				currentSource,
-				s -> sourceInfo.getState(s).interpolationProperty().get());
+				s -> sourceInfo.getState(s).interpolationProperty().get(),
+				(s, viewer) -> {
+					final SourceState<?, ?> state = sourceInfo.getState(s);
+					return state instanceof LabelSourceState<?, ?> ? ((LabelSourceState<?, ?>) state).screenIdBuffer(viewer) : null;
+				});
 
 		final OrthoViewCoordinateDisplayListener cdl = new OrthoViewCoordinateDisplayListener(
 				paneWithStatus::setViewerCoordinateStatus,
@@ -4,6 +4,7 @@ import java.io.IOException;
 import java.lang.invoke.MethodHandles;
 
 import com.google.gson.GsonBuilder;
+import org.janelia.saalfeldlab.paintera.data.mask.Masks;
 import org.janelia.saalfeldlab.paintera.serialization.Properties;
 import org.janelia.saalfeldlab.util.n5.N5Helpers;
 import org.slf4j.Logger;
@@ -20,6 +21,13 @@ public class SaveProject
 		if (root == null) { throw new ProjectUndefined(root); }
 		LOG.debug("Persisting properties {} into {}", properties, root);
 		N5Helpers.n5Writer(root, builder, 64, 64, 64).setAttribute("", Paintera.PAINTERA_KEY, properties);
+		try
+		{
+			Masks.deleteUnusedCanvasJournals(root, properties.sourceInfo.trackSources());
+		} catch (final IOException e)
+		{
+			LOG.warn("Unable to delete unused canvas journals in {}", root, e);
+		}
 	}
 
 	public static class ProjectUndefined extends Exception
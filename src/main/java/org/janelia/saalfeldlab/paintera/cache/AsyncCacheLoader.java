@@ -0,0 +1,122 @@
+package org.janelia.saalfeldlab.paintera.cache;
+
+import net.imglib2.cache.CacheLoader;
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+
+/**
+ * {@link CacheLoader} that can load values asynchronously. Concurrent requests for the same key share a single
+ * {@link CompletableFuture}. The blocking {@link #get(Object)} waits for the asynchronous load.
+ *
+ * Once an asynchronous load has completed, the loaded value can be handed off to a {@link net.imglib2.cache.Cache}
+ * that is backed by this loader through {@link #withHandoff(Object, Object, Callable)} without loading it again.
+ *
+ * @param <K> key
+ * @param <V> value
+ */
+public abstract class AsyncCacheLoader<K, V> implements CacheLoader<K, V>
+{
+
+	private static final class Handoff<K, V>
+	{
+		private final K key;
+
+		private final V value;
+
+		private Handoff(final K key, final V value)
+		{
+			this.key = key;
+			this.value = value;
+		}
+	}
+
+	private final ConcurrentHashMap<K, CompletableFuture<V>> pending = new ConcurrentHashMap<>();
+
+	private final ThreadLocal<Handoff<K, V>> handoff = new ThreadLocal<>();
+
+	/**
+	 * Start loading the value for {@code key}. Implementations may block the calling thread to limit the number of
+	 * loads in flight.
+	 *
+	 * @param key load value for this key
+	 * @return future that completes with the loaded value
+	 * @throws Exception if the load cannot be started
+	 */
+	protected abstract CompletableFuture<V> loadAsync(K key) throws Exception;
+
+	/**
+	 *
+	 * @param key load value for this key
+	 * @return future that completes with the loaded value, shared with all concurrent requests for {@code key}.
+	 */
+	public CompletableFuture<V> getAsync(final K key)
+	{
+		final CompletableFuture<V> existing = pending.get(key);
+		if (existing != null)
+			return existing;
+
+		final CompletableFuture<V> future = new CompletableFuture<>();
+		final CompletableFuture<V> raced = pending.putIfAbsent(key, future);
+		if (raced != null)
+			return raced;
+
+		future.whenComplete((v, t) -> pending.remove(key, future));
+		try
+		{
+			loadAsync(key).whenComplete((v, t) -> {
+				if (t == null)
+					future.complete(v);
+				else
+					future.completeExceptionally(t);
+			});
+		} catch (final Exception e)
+		{
+			future.completeExceptionally(e);
+		}
+		return future;
+	}
+
+	@Override
+	public V get(final K key) throws Exception
+	{
+		final Handoff<K, V> h = handoff.get();
+		if (h != null && h.key.equals(key))
+			return h.value;
+
+		try
+		{
+			return getAsync(key).get();
+		} catch (final ExecutionException e)
+		{
+			final Throwable cause = e.getCause();
+			throw cause instanceof Exception ? (Exception) cause : e;
+		}
+	}
+
+	/**
+	 * Run {@code action} such that calls to {@link #get(Object) get(key)} on the calling thread return {@code value}
+	 * instead of loading it.
+	 *
+	 * @param key key of already loaded value
+	 * @param value already loaded value
+	 * @param action typically triggers a blocking load of {@code key} in a cache backed by this loader
+	 * @param <T> return type of {@code action}
+	 * @return result of {@code action}
+	 * @throws Exception if {@code action} throws
+	 */
+	public <T> T withHandoff(final K key, final V value, final Callable<T> action) throws Exception
+	{
+		handoff.set(new Handoff<>(key, value));
+		try
+		{
+			return action.call();
+		} finally
+		{
+			handoff.remove();
+		}
+	}
+
+}
@@ -0,0 +1,9 @@
+package org.janelia.saalfeldlab.paintera.cache;
+
+import java.util.Collection;
+
+public interface InvalidateBlocks extends InvalidateAll {
+
+	void invalidate(int level, Collection<Long> blocks);
+
+}
@@ -9,7 +9,10 @@ import net.imglib2.cache.queue.FetcherThreads;
 import net.imglib2.cache.volatiles.CacheHints;
 import net.imglib2.cache.volatiles.CreateInvalid;
 import net.imglib2.cache.volatiles.VolatileCache;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 
+import java.lang.invoke.MethodHandles;
 import java.lang.ref.ReferenceQueue;
 import java.lang.ref.WeakReference;
 import java.util.Collection;
@@ -23,6 +26,9 @@ import java.util.stream.Collectors;
 
 public class WeakRefVolatileCache<K, V> implements VolatileCache<K, V>, Invalidate<K>
 {
+
+	private static final Logger LOG = LoggerFactory.getLogger(MethodHandles.lookup().lookupClass());
+
 	final ConcurrentHashMap<K, Entry> map = new ConcurrentHashMap<>();
 
 	final ReferenceQueue<V> queue = new ReferenceQueue<>();
@@ -35,6 +41,11 @@ public class WeakRefVolatileCache<K, V> implements VolatileCache<K, V>, Invalida
 
 	final CreateInvalid<? super K, ? extends V> createInvalid;
 
+	/**
+	 * If not {@code null}, entries in the fetch queue only start an asynchronous load and return immediately.
+	 */
+	final AsyncCacheLoader<K, V> asyncLoader;
+
 	/*
 	 * Possible states of CacheWeakReference.loaded
 	 */
@@ -124,12 +135,14 @@ public class WeakRefVolatileCache<K, V> implements VolatileCache<K, V>, Invalida
 			final Cache<K, V> backingCache,
 			final Invalidate<K> backingInvalidate,
 			final BlockingFetchQueues<Callable<?>> fetchQueue,
-			final CreateInvalid<? super K, ? extends V> createInvalid)
+			final CreateInvalid<? super K, ? extends V> createInvalid,
+			final AsyncCacheLoader<K, V> asyncLoader)
 	{
 		this.backingCache = backingCache;
 		this.backingInvalidate = backingInvalidate;
 		this.fetchQueue = fetchQueue;
 		this.createInvalid = createInvalid;
+		this.asyncLoader = asyncLoader;
 	}
 
 	public static <K, V> WeakRefVolatileCache<K, V> fromCacheAndInvalidate(
@@ -138,7 +151,30 @@ public class WeakRefVolatileCache<K, V> implements VolatileCache<K, V>, Invalida
 			final BlockingFetchQueues<Callable<?>> fetchQueue,
 			final CreateInvalid<? super K, ? extends V> createInvalid)
 	{
-		return new WeakRefVolatileCache<>(backingCache, backingInvalidate, fetchQueue, createInvalid);
+		return fromCacheAndInvalidate(backingCache, backingInvalidate, fetchQueue, createInvalid, null);
+	}
+
+	/**
+	 *
+	 * @param backingCache cache that holds valid values
+	 * @param backingInvalidate invalidate {@code backingCache}
+	 * @param fetchQueue queue for volatile requests
+	 * @param createInvalid create placeholder values while loading
+	 * @param asyncLoader the loader of {@code backingCache}. If not {@code null}, fetcher threads only start
+	 *                    asynchronous loads instead of waiting for them to finish. Requires that {@code backingCache}
+	 *                    loads values through {@code asyncLoader}.
+	 * @param <K> key
+	 * @param <V> value
+	 * @return {@link WeakRefVolatileCache}
+	 */
+	public static <K, V> WeakRefVolatileCache<K, V> fromCacheAndInvalidate(
+			final Cache<K, V> backingCache,
+			final Invalidate<K> backingInvalidate,
+			final BlockingFetchQueues<Callable<?>> fetchQueue,
+			final CreateInvalid<? super K, ? extends V> createInvalid,
+			final AsyncCacheLoader<K, V> asyncLoader)
+	{
+		return new WeakRefVolatileCache<>(backingCache, backingInvalidate, fetchQueue, createInvalid, asyncLoader);
 	}
 
 	public static <K, V, C extends Cache<K, V> & Invalidate<K>> WeakRefVolatileCache<K, V> fromCache(
@@ -146,7 +182,7 @@ public class WeakRefVolatileCache<K, V> implements VolatileCache<K, V>, Invalida
 			final BlockingFetchQueues<Callable<?>> fetchQueue,
 			final CreateInvalid<? super K, ? extends V> createInvalid)
 	{
-		return new WeakRefVolatileCache<>(cacheWithInvalidate, cacheWithInvalidate, fetchQueue, createInvalid);
+		return new WeakRefVolatileCache<>(cacheWithInvalidate, cacheWithInvalidate, fetchQueue, createInvalid, null);
 	}
 
 	@Override
@@ -455,11 +491,54 @@ public class WeakRefVolatileCache<K, V> implements VolatileCache<K, V>, Invalida
 		{
 			final Entry entry = map.get(key);
 			if (entry != null)
-				getBlocking(entry);
+			{
+				if (asyncLoader == null)
+					getBlocking(entry);
+				else
+					getAsync(entry);
+			}
 			return null;
 		}
 	}
 
+	/**
+	 * Start loading {@code entry} through {@link #asyncLoader} and return without waiting for the result. Once the
+	 * value is loaded, it is handed off to the {@link #backingCache} and {@code entry} is set valid.
+	 */
+	private void getAsync(final Entry entry) throws ExecutionException
+	{
+		synchronized (entry)
+		{
+			if (entry.ref.loaded == VALID)
+				return;
+		}
+
+		if (backingCache.getIfPresent(entry.key) != null)
+		{
+			getBlocking(entry);
+			return;
+		}
+
+		asyncLoader.getAsync(entry.key).whenComplete((value, throwable) -> {
+			if (throwable != null)
+			{
+				LOG.debug("Unable to load data for key {} -- will retry on next request", entry.key, throwable);
+				synchronized (entry)
+				{
+					entry.enqueueFrame = -1;
+				}
+				return;
+			}
+			try
+			{
+				asyncLoader.withHandoff(entry.key, value, () -> getBlocking(entry));
+			} catch (final Exception e)
+			{
+				LOG.error("Unable to hand off loaded data for key {}", entry.key, e);
+			}
+		});
+	}
+
 	/**
 	 * Enqueue the {@link Entry} if it hasn't been enqueued for this frame already.
 	 */
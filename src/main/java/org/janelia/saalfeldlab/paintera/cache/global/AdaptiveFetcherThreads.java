@@ -0,0 +1,342 @@
+package org.janelia.saalfeldlab.paintera.cache.global;
+
+import net.imglib2.cache.queue.BlockingFetchQueues;
+import org.janelia.saalfeldlab.util.NamedThreadFactory;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.lang.invoke.MethodHandles;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Drop-in replacement for {@link net.imglib2.cache.queue.FetcherThreads} that adapts the number of threads serving a
+ * {@link BlockingFetchQueues} to the observed block load latency and throughput.
+ *
+ * All threads take from the same {@link BlockingFetchQueues}, i.e. the priority ordering of requests is preserved
+ * independent of the number of threads. The number of threads is adjusted in regular intervals by hill climbing on
+ * the measured throughput (completed loads per second): While the threads are saturated, the number of threads grows
+ * (multiplicatively) as long as throughput increases, and shrinks again when throughput decreases. This allows for
+ * hundreds of concurrent loads for latency-bound backends like cloud object stores and for few concurrent loads for
+ * backends that suffer from contention, e.g. spinning disks.
+ */
+public class AdaptiveFetcherThreads
+{
+
+	private static final Logger LOG = LoggerFactory.getLogger(MethodHandles.lookup().lookupClass());
+
+	public static final int DEFAULT_MAX_NUM_THREADS = 256;
+
+	public static final long DEFAULT_ADJUSTMENT_INTERVAL_MILLIS = 500;
+
+	/**
+	 * Only grow or shrink if threads spent at least this fraction of the last interval loading data.
+	 */
+	private static final double SATURATION_THRESHOLD = 0.9;
+
+	/**
+	 * Shrink towards the number of threads that were actually loading data (but not below the minimum number of
+	 * threads) if threads spent less than this fraction of the last interval loading data.
+	 */
+	private static final double IDLE_THRESHOLD = 0.5;
+
+	/**
+	 * Idle threads wake up in this interval to report idle time and to retire if there are more threads than required.
+	 */
+	private static final long IDLE_POLL_MILLIS = 100;
+
+	/**
+	 * Relative changes in throughput below this threshold are considered noise.
+	 */
+	private static final double THROUGHPUT_TOLERANCE = 0.05;
+
+	private static final double GROWTH_FACTOR = 1.5;
+
+	private final BlockingFetchQueues<Callable<?>> queue;
+
+	private final int minNumThreads;
+
+	private final int maxNumThreads;
+
+	private final ThreadFactory threadFactory;
+
+	private final AtomicInteger numThreads = new AtomicInteger(0);
+
+	private final AtomicInteger targetNumThreads;
+
+	private final LongAdder numCompleted = new LongAdder();
+
+	private final LongAdder loadNanos = new LongAdder();
+
+	private final LongAdder idleNanos = new LongAdder();
+
+	private final ScheduledExecutorService controller = Executors.newSingleThreadScheduledExecutor(
+			new NamedThreadFactory("paintera-fetcher-controller-%d", true));
+
+	private volatile double throughput = 0.0;
+
+	private volatile double meanLatencyMillis = 0.0;
+
+	private double previousThroughput = 0.0;
+
+	private int previousNumThreads;
+
+	private boolean isGrowing = true;
+
+	private long lastAdjustment = System.nanoTime();
+
+	/**
+	 * delegates to {@link #AdaptiveFetcherThreads(BlockingFetchQueues, int, int, int, long)
+	 * AdaptiveFetcherThreads(queue, initialNumThreads, initialNumThreads, max(initialNumThreads, DEFAULT_MAX_NUM_THREADS), DEFAULT_ADJUSTMENT_INTERVAL_MILLIS)},
+	 * i.e. the pool never shrinks below its initial size while idle.
+	 */
+	public AdaptiveFetcherThreads(
+			final BlockingFetchQueues<Callable<?>> queue,
+			final int initialNumThreads)
+	{
+		this(
+				queue,
+				initialNumThreads,
+				initialNumThreads,
+				Math.max(initialNumThreads, DEFAULT_MAX_NUM_THREADS),
+				DEFAULT_ADJUSTMENT_INTERVAL_MILLIS);
+	}
+
+	/**
+	 *
+	 * @param queue serve requests from this queue
+	 * @param initialNumThreads start with this many threads
+	 * @param minNumThreads never use fewer threads than this, also after idle periods. Usually the initial number of
+	 * threads, so that a burst of requests after an idle period does not have to grow the pool from a single thread.
+	 * @param maxNumThreads never use more threads than this
+	 * @param adjustmentIntervalMillis re-evaluate number of threads in this interval
+	 */
+	public AdaptiveFetcherThreads(
+			final BlockingFetchQueues<Callable<?>> queue,
+			final int initialNumThreads,
+			final int minNumThreads,
+			final int maxNumThreads,
+			final long adjustmentIntervalMillis)
+	{
+		this.queue = queue;
+		this.minNumThreads = Math.max(1, minNumThreads);
+		this.maxNumThreads = Math.max(this.minNumThreads, maxNumThreads);
+		this.threadFactory = new NamedThreadFactory("paintera-fetcher-%d", true);
+		this.targetNumThreads = new AtomicInteger(clamp(initialNumThreads));
+		this.previousNumThreads = this.targetNumThreads.get();
+		spawnThreads();
+		this.controller.scheduleAtFixedRate(
+				this::adjust,
+				adjustmentIntervalMillis,
+				adjustmentIntervalMillis,
+				TimeUnit.MILLISECONDS);
+	}
+
+	/**
+	 *
+	 * @return number of currently running fetcher threads
+	 */
+	public int getNumThreads()
+	{
+		return this.numThreads.get();
+	}
+
+	/**
+	 *
+	 * @return number of fetcher threads the pool is currently converging to
+	 */
+	public int getTargetNumThreads()
+	{
+		return this.targetNumThreads.get();
+	}
+
+	/**
+	 *
+	 * @return completed loads per second in the last adjustment interval
+	 */
+	public double getThroughput()
+	{
+		return this.throughput;
+	}
+
+	/**
+	 *
+	 * @return mean duration of a single load in the last adjustment interval (in milliseconds)
+	 */
+	public double getMeanLatencyMillis()
+	{
+		return this.meanLatencyMillis;
+	}
+
+	/**
+	 * Stop adjusting the number of threads. Running fetcher threads are daemon threads and are not affected.
+	 */
+	public void stop()
+	{
+		this.controller.shutdownNow();
+	}
+
+	private synchronized void adjust()
+	{
+		final long now = System.nanoTime();
+		final double intervalSeconds = Math.max(now - lastAdjustment, 1) * 1e-9;
+		lastAdjustment = now;
+
+		final long completed = numCompleted.sumThenReset();
+		final long busy = loadNanos.sumThenReset();
+		final long idle = idleNanos.sumThenReset();
+
+		this.throughput = completed / intervalSeconds;
+		this.meanLatencyMillis = completed == 0 ? 0.0 : busy * 1e-6 / completed;
+
+		final double utilization = busy + idle == 0 ? 0.0 : busy / (double) (busy + idle);
+		final int current = targetNumThreads.get();
+
+		if (utilization < SATURATION_THRESHOLD)
+		{
+			// not enough requests to tell whether more threads would help: reset and wait for saturation
+			previousThroughput = 0.0;
+			previousNumThreads = current;
+			isGrowing = true;
+			if (utilization < IDLE_THRESHOLD)
+			{
+				// release threads that were idle for most of the interval
+				final int numBusyThreads = (int) Math.ceil(busy / (intervalSeconds * 1e9));
+				targetNumThreads.set(clamp(Math.min(current, numBusyThreads)));
+				LOG.debug(
+						"Fetcher threads: utilization={} threads={} -> {}",
+						utilization,
+						current,
+						targetNumThreads.get());
+			}
+			return;
+		}
+
+		final int next;
+		if (throughput > previousThroughput * (1.0 + THROUGHPUT_TOLERANCE))
+			next = isGrowing ? grow(current) : shrink(current);
+		else if (throughput < previousThroughput * (1.0 - THROUGHPUT_TOLERANCE))
+		{
+			// last step made it worse: revert and try the other direction next time
+			isGrowing = !isGrowing;
+			next = previousNumThreads;
+		}
+		else
+			// no measurable gain: prefer fewer threads for the same throughput
+			next = current == previousNumThreads ? current : shrink(current);
+
+		previousThroughput = throughput;
+		previousNumThreads = current;
+		targetNumThreads.set(clamp(next));
+		LOG.debug(
+				"Fetcher threads: throughput={}/s latency={}ms utilization={} threads={} -> {}",
+				throughput,
+				meanLatencyMillis,
+				utilization,
+				current,
+				targetNumThreads.get());
+		spawnThreads();
+	}
+
+	private static int grow(final int numThreads)
+	{
+		return Math.max(numThreads + 1, (int) Math.ceil(numThreads * GROWTH_FACTOR));
+	}
+
+	private static int shrink(final int numThreads)
+	{
+		return Math.min(numThreads - 1, (int) Math.floor(numThreads / GROWTH_FACTOR));
+	}
+
+	private int clamp(final int numThreads)
+	{
+		return Math.min(Math.max(numThreads, minNumThreads), maxNumThreads);
+	}
+
+	private void spawnThreads()
+	{
+		while (true)
+		{
+			final int n = numThreads.get();
+			if (n >= targetNumThreads.get())
+				return;
+			if (numThreads.compareAndSet(n, n + 1))
+				threadFactory.newThread(new Fetcher()).start();
+		}
+	}
+
+	/**
+	 *
+	 * @return {@code true} if calling thread should terminate because there are more threads than currently required.
+	 */
+	private boolean retireIfAboveTarget()
+	{
+		while (true)
+		{
+			final int n = numThreads.get();
+			if (n <= targetNumThreads.get())
+				return false;
+			if (numThreads.compareAndSet(n, n - 1))
+				return true;
+		}
+	}
+
+	private final class Fetcher implements Runnable
+	{
+
+		@Override
+		public void run()
+		{
+			Callable<?> loader = null;
+			while (true)
+			{
+				if (loader == null)
+				{
+					if (retireIfAboveTarget())
+						return;
+
+					// poll instead of take: blocked threads count as idle and can retire while the queue is empty
+					final long t0 = System.nanoTime();
+					try
+					{
+						loader = queue.poll(IDLE_POLL_MILLIS, TimeUnit.MILLISECONDS);
+					} catch (final InterruptedException e)
+					{
+					}
+					idleNanos.add(System.nanoTime() - t0);
+					if (loader == null)
+						continue;
+				}
+
+				final long t1 = System.nanoTime();
+				try
+				{
+					loader.call();
+					loader = null;
+				} catch (final ExecutionException e)
+				{
+					// retry the same loader, like FetcherThreads
+					LOG.debug("Unable to load data -- will retry", e);
+				} catch (final InterruptedException e)
+				{
+				} catch (final Exception e)
+				{
+					LOG.error("Unexpected exception while loading data", e);
+					loader = null;
+				}
+				final long t2 = System.nanoTime();
+
+				loadNanos.add(t2 - t1);
+				if (loader == null)
+					numCompleted.increment();
+			}
+		}
+	}
+
+}
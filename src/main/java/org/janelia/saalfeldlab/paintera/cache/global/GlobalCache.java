@@ -41,7 +41,6 @@ import net.imglib2.cache.img.CachedCellImg;
 import net.imglib2.cache.img.CellLoader;
 import net.imglib2.cache.img.LoadedCellCacheLoader;
 import net.imglib2.cache.queue.BlockingFetchQueues;
-import net.imglib2.cache.queue.FetcherThreads;
 import net.imglib2.cache.util.KeyBimap;
 import net.imglib2.cache.volatiles.*;
 import net.imglib2.img.NativeImg;
@@ -58,11 +57,13 @@ import net.imglib2.util.Triple;
 import net.imglib2.util.Util;
 import net.imglib2.util.ValuePair;
 import net.imglib2.util.ValueTriple;
+import org.janelia.saalfeldlab.paintera.cache.AsyncCacheLoader;
 import org.janelia.saalfeldlab.paintera.cache.Invalidate;
 import org.janelia.saalfeldlab.paintera.cache.WeakRefVolatileCache;
 import tmp.bdv.img.cache.VolatileCachedCellImg;
 
 import java.util.Collection;
+import java.util.Optional;
 import java.util.concurrent.Callable;
 import java.util.concurrent.atomic.AtomicInteger;
 import java.util.function.Function;
@@ -137,6 +138,8 @@ public class GlobalCache implements CacheControl {
 
 	private final BlockingFetchQueues<Callable<?>> queue;
 
+	private final AdaptiveFetcherThreads fetcherThreads;
+
 	private final LoaderCache<Key<?>, ?> backingCache;
 
 	private final Invalidate<Key<?>> invalidate;
@@ -144,15 +147,39 @@ public class GlobalCache implements CacheControl {
 	private final AtomicInteger nextSetupId = new AtomicInteger(0);
 
 	/**
-	 * Create a new global cache with a new fetch queue served by the specified
-	 * number of fetcher threads.
+	 * Create a new global cache with a new fetch queue served by
+	 * {@link AdaptiveFetcherThreads adaptive fetcher threads}, starting
+	 * with the specified number of fetcher threads.
 	 *
 	 * @param maxNumLevels      the highest occurring mipmap level plus 1.
-	 * @param numFetcherThreads how many threads should be created to load data.
+	 * @param numFetcherThreads how many threads should be created initially to load data.
 	 */
 	public GlobalCache(final int maxNumLevels, final int numFetcherThreads, LoaderCache<Key<?>, ?> backingCache, Invalidate<Key<?>> invalidate) {
+		this(maxNumLevels, numFetcherThreads, AdaptiveFetcherThreads.DEFAULT_MAX_NUM_THREADS, backingCache, invalidate);
+	}
+
+	/**
+	 * Create a new global cache with a new fetch queue served by
+	 * {@link AdaptiveFetcherThreads adaptive fetcher threads}.
+	 *
+	 * @param maxNumLevels         the highest occurring mipmap level plus 1.
+	 * @param numFetcherThreads    how many threads should be created initially to load data. The number of threads
+	 *                             never drops below this.
+	 * @param maxNumFetcherThreads upper bound for the number of threads that load data.
+	 */
+	public GlobalCache(
+			final int maxNumLevels,
+			final int numFetcherThreads,
+			final int maxNumFetcherThreads,
+			LoaderCache<Key<?>, ?> backingCache,
+			Invalidate<Key<?>> invalidate) {
 		queue = new BlockingFetchQueues<>(maxNumLevels);
-		new FetcherThreads(queue, numFetcherThreads);
+		this.fetcherThreads = new AdaptiveFetcherThreads(
+				queue,
+				numFetcherThreads,
+				numFetcherThreads,
+				Math.max(numFetcherThreads, maxNumFetcherThreads),
+				AdaptiveFetcherThreads.DEFAULT_ADJUSTMENT_INTERVAL_MILLIS);
 		this.backingCache = backingCache;
 		this.invalidate = invalidate;
 	}
@@ -165,6 +192,7 @@ public class GlobalCache implements CacheControl {
 	 */
 	public GlobalCache(final BlockingFetchQueues<Callable<?>> queue, LoaderCache<Key<?>, ?> backingCache, Invalidate<Key<?>> invalidate) {
 		this.queue = queue;
+		this.fetcherThreads = null;
 		this.backingCache = backingCache;
 		this.invalidate = invalidate;
 	}
@@ -197,6 +225,14 @@ public class GlobalCache implements CacheControl {
 		return this.queue.getNumPriorities();
 	}
 
+	/**
+	 * @return {@link AdaptiveFetcherThreads} that serve the fetch queue, or {@link Optional#empty()} if the
+	 * queue is served by threads created by the caller.
+	 */
+	public Optional<AdaptiveFetcherThreads> getFetcherThreads() {
+		return Optional.ofNullable(this.fetcherThreads);
+	}
+
 	public <T extends NativeType<T>, A extends ArrayDataAccess<A>> Pair<CachedCellImg<T, A>, Invalidate<Long>> createVolatileImg(
 			final CellGrid grid,
 			final CellLoader<T> loader,
@@ -273,6 +309,26 @@ public class GlobalCache implements CacheControl {
 		return new ValuePair<>(new CachedCellImg<>(grid, fraction, cache, accessType), invalidate);
 	}
 
+	public <
+			T extends NativeType<T>,
+			V extends Volatile<T> & NativeType<V>, A>
+	Triple<RandomAccessibleInterval<V>, VolatileCache<Long, Cell<A>>, Invalidate<Long>> wrapAsVolatile(
+			final CachedCellImg<T, A> img,
+			final Invalidate<Long> backingInvalidate,
+			final int priority
+	) throws InvalidAccessException {
+		return wrapAsVolatile(img, backingInvalidate, null, priority);
+	}
+
+	/**
+	 * Wrap {@code img} as volatile image whose cells are loaded through the fetch queue.
+	 *
+	 * @param img cached image
+	 * @param backingInvalidate invalidate the cache of {@code img}
+	 * @param asyncLoader if not {@code null}, fetcher threads only start asynchronous loads through
+	 *                    {@code asyncLoader} and do not wait for the result. Must be the loader of {@code img}.
+	 * @param priority in fetching queue
+	 */
 	@SuppressWarnings("unchecked")
 	public <
 			T extends NativeType<T>,
@@ -280,6 +336,7 @@ public class GlobalCache implements CacheControl {
 	Triple<RandomAccessibleInterval<V>, VolatileCache<Long, Cell<A>>, Invalidate<Long>> wrapAsVolatile(
 			final CachedCellImg<T, A> img,
 			final Invalidate<Long> backingInvalidate,
+			final AsyncCacheLoader<Long, Cell<A>> asyncLoader,
 			final int priority
 	) throws InvalidAccessException {
 		final A accessType = img.getAccessType();
@@ -295,7 +352,7 @@ public class GlobalCache implements CacheControl {
 				img.getCellGrid(),
 				type,
 				isDirty);
-		WeakRefVolatileCache<Long, Cell<A>> vcache = WeakRefVolatileCache.fromCacheAndInvalidate(img.getCache(), backingInvalidate, queue, createInvalid);
+		WeakRefVolatileCache<Long, Cell<A>> vcache = WeakRefVolatileCache.fromCacheAndInvalidate(img.getCache(), backingInvalidate, queue, createInvalid, asyncLoader);
 		final UncheckedVolatileCache<Long, Cell<A>> unchecked =
 				vcache.unchecked();
 
@@ -320,6 +377,31 @@ public class GlobalCache implements CacheControl {
 			final Function<NativeImg<V, ? extends A>, V> typeFactory,
 			final CreateInvalid<Long, Cell<A>> createInvalid,
 			final int priority
+	) throws InvalidAccessException {
+		return wrapAsVolatile(img, backingInvalidate, typeFactory, createInvalid, null, priority);
+	}
+
+	/**
+	 * Wrap {@code img} as volatile image whose cells are loaded through the fetch queue.
+	 *
+	 * @param img cached image
+	 * @param backingInvalidate invalidate the cache of {@code img}
+	 * @param typeFactory create linked volatile type
+	 * @param createInvalid create placeholder cells while loading
+	 * @param asyncLoader if not {@code null}, fetcher threads only start asynchronous loads through
+	 *                    {@code asyncLoader} and do not wait for the result. Must be the loader of {@code img}.
+	 * @param priority in fetching queue
+	 */
+	public <
+			T extends NativeType<T>,
+			V extends Volatile<T> & NativeType<V>, A>
+	Triple<RandomAccessibleInterval<V>, VolatileCache<Long, Cell<A>>, Invalidate<Long>> wrapAsVolatile(
+			CachedCellImg<T, A> img,
+			final Invalidate<Long> backingInvalidate,
+			final Function<NativeImg<V, ? extends A>, V> typeFactory,
+			final CreateInvalid<Long, Cell<A>> createInvalid,
+			final AsyncCacheLoader<Long, Cell<A>> asyncLoader,
+			final int priority
 	) throws InvalidAccessException {
 		final A accessType = img.getAccessType();
 
@@ -329,7 +411,7 @@ public class GlobalCache implements CacheControl {
 		final T type = Util.getTypeFromInterval(img);
 		final boolean isDirty = AccessFlags.ofAccess(accessType).contains(AccessFlags.DIRTY);
 
-		WeakRefVolatileCache<Long, Cell<A>> vcache = WeakRefVolatileCache.fromCacheAndInvalidate(img.getCache(), backingInvalidate, queue, createInvalid);
+		WeakRefVolatileCache<Long, Cell<A>> vcache = WeakRefVolatileCache.fromCacheAndInvalidate(img.getCache(), backingInvalidate, queue, createInvalid, asyncLoader);
 		final UncheckedVolatileCache<Long, Cell<A>> unchecked = vcache.unchecked();
 
 		final CacheHints cacheHints = new CacheHints(LoadingStrategy.VOLATILE, priority, true);
@@ -0,0 +1,281 @@
+package org.janelia.saalfeldlab.paintera.control;
+
+import java.io.IOException;
+import java.lang.invoke.MethodHandles;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.janelia.saalfeldlab.n5.DataBlock;
+import org.janelia.saalfeldlab.n5.DatasetAttributes;
+import org.janelia.saalfeldlab.n5.N5Reader;
+import org.janelia.saalfeldlab.paintera.data.DataSource;
+import org.janelia.saalfeldlab.paintera.data.mask.MaskedSource;
+import org.janelia.saalfeldlab.paintera.data.n5.N5DataSource;
+import org.janelia.saalfeldlab.util.NamedThreadFactory;
+import org.janelia.saalfeldlab.util.n5.N5Helpers;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import gnu.trove.set.TLongSet;
+import gnu.trove.set.hash.TLongHashSet;
+import net.imglib2.Cursor;
+import net.imglib2.Interval;
+import net.imglib2.RandomAccessibleInterval;
+import net.imglib2.algorithm.util.Grids;
+import net.imglib2.img.cell.AbstractCellImg;
+import net.imglib2.img.cell.CellGrid;
+import net.imglib2.type.label.Label;
+import net.imglib2.type.label.LabelMultisetType;
+import net.imglib2.type.label.LabelMultisetType.Entry;
+import net.imglib2.type.numeric.IntegerType;
+import net.imglib2.util.Intervals;
+import net.imglib2.view.Views;
+
+/**
+ * Collect all ids that are contained in a {@link DataSource}.
+ *
+ * For Paintera datasets, the per-block {@code unique-labels} datasets are read in parallel instead of the label
+ * data. Otherwise, the label data is scanned block by block in parallel: the lowest resolution for
+ * {@link LabelMultisetType} (multisets keep all contained ids), the highest resolution for primitive types. Scanning
+ * can be cancelled by interrupting the calling thread.
+ *
+ * Ids of the background data are cached until {@link #invalidate() invalidated}, e.g. when the data changes. Ids that
+ * were painted into the canvas of a {@link MaskedSource} are added on every request.
+ */
+public class AllIdsCollector
+{
+
+	private static final Logger LOG = LoggerFactory.getLogger(MethodHandles.lookup().lookupClass());
+
+	private static final int[] DEFAULT_SCAN_BLOCK_SIZE = {64, 64, 64};
+
+	private static final int NUM_TASKS_PER_THREAD = 4;
+
+	/**
+	 * Number of threads of the executor that is shared by all collectors that do not specify an executor.
+	 */
+	public static final int DEFAULT_NUM_THREADS = Math.max(1, Runtime.getRuntime().availableProcessors());
+
+	private final DataSource<? extends IntegerType<?>, ?> source;
+
+	private final ExecutorService es;
+
+	private final int numTasks;
+
+	private long version = 0;
+
+	private TLongSet cachedIds = null;
+
+	/**
+	 * Collect ids on an executor of {@link #DEFAULT_NUM_THREADS} threads that is shared by all collectors created
+	 * with this constructor.
+	 *
+	 * @param source collect ids of this source
+	 */
+	public AllIdsCollector(final DataSource<? extends IntegerType<?>, ?> source)
+	{
+		this(source, DefaultExecutor.INSTANCE, DEFAULT_NUM_THREADS);
+	}
+
+	/**
+	 *
+	 * @param source collect ids of this source
+	 * @param es collect ids in parallel
+	 * @param numThreads number of threads of {@code es}, used to partition the work
+	 */
+	public AllIdsCollector(
+			final DataSource<? extends IntegerType<?>, ?> source,
+			final ExecutorService es,
+			final int numThreads)
+	{
+		this.source = source;
+		this.es = es;
+		this.numTasks = Math.max(numThreads, 1) * NUM_TASKS_PER_THREAD;
+		if (source instanceof MaskedSource<?, ?>)
+			((MaskedSource<?, ?>) source).addOnCanvasClearedListener(this::invalidate);
+	}
+
+	/**
+	 * Discard cached ids, e.g. when the underlying data was modified.
+	 */
+	public synchronized void invalidate()
+	{
+		++version;
+		cachedIds = null;
+	}
+
+	/**
+	 * Collect all ids. Blocks until the ids are collected. Must not be called from a thread of the
+	 * {@link ExecutorService} that is used for collecting ids.
+	 *
+	 * @return all ids in the source (not filtered)
+	 * @throws InterruptedException if the calling thread was interrupted while collecting ids
+	 * @throws ExecutionException if collecting ids failed
+	 */
+	public TLongSet collect() throws InterruptedException, ExecutionException
+	{
+		final TLongSet cached;
+		final long version;
+		synchronized (this)
+		{
+			cached = this.cachedIds;
+			version = this.version;
+		}
+
+		final TLongSet ids = new TLongHashSet();
+		if (cached != null)
+			ids.addAll(cached);
+		else
+		{
+			final TLongSet backgroundIds = collectBackground();
+			synchronized (this)
+			{
+				if (this.version == version)
+					this.cachedIds = backgroundIds;
+			}
+			ids.addAll(backgroundIds);
+		}
+
+		if (source instanceof MaskedSource<?, ?>)
+			ids.addAll(((MaskedSource<?, ?>) source).getPaintedLabels());
+
+		return ids;
+	}
+
+	@SuppressWarnings("unchecked")
+	private TLongSet collectBackground() throws InterruptedException, ExecutionException
+	{
+		final DataSource<? extends IntegerType<?>, ?> background = source instanceof MaskedSource<?, ?>
+				? (DataSource<? extends IntegerType<?>, ?>) ((MaskedSource<?, ?>) source).underlyingSource()
+				: source;
+
+		if (background instanceof N5DataSource<?, ?>)
+		{
+			final N5DataSource<?, ?> n5Source = (N5DataSource<?, ?>) background;
+			try
+			{
+				final N5Reader n5 = n5Source.reader();
+				final String uniqueLabelsGroup = n5Source.dataset() + "/unique-labels";
+				if (N5Helpers.isPainteraDataset(n5, n5Source.dataset()) && n5.exists(uniqueLabelsGroup))
+					return collectFromUniqueLabels(n5, uniqueLabelsGroup);
+			} catch (final IOException e)
+			{
+				LOG.warn("Unable to read unique labels of {} -- scanning label data instead", n5Source.dataset(), e);
+			}
+		}
+
+		final boolean isLabelMultisetType = background.getDataType() instanceof LabelMultisetType;
+		if (!isLabelMultisetType)
+			LOG.info("Label data is stored as primitive type, scanning full resolution data in parallel to collect all ids");
+		final int level = isLabelMultisetType ? background.getNumMipmapLevels() - 1 : 0;
+		return collectFromData(background.getDataSource(0, level), isLabelMultisetType);
+	}
+
+	/**
+	 * Unique labels at lower resolutions are the union of the unique labels of the contained higher resolution
+	 * blocks, so reading the lowest resolution is sufficient.
+	 */
+	private TLongSet collectFromUniqueLabels(final N5Reader n5, final String uniqueLabelsGroup) throws IOException, InterruptedException, ExecutionException
+	{
+		final String[] scaleDatasets = N5Helpers.listAndSortScaleDatasets(n5, uniqueLabelsGroup);
+		final String dataset = uniqueLabelsGroup + "/" + scaleDatasets[scaleDatasets.length - 1];
+		final DatasetAttributes attributes = n5.getDatasetAttributes(dataset);
+		final CellGrid grid = new CellGrid(attributes.getDimensions(), attributes.getBlockSize());
+		final long numBlocks = Intervals.numElements(grid.getGridDimensions());
+		LOG.debug("Reading {} blocks of unique labels from {}", numBlocks, dataset);
+
+		return collectInParallel(numBlocks, (first, last) -> {
+			final TLongSet ids = new TLongHashSet();
+			final long[] gridPosition = new long[grid.numDimensions()];
+			for (long block = first; block < last; ++block)
+			{
+				if (Thread.currentThread().isInterrupted())
+					break;
+				grid.getCellGridPositionFlat(block, gridPosition);
+				final DataBlock<?> dataBlock = n5.readBlock(dataset, attributes, gridPosition);
+				if (dataBlock != null)
+					ids.addAll((long[]) dataBlock.getData());
+			}
+			return ids;
+		});
+	}
+
+	private TLongSet collectFromData(
+			final RandomAccessibleInterval<? extends IntegerType<?>> data,
+			final boolean isLabelMultisetType) throws InterruptedException, ExecutionException
+	{
+		final List<Interval> blocks = data instanceof AbstractCellImg<?, ?, ?, ?>
+				? Grids.collectAllContainedIntervals(((AbstractCellImg<?, ?, ?, ?>) data).getCellGrid().getImgDimensions(), cellDimensions(((AbstractCellImg<?, ?, ?, ?>) data).getCellGrid()))
+				: Grids.collectAllContainedIntervals(Intervals.minAsLongArray(data), Intervals.maxAsLongArray(data), DEFAULT_SCAN_BLOCK_SIZE);
+		LOG.debug("Scanning {} blocks of label data", blocks.size());
+
+		return collectInParallel(blocks.size(), (first, last) -> {
+			final TLongSet ids = new TLongHashSet();
+			for (int block = (int) first; block < last; ++block)
+			{
+				if (Thread.currentThread().isInterrupted())
+					break;
+				final Cursor<? extends IntegerType<?>> cursor = Views.flatIterable(Views.interval(data, blocks.get(block))).cursor();
+				if (isLabelMultisetType)
+					while (cursor.hasNext())
+						for (final Entry<Label> entry : ((LabelMultisetType) cursor.next()).entrySet())
+							ids.add(entry.getElement().id());
+				else
+					while (cursor.hasNext())
+						ids.add(cursor.next().getIntegerLong());
+			}
+			return ids;
+		});
+	}
+
+	private TLongSet collectInParallel(final long numBlocks, final BlockRangeCollector collector) throws InterruptedException, ExecutionException
+	{
+		final long blocksPerTask = Math.max((numBlocks + numTasks - 1) / numTasks, 1);
+		final List<Future<TLongSet>> futures = new ArrayList<>();
+		for (long first = 0; first < numBlocks; first += blocksPerTask)
+		{
+			final long taskFirst = first;
+			final long taskLast = Math.min(first + blocksPerTask, numBlocks);
+			futures.add(es.submit((Callable<TLongSet>) () -> collector.collect(taskFirst, taskLast)));
+		}
+
+		final TLongSet ids = new TLongHashSet();
+		try
+		{
+			for (final Future<TLongSet> future : futures)
+				ids.addAll(future.get());
+		} finally
+		{
+			// stop remaining tasks if interrupted or failed
+			futures.forEach(f -> f.cancel(true));
+		}
+		if (Thread.currentThread().isInterrupted())
+			throw new InterruptedException("Interrupted while collecting ids");
+		return ids;
+	}
+
+	private static int[] cellDimensions(final CellGrid grid)
+	{
+		final int[] cellDimensions = new int[grid.numDimensions()];
+		grid.cellDimensions(cellDimensions);
+		return cellDimensions;
+	}
+
+	private interface BlockRangeCollector
+	{
+		TLongSet collect(long first, long last) throws Exception;
+	}
+
+	private static class DefaultExecutor
+	{
+		private static final ExecutorService INSTANCE = Executors.newFixedThreadPool(
+				DEFAULT_NUM_THREADS,
+				new NamedThreadFactory("all-ids-collector-%d", true));
+	}
+
+}
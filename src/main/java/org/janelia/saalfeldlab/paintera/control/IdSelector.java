@@ -1,15 +1,21 @@
 package org.janelia.saalfeldlab.paintera.control;
 
 import java.lang.invoke.MethodHandles;
+import java.util.Optional;
+import java.util.OptionalLong;
+import java.util.concurrent.ExecutionException;
 import java.util.function.Consumer;
 import java.util.function.LongPredicate;
 import java.util.function.Predicate;
+import java.util.function.Supplier;
 
 import org.janelia.saalfeldlab.fx.event.MouseClickFX;
+import org.janelia.saalfeldlab.fx.util.InvokeOnJavaFXApplicationThread;
 import org.janelia.saalfeldlab.paintera.control.assignment.FragmentSegmentAssignment;
 import org.janelia.saalfeldlab.paintera.control.lock.LockedSegments;
 import org.janelia.saalfeldlab.paintera.control.selection.SelectedIds;
 import org.janelia.saalfeldlab.paintera.data.DataSource;
+import org.janelia.saalfeldlab.paintera.state.ScreenIdBuffer;
 import org.janelia.saalfeldlab.paintera.state.VisitEveryDisplayPixel;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -20,8 +26,7 @@ import bdv.viewer.Interpolation;
 import gnu.trove.set.TLongSet;
 import gnu.trove.set.hash.TLongHashSet;
 import javafx.scene.input.MouseEvent;
-import net.imglib2.Cursor;
-import net.imglib2.RandomAccessibleInterval;
+import net.imglib2.Point;
 import net.imglib2.RealRandomAccess;
 import net.imglib2.realtransform.AffineTransform3D;
 import net.imglib2.realtransform.RealViews;
@@ -29,7 +34,6 @@ import net.imglib2.type.label.Label;
 import net.imglib2.type.label.LabelMultisetType;
 import net.imglib2.type.label.LabelMultisetType.Entry;
 import net.imglib2.type.numeric.IntegerType;
-import net.imglib2.view.Views;
 
 public class IdSelector
 {
@@ -44,17 +48,64 @@ public class IdSelector
 
 	private final LongPredicate foregroundCheck;
 
+	private final Supplier<ScreenIdBuffer<?>> idBuffer;
+
+	private final AllIdsCollector allIdsCollector;
+
+	private Thread selectAllThread = null;
+
 	public IdSelector(
 			final DataSource<? extends IntegerType<?>, ?> source,
 			final SelectedIds selectedIds,
 			final ViewerPanelFX viewer,
 			final LongPredicate foregroundCheck)
+	{
+		this(source, selectedIds, viewer, foregroundCheck, () -> null);
+	}
+
+	public IdSelector(
+			final DataSource<? extends IntegerType<?>, ?> source,
+			final SelectedIds selectedIds,
+			final ViewerPanelFX viewer,
+			final LongPredicate foregroundCheck,
+			final Supplier<ScreenIdBuffer<?>> idBuffer)
+	{
+		this(
+				source,
+				selectedIds,
+				viewer,
+				foregroundCheck,
+				idBuffer,
+				new AllIdsCollector(source));
+	}
+
+	/**
+	 *
+	 * @param source select ids of this source
+	 * @param selectedIds selection
+	 * @param viewer viewer that receives mouse events
+	 * @param foregroundCheck only select ids that pass this check
+	 * @param idBuffer if the supplied buffer is not {@code null} and up to date, look up ids in {@code viewer} from
+	 *                 this buffer instead of sampling {@code source}. Queried on every request because buffers are
+	 *                 disposed when {@code source} is hidden.
+	 * @param allIdsCollector collects all ids of {@code source} for {@link #selectAll()}. Can be shared between
+	 *                        {@link IdSelector id selectors} for the same source.
+	 */
+	public IdSelector(
+			final DataSource<? extends IntegerType<?>, ?> source,
+			final SelectedIds selectedIds,
+			final ViewerPanelFX viewer,
+			final LongPredicate foregroundCheck,
+			final Supplier<ScreenIdBuffer<?>> idBuffer,
+			final AllIdsCollector allIdsCollector)
 	{
 		super();
 		this.source = source;
 		this.selectedIds = selectedIds;
 		this.viewer = viewer;
 		this.foregroundCheck = foregroundCheck;
+		this.idBuffer = idBuffer;
+		this.allIdsCollector = allIdsCollector;
 	}
 
 	public MouseClickFX selectFragmentWithMaximumCount(final String name, final Predicate<MouseEvent> eventFilter)
@@ -67,55 +118,63 @@ public class IdSelector
 		return new MouseClickFX(name, new AppendFragmentWithMaximumCount(), eventFilter);
 	}
 
-	// TODO: use unique labels to collect all ids; caching
-	public void selectAll()
-	{
-		final TLongSet allIds = new TLongHashSet();
-		if (source.getDataType() instanceof LabelMultisetType)
-			selectAllLabelMultisetType(allIds);
-		else
-			selectAllPrimitiveType(allIds);
-		LOG.debug("Collected {} ids", allIds.size());
-		selectedIds.activate(allIds.toArray());
-	}
-
-	private void selectAllLabelMultisetType(final TLongSet allIds)
+	/**
+	 * Collect all ids in a background thread and select them when done. A previous, unfinished request is cancelled.
+	 */
+	public synchronized void selectAll()
 	{
-		@SuppressWarnings("unchecked")
-		final RandomAccessibleInterval<LabelMultisetType> data = (RandomAccessibleInterval<LabelMultisetType>)
-				source.getDataSource(0, source.getNumMipmapLevels() - 1);
-
-		final Cursor<LabelMultisetType> cursor = Views.iterable(data).cursor();
-		while (cursor.hasNext())
-		{
-			final LabelMultisetType lmt = cursor.next();
-			for (final Entry<Label> entry : lmt.entrySet())
+		cancelSelectAll();
+		final Thread thread = new Thread(() -> {
+			try
 			{
-				final long id = entry.getElement().id();
-				if (foregroundCheck.test(id))
-					allIds.add(id);
+				final TLongSet allIds = new TLongHashSet();
+				allIdsCollector.collect().forEach(id -> {
+					if (foregroundCheck.test(id))
+						allIds.add(id);
+					return true;
+				});
+				LOG.debug("Collected {} ids", allIds.size());
+				if (!Thread.currentThread().isInterrupted())
+					InvokeOnJavaFXApplicationThread.invoke(() -> selectedIds.activate(allIds.toArray()));
+			} catch (final InterruptedException e)
+			{
+				LOG.debug("Select all has been cancelled");
+			} catch (final ExecutionException e)
+			{
+				LOG.error("Unable to collect all ids", e);
 			}
-		}
+		});
+		thread.setName("select-all");
+		thread.setDaemon(true);
+		this.selectAllThread = thread;
+		thread.start();
 	}
 
-	private void selectAllPrimitiveType(final TLongSet allIds)
+	/**
+	 * Cancel {@link #selectAll()} if it is still running.
+	 */
+	public synchronized void cancelSelectAll()
 	{
-		// TODO: run the operation in separate thread and allow to cancel it
-		LOG.warn("Label data is stored as primitive type, looping over full resolution data to collect all ids -- SLOW");
-		final RandomAccessibleInterval<? extends IntegerType<?>> data = source.getDataSource(0, 0);
-		final Cursor<? extends IntegerType<?>> cursor = Views.iterable(data).cursor();
-		while (cursor.hasNext())
-		{
-			final long id = cursor.next().getIntegerLong();
-			if (foregroundCheck.test(id))
-				allIds.add(id);
-		}
+		if (this.selectAllThread != null)
+			this.selectAllThread.interrupt();
+		this.selectAllThread = null;
 	}
 
 	public void selectAllInCurrentView(final ViewerPanelFX viewer)
 	{
+		cancelSelectAll();
 		final TLongSet idsInCurrentView = new TLongHashSet();
-		if (source.getDataType() instanceof LabelMultisetType)
+		final ScreenIdBuffer<?> idBuffer = viewer == this.viewer ? this.idBuffer.get() : null;
+		final Optional<TLongSet> bufferedIdsInCurrentView = idBuffer != null
+				? idBuffer.getIdsInView()
+				: Optional.empty();
+		if (bufferedIdsInCurrentView.isPresent())
+			bufferedIdsInCurrentView.get().forEach(id -> {
+				if (foregroundCheck.test(id))
+					idsInCurrentView.add(id);
+				return true;
+			});
+		else if (source.getDataType() instanceof LabelMultisetType)
 			selectAllInCurrentViewLabelMultisetType(viewer, idsInCurrentView);
 		else
 			selectAllInCurrentViewPrimitiveType(viewer, idsInCurrentView);
@@ -172,22 +231,36 @@ public class IdSelector
 		@Override
 		public void accept(final MouseEvent e)
 		{
-				final AffineTransform3D affine      = new AffineTransform3D();
-				final ViewerState       viewerState = viewer.getState().copy();
-				viewerState.getViewerTransform(affine);
-				final AffineTransform3D screenScaleTransform = new AffineTransform3D();
-				viewer.getRenderUnit().getScreenScaleTransform(0, screenScaleTransform);
-				final int level = viewerState.getBestMipMapLevel(screenScaleTransform, source);
-
-				source.getSourceTransform(0, level, affine);
-				final RealRandomAccess<? extends IntegerType<?>> access =
-						RealViews.transformReal(source.getInterpolatedDataSource(0, level, Interpolation.NEARESTNEIGHBOR), affine).realRandomAccess();
-				viewer.getMouseCoordinates(access);
-				access.setPosition(0L, 2);
-				viewer.displayToGlobalCoordinates(access);
-				final IntegerType<?> val = access.get();
-				final long id  = val.getIntegerLong();
-				actOn(id);
+			cancelSelectAll();
+			final ScreenIdBuffer<?> idBuffer = IdSelector.this.idBuffer.get();
+			if (idBuffer != null)
+			{
+				final Point mouse = new Point(2);
+				viewer.getMouseCoordinates(mouse);
+				final OptionalLong bufferedId = idBuffer.getId(mouse.getDoublePosition(0), mouse.getDoublePosition(1));
+				if (bufferedId.isPresent())
+				{
+					actOn(bufferedId.getAsLong());
+					return;
+				}
+			}
+
+			final AffineTransform3D affine      = new AffineTransform3D();
+			final ViewerState       viewerState = viewer.getState().copy();
+			viewerState.getViewerTransform(affine);
+			final AffineTransform3D screenScaleTransform = new AffineTransform3D();
+			viewer.getRenderUnit().getScreenScaleTransform(0, screenScaleTransform);
+			final int level = viewerState.getBestMipMapLevel(screenScaleTransform, source);
+
+			source.getSourceTransform(0, level, affine);
+			final RealRandomAccess<? extends IntegerType<?>> access =
+					RealViews.transformReal(source.getInterpolatedDataSource(0, level, Interpolation.NEARESTNEIGHBOR), affine).realRandomAccess();
+			viewer.getMouseCoordinates(access);
+			access.setPosition(0L, 2);
+			viewer.displayToGlobalCoordinates(access);
+			final IntegerType<?> val = access.get();
+			final long id  = val.getIntegerLong();
+			actOn(id);
 		}
 
 		protected abstract void actOn(final long id);
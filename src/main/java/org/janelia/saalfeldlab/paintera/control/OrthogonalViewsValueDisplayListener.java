@@ -2,6 +2,7 @@ package org.janelia.saalfeldlab.paintera.control;
 
 import java.util.HashMap;
 import java.util.Map;
+import java.util.function.BiFunction;
 import java.util.function.Consumer;
 import java.util.function.Function;
 
@@ -11,6 +12,7 @@ import bdv.viewer.Source;
 import javafx.beans.value.ObservableValue;
 import javafx.scene.input.MouseEvent;
 import org.janelia.saalfeldlab.paintera.control.navigation.ValueDisplayListener;
+import org.janelia.saalfeldlab.paintera.state.ScreenIdBuffer;
 
 public class OrthogonalViewsValueDisplayListener
 {
@@ -23,22 +25,34 @@ public class OrthogonalViewsValueDisplayListener
 
 	private final Function<Source<?>, Interpolation> interpolation;
 
+	private final BiFunction<Source<?>, ViewerPanelFX, ScreenIdBuffer<?>> idBuffer;
+
 	public OrthogonalViewsValueDisplayListener(
 			final Consumer<String> submitValue,
 			final ObservableValue<Source<?>> currentSource,
 			final Function<Source<?>, Interpolation> interpolation)
+	{
+		this(submitValue, currentSource, interpolation, (source, viewer) -> null);
+	}
+
+	public OrthogonalViewsValueDisplayListener(
+			final Consumer<String> submitValue,
+			final ObservableValue<Source<?>> currentSource,
+			final Function<Source<?>, Interpolation> interpolation,
+			final BiFunction<Source<?>, ViewerPanelFX, ScreenIdBuffer<?>> idBuffer)
 	{
 		super();
 		this.submitValue = submitValue;
 		this.currentSource = currentSource;
 		this.interpolation = interpolation;
+		this.idBuffer = idBuffer;
 	}
 
 	public Consumer<ViewerPanelFX> onEnter()
 	{
 		return t -> {
 			if (!this.listeners.containsKey(t))
-				this.listeners.put(t, new ValueDisplayListener(t, currentSource, interpolation, submitValue));
+				this.listeners.put(t, new ValueDisplayListener(t, currentSource, interpolation, submitValue, source -> idBuffer.apply(source, t)));
 			t.getDisplay().addEventFilter(MouseEvent.MOUSE_MOVED, this.listeners.get(t));
 			t.addTransformListener(this.listeners.get(t));
 		};
@@ -2,6 +2,9 @@ package org.janelia.saalfeldlab.paintera.control;
 
 import java.lang.invoke.MethodHandles;
 import java.util.Arrays;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 import java.util.function.Predicate;
 
 import org.janelia.saalfeldlab.fx.event.DelegateEventHandlers;
@@ -19,7 +22,6 @@ import org.janelia.saalfeldlab.paintera.control.paint.FloodFill2D;
 import org.janelia.saalfeldlab.paintera.control.paint.PaintUtils;
 import org.janelia.saalfeldlab.paintera.control.selection.SelectedIds;
 import org.janelia.saalfeldlab.paintera.data.DataSource;
-import org.janelia.saalfeldlab.paintera.data.PredicateDataSource.PredicateConverter;
 import org.janelia.saalfeldlab.paintera.data.mask.Mask;
 import org.janelia.saalfeldlab.paintera.data.mask.MaskInfo;
 import org.janelia.saalfeldlab.paintera.data.mask.MaskedSource;
@@ -27,6 +29,7 @@ import org.janelia.saalfeldlab.paintera.data.mask.exception.MaskInUse;
 import org.janelia.saalfeldlab.paintera.id.IdService;
 import org.janelia.saalfeldlab.paintera.state.LabelSourceState;
 import org.janelia.saalfeldlab.paintera.stream.HighlightingStreamConverter;
+import org.janelia.saalfeldlab.util.NamedThreadFactory;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -46,35 +49,18 @@ import javafx.scene.input.KeyCode;
 import javafx.scene.input.KeyEvent;
 import javafx.scene.input.MouseEvent;
 import javafx.scene.paint.Color;
-import net.imglib2.Cursor;
-import net.imglib2.FinalInterval;
 import net.imglib2.Interval;
 import net.imglib2.RandomAccess;
 import net.imglib2.RandomAccessibleInterval;
-import net.imglib2.RealInterval;
 import net.imglib2.RealPoint;
-import net.imglib2.RealRandomAccessible;
-import net.imglib2.algorithm.morphology.distance.DistanceTransform;
-import net.imglib2.algorithm.morphology.distance.DistanceTransform.DISTANCE_TYPE;
 import net.imglib2.converter.Converters;
-import net.imglib2.converter.logical.Logical;
-import net.imglib2.img.array.ArrayImgFactory;
-import net.imglib2.interpolation.randomaccess.NLinearInterpolatorFactory;
-import net.imglib2.interpolation.randomaccess.NearestNeighborInterpolatorFactory;
-import net.imglib2.loops.LoopBuilder;
 import net.imglib2.realtransform.AffineTransform3D;
-import net.imglib2.realtransform.RealViews;
 import net.imglib2.realtransform.Scale3D;
-import net.imglib2.realtransform.Translation3D;
-import net.imglib2.type.BooleanType;
-import net.imglib2.type.NativeType;
 import net.imglib2.type.label.Label;
 import net.imglib2.type.logic.BoolType;
 import net.imglib2.type.numeric.IntegerType;
-import net.imglib2.type.numeric.RealType;
 import net.imglib2.type.numeric.integer.UnsignedLongType;
-import net.imglib2.type.numeric.real.FloatType;
-import net.imglib2.type.volatiles.VolatileUnsignedLongType;
+import net.imglib2.util.AccessedBlocksRandomAccessible;
 import net.imglib2.util.Intervals;
 import net.imglib2.util.Pair;
 import net.imglib2.util.Util;
@@ -92,25 +78,6 @@ public class ShapeInterpolationMode<D extends IntegerType<D>>
 		Preview
 	}
 
-	public static enum ActiveSection
-	{
-		First("1"),
-		Second("2");
-
-		private final String s;
-
-		private ActiveSection(final String s)
-		{
-			this.s = s;
-		}
-
-		@Override
-		public String toString()
-		{
-			return s;
-		}
-	}
-
 	private static final class SelectedObjectInfo
 	{
 		final RealPoint sourceClickPosition;
@@ -160,6 +127,14 @@ public class ShapeInterpolationMode<D extends IntegerType<D>>
 
 	private static final Predicate<UnsignedLongType> FOREGROUND_CHECK = t -> Label.isForeground(t.get());
 
+	private static final int NUM_WORKERS = Math.max(Runtime.getRuntime().availableProcessors(), 1);
+
+	private static final int NUM_TASKS_PER_WORKER = 4;
+
+	private static final ExecutorService WORKERS = Executors.newFixedThreadPool(
+			NUM_WORKERS,
+			new NamedThreadFactory("shape-interpolation-%d", true));
+
 	private final MaskedSource<D, ?> source;
 	private final LabelSourceState<D, ?> sourceState;
 	private final SelectedIds selectedIds;
@@ -180,15 +155,14 @@ public class ShapeInterpolationMode<D extends IntegerType<D>>
 
 	private final TLongObjectMap<SelectedObjectInfo> selectedObjects = new TLongObjectHashMap<>();
 
-	private final ObjectProperty<SectionInfo> sectionInfo1 = new SimpleObjectProperty<>();
-	private final ObjectProperty<SectionInfo> sectionInfo2 = new SimpleObjectProperty<>();
+	private final ShapeInterpolationSections<SectionInfo> sections = new ShapeInterpolationSections<>(WORKERS, NUM_WORKERS * NUM_TASKS_PER_WORKER);
 
 	private final ObjectProperty<ModeState> modeState = new SimpleObjectProperty<>();
-	private final ObjectProperty<ActiveSection> activeSection = new SimpleObjectProperty<>();
+	private final ObjectProperty<Integer> activeSection = new SimpleObjectProperty<>();
 
 	private Thread workerThread;
 	private Runnable onInterpolationFinished;
-	private Pair<RealRandomAccessible<UnsignedLongType>, RealRandomAccessible<VolatileUnsignedLongType>> interpolatedMaskImgs;
+	private Mask<UnsignedLongType> interpolatedMask;
 
 	public ShapeInterpolationMode(
 			final MaskedSource<D, ?> source,
@@ -216,7 +190,11 @@ public class ShapeInterpolationMode<D extends IntegerType<D>>
 		return modeState;
 	}
 
-	public ObjectProperty<ActiveSection> activeSectionProperty()
+	/**
+	 *
+	 * @return number of the section that is currently selected, starting at 1, in order of depth
+	 */
+	public ObjectProperty<Integer> activeSectionProperty()
 	{
 		return activeSection;
 	}
@@ -252,32 +230,29 @@ public class ShapeInterpolationMode<D extends IntegerType<D>>
 						e -> isModeOn() && keyTracker.areOnlyTheseKeysDown(KeyCode.ENTER)
 					)
 			);
-		filter.addEventHandler(
-				KeyEvent.KEY_PRESSED,
-				EventFX.KEY_PRESSED(
-						"edit selection 1",
-						e -> {e.consume(); editSelection(paintera, ActiveSection.First);},
-						e -> keyTracker.areOnlyTheseKeysDown(KeyCode.DIGIT1)
-					)
-			);
-		filter.addEventHandler(
-				KeyEvent.KEY_PRESSED,
-				EventFX.KEY_PRESSED(
-						"edit selection 2",
-						e -> {e.consume(); editSelection(paintera, ActiveSection.Second);},
-						e -> keyTracker.areOnlyTheseKeysDown(KeyCode.DIGIT2)
-					)
-			);
+		for (int section = 1; section <= 9; ++section)
+		{
+			final int sectionIndex = section - 1;
+			final KeyCode key = KeyCode.valueOf("DIGIT" + section);
+			filter.addEventHandler(
+					KeyEvent.KEY_PRESSED,
+					EventFX.KEY_PRESSED(
+							"edit selection " + section,
+							e -> {e.consume(); editSelection(paintera, sectionIndex);},
+							e -> isModeOn() && keyTracker.areOnlyTheseKeysDown(key)
+						)
+				);
+		}
 
 		filter.addEventHandler(MouseEvent.ANY, new MouseClickFX(
 				"select object in current section",
 				e -> {e.consume(); selectObject(paintera, e.getX(), e.getY(), true);},
-				e -> modeState.get() == ModeState.Select && e.isPrimaryButtonDown() && keyTracker.noKeysActive())
+				e -> isSelectionAllowed() && e.isPrimaryButtonDown() && keyTracker.noKeysActive())
 			.handler());
 		filter.addEventHandler(MouseEvent.ANY, new MouseClickFX(
 				"toggle object in current section",
 				e -> {e.consume(); selectObject(paintera, e.getX(), e.getY(), false);},
-				e -> modeState.get() == ModeState.Select &&
+				e -> isSelectionAllowed() &&
 					((e.isSecondaryButtonDown() && keyTracker.noKeysActive()) ||
 					(e.isPrimaryButtonDown() && keyTracker.areOnlyTheseKeysDown(KeyCode.CONTROL))))
 			.handler());
@@ -300,8 +275,9 @@ public class ShapeInterpolationMode<D extends IntegerType<D>>
 		final AllowedActionsBuilder allowedActionsBuilder = new AllowedActionsBuilder();
 		allowedActionsBuilder.add(NavigationActionType.Drag, NavigationActionType.Zoom, MenuActionType.ToggleMaximizeViewer);
 		allowedActionsBuilder.add(NavigationActionType.Scroll, () -> {
-			// allow to scroll through sections, but fix the selection first if the object selection is not empty
-			if (modeState.get() == ModeState.Select && !selectedObjects.isEmpty())
+			// allow to scroll through sections, but fix the selection first if the object selection is not empty or if
+			// an existing section is edited
+			if (modeState.get() == ModeState.Select && (!selectedObjects.isEmpty() || isEditingSection()))
 			{
 				fixSelection(paintera);
 				advanceMode(paintera);
@@ -321,7 +297,7 @@ public class ShapeInterpolationMode<D extends IntegerType<D>>
 		converter.setColor(newLabelId, MASK_COLOR);
 		selectedIds.activate(newLabelId);
 
-		activeSection.set(ActiveSection.First);
+		activeSection.set(1);
 		modeState.set(ModeState.Select);
 	}
 
@@ -355,15 +331,14 @@ public class ShapeInterpolationMode<D extends IntegerType<D>>
 
 		currentFillValue = 0;
 		selectedObjects.clear();
-		sectionInfo1.set(null);
-		sectionInfo2.set(null);
+		sections.clear();
 		modeState.set(null);
 		activeSection.set(null);
 		mask = null;
 
 		workerThread = null;
 		onInterpolationFinished = null;
-		interpolatedMaskImgs = null;
+		interpolatedMask = null;
 		lastSelectedId = Label.INVALID;
 		lastActiveIds = null;
 
@@ -376,6 +351,14 @@ public class ShapeInterpolationMode<D extends IntegerType<D>>
 		return modeState.get() != null;
 	}
 
+	/**
+	 * Objects can be selected in new sections while the interpolated shape is previewed.
+	 */
+	private boolean isSelectionAllowed()
+	{
+		return modeState.get() == ModeState.Select || modeState.get() == ModeState.Preview;
+	}
+
 	private void createMask() throws MaskInUse
 	{
 		final int time = activeViewer.getState().timepointProperty().get();
@@ -422,26 +405,60 @@ public class ShapeInterpolationMode<D extends IntegerType<D>>
 		}
 	}
 
+	/**
+	 * Add the selection as a section, replacing the section in the same plane if it exists. If the selection is empty,
+	 * remove the section in the same plane instead.
+	 */
 	private void fixSelection(final PainteraBaseView paintera)
 	{
-		final ObjectProperty<SectionInfo> sectionInfoPropertyToSet = activeSection.get() == ActiveSection.First ? sectionInfo1 : sectionInfo2;
 		LOG.debug("Fix selection");
-		sectionInfoPropertyToSet.set(createSectionInfo(paintera));
+		if (selectedObjects.isEmpty())
+		{
+			final int index = sections.indexOf(getMaskDisplayTransformIgnoreScaling(SHAPE_INTERPOLATION_SCALE_LEVEL));
+			if (index >= 0)
+			{
+				sections.remove(index);
+				LOG.debug("Removed section {} with empty selection", index + 1);
+			}
+			return;
+		}
+		final SectionInfo sectionInfo = createSectionInfo(paintera);
+		try
+		{
+			final int index = sections.put(
+					sectionInfo,
+					sectionInfo.mask.mask instanceof AccessedBlocksRandomAccessible<?>
+					? ((AccessedBlocksRandomAccessible<UnsignedLongType>) sectionInfo.mask.mask).getSource()
+					: sectionInfo.mask.mask,
+					sectionInfo.sourceToDisplayTransform,
+					sectionInfo.sourceBoundingBox);
+			LOG.debug("Fixed section {} of {}", index + 1, sections.size());
+		}
+		catch (final IllegalArgumentException e)
+		{
+			LOG.warn("Unable to add section for shape interpolation: {}", e.getMessage());
+		}
 		selectedObjects.clear();
 	}
 
+	private boolean isEditingSection()
+	{
+		return sections.indexOf(getMaskDisplayTransformIgnoreScaling(SHAPE_INTERPOLATION_SCALE_LEVEL)) >= 0;
+	}
+
 	private void advanceMode(final PainteraBaseView paintera)
 	{
-		if (sectionInfo1.get() == null || sectionInfo2.get() == null)
+		resetMask();
+		if (sections.size() < 2)
 		{
-			// let the user now select the second section
-			activeSection.set(ActiveSection.Second);
-			resetMask();
+			// let the user now select the next section
+			activeSection.set(sections.size() + 1);
+			modeState.set(ModeState.Select);
 			paintera.orthogonalViews().requestRepaint();
 		}
 		else
 		{
-			// both sections are ready, run interpolation
+			// at least two sections are ready, run interpolation
 			activeSection.set(null);
 			modeState.set(ModeState.Interpolate);
 			onInterpolationFinished = () -> modeState.set(ModeState.Preview);
@@ -449,30 +466,44 @@ public class ShapeInterpolationMode<D extends IntegerType<D>>
 		}
 	}
 
-	private void editSelection(final PainteraBaseView paintera, final ActiveSection section)
+	/**
+	 * Select objects in a new section (or edit the section in the current plane) while the interpolated shape is
+	 * previewed.
+	 */
+	private void selectNextSection(final PainteraBaseView paintera)
+	{
+		interruptInterpolation();
+		resetMask();
+		interpolatedMask = null;
+		final int index = sections.indexOf(getMaskDisplayTransformIgnoreScaling(SHAPE_INTERPOLATION_SCALE_LEVEL));
+		if (index >= 0)
+		{
+			editSelection(paintera, index);
+			return;
+		}
+		activeSection.set(sections.size() + 1);
+		modeState.set(ModeState.Select);
+	}
+
+	private void editSelection(final PainteraBaseView paintera, final int index)
 	{
 		interruptInterpolation();
 
-		if (activeSection.get() == section)
+		if (modeState.get() == ModeState.Select && activeSection.get() != null && activeSection.get() == index + 1 && !selectedObjects.isEmpty())
 			return;
 
-		if (activeSection.get() != null)
-		{
-			if (selectedObjects.isEmpty())
-				return;
+		if (modeState.get() == ModeState.Select)
 			fixSelection(paintera);
-		}
-
-		final ObjectProperty<SectionInfo> sectionInfoPropertyToEdit = section == ActiveSection.First ? sectionInfo1 : sectionInfo2;
-		final SectionInfo sectionInfo = sectionInfoPropertyToEdit.get();
 
-		if (sectionInfo == null)
-		{
-			advanceMode(paintera);
+		if (index >= sections.size())
 			return;
-		}
+
+		// keep the section until its selection is fixed again, which replaces it and invalidates only its neighboring
+		// gaps
+		final SectionInfo sectionInfo = sections.get(index);
 
 		resetMask();
+		interpolatedMask = null;
 		try {
 			source.setMask(sectionInfo.mask, FOREGROUND_CHECK);
 		} catch (final MaskInUse e) {
@@ -485,8 +516,7 @@ public class ShapeInterpolationMode<D extends IntegerType<D>>
 		selectedObjects.clear();
 		selectedObjects.putAll(sectionInfo.selectedObjects);
 
-		sectionInfoPropertyToEdit.set(null);
-		activeSection.set(section);
+		activeSection.set(index + 1);
 
 		modeState.set(ModeState.Select);
 	}
@@ -495,12 +525,9 @@ public class ShapeInterpolationMode<D extends IntegerType<D>>
 	{
 		if (modeState.get() == ModeState.Select)
 		{
-			final boolean firstSectionReady  = sectionInfo1.get() != null || (activeSection.get() == ActiveSection.First  && !selectedObjects.isEmpty());
-			final boolean secondSectionReady = sectionInfo2.get() != null || (activeSection.get() == ActiveSection.Second && !selectedObjects.isEmpty());
-			if (!firstSectionReady || !secondSectionReady)
-				return;
-
 			fixSelection(paintera);
+			if (sections.size() < 2)
+				return;
 			advanceMode(paintera);
 		}
 
@@ -517,10 +544,13 @@ public class ShapeInterpolationMode<D extends IntegerType<D>>
 
 		assert modeState.get() == ModeState.Preview;
 
-		final Interval sectionsUnionSourceInterval = Intervals.union(
-				sectionInfo1.get().sourceBoundingBox,
-				sectionInfo2.get().sourceBoundingBox
-			);
+		final Interval sectionsUnionSourceInterval = sections.sourceInterval();
+		if (interpolatedMask == null || sectionsUnionSourceInterval == null)
+		{
+			LOG.info("Interpolated shape is empty, nothing to apply");
+			exitMode(paintera, false);
+			return;
+		}
 		LOG.info("Applying interpolated mask using bounding box of size {}", Intervals.dimensionsAsLongArray(sectionsUnionSourceInterval));
 
 		if (Label.regular(lastSelectedId))
@@ -532,7 +562,7 @@ public class ShapeInterpolationMode<D extends IntegerType<D>>
 				);
 			resetMask();
 			try {
-				source.setMask(maskInfoWithLastSelectedLabelId, interpolatedMaskImgs.getA(), interpolatedMaskImgs.getB(), FOREGROUND_CHECK);
+				source.setMask(new Mask<>(maskInfoWithLastSelectedLabelId, interpolatedMask.mask), FOREGROUND_CHECK);
 			} catch (final MaskInUse e) {
 				e.printStackTrace();
 			}
@@ -579,118 +609,27 @@ public class ShapeInterpolationMode<D extends IntegerType<D>>
 			);
 	}
 
-	@SuppressWarnings("unchecked")
+	/**
+	 * Interpolate all gaps between consecutive sections that changed since the last interpolation, and combine all
+	 * gaps into a single mask for preview and for applying the interpolated shape.
+	 */
 	private void interpolateBetweenSections(final PainteraBaseView paintera)
 	{
+		final int time = activeViewer.getState().timepointProperty().get();
+		final MaskInfo<UnsignedLongType> maskInfo = new MaskInfo<>(time, MASK_SCALE_LEVEL, new UnsignedLongType(newLabelId));
 		workerThread = new Thread(() ->
 		{
-			final SectionInfo[] sectionInfoPair = {sectionInfo1.get(), sectionInfo2.get()};
-
-			final Interval affectedUnionSourceInterval = Intervals.union(
-					sectionInfoPair[0].sourceBoundingBox,
-					sectionInfoPair[1].sourceBoundingBox
-				);
-
-			// get the two sections as 2D images
-			final Interval[] displaySectionIntervalPair = new Interval[2];
-			final RandomAccessibleInterval<UnsignedLongType>[] sectionPair = new RandomAccessibleInterval[2];
-			for (int i = 0; i < 2; ++i)
-			{
-				final SectionInfo newSectionInfo = new SectionInfo(
-						sectionInfoPair[i].mask,
-						sectionInfoPair[i].globalTransform,
-						sectionInfoPair[i].sourceToDisplayTransform,
-						affectedUnionSourceInterval,
-						sectionInfoPair[i].selectedObjects
-					);
-				final RandomAccessibleInterval<UnsignedLongType> section = getTransformedMaskSection(newSectionInfo);
-				displaySectionIntervalPair[i] = new FinalInterval(section);
-				sectionPair[i] = Views.zeroMin(section);
-			}
-
-			// Narrow the bounding box of the two sections in the display space.
-			// The initial bounding box may be larger because of transforming the source bounding box into the display space and then taking the bounding box of that.
-			final Interval[] boundingBoxPair = new Interval[2];
-			for (int i = 0; i < 2; ++i)
-			{
-				if (Thread.currentThread().isInterrupted())
-					return;
-
-				final long[] min = new long[2], max = new long[2], position = new long[2];
-				Arrays.fill(min, Long.MAX_VALUE);
-				Arrays.fill(max, Long.MIN_VALUE);
-				final Cursor<UnsignedLongType> cursor = Views.iterable(sectionPair[i]).localizingCursor();
-				while (cursor.hasNext())
-				{
-					if (FOREGROUND_CHECK.test(cursor.next()))
-					{
-						cursor.localize(position);
-						for (int d = 0; d < position.length; ++d)
-						{
-							min[d] = Math.min(min[d], position[d]);
-							max[d] = Math.max(max[d], position[d]);
-						}
-					}
-				}
-				boundingBoxPair[i] = new FinalInterval(min, max);
-			}
-			final Interval boundingBox = Intervals.union(boundingBoxPair[0], boundingBoxPair[1]);
-			LOG.debug("Narrowed the bounding box of the selected shape in both sections from {} to {}", Intervals.dimensionsAsLongArray(sectionPair[0]), Intervals.dimensionsAsLongArray(boundingBox));
-			for (int i = 0; i < 2; ++i)
-				sectionPair[i] = Views.offsetInterval(sectionPair[i], boundingBox);
-
-			// compute distance transform on both sections
-			final RandomAccessibleInterval<FloatType>[] distanceTransformPair = new RandomAccessibleInterval[2];
-			for (int i = 0; i < 2; ++i)
-			{
-				if (Thread.currentThread().isInterrupted())
-					return;
-
-				distanceTransformPair[i] = new ArrayImgFactory<>(new FloatType()).create(sectionPair[i]);
-				final RandomAccessibleInterval<BoolType> binarySection = Converters.convert(sectionPair[i], new PredicateConverter<>(FOREGROUND_CHECK), new BoolType());
-				computeSignedDistanceTransform(binarySection, distanceTransformPair[i], DISTANCE_TYPE.EUCLIDIAN);
-			}
-
-			final double distanceBetweenSections = computeDistanceBetweenSections(sectionInfoPair[0], sectionInfoPair[1]);
-			final AffineTransform3D transformToSource = new AffineTransform3D();
-			transformToSource
-				.preConcatenate(new Translation3D(boundingBox.min(0), boundingBox.min(1), 0))
-				.preConcatenate(new Translation3D(displaySectionIntervalPair[0].min(0), displaySectionIntervalPair[0].min(1), 0))
-				.preConcatenate(sectionInfoPair[0].sourceToDisplayTransform.inverse());
-
-			final RealRandomAccessible<UnsignedLongType> interpolatedShapeMask = getInterpolatedDistanceTransformMask(
-					distanceTransformPair[0],
-					distanceTransformPair[1],
-					distanceBetweenSections,
-					new UnsignedLongType(1),
-					transformToSource
-				);
-
-			final RealRandomAccessible<VolatileUnsignedLongType> volatileInterpolatedShapeMask = getInterpolatedDistanceTransformMask(
-					distanceTransformPair[0],
-					distanceTransformPair[1],
-					distanceBetweenSections,
-					new VolatileUnsignedLongType(1),
-					transformToSource
-				);
-
-			if (Thread.currentThread().isInterrupted())
-				return;
-
 			try
 			{
+				final Mask<UnsignedLongType> combinedMask;
 				synchronized (source)
 				{
-					final MaskInfo<UnsignedLongType> maskInfo = mask.info;
 					resetMask();
-					source.setMask(
-							maskInfo,
-							interpolatedShapeMask,
-							volatileInterpolatedShapeMask,
-							FOREGROUND_CHECK
-						);
-					interpolatedMaskImgs = new ValuePair<>(interpolatedShapeMask, volatileInterpolatedShapeMask);
+					combinedMask = source.generateMask(maskInfo, FOREGROUND_CHECK);
+					interpolatedMask = combinedMask;
 				}
+				sections.update(((AccessedBlocksRandomAccessible<UnsignedLongType>) combinedMask.mask).getGrid());
+				sections.writeTo(combinedMask);
 
 				paintera.orthogonalViews().requestRepaint();
 			}
@@ -698,6 +637,14 @@ public class ShapeInterpolationMode<D extends IntegerType<D>>
 			{
 				LOG.error("Label source already has an active mask");
 			}
+			catch (final InterruptedException e)
+			{
+				return;
+			}
+			catch (final ExecutionException e)
+			{
+				LOG.error("Unable to interpolate shape between sections", e);
+			}
 
 			InvokeOnJavaFXApplicationThread.invoke(this::runOnInterpolationFinished);
 		});
@@ -727,88 +674,11 @@ public class ShapeInterpolationMode<D extends IntegerType<D>>
 		onInterpolationFinished = null;
 	}
 
-	private static <R extends RealType<R> & NativeType<R>, B extends BooleanType<B>> void computeSignedDistanceTransform(
-			final RandomAccessibleInterval<B> mask,
-			final RandomAccessibleInterval<R> target,
-			final DISTANCE_TYPE distanceType,
-			final double... weights)
-	{
-		final RandomAccessibleInterval<R> distanceOutside = target;
-		final RandomAccessibleInterval<R> distanceInside = new ArrayImgFactory<>(Util.getTypeFromInterval(target)).create(target);
-		DistanceTransform.binaryTransform(mask, distanceOutside, distanceType, weights);
-		DistanceTransform.binaryTransform(Logical.complement(mask), distanceInside, distanceType, weights);
-		LoopBuilder.setImages(distanceOutside, distanceInside, target).forEachPixel((outside, inside, result) -> {
-			switch (distanceType)
-			{
-			case EUCLIDIAN:
-				result.setReal(Math.sqrt(outside.getRealDouble()) - Math.sqrt(inside.getRealDouble()));
-				break;
-			case L1:
-				result.setReal(outside.getRealDouble() - inside.getRealDouble());
-				break;
-			}
-		});
-	}
-
-	private static <R extends RealType<R>, T extends NativeType<T> & RealType<T>> RealRandomAccessible<T> getInterpolatedDistanceTransformMask(
-			final RandomAccessibleInterval<R> dt1,
-			final RandomAccessibleInterval<R> dt2,
-			final double distance,
-			final T targetValue,
-			final AffineTransform3D transformToSource)
-	{
-		final RandomAccessibleInterval<R> distanceTransformStack = Views.stack(dt1, dt2);
-
-		final R extendValue = Util.getTypeFromInterval(distanceTransformStack).createVariable();
-		extendValue.setReal(extendValue.getMaxValue());
-		final RealRandomAccessible<R> interpolatedDistanceTransform = Views.interpolate(
-				Views.extendValue(distanceTransformStack, extendValue),
-				new NLinearInterpolatorFactory<>()
-			);
-
-		final RealRandomAccessible<R> scaledInterpolatedDistanceTransform = RealViews.affineReal(
-				interpolatedDistanceTransform,
-				new Scale3D(1, 1, -distance)
-			);
-
-		final T emptyValue = targetValue.createVariable();
-		final RealRandomAccessible<T> interpolatedShape = Converters.convert(
-				scaledInterpolatedDistanceTransform,
-				(in, out) -> out.set(in.getRealDouble() <= 0 ? targetValue : emptyValue),
-				emptyValue.createVariable()
-			);
-
-		return RealViews.affineReal(interpolatedShape, transformToSource);
-	}
-
-	private RandomAccessibleInterval<UnsignedLongType> getTransformedMaskSection(final SectionInfo sectionInfo)
-	{
-		final RealInterval sectionBounds = sectionInfo.sourceToDisplayTransform.estimateBounds(sectionInfo.sourceBoundingBox);
-		final Interval sectionInterval = Intervals.smallestContainingInterval(sectionBounds);
-		final RealRandomAccessible<UnsignedLongType> transformedMask = getTransformedMask(sectionInfo.mask, sectionInfo.sourceToDisplayTransform);
-		final RandomAccessibleInterval<UnsignedLongType> transformedMaskInterval = Views.interval(Views.raster(transformedMask), sectionInterval);
-		return Views.hyperSlice(transformedMaskInterval, 2, 0l);
-	}
-
-	private static RealRandomAccessible<UnsignedLongType> getTransformedMask(final Mask<UnsignedLongType> mask, final AffineTransform3D transform)
-	{
-		final RealRandomAccessible<UnsignedLongType> interpolatedMask = Views.interpolate(
-				Views.extendValue(mask.mask, new UnsignedLongType(Label.OUTSIDE)),
-				new NearestNeighborInterpolatorFactory<>()
-			);
-		return RealViews.affine(interpolatedMask, transform);
-	}
-
-	private static double computeDistanceBetweenSections(final SectionInfo s1, final SectionInfo s2)
-	{
-		final double[] pos1 = new double[3], pos2 = new double[3];
-		s1.sourceToDisplayTransform.apply(pos1, pos1);
-		s2.sourceToDisplayTransform.apply(pos2, pos2);
-		return pos2[2] - pos1[2]; // We care only about the shift between the sections (Z distance in the viewer)
-	}
-
 	private void selectObject(final PainteraBaseView paintera, final double x, final double y, final boolean deactivateOthers)
 	{
+		if (modeState.get() == ModeState.Preview)
+			selectNextSection(paintera);
+
 		// create the mask if needed
 		if (mask == null)
 		{
@@ -0,0 +1,667 @@
+package org.janelia.saalfeldlab.paintera.control;
+
+import java.lang.invoke.MethodHandles;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.function.Predicate;
+
+import org.janelia.saalfeldlab.paintera.data.PredicateDataSource.PredicateConverter;
+import org.janelia.saalfeldlab.paintera.data.mask.Mask;
+import org.janelia.saalfeldlab.paintera.data.mask.MaskedSource;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import gnu.trove.iterator.TLongObjectIterator;
+import gnu.trove.map.TLongObjectMap;
+import gnu.trove.map.hash.TLongObjectHashMap;
+import net.imglib2.Cursor;
+import net.imglib2.FinalInterval;
+import net.imglib2.FinalRealInterval;
+import net.imglib2.Interval;
+import net.imglib2.RandomAccess;
+import net.imglib2.RandomAccessible;
+import net.imglib2.RandomAccessibleInterval;
+import net.imglib2.RealRandomAccessible;
+import net.imglib2.algorithm.morphology.distance.DistanceTransform;
+import net.imglib2.algorithm.morphology.distance.DistanceTransform.DISTANCE_TYPE;
+import net.imglib2.converter.Converters;
+import net.imglib2.converter.logical.Logical;
+import net.imglib2.img.array.ArrayImgFactory;
+import net.imglib2.img.cell.CellGrid;
+import net.imglib2.interpolation.randomaccess.NLinearInterpolatorFactory;
+import net.imglib2.interpolation.randomaccess.NearestNeighborInterpolatorFactory;
+import net.imglib2.loops.LoopBuilder;
+import net.imglib2.realtransform.AffineTransform3D;
+import net.imglib2.realtransform.RealViews;
+import net.imglib2.realtransform.Scale3D;
+import net.imglib2.realtransform.Translation3D;
+import net.imglib2.type.BooleanType;
+import net.imglib2.type.NativeType;
+import net.imglib2.type.label.Label;
+import net.imglib2.type.logic.BoolType;
+import net.imglib2.type.numeric.RealType;
+import net.imglib2.type.numeric.integer.UnsignedLongType;
+import net.imglib2.type.numeric.real.FloatType;
+import net.imglib2.util.AccessedBlocksRandomAccessible;
+import net.imglib2.util.Intervals;
+import net.imglib2.util.Util;
+import net.imglib2.view.Views;
+
+/**
+ * Cached shape interpolation between any number of sections that were annotated in parallel planes of the same
+ * viewer, e.g. while scrolling through a stack. Sections are sorted by their depth along the normal of the viewer
+ * plane, in the display space of the first section that was added (reference space).
+ *
+ * The signed distance transform of each section and the rasterized interpolated shape of each gap between two
+ * consecutive sections are cached. After a section was added, replaced, or removed, {@link #update(CellGrid)} only
+ * recomputes the gaps that are adjacent to the changed section and the distance transforms whose domain does not
+ * cover these gaps anymore. Gaps are interpolated concurrently and {@link #writeTo(Mask)} combines all gaps into a
+ * single mask.
+ *
+ * @param <S> information that is stored with each section
+ */
+public class ShapeInterpolationSections<S>
+{
+
+	private static final Logger LOG = LoggerFactory.getLogger(MethodHandles.lookup().lookupClass());
+
+	private static final Predicate<UnsignedLongType> FOREGROUND_CHECK = t -> Label.isForeground(t.get());
+
+	/**
+	 * Sections that are closer than this (in reference space) are considered the same section.
+	 */
+	private static final double SAME_SECTION_TOLERANCE = 0.5;
+
+	/**
+	 * Pad distance transform domains beyond what is required by the neighboring sections, so that small edits of a
+	 * section do not require re-computing the distance transforms of its neighbors.
+	 */
+	private static final long DISTANCE_TRANSFORM_PADDING = 8;
+
+	private static final class Section<S>
+	{
+		final S info;
+
+		final double depth;
+
+		/**
+		 * 2D plane of the section in reference space
+		 */
+		final RandomAccessible<UnsignedLongType> plane;
+
+		/**
+		 * 2D bounding box of the selected objects in reference space, {@code null} if no object is selected
+		 */
+		final Interval boundingBox;
+
+		Interval distanceTransformDomain = null;
+
+		RandomAccessibleInterval<FloatType> distanceTransform = null;
+
+		Section(final S info, final double depth, final RandomAccessible<UnsignedLongType> plane, final Interval boundingBox)
+		{
+			this.info = info;
+			this.depth = depth;
+			this.plane = plane;
+			this.boundingBox = boundingBox;
+		}
+	}
+
+	private static final class Gap<S>
+	{
+		final Section<S> lower;
+
+		final Section<S> upper;
+
+		final Interval sourceInterval;
+
+		final TLongObjectMap<BitSet> blocks = new TLongObjectHashMap<>();
+
+		Gap(final Section<S> lower, final Section<S> upper, final Interval sourceInterval)
+		{
+			this.lower = lower;
+			this.upper = upper;
+			this.sourceInterval = sourceInterval;
+		}
+	}
+
+	private final ExecutorService es;
+
+	private final int numTasks;
+
+	private final List<Section<S>> sections = new ArrayList<>();
+
+	private Map<Section<S>, Gap<S>> gapsByLowerSection = new IdentityHashMap<>();
+
+	private AffineTransform3D reference = null;
+
+	private CellGrid grid = null;
+
+	/**
+	 *
+	 * @param es compute distance transforms and interpolate gaps on {@code es}
+	 * @param numTasks split work into {@code numTasks} tasks
+	 */
+	public ShapeInterpolationSections(final ExecutorService es, final int numTasks)
+	{
+		this.es = es;
+		this.numTasks = numTasks;
+	}
+
+	public synchronized int size()
+	{
+		return sections.size();
+	}
+
+	/**
+	 *
+	 * @return info of section at {@code index}, sorted by depth
+	 */
+	public synchronized S get(final int index)
+	{
+		return sections.get(index).info;
+	}
+
+	/**
+	 * Add a section or replace the section that lies in the same plane.
+	 *
+	 * @param info stored with the section
+	 * @param mask selected objects in source space, foreground is selected
+	 * @param sourceToDisplayTransform transform from source into display space of the section (section plane at z=0)
+	 * @param sourceBoundingBox bounding box of the selected objects in source space
+	 * @return index of the section, sorted by depth
+	 * @throws IllegalArgumentException if the section is not parallel to the sections that were added before
+	 */
+	public synchronized int put(
+			final S info,
+			final RandomAccessibleInterval<UnsignedLongType> mask,
+			final AffineTransform3D sourceToDisplayTransform,
+			final Interval sourceBoundingBox)
+	{
+		if (reference == null)
+			reference = sourceToDisplayTransform.copy();
+
+		final double depth = depth(sourceToDisplayTransform);
+		final AffineTransform3D sourceToPlane = reference.copy().preConcatenate(new Translation3D(0, 0, -depth));
+		final RealRandomAccessible<UnsignedLongType> transformedMask = RealViews.affine(
+				Views.interpolate(Views.extendValue(mask, new UnsignedLongType(Label.OUTSIDE)), new NearestNeighborInterpolatorFactory<>()),
+				sourceToPlane);
+		final RandomAccessible<UnsignedLongType> plane = Views.hyperSlice(Views.raster(transformedMask), 2, 0L);
+		final Interval boundingBox = sourceBoundingBox == null
+		                             ? null
+		                             : foregroundBoundingBox(plane, Intervals.smallestContainingInterval(sourceToPlane.estimateBounds(sourceBoundingBox)));
+		final Section<S> section = new Section<>(info, depth, plane, boundingBox);
+
+		final int index = indexAt(depth);
+		if (index >= 0)
+		{
+			sections.set(index, section);
+			return index;
+		}
+		final int insertionPoint = -index - 1;
+		sections.add(insertionPoint, section);
+		return insertionPoint;
+	}
+
+	/**
+	 *
+	 * @param sourceToDisplayTransform transform from source into display space
+	 * @return index of the section that lies in the display plane of {@code sourceToDisplayTransform}, or a negative
+	 * value if there is no such section
+	 */
+	public synchronized int indexOf(final AffineTransform3D sourceToDisplayTransform)
+	{
+		if (reference == null)
+			return -1;
+		final int index = indexAt(depth(sourceToDisplayTransform));
+		return index < 0 ? -1 : index;
+	}
+
+	public synchronized S remove(final int index)
+	{
+		return sections.remove(index).info;
+	}
+
+	public synchronized void clear()
+	{
+		sections.clear();
+		gapsByLowerSection.clear();
+		reference = null;
+		grid = null;
+	}
+
+	/**
+	 * Update distance transforms and interpolated gaps that were invalidated by changes to the sections since the
+	 * last update.
+	 *
+	 * @param grid rasterize gaps in blocks of this grid
+	 * @throws InterruptedException if interrupted while waiting for distance transforms or interpolation
+	 * @throws ExecutionException if a distance transform or interpolation throws an exception
+	 */
+	public synchronized void update(final CellGrid grid) throws InterruptedException, ExecutionException
+	{
+		if (!grid.equals(this.grid))
+		{
+			this.gapsByLowerSection.clear();
+			this.grid = grid;
+		}
+
+		// re-use gaps between sections that did not change
+		final Map<Section<S>, Gap<S>> gaps = new IdentityHashMap<>();
+		for (int index = 0; index < sections.size() - 1; ++index)
+		{
+			final Section<S> lower = sections.get(index);
+			final Gap<S> cached = gapsByLowerSection.get(lower);
+			if (cached != null && cached.upper == sections.get(index + 1))
+				gaps.put(lower, cached);
+		}
+
+		// distance transforms must cover all gaps that need to be interpolated, each transform is parallelized over lines
+		for (int index = 0; index < sections.size(); ++index)
+		{
+			final Section<S> section = sections.get(index);
+			final boolean lowerGapIsValid = index == 0 || gaps.containsKey(sections.get(index - 1));
+			final boolean upperGapIsValid = index == sections.size() - 1 || gaps.containsKey(section);
+			if (lowerGapIsValid && upperGapIsValid)
+				continue;
+			final Interval requiredDomain = requiredDistanceTransformDomain(index);
+			if (requiredDomain == null)
+				continue;
+			if (section.distanceTransform == null || !contains(section.distanceTransformDomain, requiredDomain))
+			{
+				if (Thread.currentThread().isInterrupted())
+					throw new InterruptedException();
+				final Interval domain = Intervals.expand(requiredDomain, DISTANCE_TRANSFORM_PADDING);
+				LOG.debug("Computing distance transform of section at depth {} in {}", section.depth, domain);
+				section.distanceTransform = computeSignedDistanceTransform(section.plane, domain, es, numTasks);
+				section.distanceTransformDomain = domain;
+			}
+		}
+
+		final List<Gap<S>> invalidGaps = new ArrayList<>();
+		for (int index = 0; index < sections.size() - 1; ++index)
+		{
+			final Section<S> lower = sections.get(index);
+			if (!gaps.containsKey(lower))
+			{
+				final Gap<S> gap = createGap(lower, sections.get(index + 1));
+				gaps.put(lower, gap);
+				invalidGaps.add(gap);
+			}
+		}
+		LOG.debug("Interpolating {} of {} gaps", invalidGaps.size(), gaps.size());
+		try
+		{
+			interpolate(invalidGaps);
+		} catch (final InterruptedException | ExecutionException | RuntimeException e)
+		{
+			// gaps that were not interpolated completely must not be re-used
+			invalidGaps.forEach(gap -> gaps.remove(gap.lower));
+			throw e;
+		} finally
+		{
+			this.gapsByLowerSection = gaps;
+		}
+	}
+
+	/**
+	 *
+	 * @return union of the source intervals of all gaps, {@code null} if there are no gaps
+	 */
+	public synchronized Interval sourceInterval()
+	{
+		Interval union = null;
+		for (final Gap<S> gap : gapsByLowerSection.values())
+			if (gap.sourceInterval != null)
+				union = union == null ? gap.sourceInterval : Intervals.union(union, gap.sourceInterval);
+		return union;
+	}
+
+	/**
+	 * Write the interpolated shape of all gaps into {@code target}. {@code target} needs to be backed by a
+	 * {@link AccessedBlocksRandomAccessible} with the grid that was passed to the last {@link #update(CellGrid)}.
+	 * All blocks that are written to are marked as accessed.
+	 *
+	 * @param target mask generated by {@link MaskedSource#generateMask}
+	 */
+	@SuppressWarnings("unchecked")
+	public synchronized void writeTo(final Mask<UnsignedLongType> target) throws InterruptedException, ExecutionException
+	{
+		final AccessedBlocksRandomAccessible<UnsignedLongType> tracker = (AccessedBlocksRandomAccessible<UnsignedLongType>) target.mask;
+		final RandomAccessibleInterval<UnsignedLongType> store = tracker.getSource();
+
+		final TLongObjectMap<List<BitSet>> blocks = new TLongObjectHashMap<>();
+		for (final Gap<S> gap : gapsByLowerSection.values())
+			for (final TLongObjectIterator<BitSet> it = gap.blocks.iterator(); it.hasNext(); )
+			{
+				it.advance();
+				if (!blocks.containsKey(it.key()))
+					blocks.put(it.key(), new ArrayList<>());
+				blocks.get(it.key()).add(it.value());
+			}
+
+		final long[] blockIndices = blocks.keys();
+		final int blocksPerTask = Math.max((blockIndices.length + numTasks - 1) / numTasks, 1);
+		final List<Future<?>> futures = new ArrayList<>();
+		for (int first = 0; first < blockIndices.length; first += blocksPerTask)
+		{
+			final int taskFirst = first;
+			final int taskLast = Math.min(first + blocksPerTask, blockIndices.length);
+			futures.add(es.submit(() -> {
+				final RandomAccess<UnsignedLongType> access = store.randomAccess();
+				final long[] cellMin = new long[grid.numDimensions()];
+				final int[] cellDims = new int[grid.numDimensions()];
+				final long[] position = new long[grid.numDimensions()];
+				for (int i = taskFirst; i < taskLast && !Thread.currentThread().isInterrupted(); ++i)
+				{
+					grid.getCellDimensions(blockIndices[i], cellMin, cellDims);
+					for (final BitSet bits : blocks.get(blockIndices[i]))
+						for (int bit = bits.nextSetBit(0); bit >= 0; bit = bits.nextSetBit(bit + 1))
+						{
+							indexToPosition(bit, cellDims, cellMin, position);
+							access.setPosition(position);
+							access.get().set(1);
+						}
+				}
+				return null;
+			}));
+		}
+		waitFor(futures);
+		tracker.addBlockIds(blockIndices);
+	}
+
+	private double depth(final AffineTransform3D sourceToDisplayTransform)
+	{
+		final AffineTransform3D displayToReference = reference.copy().concatenate(sourceToDisplayTransform.inverse());
+		for (int r = 0; r < 3; ++r)
+			for (int c = 0; c < 3; ++c)
+				if (!Util.isApproxEqual(displayToReference.get(r, c), r == c ? 1.0 : 0.0, 1e-6))
+					throw new IllegalArgumentException("Section is not parallel to the first section");
+		return displayToReference.get(2, 3);
+	}
+
+	/**
+	 *
+	 * @return index of section at {@code depth} or {@code -(insertion point) - 1}
+	 */
+	private int indexAt(final double depth)
+	{
+		for (int index = 0; index < sections.size(); ++index)
+		{
+			final double sectionDepth = sections.get(index).depth;
+			if (Math.abs(sectionDepth - depth) < SAME_SECTION_TOLERANCE)
+				return index;
+			if (sectionDepth > depth)
+				return -index - 1;
+		}
+		return -sections.size() - 1;
+	}
+
+	/**
+	 *
+	 * @return union of the bounding boxes of the section at {@code index} and its neighbors, padded by one pixel
+	 * so that the background around the selected objects is contained.
+	 */
+	private Interval requiredDistanceTransformDomain(final int index)
+	{
+		Interval union = null;
+		for (int i = Math.max(index - 1, 0); i <= Math.min(index + 1, sections.size() - 1); ++i)
+		{
+			final Interval boundingBox = sections.get(i).boundingBox;
+			if (boundingBox != null)
+				union = union == null ? boundingBox : Intervals.union(union, boundingBox);
+		}
+		return union == null ? null : Intervals.expand(union, 1);
+	}
+
+	private Gap<S> createGap(final Section<S> lower, final Section<S> upper)
+	{
+		if (lower.boundingBox == null && upper.boundingBox == null)
+			return new Gap<>(lower, upper, null);
+		final Interval gapBox = Intervals.expand(
+				lower.boundingBox == null
+				? upper.boundingBox
+				: upper.boundingBox == null ? lower.boundingBox : Intervals.union(lower.boundingBox, upper.boundingBox),
+				1);
+		final double distance = upper.depth - lower.depth;
+		final Interval sourceInterval = Intervals.intersect(
+				Intervals.smallestContainingInterval(gapToSource(gapBox, lower.depth).estimateBounds(new FinalRealInterval(
+						new double[] {0, 0, 0},
+						new double[] {gapBox.dimension(0) - 1, gapBox.dimension(1) - 1, distance}))),
+				new FinalInterval(grid.getImgDimensions()));
+		return new Gap<>(lower, upper, Intervals.isEmpty(sourceInterval) ? null : sourceInterval);
+	}
+
+	private AffineTransform3D gapToSource(final Interval gapBox, final double depth)
+	{
+		return new AffineTransform3D()
+				.preConcatenate(new Translation3D(gapBox.min(0), gapBox.min(1), depth))
+				.preConcatenate(reference.inverse());
+	}
+
+	/**
+	 * Rasterize all {@code gaps} concurrently, in parallel over the blocks of each gap.
+	 */
+	private void interpolate(final List<Gap<S>> gaps) throws InterruptedException, ExecutionException
+	{
+		final List<Gap<S>> taskGaps = new ArrayList<>();
+		final List<Future<TLongObjectMap<BitSet>>> futures = new ArrayList<>();
+		for (final Gap<S> gap : gaps)
+		{
+			if (gap.sourceInterval == null)
+				continue;
+			final Interval gapBox = Intervals.expand(
+					gap.lower.boundingBox == null
+					? gap.upper.boundingBox
+					: gap.upper.boundingBox == null ? gap.lower.boundingBox : Intervals.union(gap.lower.boundingBox, gap.upper.boundingBox),
+					1);
+			final RealRandomAccessible<UnsignedLongType> shape = getInterpolatedDistanceTransformMask(
+					Views.zeroMin(Views.interval(gap.lower.distanceTransform, gapBox)),
+					Views.zeroMin(Views.interval(gap.upper.distanceTransform, gapBox)),
+					gap.lower.depth - gap.upper.depth,
+					new UnsignedLongType(1),
+					gapToSource(gapBox, gap.lower.depth));
+			final RandomAccessible<UnsignedLongType> rasterizedShape = Views.raster(shape);
+			final long[] blocks = MaskedSource.affectedBlocks(grid, gap.sourceInterval).toArray();
+			final int blocksPerTask = Math.max((blocks.length + numTasks - 1) / numTasks, 1);
+			for (int first = 0; first < blocks.length; first += blocksPerTask)
+			{
+				final int taskFirst = first;
+				final int taskLast = Math.min(first + blocksPerTask, blocks.length);
+				taskGaps.add(gap);
+				futures.add(es.submit(() -> rasterize(rasterizedShape, blocks, taskFirst, taskLast, gap.sourceInterval)));
+			}
+		}
+
+		try
+		{
+			for (int i = 0; i < futures.size(); ++i)
+				taskGaps.get(i).blocks.putAll(futures.get(i).get());
+		} finally
+		{
+			futures.forEach(future -> future.cancel(true));
+		}
+	}
+
+	private TLongObjectMap<BitSet> rasterize(
+			final RandomAccessible<UnsignedLongType> shape,
+			final long[] blocks,
+			final int first,
+			final int last,
+			final Interval interval)
+	{
+		final TLongObjectMap<BitSet> rasterized = new TLongObjectHashMap<>();
+		final long[] cellMin = new long[grid.numDimensions()];
+		final long[] cellMax = new long[grid.numDimensions()];
+		final int[] cellDims = new int[grid.numDimensions()];
+		final long[] position = new long[grid.numDimensions()];
+		for (int i = first; i < last && !Thread.currentThread().isInterrupted(); ++i)
+		{
+			grid.getCellDimensions(blocks[i], cellMin, cellDims);
+			for (int d = 0; d < cellMin.length; ++d)
+				cellMax[d] = cellMin[d] + cellDims[d] - 1;
+			final Interval block = Intervals.intersect(new FinalInterval(cellMin, cellMax), interval);
+			if (Intervals.isEmpty(block))
+				continue;
+			BitSet bits = null;
+			final Cursor<UnsignedLongType> cursor = Views.flatIterable(Views.interval(shape, block)).localizingCursor();
+			while (cursor.hasNext())
+			{
+				if (FOREGROUND_CHECK.test(cursor.next()))
+				{
+					if (bits == null)
+						bits = new BitSet();
+					cursor.localize(position);
+					bits.set(positionToIndex(position, cellDims, cellMin));
+				}
+			}
+			if (bits != null)
+				rasterized.put(blocks[i], bits);
+		}
+		return rasterized;
+	}
+
+	private static Interval foregroundBoundingBox(final RandomAccessible<UnsignedLongType> plane, final Interval interval)
+	{
+		final long[] min = new long[2], max = new long[2], position = new long[2];
+		Arrays.fill(min, Long.MAX_VALUE);
+		Arrays.fill(max, Long.MIN_VALUE);
+		final Interval planeInterval = new FinalInterval(
+				new long[] {interval.min(0), interval.min(1)},
+				new long[] {interval.max(0), interval.max(1)});
+		final Cursor<UnsignedLongType> cursor = Views.flatIterable(Views.interval(plane, planeInterval)).localizingCursor();
+		while (cursor.hasNext())
+		{
+			if (FOREGROUND_CHECK.test(cursor.next()))
+			{
+				cursor.localize(position);
+				for (int d = 0; d < position.length; ++d)
+				{
+					min[d] = Math.min(min[d], position[d]);
+					max[d] = Math.max(max[d], position[d]);
+				}
+			}
+		}
+		return min[0] > max[0] ? null : new FinalInterval(min, max);
+	}
+
+	private static boolean contains(final Interval outer, final Interval inner)
+	{
+		for (int d = 0; d < outer.numDimensions(); ++d)
+			if (inner.min(d) < outer.min(d) || inner.max(d) > outer.max(d))
+				return false;
+		return true;
+	}
+
+	private static int positionToIndex(final long[] position, final int[] dimensions, final long[] offset)
+	{
+		long index = 0;
+		for (int d = dimensions.length - 1; d >= 0; --d)
+			index = index * dimensions[d] + (position[d] - offset[d]);
+		// blocks are indexed by BitSet, which is int-addressed
+		return Math.toIntExact(index);
+	}
+
+	private static void indexToPosition(long index, final int[] dimensions, final long[] offset, final long[] position)
+	{
+		for (int d = 0; d < dimensions.length; ++d)
+		{
+			position[d] = index % dimensions[d] + offset[d];
+			index /= dimensions[d];
+		}
+	}
+
+	private static void waitFor(final List<? extends Future<?>> futures) throws InterruptedException, ExecutionException
+	{
+		try
+		{
+			for (final Future<?> future : futures)
+				future.get();
+		} finally
+		{
+			futures.forEach(future -> future.cancel(true));
+		}
+	}
+
+	/**
+	 *
+	 * @return signed distance transform of the foreground of {@code plane} in {@code domain}, negative inside
+	 */
+	private static RandomAccessibleInterval<FloatType> computeSignedDistanceTransform(
+			final RandomAccessible<UnsignedLongType> plane,
+			final Interval domain,
+			final ExecutorService es,
+			final int numTasks) throws InterruptedException, ExecutionException
+	{
+		final RandomAccessibleInterval<BoolType> binaryPlane = Views.zeroMin(Views.interval(
+				Converters.convert(plane, new PredicateConverter<>(FOREGROUND_CHECK), new BoolType()),
+				domain));
+		final RandomAccessibleInterval<FloatType> distanceTransform = new ArrayImgFactory<>(new FloatType()).create(binaryPlane);
+		computeSignedDistanceTransform(binaryPlane, distanceTransform, DISTANCE_TYPE.EUCLIDIAN, es, numTasks);
+		return Views.translate(distanceTransform, Intervals.minAsLongArray(domain));
+	}
+
+	private static <R extends RealType<R> & NativeType<R>, B extends BooleanType<B>> void computeSignedDistanceTransform(
+			final RandomAccessibleInterval<B> mask,
+			final RandomAccessibleInterval<R> target,
+			final DISTANCE_TYPE distanceType,
+			final ExecutorService es,
+			final int numTasks,
+			final double... weights) throws InterruptedException, ExecutionException
+	{
+		final RandomAccessibleInterval<R> distanceOutside = target;
+		final RandomAccessibleInterval<R> distanceInside = new ArrayImgFactory<>(Util.getTypeFromInterval(target)).create(target);
+		DistanceTransform.binaryTransform(mask, distanceOutside, distanceType, es, numTasks, weights);
+		DistanceTransform.binaryTransform(Logical.complement(mask), distanceInside, distanceType, es, numTasks, weights);
+		LoopBuilder.setImages(distanceOutside, distanceInside, target).forEachPixel((outside, inside, result) -> {
+			switch (distanceType)
+			{
+			case EUCLIDIAN:
+				result.setReal(Math.sqrt(outside.getRealDouble()) - Math.sqrt(inside.getRealDouble()));
+				break;
+			case L1:
+				result.setReal(outside.getRealDouble() - inside.getRealDouble());
+				break;
+			}
+		});
+	}
+
+	private static <R extends RealType<R>, T extends NativeType<T> & RealType<T>> RealRandomAccessible<T> getInterpolatedDistanceTransformMask(
+			final RandomAccessibleInterval<R> dt1,
+			final RandomAccessibleInterval<R> dt2,
+			final double distance,
+			final T targetValue,
+			final AffineTransform3D transformToSource)
+	{
+		final RandomAccessibleInterval<R> distanceTransformStack = Views.stack(dt1, dt2);
+
+		final R extendValue = Util.getTypeFromInterval(distanceTransformStack).createVariable();
+		extendValue.setReal(extendValue.getMaxValue());
+		final RealRandomAccessible<R> interpolatedDistanceTransform = Views.interpolate(
+				Views.extendValue(distanceTransformStack, extendValue),
+				new NLinearInterpolatorFactory<>()
+			);
+
+		final RealRandomAccessible<R> scaledInterpolatedDistanceTransform = RealViews.affineReal(
+				interpolatedDistanceTransform,
+				new Scale3D(1, 1, -distance)
+			);
+
+		final T emptyValue = targetValue.createVariable();
+		final RealRandomAccessible<T> interpolatedShape = Converters.convert(
+				scaledInterpolatedDistanceTransform,
+				(in, out) -> out.set(in.getRealDouble() <= 0 ? targetValue : emptyValue),
+				emptyValue.createVariable()
+			);
+
+		return RealViews.affineReal(interpolatedShape, transformToSource);
+	}
+
+}
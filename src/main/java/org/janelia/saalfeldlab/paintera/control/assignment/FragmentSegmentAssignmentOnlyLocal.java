@@ -84,6 +84,12 @@ public class FragmentSegmentAssignmentOnlyLocal extends FragmentSegmentAssignmen
 
 	private final Supplier<TLongLongMap> initialLut;
 
+	/**
+	 * Reading the initial lut may be expensive, e.g. for large assignments that are stored in N5: Defer until the
+	 * assignment is first used.
+	 */
+	private boolean isInitialLutLoaded = false;
+
 	public FragmentSegmentAssignmentOnlyLocal(final Persister persister)
 	{
 		this(NO_INITIAL_LUT_AVAILABLE, persister);
@@ -99,8 +105,6 @@ public class FragmentSegmentAssignmentOnlyLocal extends FragmentSegmentAssignmen
 		this.initialLut = initialLut;
 		this.persister = persister;
 		LOG.debug("Assignment map: {}", fragmentToSegmentMap);
-		// TODO should reset lut also forget about all actions? I think not.
-		resetLut();
 	}
 
 	public Persister getPersister() {
@@ -114,6 +118,7 @@ public class FragmentSegmentAssignmentOnlyLocal extends FragmentSegmentAssignmen
 	@Override
 	public synchronized void persist() throws UnableToPersist
 	{
+		loadInitialLutIfNecessary();
 		if (actions.size() == 0)
 		{
 			LOG.debug("No actions to commit.");
@@ -137,6 +142,7 @@ public class FragmentSegmentAssignmentOnlyLocal extends FragmentSegmentAssignmen
 	@Override
 	public synchronized long getSegment(final long fragmentId)
 	{
+		loadInitialLutIfNecessary();
 		final long id;
 		final long segmentId = fragmentToSegmentMap.get(fragmentId);
 		if (segmentId == fragmentToSegmentMap.getNoEntryValue())
@@ -154,6 +160,7 @@ public class FragmentSegmentAssignmentOnlyLocal extends FragmentSegmentAssignmen
 	@Override
 	public synchronized TLongHashSet getFragments(final long segmentId)
 	{
+		loadInitialLutIfNecessary();
 		final TLongHashSet fragments = segmentToFragmentsMap.get(segmentId);
 		return fragments == null ? new TLongHashSet(new long[] {segmentId}) : new TLongHashSet(fragments);
 	}
@@ -245,8 +252,16 @@ public class FragmentSegmentAssignmentOnlyLocal extends FragmentSegmentAssignmen
 		}
 	}
 
-	private void resetLut()
+	private synchronized void loadInitialLutIfNecessary()
 	{
+		if (!isInitialLutLoaded)
+			resetLut();
+	}
+
+	private synchronized void resetLut()
+	{
+		// TODO should reset lut also forget about all actions? I think not.
+		isInitialLutLoaded = true;
 		fragmentToSegmentMap.clear();
 		fragmentToSegmentMap.putAll(initialLut.get());
 		syncILut();
@@ -256,8 +271,9 @@ public class FragmentSegmentAssignmentOnlyLocal extends FragmentSegmentAssignmen
 	}
 
 	@Override
-	protected void applyImpl(final AssignmentAction action)
+	protected synchronized void applyImpl(final AssignmentAction action)
 	{
+		loadInitialLutIfNecessary();
 		LOG.debug("Applying action {}", action);
 		switch (action.getType())
 		{
@@ -300,13 +316,15 @@ public class FragmentSegmentAssignmentOnlyLocal extends FragmentSegmentAssignmen
 		}
 	}
 
-	public int size()
+	public synchronized int size()
 	{
+		loadInitialLutIfNecessary();
 		return this.fragmentToSegmentMap.size();
 	}
 
-	public void persist(final long[] keys, final long[] values)
+	public synchronized void persist(final long[] keys, final long[] values)
 	{
+		loadInitialLutIfNecessary();
 		this.fragmentToSegmentMap.keys(keys);
 		this.fragmentToSegmentMap.values(values);
 	}
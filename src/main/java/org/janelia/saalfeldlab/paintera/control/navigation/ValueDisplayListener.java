@@ -1,6 +1,7 @@
 package org.janelia.saalfeldlab.paintera.control.navigation;
 
 import java.util.Optional;
+import java.util.OptionalLong;
 import java.util.function.Consumer;
 import java.util.function.Function;
 
@@ -14,10 +15,13 @@ import javafx.scene.input.MouseEvent;
 import net.imglib2.RealRandomAccess;
 import net.imglib2.realtransform.AffineTransform3D;
 import net.imglib2.realtransform.RealViews;
+import net.imglib2.type.label.LabelMultisetType;
+import net.imglib2.type.numeric.IntegerType;
 import net.imglib2.ui.TransformListener;
 import net.imglib2.view.composite.Composite;
 import org.janelia.saalfeldlab.paintera.data.ChannelDataSource;
 import org.janelia.saalfeldlab.paintera.data.DataSource;
+import org.janelia.saalfeldlab.paintera.state.ScreenIdBuffer;
 
 public class ValueDisplayListener
 		implements EventHandler<javafx.scene.input.MouseEvent>, TransformListener<AffineTransform3D>
@@ -37,17 +41,39 @@ public class ValueDisplayListener
 
 	private final Consumer<String> submitValue;
 
+	private final Function<Source<?>, ScreenIdBuffer<?>> idBuffer;
+
 	public ValueDisplayListener(
 			final ViewerPanelFX viewer,
 			final ObservableValue<Source<?>> currentSource,
 			final Function<Source<?>, Interpolation> interpolation,
 			final Consumer<String> submitValue)
+	{
+		this(viewer, currentSource, interpolation, submitValue, source -> null);
+	}
+
+	/**
+	 *
+	 * @param viewer display values in this viewer
+	 * @param currentSource display values of this source
+	 * @param interpolation {@link Interpolation interpolation} lookup for every {@link Source}
+	 * @param submitValue consumes string representation of value
+	 * @param idBuffer {@link ScreenIdBuffer} of a source in {@code viewer} or {@code null}. Integer values are looked
+	 *                 up from an up to date buffer instead of sampling the source.
+	 */
+	public ValueDisplayListener(
+			final ViewerPanelFX viewer,
+			final ObservableValue<Source<?>> currentSource,
+			final Function<Source<?>, Interpolation> interpolation,
+			final Consumer<String> submitValue,
+			final Function<Source<?>, ScreenIdBuffer<?>> idBuffer)
 	{
 		super();
 		this.viewer = viewer;
 		this.currentSource = currentSource;
 		this.interpolation = interpolation;
 		this.submitValue = submitValue;
+		this.idBuffer = idBuffer;
 	}
 
 	@Override
@@ -95,6 +121,12 @@ public class ValueDisplayListener
 			@SuppressWarnings("unchecked") final DataSource<D, ?> source = (DataSource<D, ?>) optionalSource.get();
 			final ViewerState       state                = viewer.getState();
 			final Interpolation     interpolation        = this.interpolation.apply(source);
+			final Optional<String>  bufferedVal          = getBufferedVal(source, interpolation);
+			if (bufferedVal.isPresent())
+			{
+				submitValue.accept(bufferedVal.get());
+				return;
+			}
 			final AffineTransform3D screenScaleTransform = new AffineTransform3D();
 			viewer.getRenderUnit().getScreenScaleTransform(0, screenScaleTransform);
 			final int               level                = state.getBestMipMapLevel(screenScaleTransform, source);
@@ -113,6 +145,28 @@ public class ValueDisplayListener
 		}
 	}
 
+	/**
+	 * Label multisets display all entries and cannot be looked up from a {@link ScreenIdBuffer}.
+	 */
+	private Optional<String> getBufferedVal(final DataSource<?, ?> source, final Interpolation interpolation)
+	{
+		final Object dataType = source.getDataType();
+		if (interpolation != Interpolation.NEARESTNEIGHBOR || !(dataType instanceof IntegerType<?>) || dataType instanceof LabelMultisetType)
+			return Optional.empty();
+
+		final ScreenIdBuffer<?> buffer = idBuffer.apply(source);
+		if (buffer == null)
+			return Optional.empty();
+
+		final OptionalLong id = buffer.getId(x, y);
+		if (!id.isPresent())
+			return Optional.empty();
+
+		final IntegerType<?> val = (IntegerType<?>) ((IntegerType<?>) dataType).createVariable();
+		val.setInteger(id.getAsLong());
+		return Optional.of(val.toString());
+	}
+
 	private static<D> Function<D, String> stringConverterFromSource(final DataSource<D, ? > source)
 	{
 		if (source instanceof ChannelDataSource<?, ?>)
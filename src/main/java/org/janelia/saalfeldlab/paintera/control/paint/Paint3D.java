@@ -0,0 +1,583 @@
+package org.janelia.saalfeldlab.paintera.control.paint;
+
+import java.lang.invoke.MethodHandles;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.janelia.saalfeldlab.paintera.data.mask.MaskedSource;
+import org.janelia.saalfeldlab.util.NamedThreadFactory;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import bdv.util.Affine3DHelpers;
+import gnu.trove.list.array.TLongArrayList;
+import net.imglib2.FinalInterval;
+import net.imglib2.FinalRealInterval;
+import net.imglib2.Interval;
+import net.imglib2.RandomAccess;
+import net.imglib2.RandomAccessible;
+import net.imglib2.RandomAccessibleInterval;
+import net.imglib2.cache.img.CachedCellImg;
+import net.imglib2.img.basictypeaccess.LongAccess;
+import net.imglib2.img.cell.Cell;
+import net.imglib2.img.cell.CellGrid;
+import net.imglib2.realtransform.AffineTransform3D;
+import net.imglib2.realtransform.Translation3D;
+import net.imglib2.type.label.Label;
+import net.imglib2.type.numeric.integer.UnsignedLongType;
+import net.imglib2.util.AccessedBlocksRandomAccessible;
+import net.imglib2.util.Intervals;
+import net.imglib2.view.Views;
+
+/**
+ * Block-parallel brush that paints directly into the cells of a mask generated by
+ * {@link MaskedSource#generateMask}. The brush is an elliptic cylinder in brush coordinates (ellipse in the xy-plane,
+ * extruded along z) that can be swept along a straight segment in the xy-plane to paint a whole segment of a brush
+ * stroke at once (capsule). Voxels inside the brush are found analytically: the swept brush is convex, so it
+ * intersects each line of the label grid along the x-axis in a single span. The spans of all lines that cross the
+ * bounding box of the brush are pre-computed once per segment, and the blocks of the mask that intersect the bounding
+ * box are filled in parallel by writing the spans (clipped to each block) into the cell data. All blocks that were written to are marked as
+ * accessed in the {@link AccessedBlocksRandomAccessible tracker} of the mask, so they are propagated when the mask is
+ * applied.
+ *
+ * Masks that are not backed by a {@link CachedCellImg} are painted with {@link Paint2D}.
+ */
+public class Paint3D
+{
+
+	private static final Logger LOG = LoggerFactory.getLogger(MethodHandles.lookup().lookupClass());
+
+	private static final int NUM_WORKERS = Math.max(Runtime.getRuntime().availableProcessors(), 1);
+
+	private static final int NUM_TASKS_PER_WORKER = 4;
+
+	private static final ExecutorService WORKERS = Executors.newFixedThreadPool(
+			NUM_WORKERS,
+			new NamedThreadFactory("paint-3d-%d", true));
+
+	/**
+	 * Tolerance for voxel centers that lie exactly on the boundary of the brush.
+	 */
+	private static final double EPSILON = 1e-9;
+
+	/**
+	 * Minimum radius of the brush in voxels, so that at least the center voxel is painted.
+	 */
+	private static final double MIN_RADIUS = 0.5;
+
+	/**
+	 * Paint with a brush of {@code radius} (in global coordinates) and {@code brushDepth} (in slices) at viewer
+	 * position ({@code x}, {@code y}). Same brush shape as {@link Paint2D#paint}.
+	 *
+	 * @param labels mask generated by {@link MaskedSource#generateMask}
+	 * @return bounding box of the painted voxels in label coordinates (may be empty)
+	 */
+	public static Interval paint(
+			final RandomAccessibleInterval<UnsignedLongType> labels,
+			final long fillLabel,
+			final double x,
+			final double y,
+			final double radius,
+			final double brushDepth,
+			final AffineTransform3D labelToViewerTransform,
+			final AffineTransform3D globalToViewerTransform,
+			final AffineTransform3D labelToGlobalTransform)
+	{
+		return paint(labels, fillLabel, x, y, x, y, radius, brushDepth, labelToViewerTransform, globalToViewerTransform, labelToGlobalTransform);
+	}
+
+	/**
+	 * Paint a segment of a brush stroke from viewer position ({@code x0}, {@code y0}) to ({@code x1}, {@code y1}) by
+	 * sweeping the brush along the segment. The segment is rasterized once.
+	 *
+	 * @param labels mask generated by {@link MaskedSource#generateMask}
+	 * @return bounding box of the painted voxels in label coordinates (may be empty)
+	 */
+	public static Interval paint(
+			final RandomAccessibleInterval<UnsignedLongType> labels,
+			final long fillLabel,
+			final double x0,
+			final double y0,
+			final double x1,
+			final double y1,
+			final double radius,
+			final double brushDepth,
+			final AffineTransform3D labelToViewerTransform,
+			final AffineTransform3D globalToViewerTransform,
+			final AffineTransform3D labelToGlobalTransform)
+	{
+		if (!canPaint(labels))
+		{
+			LOG.debug("Mask is not backed by cells, painting with {}", Paint2D.class.getSimpleName());
+			return paintSamples(labels, fillLabel, x0, y0, x1, y1, radius, brushDepth, labelToViewerTransform, globalToViewerTransform, labelToGlobalTransform);
+		}
+
+		final AffineTransform3D labelToGlobalTransformWithoutTranslation = labelToGlobalTransform.copy();
+		labelToGlobalTransformWithoutTranslation.setTranslation(0.0, 0.0, 0.0);
+
+		// get maximum extent of pixels along z
+		final double[] projections = PaintUtils.maximumVoxelDiagonalLengthPerDimension(
+				labelToGlobalTransformWithoutTranslation,
+				globalToViewerTransform);
+
+		final double factor = 0.5;
+		final double xRange = factor * projections[0];
+		final double yRange = factor * projections[1];
+		final double zRange = (factor + brushDepth - 1) * projections[2];
+
+		final double viewerRadius = Affine3DHelpers.extractScale(globalToViewerTransform, 0) * radius;
+		final int viewerAxisInLabelCoordinates = PaintUtils.labelAxisCorrespondingToViewerAxis(
+				labelToGlobalTransform,
+				globalToViewerTransform,
+				2);
+
+		if (viewerAxisInLabelCoordinates < 0)
+		{
+			// cylinder in viewer coordinates, centered at the brush position
+			final AffineTransform3D labelToBrush = labelToViewerTransform.copy().preConcatenate(new Translation3D(-x0, -y0, 0.0));
+			return paintCylinder(
+					labels,
+					labelToBrush,
+					xRange + viewerRadius,
+					yRange + viewerRadius,
+					-zRange,
+					zRange,
+					x1 - x0,
+					y1 - y0,
+					fillLabel);
+		}
+		else
+		{
+			// axis aligned: stack of ellipses in label coordinates, centered at the voxel that contains the brush position
+			final int correspondingToXAxis = PaintUtils.labelAxisCorrespondingToViewerAxis(labelToGlobalTransform, globalToViewerTransform, 0);
+			final int correspondingToYAxis = PaintUtils.labelAxisCorrespondingToViewerAxis(labelToGlobalTransform, globalToViewerTransform, 1);
+			final double[] transformedRadius = new double[3];
+			transformedRadius[correspondingToXAxis] = PaintUtils.viewerAxisInLabelCoordinates(labelToGlobalTransform, globalToViewerTransform, 0, viewerRadius)[correspondingToXAxis];
+			transformedRadius[correspondingToYAxis] = PaintUtils.viewerAxisInLabelCoordinates(labelToGlobalTransform, globalToViewerTransform, 1, viewerRadius)[correspondingToYAxis];
+
+			final double[] seed = new double[] {x0, y0, 0.0};
+			labelToViewerTransform.applyInverse(seed, seed);
+			final double[] end = new double[] {x1, y1, 0.0};
+			labelToViewerTransform.applyInverse(end, end);
+
+			final int axis0 = viewerAxisInLabelCoordinates == 0 ? 1 : 0;
+			final int axis1 = viewerAxisInLabelCoordinates != 2 ? 2 : 1;
+			final long numSlices = Math.max((long) Math.ceil(brushDepth) - 1, 0);
+
+			final AffineTransform3D labelToBrush = new AffineTransform3D();
+			final double[][] matrix = new double[3][4];
+			matrix[0][axis0] = 1.0;
+			matrix[0][3] = -Math.round(seed[axis0]);
+			matrix[1][axis1] = 1.0;
+			matrix[1][3] = -Math.round(seed[axis1]);
+			matrix[2][viewerAxisInLabelCoordinates] = 1.0;
+			matrix[2][3] = -Math.round(seed[viewerAxisInLabelCoordinates]);
+			labelToBrush.set(matrix);
+
+			return paintCylinder(
+					labels,
+					labelToBrush,
+					Math.ceil(transformedRadius[axis0]),
+					Math.ceil(transformedRadius[axis1]),
+					-numSlices,
+					numSlices,
+					Math.round(end[axis0]) - Math.round(seed[axis0]),
+					Math.round(end[axis1]) - Math.round(seed[axis1]),
+					fillLabel);
+		}
+	}
+
+	/**
+	 * Paint with {@link Paint2D} at every pixel along the segment.
+	 */
+	private static Interval paintSamples(
+			final RandomAccessibleInterval<UnsignedLongType> labels,
+			final long fillLabel,
+			final double x0,
+			final double y0,
+			final double x1,
+			final double y1,
+			final double radius,
+			final double brushDepth,
+			final AffineTransform3D labelToViewerTransform,
+			final AffineTransform3D globalToViewerTransform,
+			final AffineTransform3D labelToGlobalTransform)
+	{
+		final RandomAccessible<UnsignedLongType> extended = Views.extendValue(labels, new UnsignedLongType(Label.INVALID));
+		final double length = Math.sqrt((x1 - x0) * (x1 - x0) + (y1 - y0) * (y1 - y0));
+		final int numSamples = (int) Math.ceil(length);
+		Interval painted = null;
+		for (int i = 0; i <= numSamples; ++i)
+		{
+			final double t = numSamples == 0 ? 0.0 : (double) i / numSamples;
+			final Interval interval = Paint2D.paint(
+					extended,
+					fillLabel,
+					x0 + t * (x1 - x0),
+					y0 + t * (y1 - y0),
+					radius,
+					brushDepth,
+					labelToViewerTransform,
+					globalToViewerTransform,
+					labelToGlobalTransform);
+			painted = painted == null ? interval : Intervals.union(painted, interval);
+		}
+		return painted;
+	}
+
+	/**
+	 *
+	 * @return {@code true} if {@code labels} can be painted block-parallel, i.e. it tracks accessed blocks and is
+	 * backed by a {@link CachedCellImg} with {@link LongAccess}
+	 */
+	public static boolean canPaint(final RandomAccessibleInterval<UnsignedLongType> labels)
+	{
+		return labels instanceof AccessedBlocksRandomAccessible<?>
+				&& ((AccessedBlocksRandomAccessible<?>) labels).getSource() instanceof CachedCellImg<?, ?>
+				&& ((CachedCellImg<?, ?>) ((AccessedBlocksRandomAccessible<?>) labels).getSource()).getAccessType() instanceof LongAccess;
+	}
+
+	/**
+	 * Fill all voxels of {@code labels} whose centers lie inside an elliptic cylinder that is swept from the origin to
+	 * ({@code sweepX}, {@code sweepY}) in brush coordinates: {@code ((bx - t * sweepX)/radiusX)^2 + ((by - t *
+	 * sweepY)/radiusY)^2 <= 1} for some {@code 0 <= t <= 1} and {@code zMin <= bz <= zMax}, where {@code b} are the
+	 * brush coordinates of the voxel center.
+	 *
+	 * @param labels mask generated by {@link MaskedSource#generateMask}, see {@link #canPaint}
+	 * @param labelToBrush transform from label coordinates into brush coordinates
+	 * @return bounding box of the painted voxels in label coordinates (may be empty)
+	 */
+	@SuppressWarnings("unchecked")
+	public static Interval paintCylinder(
+			final RandomAccessibleInterval<UnsignedLongType> labels,
+			final AffineTransform3D labelToBrush,
+			final double radiusX,
+			final double radiusY,
+			final double zMin,
+			final double zMax,
+			final double sweepX,
+			final double sweepY,
+			final long fillLabel)
+	{
+		final AccessedBlocksRandomAccessible<UnsignedLongType> tracker = (AccessedBlocksRandomAccessible<UnsignedLongType>) labels;
+		final CachedCellImg<UnsignedLongType, ? extends LongAccess> store = (CachedCellImg<UnsignedLongType, ? extends LongAccess>) tracker.getSource();
+		final CellGrid grid = tracker.getGrid();
+
+		final SpanTable spans = new SpanTable(
+				labelToBrush,
+				Math.max(radiusX, MIN_RADIUS),
+				Math.max(radiusY, MIN_RADIUS),
+				zMin,
+				zMax,
+				sweepX,
+				sweepY,
+				labels);
+		if (spans.isEmpty())
+			return spans.boundingBox;
+
+		final long[] blocks = MaskedSource.affectedBlocks(grid, spans.boundingBox).toArray();
+		LOG.debug("Painting {} blocks in {}", blocks.length, spans.boundingBox);
+
+		final List<PaintedBlocks> results = new ArrayList<>();
+		if (blocks.length == 1)
+			results.add(paintBlocks(store, grid, spans, blocks, 0, 1, fillLabel));
+		else
+		{
+			final int numTasks = NUM_WORKERS * NUM_TASKS_PER_WORKER;
+			final int blocksPerTask = Math.max((blocks.length + numTasks - 1) / numTasks, 1);
+			final List<Future<PaintedBlocks>> futures = new ArrayList<>();
+			for (int first = 0; first < blocks.length; first += blocksPerTask)
+			{
+				final int taskFirst = first;
+				final int taskLast = Math.min(first + blocksPerTask, blocks.length);
+				futures.add(WORKERS.submit(() -> paintBlocks(store, grid, spans, blocks, taskFirst, taskLast, fillLabel)));
+			}
+			try
+			{
+				for (final Future<PaintedBlocks> future : futures)
+					results.add(future.get());
+			} catch (final InterruptedException e)
+			{
+				// keep blocks that were painted before interruption
+				LOG.debug("Interrupted while painting");
+				Thread.currentThread().interrupt();
+			} catch (final ExecutionException e)
+			{
+				throw new RuntimeException(e.getCause());
+			} finally
+			{
+				futures.forEach(future -> future.cancel(true));
+			}
+			// cancelled tasks may have painted blocks: report all blocks as touched
+			if (results.size() < futures.size())
+				tracker.addBlockIds(blocks);
+		}
+
+		final long[] min = new long[3];
+		final long[] max = new long[3];
+		Arrays.fill(min, Long.MAX_VALUE);
+		Arrays.fill(max, Long.MIN_VALUE);
+		for (final PaintedBlocks result : results)
+		{
+			tracker.addBlockIds(result.blocks.toArray());
+			for (int d = 0; d < 3; ++d)
+			{
+				min[d] = Math.min(min[d], result.min[d]);
+				max[d] = Math.max(max[d], result.max[d]);
+			}
+		}
+		return new FinalInterval(min, max);
+	}
+
+	private static PaintedBlocks paintBlocks(
+			final CachedCellImg<UnsignedLongType, ? extends LongAccess> store,
+			final CellGrid grid,
+			final SpanTable spans,
+			final long[] blocks,
+			final int first,
+			final int last,
+			final long fillLabel)
+	{
+		final PaintedBlocks painted = new PaintedBlocks();
+		final RandomAccess<? extends Cell<? extends LongAccess>> cells = store.getCells().randomAccess();
+		final long[] cellMin = new long[3];
+		final int[] cellDims = new int[3];
+		final long[] gridPosition = new long[3];
+		final Interval box = spans.boundingBox;
+		for (int i = first; i < last && !Thread.currentThread().isInterrupted(); ++i)
+		{
+			grid.getCellDimensions(blocks[i], cellMin, cellDims);
+			final long yMin = Math.max(cellMin[1], box.min(1));
+			final long yMax = Math.min(cellMin[1] + cellDims[1] - 1, box.max(1));
+			final long zMin = Math.max(cellMin[2], box.min(2));
+			final long zMax = Math.min(cellMin[2] + cellDims[2] - 1, box.max(2));
+			final long xMin = cellMin[0];
+			final long xMax = cellMin[0] + cellDims[0] - 1;
+
+			// only materialize the cell if the brush intersects it
+			LongAccess data = null;
+			for (long z = zMin; z <= zMax; ++z)
+				for (long y = yMin; y <= yMax; ++y)
+				{
+					final int line = spans.line(y, z);
+					final long spanMin = Math.max(spans.min[line], xMin);
+					final long spanMax = Math.min(spans.max[line], xMax);
+					if (spanMin > spanMax)
+						continue;
+					if (data == null)
+					{
+						grid.getCellGridPositionFlat(blocks[i], gridPosition);
+						cells.setPosition(gridPosition);
+						data = cells.get().getData();
+						painted.blocks.add(blocks[i]);
+					}
+					final int offset = (int) (((z - cellMin[2]) * cellDims[1] + (y - cellMin[1])) * cellDims[0] - cellMin[0]);
+					for (long x = spanMin; x <= spanMax; ++x)
+						data.setValue(offset + (int) x, fillLabel);
+					painted.add(spanMin, y, z);
+					painted.add(spanMax, y, z);
+				}
+		}
+		return painted;
+	}
+
+	/**
+	 * Span of the brush along the x-axis for each line (y, z) of the label grid within the bounding box of the brush.
+	 * The swept ellipse is the union of the ellipses at both ends of the segment and the band between them. All
+	 * three are convex and the union is convex, so the span is the hull of the three spans.
+	 */
+	private static final class SpanTable
+	{
+
+		final Interval boundingBox;
+
+		final long[] min;
+
+		final long[] max;
+
+		SpanTable(
+				final AffineTransform3D labelToBrush,
+				final double radiusX,
+				final double radiusY,
+				final double zMin,
+				final double zMax,
+				final double sweepX,
+				final double sweepY,
+				final Interval labels)
+		{
+			final FinalRealInterval brushBox = new FinalRealInterval(
+					new double[] {-radiusX + Math.min(sweepX, 0.0), -radiusY + Math.min(sweepY, 0.0), zMin},
+					new double[] {radiusX + Math.max(sweepX, 0.0), radiusY + Math.max(sweepY, 0.0), zMax});
+			this.boundingBox = Intervals.intersect(
+					Intervals.smallestContainingInterval(labelToBrush.inverse().estimateBounds(brushBox)),
+					labels);
+
+			final int numLines = Intervals.isEmpty(boundingBox) ? 0 : (int) (boundingBox.dimension(1) * boundingBox.dimension(2));
+			this.min = new long[numLines];
+			this.max = new long[numLines];
+
+			// all computations in scaled brush coordinates, in which the brush is a unit disk (swept along s)
+			final double su = sweepX / radiusX;
+			final double sv = sweepY / radiusY;
+			final double sweepLengthSquared = su * su + sv * sv;
+			final double sweepLength = Math.sqrt(sweepLengthSquared);
+
+			// brush coordinates along a line: b(x) = b(0, y, z) + x * a
+			final double au = labelToBrush.get(0, 0) / radiusX;
+			final double av = labelToBrush.get(1, 0) / radiusY;
+			final double az = labelToBrush.get(2, 0);
+			final double[] position = new double[3];
+			final double[] origin = new double[3];
+			final double[] range = new double[2];
+			for (long z = boundingBox.min(2), line = 0; line < numLines; ++z)
+				for (long y = boundingBox.min(1); y <= boundingBox.max(1); ++y, ++line)
+				{
+					position[0] = 0.0;
+					position[1] = y;
+					position[2] = z;
+					labelToBrush.apply(position, origin);
+					final double pu = origin[0] / radiusX;
+					final double pv = origin[1] / radiusY;
+					final double pz = origin[2];
+
+					double lower = Double.POSITIVE_INFINITY;
+					double upper = Double.NEGATIVE_INFINITY;
+
+					// disk at start of segment
+					if (diskRange(pu, pv, au, av, range))
+					{
+						lower = Math.min(lower, range[0]);
+						upper = Math.max(upper, range[1]);
+					}
+
+					if (sweepLength > EPSILON)
+					{
+						// disk at end of segment
+						if (diskRange(pu - su, pv - sv, au, av, range))
+						{
+							lower = Math.min(lower, range[0]);
+							upper = Math.max(upper, range[1]);
+						}
+						// band between the disks: projection onto segment in [0, 1] and distance from segment at most 1
+						if (linearRange((pu * su + pv * sv) / sweepLengthSquared, (au * su + av * sv) / sweepLengthSquared, 0.0, 1.0, range))
+						{
+							final double bandLower = range[0];
+							final double bandUpper = range[1];
+							if (linearRange((pu * sv - pv * su) / sweepLength, (au * sv - av * su) / sweepLength, -1.0, 1.0, range))
+							{
+								final double l = Math.max(bandLower, range[0]);
+								final double u = Math.min(bandUpper, range[1]);
+								if (l <= u)
+								{
+									lower = Math.min(lower, l);
+									upper = Math.max(upper, u);
+								}
+							}
+						}
+					}
+
+					// inside slab: zMin <= pz + x * az <= zMax
+					if (linearRange(pz, az, zMin, zMax, range))
+					{
+						lower = Math.max(lower, range[0]);
+						upper = Math.min(upper, range[1]);
+					}
+					else
+						upper = Double.NEGATIVE_INFINITY;
+
+					final int index = (int) line;
+					if (lower > upper)
+					{
+						this.min[index] = Long.MAX_VALUE;
+						this.max[index] = Long.MIN_VALUE;
+					}
+					else
+					{
+						this.min[index] = Math.max((long) Math.ceil(lower - EPSILON), boundingBox.min(0));
+						this.max[index] = Math.min((long) Math.floor(upper + EPSILON), boundingBox.max(0));
+					}
+				}
+		}
+
+		boolean isEmpty()
+		{
+			return this.min.length == 0;
+		}
+
+		int line(final long y, final long z)
+		{
+			return (int) ((z - boundingBox.min(2)) * boundingBox.dimension(1) + (y - boundingBox.min(1)));
+		}
+
+		/**
+		 * Range of x for which {@code (pu + x * au)^2 + (pv + x * av)^2 <= 1}.
+		 *
+		 * @return {@code false} if the range is empty
+		 */
+		private static boolean diskRange(final double pu, final double pv, final double au, final double av, final double[] range)
+		{
+			final double alpha = au * au + av * av;
+			final double beta = 2 * (pu * au + pv * av);
+			final double gamma = pu * pu + pv * pv - 1.0;
+			if (alpha < EPSILON)
+			{
+				range[0] = Double.NEGATIVE_INFINITY;
+				range[1] = Double.POSITIVE_INFINITY;
+				return gamma <= EPSILON;
+			}
+			final double discriminant = beta * beta - 4 * alpha * gamma;
+			if (discriminant < 0)
+				return false;
+			final double sqrt = Math.sqrt(discriminant);
+			range[0] = (-beta - sqrt) / (2 * alpha);
+			range[1] = (-beta + sqrt) / (2 * alpha);
+			return true;
+		}
+
+		/**
+		 * Range of x for which {@code lower <= c0 + x * c1 <= upper}.
+		 *
+		 * @return {@code false} if the range is empty
+		 */
+		private static boolean linearRange(final double c0, final double c1, final double lower, final double upper, final double[] range)
+		{
+			if (Math.abs(c1) < EPSILON)
+			{
+				range[0] = Double.NEGATIVE_INFINITY;
+				range[1] = Double.POSITIVE_INFINITY;
+				return c0 >= lower - EPSILON && c0 <= upper + EPSILON;
+			}
+			final double x1 = (lower - c0) / c1;
+			final double x2 = (upper - c0) / c1;
+			range[0] = Math.min(x1, x2);
+			range[1] = Math.max(x1, x2);
+			return true;
+		}
+	}
+
+	private static final class PaintedBlocks
+	{
+
+		final TLongArrayList blocks = new TLongArrayList();
+
+		final long[] min = {Long.MAX_VALUE, Long.MAX_VALUE, Long.MAX_VALUE};
+
+		final long[] max = {Long.MIN_VALUE, Long.MIN_VALUE, Long.MIN_VALUE};
+
+		void add(final long x, final long y, final long z)
+		{
+			min[0] = Math.min(min[0], x);
+			min[1] = Math.min(min[1], y);
+			min[2] = Math.min(min[2], z);
+			max[0] = Math.max(max[0], x);
+			max[1] = Math.max(max[1], y);
+			max[2] = Math.max(max[2], z);
+		}
+	}
+
+}
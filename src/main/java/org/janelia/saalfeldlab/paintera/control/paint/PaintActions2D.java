@@ -34,7 +34,6 @@ import net.imglib2.type.label.Label;
 import net.imglib2.type.numeric.integer.UnsignedLongType;
 import net.imglib2.util.Intervals;
 import net.imglib2.util.LinAlgHelpers;
-import net.imglib2.view.Views;
 
 public class PaintActions2D
 {
@@ -120,8 +119,8 @@ public class PaintActions2D
 
 			final Mask<UnsignedLongType> labels = this.canvas.get();
 			if (labels == null) { return; }
-			final Interval trackedInterval = Paint2D.paint(
-					Views.extendValue(labels.mask, new UnsignedLongType(Label.INVALID)),
+			final Interval trackedInterval = Paint3D.paint(
+					labels.mask,
 					fillLabel,
 					viewerX,
 					viewerY,
@@ -131,11 +130,13 @@ public class PaintActions2D
 					globalToViewerTransform,
 					labelToGlobalTransform
 			                                              );
+			++this.fillLabel;
+			if (Intervals.isEmpty(trackedInterval))
+				return;
 			this.interval.set(Intervals.union(
 					trackedInterval,
 					Optional.ofNullable(this.interval.get()).orElse(trackedInterval)
 			                                 ));
-			++this.fillLabel;
 
 			final double viewerRadius = Affine3DHelpers.extractScale(globalToViewerTransform, 0) * brushRadius.get();
 			final long[] viewerMin = {
@@ -155,6 +156,20 @@ public class PaintActions2D
 
 		public void applyMask()
 		{
+			if (interval.get() == null)
+			{
+				LOG.debug("Brush did not touch the canvas -- will not apply mask");
+				Optional.ofNullable(maskedSource.get()).ifPresent(ms -> {
+					try
+					{
+						ms.resetMasks();
+					} catch (final MaskInUse e)
+					{
+						LOG.debug("Unable to reset mask", e);
+					}
+				});
+				return;
+			}
 			Optional.ofNullable(maskedSource.get()).ifPresent(ms -> ms.applyMask(
 					canvas.get(),
 					interval.get(),
@@ -2,20 +2,18 @@ package org.janelia.saalfeldlab.paintera.control.paint;
 
 import bdv.fx.viewer.ViewerPanelFX;
 import bdv.fx.viewer.ViewerState;
-import bdv.util.Affine3DHelpers;
 import bdv.viewer.Source;
 import javafx.event.EventHandler;
 import javafx.event.EventType;
 import javafx.scene.Node;
 import javafx.scene.input.MouseEvent;
+import net.imglib2.FinalRealInterval;
 import net.imglib2.Interval;
-import net.imglib2.RandomAccessibleInterval;
+import net.imglib2.RealInterval;
 import net.imglib2.realtransform.AffineTransform3D;
 import net.imglib2.type.label.Label;
 import net.imglib2.type.numeric.integer.UnsignedLongType;
 import net.imglib2.util.Intervals;
-import net.imglib2.util.LinAlgHelpers;
-import net.imglib2.view.Views;
 import org.janelia.saalfeldlab.fx.event.InstallAndRemove;
 import org.janelia.saalfeldlab.fx.ui.Exceptions;
 import org.janelia.saalfeldlab.fx.util.InvokeOnJavaFXApplicationThread;
@@ -24,10 +22,20 @@ import org.janelia.saalfeldlab.paintera.data.mask.MaskInfo;
 import org.janelia.saalfeldlab.paintera.data.mask.MaskedSource;
 import org.janelia.saalfeldlab.paintera.exception.PainteraException;
 import org.janelia.saalfeldlab.paintera.state.SourceInfo;
+import org.janelia.saalfeldlab.util.NamedThreadFactory;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.lang.invoke.MethodHandles;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Consumer;
 import java.util.function.DoubleSupplier;
 import java.util.function.Predicate;
 import java.util.function.Supplier;
@@ -50,29 +58,23 @@ public class PaintClickOrDrag implements InstallAndRemove<Node> {
 		}
 	}
 
-	private static final class Position {
-
-		public double x;
-
-		public double y;
-
-		public void update(final double x, final double y) {
-			this.x = x;
-			this.y = y;
-		}
+	private static final Predicate<UnsignedLongType> FOREGROUND_CHECK = t -> Label.isForeground(t.get());
 
-		public void update(final MouseEvent e) {
-			this.update(e.getX(), e.getY());
-		}
+	/**
+	 * Paint strokes of all instances one after another, off the JavaFX application thread.
+	 */
+	private static final ExecutorService STROKE_QUEUE = Executors.newSingleThreadExecutor(new NamedThreadFactory("paint-stroke-%d", true));
 
-		@Override
-		public String toString()
-		{
-			return String.format("<Position: (%f, %f)>", x, y);
-		}
-	}
+	/**
+	 * Request repaints of painted regions at most at the display refresh rate while painting falls behind.
+	 */
+	private static final long REPAINT_INTERVAL_NANOS = 1_000_000_000L / 60;
 
-	private static final Predicate<UnsignedLongType> FOREGROUND_CHECK = t -> Label.isForeground(t.get());
+	/**
+	 * Merge consecutive drag samples into a single segment if no sample deviates from the segment by more than this
+	 * (in screen pixels).
+	 */
+	private static final double MERGE_TOLERANCE = 0.5;
 
 	private final SourceInfo sourceInfo;
 
@@ -86,6 +88,8 @@ public class PaintClickOrDrag implements InstallAndRemove<Node> {
 
 	private final Predicate<MouseEvent> check;
 
+	private final Consumer<RealInterval> requestRepaint;
+
 	private final EventHandler<MouseEvent> onPress;
 
 	private final EventHandler<MouseEvent> onDragOrMove;
@@ -94,22 +98,16 @@ public class PaintClickOrDrag implements InstallAndRemove<Node> {
 
 	private boolean isPainting = false;
 
-	private Mask<UnsignedLongType> mask = null;
+	private Stroke stroke = null;
 
 	private MaskedSource<?, ?> paintIntoThis = null;
 
-	private long fillLabel = 0;
-
-	private Interval interval = null;
-
 	private final AffineTransform3D labelToGlobalTransform = new AffineTransform3D();
 
 	private final AffineTransform3D labelToViewerTransform = new AffineTransform3D();
 
 	private final AffineTransform3D globalToViewerTransform = new AffineTransform3D();
 
-	private final Position position = new Position();
-
 	public PaintClickOrDrag(
 			final SourceInfo sourceInfo,
 			final ViewerPanelFX viewer,
@@ -117,12 +115,29 @@ public class PaintClickOrDrag implements InstallAndRemove<Node> {
 			final DoubleSupplier brushRadius,
 			final DoubleSupplier brushDepth,
 			final Predicate<MouseEvent> check) {
+		this(sourceInfo, viewer, paintId, brushRadius, brushDepth, check, viewer::requestRepaint);
+	}
+
+	/**
+	 *
+	 * @param requestRepaint request repaint of the region (in global coordinates) that was painted by a brush stroke,
+	 *                       e.g. in all viewers that may display it.
+	 */
+	public PaintClickOrDrag(
+			final SourceInfo sourceInfo,
+			final ViewerPanelFX viewer,
+			final Supplier<Long> paintId,
+			final DoubleSupplier brushRadius,
+			final DoubleSupplier brushDepth,
+			final Predicate<MouseEvent> check,
+			final Consumer<RealInterval> requestRepaint) {
 		this.sourceInfo = sourceInfo;
 		this.viewer = viewer;
 		this.paintId = paintId;
 		this.brushRadius = brushRadius;
 		this.brushDepth = brushDepth;
 		this.check = check;
+		this.requestRepaint = requestRepaint;
 
 
 		this.onPress = event -> {
@@ -162,13 +177,11 @@ public class PaintClickOrDrag implements InstallAndRemove<Node> {
 					final Long id = paintId.get();
 					if (id == null)
 						throw new IllegalIdForPainting(id);
-					this.mask = source.generateMask(new MaskInfo<>(0, level, new UnsignedLongType(id)), FOREGROUND_CHECK);
+					final Mask<UnsignedLongType> mask = source.generateMask(new MaskInfo<>(0, level, new UnsignedLongType(id)), FOREGROUND_CHECK);
 					this.isPainting = true;
-					this.fillLabel = 1;
-					this.interval = null;
+					this.stroke = new Stroke(mask);
 					this.paintIntoThis = source;
-					position.update(event);
-					paint(position.x, position.y);
+					this.stroke.add(event.getX(), event.getY());
 				}
 				// TODO should this be more specific? I think that we should never enter a painting state
 				// TODO when an exception occurs
@@ -192,41 +205,8 @@ public class PaintClickOrDrag implements InstallAndRemove<Node> {
 
 				event.consume();
 
-				try {
-					double x = event.getX();
-					double y = event.getY();
-					if (x != this.position.x || y != this.position.y) {
-						final double[] p1 = new double[] {position.x, position.y};
-
-						LOG.debug("Drag: paint at screen=({},{}) / start={}", x, y, position);
-
-						final double[] d = new double[] {x, y};
-
-						LinAlgHelpers.subtract(d, p1, d);
-
-						final double l = LinAlgHelpers.length(d);
-						LinAlgHelpers.normalize(d);
-
-						LOG.debug("Number of paintings triggered {}", l + 1);
-
-						final long t0 = System.currentTimeMillis();
-						for (int i = 0; i < l; ++i)
-						{
-							paint(p1[0], p1[1]);
-							LinAlgHelpers.add(p1, d, p1);
-						}
-						paint(x, y);
-						final long t1 = System.currentTimeMillis();
-						LOG.debug(
-								"Painting {} times with radius {} took a total of {}ms",
-								l + 1,
-								brushRadius.getAsDouble(),
-								t1 - t0
-						);
-					}
-				} finally {
-					this.position.update(event);
-				}
+				LOG.trace("Drag: queue paint at screen=({},{})", event.getX(), event.getY());
+				this.stroke.add(event.getX(), event.getY());
 			}
 		};
 
@@ -245,7 +225,14 @@ public class PaintClickOrDrag implements InstallAndRemove<Node> {
 					}
 
 					try {
-						this.paintIntoThis.applyMask(this.mask, this.interval, FOREGROUND_CHECK);
+						// wait until all queued segments of the stroke are painted
+						final Interval interval = this.stroke.finish();
+						if (interval == null) {
+							LOG.debug("Brush did not touch the canvas -- will not apply mask");
+							this.paintIntoThis.resetMasks();
+							return;
+						}
+						this.paintIntoThis.applyMask(this.stroke.mask, interval, FOREGROUND_CHECK);
 					} catch (final Exception e) {
 						InvokeOnJavaFXApplicationThread.invoke(() ->
 								Exceptions.exceptionAlert("Exception when trying to submit mask.", e).show());
@@ -294,62 +281,178 @@ public class PaintClickOrDrag implements InstallAndRemove<Node> {
 		return this.isPainting;
 	}
 
-	private synchronized RandomAccessibleInterval<UnsignedLongType> getMaskIfIsPaintingOrNull()
-	{
-		return getIsPainting() && this.mask != null ? this.mask.mask : null;
-	}
+	/**
+	 * Brush stroke that is painted asynchronously on the {@link #STROKE_QUEUE}. Drag samples are queued and all
+	 * samples that arrived since the last paint are processed at once: consecutive samples that are (almost)
+	 * collinear are merged into a single segment and each segment is painted once by sweeping the brush along it
+	 * ({@link Paint3D}). Under load, this paints fewer but longer segments instead of falling behind the cursor.
+	 */
+	private final class Stroke {
 
-	private synchronized void paint(final double viewerX, final double viewerY)
-	{
+		private final Mask<UnsignedLongType> mask;
+
+		private final AffineTransform3D labelToGlobalTransform = PaintClickOrDrag.this.labelToGlobalTransform.copy();
+
+		private final AffineTransform3D labelToViewerTransform = PaintClickOrDrag.this.labelToViewerTransform.copy();
+
+		private final AffineTransform3D globalToViewerTransform = PaintClickOrDrag.this.globalToViewerTransform.copy();
+
+		private final ConcurrentLinkedQueue<double[]> samples = new ConcurrentLinkedQueue<>();
+
+		private final AtomicBoolean isDrainScheduled = new AtomicBoolean(false);
 
-		LOG.debug( "At {} {}", viewerX, viewerY );
+		// only accessed from the stroke queue
 
-		if (!this.isPainting) {
-			LOG.debug("Not currently activated for painting, returning without action");
-			return;
+		private double[] lastPainted = null;
+
+		private long fillLabel = 1;
+
+		private Interval interval = null;
+
+		private Interval pendingRepaint = null;
+
+		private long lastRepaint = 0;
+
+		private Stroke(final Mask<UnsignedLongType> mask) {
+			this.mask = mask;
 		}
 
-		final RandomAccessibleInterval<UnsignedLongType> mask = getMaskIfIsPaintingOrNull();
-		if (mask == null) {
-			LOG.debug("Current mask is null, returning without action");
-			return;
+		private void add(final double x, final double y) {
+			samples.add(new double[] {x, y});
+			if (isDrainScheduled.compareAndSet(false, true))
+				STROKE_QUEUE.submit(this::drain);
 		}
-		final double radius = brushRadius.getAsDouble();
-		final Interval trackedInterval = Paint2D.paint(
-				Views.extendValue(mask, new UnsignedLongType(Label.INVALID)),
-				this.fillLabel,
-				viewerX,
-				viewerY,
-				radius,
-				brushDepth.getAsDouble(),
-				labelToViewerTransform,
-				globalToViewerTransform,
-				labelToGlobalTransform);
-		this.interval = this.interval == null
-				? trackedInterval
-				: Intervals.union(trackedInterval, this.interval);
-		++this.fillLabel;
-
-		final double viewerRadius = Affine3DHelpers.extractScale(globalToViewerTransform, 0) * radius;
-		final long[] viewerMin = {
-				(long) Math.floor(viewerX - viewerRadius),
-				(long) Math.floor(viewerY - viewerRadius)
-		};
-		final long[] viewerMax = {
-				(long) Math.ceil(viewerX + viewerRadius),
-				(long) Math.ceil(viewerY + viewerRadius)
-		};
 
-		LOG.debug("Painted sphere with radius {} at ({}, {}): ({} {})", viewerRadius, viewerX, viewerY, viewerMin, viewerMax);
+		/**
+		 *
+		 * @return bounding box of the stroke in label coordinates, {@code null} if nothing was painted
+		 */
+		private Interval finish() throws InterruptedException, ExecutionException {
+			// the stroke queue is single threaded: all segments that were queued before are painted once this returns
+			STROKE_QUEUE.submit(() -> {}).get();
+			return interval;
+		}
 
-		this.viewer.requestRepaint(viewerMin, viewerMax);
+		private void drain() {
+			isDrainScheduled.set(false);
+			final List<double[]> polyline = new ArrayList<>();
+			for (double[] sample = samples.poll(); sample != null; sample = samples.poll())
+				polyline.add(sample);
+			if (polyline.isEmpty())
+				return;
+
+			try {
+				final List<double[]> vertices = mergeCollinear(lastPainted, polyline);
+				final double radius = brushRadius.getAsDouble();
+				final double depth = brushDepth.getAsDouble();
+				final long t0 = System.currentTimeMillis();
+				if (lastPainted == null)
+					paintSegment(vertices.get(0), vertices.get(0), radius, depth);
+				for (int i = 1; i < vertices.size(); ++i)
+					paintSegment(vertices.get(i - 1), vertices.get(i), radius, depth);
+				lastPainted = vertices.get(vertices.size() - 1);
+				LOG.debug(
+						"Painting {} samples as {} segments with radius {} took {}ms",
+						polyline.size(),
+						Math.max(vertices.size() - 1, 1),
+						radius,
+						System.currentTimeMillis() - t0);
+			} catch (final RuntimeException e) {
+				LOG.error("Unable to paint brush stroke", e);
+			}
+
+			final long now = System.nanoTime();
+			if (samples.isEmpty() || now - lastRepaint >= REPAINT_INTERVAL_NANOS) {
+				repaint(pendingRepaint);
+				pendingRepaint = null;
+				lastRepaint = now;
+			}
+		}
+
+		private void paintSegment(final double[] from, final double[] to, final double radius, final double depth) {
+			final Interval painted = Paint3D.paint(
+					mask.mask,
+					fillLabel++,
+					from[0],
+					from[1],
+					to[0],
+					to[1],
+					radius,
+					depth,
+					labelToViewerTransform,
+					globalToViewerTransform,
+					labelToGlobalTransform);
+			if (painted == null || Intervals.isEmpty(painted))
+				return;
+			interval = interval == null ? painted : Intervals.union(interval, painted);
+			pendingRepaint = pendingRepaint == null ? painted : Intervals.union(pendingRepaint, painted);
+		}
+
+		private void repaint(final Interval painted) {
+			if (painted == null)
+				return;
+			// repaint only the region that was touched by the brush: extend voxel centers to voxel boundaries
+			final double[] paintedMin = new double[painted.numDimensions()];
+			final double[] paintedMax = new double[painted.numDimensions()];
+			Arrays.setAll(paintedMin, d -> painted.min(d) - 0.5);
+			Arrays.setAll(paintedMax, d -> painted.max(d) + 0.5);
+			final RealInterval paintedGlobalInterval = labelToGlobalTransform.estimateBounds(new FinalRealInterval(paintedMin, paintedMax));
+			LOG.debug("Request repaint of {}", paintedGlobalInterval);
+			requestRepaint.accept(paintedGlobalInterval);
+		}
+	}
+
+	/**
+	 * Merge consecutive samples into segments: a sample is dropped if all dropped samples since the last vertex lie
+	 * within {@link #MERGE_TOLERANCE} of the segment from the last vertex to the next sample.
+	 *
+	 * @param start last painted position or {@code null} if nothing was painted yet
+	 * @return vertices of the merged polyline, starting at {@code start} if not {@code null}
+	 */
+	private static List<double[]> mergeCollinear(final double[] start, final List<double[]> samples) {
+		final List<double[]> vertices = new ArrayList<>();
+		final List<double[]> merged = new ArrayList<>();
+		double[] end = null;
+		if (start != null)
+			vertices.add(start);
+		for (final double[] sample : samples) {
+			final double[] last = end == null ? (vertices.isEmpty() ? null : vertices.get(vertices.size() - 1)) : end;
+			if (last != null && last[0] == sample[0] && last[1] == sample[1])
+				continue;
+			if (vertices.isEmpty()) {
+				vertices.add(sample);
+				continue;
+			}
+			if (end != null) {
+				merged.add(end);
+				final double[] from = vertices.get(vertices.size() - 1);
+				if (!merged.stream().allMatch(p -> distanceToSegment(p, from, sample) <= MERGE_TOLERANCE)) {
+					vertices.add(end);
+					merged.clear();
+				}
+			}
+			end = sample;
+		}
+		if (end != null)
+			vertices.add(end);
+		return vertices;
+	}
 
+	private static double distanceToSegment(final double[] p, final double[] from, final double[] to) {
+		final double dx = to[0] - from[0];
+		final double dy = to[1] - from[1];
+		final double lengthSquared = dx * dx + dy * dy;
+		final double t = lengthSquared == 0.0
+				? 0.0
+				: Math.max(0.0, Math.min(1.0, ((p[0] - from[0]) * dx + (p[1] - from[1]) * dy) / lengthSquared));
+		final double ex = from[0] + t * dx - p[0];
+		final double ey = from[1] + t * dy - p[1];
+		return Math.sqrt(ex * ex + ey * ey);
 	}
 
 	private void release() {
-		this.mask = null;
+		this.stroke = null;
 		this.isPainting = false;
-		this.interval = null;
 		this.paintIntoThis = null;
 	}
 
@@ -0,0 +1,369 @@
+package org.janelia.saalfeldlab.paintera.data;
+
+import java.io.IOException;
+import java.lang.invoke.MethodHandles;
+import java.util.Arrays;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.stream.Stream;
+
+import org.janelia.saalfeldlab.paintera.data.mask.MaskedSource;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import gnu.trove.iterator.TLongIterator;
+import net.imglib2.FinalInterval;
+import net.imglib2.Interval;
+import net.imglib2.RandomAccessibleInterval;
+import net.imglib2.img.cell.AbstractCellImg;
+import net.imglib2.img.cell.CellGrid;
+import net.imglib2.type.numeric.RealType;
+import net.imglib2.util.Intervals;
+import net.imglib2.view.Views;
+
+/**
+ * Per-block statistics (min, max, and a coarse histogram) for each mipmap level of a {@link DataSource} of
+ * {@link RealType}. Statistics are computed lazily, when a block is requested for the first time, and cached in
+ * memory. If a {@link Store} is provided, statistics are read from the store before they are computed and written
+ * to the store after they are computed, e.g. to persist statistics next to the dataset (see
+ * {@link org.janelia.saalfeldlab.paintera.data.n5.N5BlockStatisticsStore}).
+ *
+ * Statistics can be used to skip blocks that lie entirely outside a value range, e.g. for thresholding, and to
+ * estimate percentiles of the data from the lowest resolution level, e.g. for contrast adjustment.
+ */
+public class BlockStatistics
+{
+
+	private static final Logger LOG = LoggerFactory.getLogger(MethodHandles.lookup().lookupClass());
+
+	public static final int NUM_BINS = 64;
+
+	private static final int NUM_PERCENTILE_BINS = 16 * NUM_BINS;
+
+	private static final int[] DEFAULT_BLOCK_SIZE = {64, 64, 64};
+
+	/**
+	 * Persistence for per-block statistics. Statistics are stored as {@code double[]} (see
+	 * {@link Statistics#toArray()}).
+	 */
+	public interface Store
+	{
+		/**
+		 *
+		 * @return statistics of block {@code blockIndex} at {@code level} or {@code null} if not stored
+		 */
+		double[] read(int level, long blockIndex) throws IOException;
+
+		void write(int level, long blockIndex, double[] statistics) throws IOException;
+	}
+
+	/**
+	 * Minimum, maximum, and histogram of a block. The histogram has {@link #NUM_BINS} equally sized bins in
+	 * {@code [min, max]}.
+	 */
+	public static class Statistics
+	{
+
+		public static final Statistics EMPTY = new Statistics(Double.POSITIVE_INFINITY, Double.NEGATIVE_INFINITY, new long[NUM_BINS]);
+
+		private final double min;
+
+		private final double max;
+
+		private final long[] histogram;
+
+		private Statistics(final double min, final double max, final long[] histogram)
+		{
+			this.min = min;
+			this.max = max;
+			this.histogram = histogram;
+		}
+
+		public double min()
+		{
+			return min;
+		}
+
+		public double max()
+		{
+			return max;
+		}
+
+		public boolean isEmpty()
+		{
+			return min > max;
+		}
+
+		/**
+		 *
+		 * @return {@code true} if no value of this block is in the open interval {@code (min, max)}
+		 */
+		public boolean isOutsideOpen(final double min, final double max)
+		{
+			return this.max <= min || this.min >= max;
+		}
+
+		/**
+		 *
+		 * @return {@code [min, max, histogram...]}
+		 */
+		public double[] toArray()
+		{
+			final double[] array = new double[2 + histogram.length];
+			array[0] = min;
+			array[1] = max;
+			for (int bin = 0; bin < histogram.length; ++bin)
+				array[bin + 2] = histogram[bin];
+			return array;
+		}
+
+		public static Statistics fromArray(final double[] array)
+		{
+			final long[] histogram = new long[array.length - 2];
+			Arrays.setAll(histogram, i -> (long) array[i + 2]);
+			return new Statistics(array[0], array[1], histogram);
+		}
+
+		private static int bin(final double value, final double min, final double max, final int numBins)
+		{
+			return max > min
+			       ? Math.min((int) ((value - min) / (max - min) * numBins), numBins - 1)
+			       : 0;
+		}
+	}
+
+	private final RandomAccessibleInterval<? extends RealType<?>>[] data;
+
+	private final CellGrid[] grids;
+
+	private final Store store;
+
+	private final Map<Long, Statistics>[] statistics;
+
+	/**
+	 *
+	 * @param data data for each level
+	 * @param grids block grid for each level
+	 * @param store persist statistics, may be {@code null}
+	 */
+	@SuppressWarnings("unchecked")
+	public BlockStatistics(
+			final RandomAccessibleInterval<? extends RealType<?>>[] data,
+			final CellGrid[] grids,
+			final Store store)
+	{
+		this.data = data;
+		this.grids = grids;
+		this.store = store;
+		this.statistics = Stream.generate(ConcurrentHashMap::new).limit(data.length).toArray(Map[]::new);
+	}
+
+	/**
+	 * Use {@link #grids(DataSource)} as block grids.
+	 *
+	 * @param source data source of {@link RealType}
+	 * @param store persist statistics, may be {@code null}
+	 * @return {@link BlockStatistics} for {@code source}
+	 */
+	@SuppressWarnings("unchecked")
+	public static BlockStatistics fromDataSource(final DataSource<?, ?> source, final Store store)
+	{
+		if (!(source.getDataType() instanceof RealType<?>))
+			throw new IllegalArgumentException("Data type of source " + source.getName() + " is not a RealType: " + source.getDataType());
+		final RandomAccessibleInterval<? extends RealType<?>>[] data = new RandomAccessibleInterval[source.getNumMipmapLevels()];
+		for (int level = 0; level < data.length; ++level)
+			data[level] = (RandomAccessibleInterval<? extends RealType<?>>) source.getDataSource(0, level);
+		return new BlockStatistics(data, grids(source), store);
+	}
+
+	/**
+	 *
+	 * @param source data source
+	 * @return cell grid of {@code source} for each level, if available, and grid with blocks of size {@code 64^3}
+	 * otherwise.
+	 */
+	public static CellGrid[] grids(final DataSource<?, ?> source)
+	{
+		final CellGrid[] grids = new CellGrid[source.getNumMipmapLevels()];
+		for (int level = 0; level < grids.length; ++level)
+		{
+			final RandomAccessibleInterval<?> data = source.getDataSource(0, level);
+			grids[level] = data instanceof AbstractCellImg<?, ?, ?, ?>
+			               ? ((AbstractCellImg<?, ?, ?, ?>) data).getCellGrid()
+			               : new CellGrid(Intervals.dimensionsAsLongArray(data), DEFAULT_BLOCK_SIZE);
+		}
+		return grids;
+	}
+
+	public int getNumMipmapLevels()
+	{
+		return data.length;
+	}
+
+	public CellGrid grid(final int level)
+	{
+		return grids[level];
+	}
+
+	/**
+	 *
+	 * @param level level
+	 * @param blockIndex flat index of block in {@link #grid(int) grid} at {@code level}
+	 * @return statistics of block
+	 */
+	public Statistics get(final int level, final long blockIndex)
+	{
+		return statistics[level].computeIfAbsent(blockIndex, index -> readOrCompute(level, index));
+	}
+
+	/**
+	 *
+	 * @param level level
+	 * @param interval interval at {@code level}
+	 * @return {@code [min, max]} of all blocks that intersect {@code interval}. {@code min > max} if
+	 * {@code interval} does not contain any data.
+	 */
+	public double[] range(final int level, final Interval interval)
+	{
+		double min = Double.POSITIVE_INFINITY;
+		double max = Double.NEGATIVE_INFINITY;
+		final Interval relevant = Intervals.intersect(interval, new FinalInterval(grids[level].getImgDimensions()));
+		if (Intervals.isEmpty(relevant))
+			return new double[] {min, max};
+		for (final TLongIterator it = MaskedSource.affectedBlocks(grids[level], relevant).iterator(); it.hasNext(); )
+		{
+			final Statistics s = get(level, it.next());
+			min = Math.min(min, s.min);
+			max = Math.max(max, s.max);
+		}
+		return new double[] {min, max};
+	}
+
+	/**
+	 * Estimate percentiles of the data from the block histograms at the lowest resolution.
+	 *
+	 * @param lower lower percentile in {@code [0, 100]}
+	 * @param upper upper percentile in {@code [0, 100]}
+	 * @return estimated values at {@code lower} and {@code upper} percentiles, or {@code null} if there is no data
+	 */
+	public double[] percentiles(final double lower, final double upper)
+	{
+		final int level = data.length - 1;
+		final long numBlocks = Intervals.numElements(grids[level].getGridDimensions());
+		final Statistics[] blocks = new Statistics[(int) numBlocks];
+		double min = Double.POSITIVE_INFINITY;
+		double max = Double.NEGATIVE_INFINITY;
+		for (int block = 0; block < blocks.length; ++block)
+		{
+			blocks[block] = get(level, block);
+			min = Math.min(min, blocks[block].min);
+			max = Math.max(max, blocks[block].max);
+		}
+		if (min > max)
+			return null;
+
+		// re-bin block histograms into a common, finer histogram using bin centers
+		final long[] histogram = new long[NUM_PERCENTILE_BINS];
+		long total = 0;
+		for (final Statistics block : blocks)
+		{
+			if (block.isEmpty())
+				continue;
+			final double binWidth = (block.max - block.min) / block.histogram.length;
+			for (int bin = 0; bin < block.histogram.length; ++bin)
+			{
+				final double center = block.min + (bin + 0.5) * binWidth;
+				histogram[Statistics.bin(center, min, max, NUM_PERCENTILE_BINS)] += block.histogram[bin];
+				total += block.histogram[bin];
+			}
+		}
+
+		final double binWidth = (max - min) / NUM_PERCENTILE_BINS;
+		return new double[] {
+				min + percentileBin(histogram, total, lower) * binWidth,
+				min + (percentileBin(histogram, total, upper) + 1) * binWidth
+		};
+	}
+
+	private static int percentileBin(final long[] histogram, final long total, final double percentile)
+	{
+		final double threshold = total * percentile / 100.0;
+		long count = 0;
+		for (int bin = 0; bin < histogram.length; ++bin)
+		{
+			count += histogram[bin];
+			if (count >= threshold && count > 0)
+				return bin;
+		}
+		return histogram.length - 1;
+	}
+
+	private Statistics readOrCompute(final int level, final long blockIndex)
+	{
+		if (store != null)
+		{
+			try
+			{
+				final double[] stored = store.read(level, blockIndex);
+				if (stored != null)
+					return Statistics.fromArray(stored);
+			} catch (final IOException e)
+			{
+				LOG.debug("Unable to read statistics for block {} at level {}", blockIndex, level, e);
+			}
+		}
+
+		final Statistics statistics = compute(level, blockIndex);
+
+		if (store != null && !statistics.isEmpty())
+		{
+			try
+			{
+				store.write(level, blockIndex, statistics.toArray());
+			} catch (final IOException e)
+			{
+				LOG.debug("Unable to write statistics for block {} at level {}", blockIndex, level, e);
+			}
+		}
+		return statistics;
+	}
+
+	private Statistics compute(final int level, final long blockIndex)
+	{
+		final CellGrid grid = grids[level];
+		final long[] blockMin = new long[grid.numDimensions()];
+		final int[] blockSize = new int[grid.numDimensions()];
+		grid.getCellDimensions(blockIndex, blockMin, blockSize);
+		final long[] blockMax = new long[blockMin.length];
+		Arrays.setAll(blockMax, d -> blockMin[d] + blockSize[d] - 1);
+		final RandomAccessibleInterval<? extends RealType<?>> levelData = data[level];
+		final Interval relevant = Intervals.intersect(levelData, new FinalInterval(blockMin, blockMax));
+		if (Intervals.isEmpty(relevant))
+			return Statistics.EMPTY;
+
+		double min = Double.POSITIVE_INFINITY;
+		double max = Double.NEGATIVE_INFINITY;
+		for (final RealType<?> value : Views.interval(levelData, relevant))
+		{
+			final double v = value.getRealDouble();
+			if (Double.isNaN(v))
+				continue;
+			min = Math.min(min, v);
+			max = Math.max(max, v);
+		}
+		if (min > max)
+			return Statistics.EMPTY;
+
+		final long[] histogram = new long[NUM_BINS];
+		for (final RealType<?> value : Views.interval(levelData, relevant))
+		{
+			final double v = value.getRealDouble();
+			if (!Double.isNaN(v))
+				++histogram[Statistics.bin(v, min, max, NUM_BINS)];
+		}
+
+		LOG.trace("Computed statistics for block {} at level {}: min={} max={}", blockIndex, level, min, max);
+		return new Statistics(min, max, histogram);
+	}
+
+}
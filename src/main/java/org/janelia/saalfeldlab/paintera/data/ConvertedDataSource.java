@@ -142,4 +142,9 @@ public class ConvertedDataSource<D, T, U, V> implements DataSource<U, V>
 	public void invalidateAll() {
 		source.invalidateAll();
 	}
+
+	@Override
+	public void invalidate(final int level, final Collection<Long> blocks) {
+		source.invalidate(level, blocks);
+	}
 }
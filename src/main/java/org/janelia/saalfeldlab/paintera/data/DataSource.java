@@ -11,6 +11,7 @@ import net.imglib2.util.Intervals;
 import org.janelia.saalfeldlab.paintera.cache.InvalidateAll;
 
 import java.util.Arrays;
+import java.util.Collection;
 import java.util.stream.IntStream;
 
 /**
@@ -61,6 +62,17 @@ public interface DataSource<D, T> extends Source<T>, InvalidateAll
 		return targetScale;
 	}
 
+	/**
+	 * Invalidate cached blocks of the data at {@code level}, e.g. after they were modified. Sources that cannot
+	 * invalidate individual blocks invalidate all of their data.
+	 *
+	 * @param level mipmap level
+	 * @param blocks flat indices of blocks in the {@link #getGrid(int) grid} at {@code level}
+	 */
+	default void invalidate(final int level, final Collection<Long> blocks) {
+		invalidateAll();
+	}
+
 	default CellGrid[] getGrids() {
 		return IntStream
 				.range(0, getNumMipmapLevels())
@@ -90,4 +90,9 @@ public class DelegatingDataSource<D, T> implements DataSource<D, T>
 	public void invalidateAll() {
 		delegate.invalidateAll();
 	}
+
+	@Override
+	public void invalidate(final int level, final Collection<Long> blocks) {
+		delegate.invalidate(level, blocks);
+	}
 }
@@ -0,0 +1,305 @@
+package org.janelia.saalfeldlab.paintera.data;
+
+import java.io.IOException;
+import java.lang.invoke.MethodHandles;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.janelia.saalfeldlab.labels.blocks.LabelBlockLookup;
+import org.janelia.saalfeldlab.n5.DataBlock;
+import org.janelia.saalfeldlab.n5.DataType;
+import org.janelia.saalfeldlab.n5.DatasetAttributes;
+import org.janelia.saalfeldlab.n5.GzipCompression;
+import org.janelia.saalfeldlab.n5.N5Writer;
+import org.janelia.saalfeldlab.paintera.data.mask.MaskedSource;
+import org.janelia.saalfeldlab.paintera.data.mask.persist.PersistCanvas;
+import org.janelia.saalfeldlab.paintera.data.n5.N5DataSource;
+import org.janelia.saalfeldlab.util.NamedThreadFactory;
+import org.janelia.saalfeldlab.util.grids.LabelBlockIndex;
+import org.janelia.saalfeldlab.util.grids.LabelBlockLookupAllBlocks;
+import org.janelia.saalfeldlab.util.grids.LabelBlockLookupIndexed;
+import org.janelia.saalfeldlab.util.n5.N5Helpers;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import gnu.trove.iterator.TLongObjectIterator;
+import gnu.trove.map.TLongObjectMap;
+import gnu.trove.map.hash.TLongObjectHashMap;
+import gnu.trove.set.TLongSet;
+import gnu.trove.set.hash.TLongHashSet;
+import net.imglib2.Cursor;
+import net.imglib2.FinalInterval;
+import net.imglib2.RandomAccessibleInterval;
+import net.imglib2.img.cell.CellGrid;
+import net.imglib2.type.label.Label;
+import net.imglib2.type.label.LabelMultisetType;
+import net.imglib2.type.label.LabelMultisetType.Entry;
+import net.imglib2.type.numeric.IntegerType;
+import net.imglib2.util.Intervals;
+import net.imglib2.view.Views;
+
+/**
+ * Build {@link LabelBlockIndex label-to-block indices} for label data that does not provide a Paintera
+ * label-to-block mapping, in the background. Blocks are scanned in parallel on low priority threads, starting at the
+ * lowest resolution. The unique labels of each block are stored as they are scanned, so that indexing that was
+ * interrupted (e.g. when Paintera was closed) can be resumed without scanning the same blocks again. A level of the
+ * {@link LabelBlockLookupIndexed lookup} switches from all blocks to the index as soon as the index for that level is
+ * complete.
+ */
+public class LabelBlockIndexer
+{
+
+	private static final Logger LOG = LoggerFactory.getLogger(MethodHandles.lookup().lookupClass());
+
+	public static final String INDEX_GROUP = "label-block-index";
+
+	private static final int NUM_TASKS_PER_THREAD = 4;
+
+	private static final int NUM_THREADS = Math.max(Runtime.getRuntime().availableProcessors() / 2, 1);
+
+	private static final ExecutorService WORKERS = Executors.newFixedThreadPool(
+			NUM_THREADS,
+			new NamedThreadFactory("label-block-indexer-%d", true, Thread.MIN_PRIORITY));
+
+	/**
+	 * Create a {@link LabelBlockLookupIndexed} that is stored inside {@code projectDirectory} and start indexing
+	 * {@code source} in the background. The group of the index is derived from the container and dataset of
+	 * {@code source}, so that indexing of the same dataset is resumed (or skipped, if complete) when it is opened again.
+	 *
+	 * @param source label data, will be indexed at all levels
+	 * @param projectDirectory N5 container that holds the index
+	 * @return lookup that returns all blocks until the index of a level is complete
+	 */
+	public static LabelBlockLookupIndexed indexInBackground(
+			final DataSource<? extends IntegerType<?>, ?> source,
+			final String projectDirectory)
+	{
+		final CellGrid[] grids = source.getGrids();
+		final long[][] dims = new long[grids.length][];
+		final int[][] blockSizes = new int[grids.length][];
+		for (int level = 0; level < grids.length; ++level)
+		{
+			dims[level] = grids[level].getImgDimensions();
+			blockSizes[level] = new int[grids[level].numDimensions()];
+			grids[level].cellDimensions(blockSizes[level]);
+		}
+		final String group = INDEX_GROUP + "/" + indexKey(source);
+		final LabelBlockLookupIndexed lookup = new LabelBlockLookupIndexed(dims, blockSizes, projectDirectory, group);
+		indexInBackground(lookup, source);
+		return lookup;
+	}
+
+	/**
+	 * Replace a {@link LabelBlockLookupAllBlocks} by a {@link LabelBlockLookupIndexed} that is built in the
+	 * background. Other lookups are returned as is.
+	 *
+	 * @param lookup lookup of {@code source}
+	 * @param source label data, will be indexed at all levels
+	 * @param projectDirectory N5 container that holds the index, if {@code null}, {@code lookup} is returned as is
+	 * @return {@code lookup} or {@link LabelBlockLookupIndexed} if {@code lookup} returns all blocks
+	 */
+	@SuppressWarnings("unchecked")
+	public static LabelBlockLookup indexInBackgroundIfAllBlocks(
+			final LabelBlockLookup lookup,
+			final DataSource<?, ?> source,
+			final String projectDirectory)
+	{
+		if (!(lookup instanceof LabelBlockLookupAllBlocks) || projectDirectory == null)
+			return lookup;
+		final DataSource<?, ?> background = backgroundSource(source);
+		if (!(background.getDataType() instanceof IntegerType<?>))
+			return lookup;
+		LOG.info("Building label to block index for {} in background", source.getName());
+		return indexInBackground((DataSource<? extends IntegerType<?>, ?>) background, projectDirectory);
+	}
+
+	/**
+	 * Resume indexing of {@code source} in the background, if the index of {@code lookup} is not complete.
+	 *
+	 * @param lookup stores index
+	 * @param source label data, will be indexed at all levels
+	 */
+	@SuppressWarnings("unchecked")
+	public static void indexInBackground(
+			final LabelBlockLookupIndexed lookup,
+			final DataSource<?, ?> source)
+	{
+		if (lookup.isComplete())
+			return;
+		final DataSource<? extends IntegerType<?>, ?> background = (DataSource<? extends IntegerType<?>, ?>) backgroundSource(source);
+		final Thread thread = new Thread(() -> {
+			try
+			{
+				index(lookup, background);
+			} catch (final InterruptedException e)
+			{
+				LOG.debug("Interrupted while indexing {}", source.getName());
+			} catch (final IOException | ExecutionException | RuntimeException e)
+			{
+				LOG.error("Unable to build label to block index for {}", source.getName(), e);
+			}
+		}, "label-block-indexer-" + source.getName());
+		thread.setDaemon(true);
+		thread.setPriority(Thread.MIN_PRIORITY);
+		thread.start();
+	}
+
+	/**
+	 * Keep {@code lookup} up to date with the data of {@code source}: apply the new unique labels of all blocks that
+	 * are committed from the canvas of {@code source} into the background.
+	 *
+	 * @param source masked source whose background is indexed by {@code lookup}
+	 * @param lookup index of the background of {@code source}
+	 */
+	public static void updateOnCommit(
+			final MaskedSource<?, ?> source,
+			final LabelBlockLookupIndexed lookup)
+	{
+		source.addOnCanvasCommittedListener(blockDiffsByLevel -> {
+			for (int level = 0; level < blockDiffsByLevel.size() && level < lookup.getNumLevels(); ++level)
+			{
+				final TLongObjectMap<long[]> uniqueLabelsByBlock = new TLongObjectHashMap<>();
+				for (final TLongObjectIterator<PersistCanvas.BlockDiff> it = blockDiffsByLevel.get(level).iterator(); it.hasNext(); )
+				{
+					it.advance();
+					final TLongSet labels = new TLongHashSet(it.value().getNewUniqueIds());
+					labels.remove(Label.INVALID);
+					uniqueLabelsByBlock.put(it.key(), labels.toArray());
+				}
+				try
+				{
+					lookup.update(level, uniqueLabelsByBlock);
+				} catch (final IOException | RuntimeException e)
+				{
+					LOG.error("Unable to update label to block index of {} at level {}", source.getName(), level, e);
+				}
+			}
+		});
+	}
+
+	private static void index(
+			final LabelBlockLookupIndexed lookup,
+			final DataSource<? extends IntegerType<?>, ?> source) throws IOException, InterruptedException, ExecutionException
+	{
+		final N5Writer n5 = N5Helpers.n5Writer(lookup.getContainer());
+		final boolean isLabelMultisetType = source.getDataType() instanceof LabelMultisetType;
+		for (int level = lookup.getNumLevels() - 1; level >= 0; --level)
+		{
+			if (lookup.hasIndex(level))
+				continue;
+
+			final CellGrid grid = lookup.getGrid(level);
+			final long numBlocks = Intervals.numElements(grid.getGridDimensions());
+			if (numBlocks > Integer.MAX_VALUE)
+				throw new IOException("Too many blocks at level " + level + ": " + numBlocks);
+
+			final String uniqueLabelsDataset = lookup.uniqueLabelsDataset(level);
+			if (!n5.datasetExists(uniqueLabelsDataset))
+			{
+				final int[] blockSize = new int[grid.numDimensions()];
+				grid.cellDimensions(blockSize);
+				n5.createDataset(uniqueLabelsDataset, grid.getImgDimensions(), blockSize, DataType.UINT64, new GzipCompression());
+			}
+			final DatasetAttributes attributes = n5.getDatasetAttributes(uniqueLabelsDataset);
+
+			LOG.debug("Indexing {} blocks of {} at level {}", numBlocks, source.getName(), level);
+			final RandomAccessibleInterval<? extends IntegerType<?>> data = source.getDataSource(0, level);
+			final long[][] uniqueLabels = new long[(int) numBlocks][];
+			final int numTasks = NUM_THREADS * NUM_TASKS_PER_THREAD;
+			final int blocksPerTask = (int) Math.max((numBlocks + numTasks - 1) / numTasks, 1);
+			final List<Future<?>> futures = new ArrayList<>();
+			for (int first = 0; first < numBlocks; first += blocksPerTask)
+			{
+				final int taskFirst = first;
+				final int taskLast = (int) Math.min(first + blocksPerTask, numBlocks);
+				final int taskLevel = level;
+				futures.add(WORKERS.submit(() -> {
+					for (int block = taskFirst; block < taskLast; ++block)
+						uniqueLabels[block] = uniqueLabels(lookup, n5, taskLevel, attributes, grid, data, block, isLabelMultisetType);
+					return null;
+				}));
+			}
+			try
+			{
+				for (final Future<?> future : futures)
+					future.get();
+			} finally
+			{
+				futures.forEach(f -> f.cancel(true));
+			}
+
+			lookup.setIndex(level, LabelBlockIndex.fromUniqueLabels(grid, uniqueLabels));
+			LOG.info("Label to block index for {} at level {} is complete", source.getName(), level);
+		}
+	}
+
+	/**
+	 * Read unique labels of {@code block} if they were stored before, scan and store otherwise.
+	 */
+	private static long[] uniqueLabels(
+			final LabelBlockLookupIndexed lookup,
+			final N5Writer n5,
+			final int level,
+			final DatasetAttributes attributes,
+			final CellGrid grid,
+			final RandomAccessibleInterval<? extends IntegerType<?>> data,
+			final long block,
+			final boolean isLabelMultisetType) throws IOException
+	{
+		final long[] gridPosition = new long[grid.numDimensions()];
+		grid.getCellGridPositionFlat(block, gridPosition);
+		final DataBlock<?> stored = n5.readBlock(lookup.uniqueLabelsDataset(level), attributes, gridPosition);
+		if (stored != null)
+			return (long[]) stored.getData();
+
+		final long[] min = new long[grid.numDimensions()];
+		final int[] size = new int[grid.numDimensions()];
+		grid.getCellDimensions(block, min, size);
+		final long[] max = new long[min.length];
+		Arrays.setAll(max, d -> min[d] + size[d] - 1);
+
+		final TLongSet labels = new TLongHashSet();
+		final Cursor<? extends IntegerType<?>> cursor = Views.flatIterable(Views.interval(data, new FinalInterval(min, max))).cursor();
+		if (isLabelMultisetType)
+			while (cursor.hasNext())
+				for (final Entry<Label> entry : ((LabelMultisetType) cursor.next()).entrySet())
+					labels.add(entry.getElement().id());
+		else
+			while (cursor.hasNext())
+				labels.add(cursor.next().getIntegerLong());
+		labels.remove(Label.INVALID);
+
+		return lookup.storeUniqueLabelsIfAbsent(n5, level, attributes, gridPosition, size, labels.toArray());
+	}
+
+	private static String indexKey(final DataSource<?, ?> source)
+	{
+		if (source instanceof N5DataSource<?, ?>)
+		{
+			final N5DataSource<?, ?> n5Source = (N5DataSource<?, ?>) source;
+			final String container = N5Helpers.containerLocation(n5Source.meta());
+			if (container != null)
+			{
+				final String key = container + "\n" + n5Source.dataset();
+				return UUID.nameUUIDFromBytes(key.getBytes(StandardCharsets.UTF_8)).toString();
+			}
+		}
+		LOG.debug("Unable to derive index key for {}, index will not be re-used", source.getName());
+		return UUID.randomUUID().toString();
+	}
+
+	private static DataSource<?, ?> backgroundSource(final DataSource<?, ?> source)
+	{
+		return source instanceof MaskedSource<?, ?>
+		       ? ((MaskedSource<?, ?>) source).underlyingSource()
+		       : source;
+	}
+
+}
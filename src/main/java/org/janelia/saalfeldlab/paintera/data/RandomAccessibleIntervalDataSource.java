@@ -12,11 +12,13 @@ import net.imglib2.util.Triple;
 import net.imglib2.util.Util;
 import net.imglib2.view.Views;
 import org.janelia.saalfeldlab.paintera.cache.InvalidateAll;
+import org.janelia.saalfeldlab.paintera.cache.InvalidateBlocks;
 import org.janelia.saalfeldlab.util.n5.ImagesWithInvalidate;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.lang.invoke.MethodHandles;
+import java.util.Collection;
 import java.util.function.Function;
 import java.util.function.Supplier;
 import java.util.stream.Stream;
@@ -150,7 +152,18 @@ public class RandomAccessibleIntervalDataSource<D extends Type<D>, T extends Typ
 		RandomAccessibleInterval<T>[] data = Stream.of(imagesWithInvalidate).map(i -> i.data).toArray(RandomAccessibleInterval[]::new);
 		RandomAccessibleInterval<T>[] vdata = Stream.of(imagesWithInvalidate).map(i -> i.vdata).toArray(RandomAccessibleInterval[]::new);
 		AffineTransform3D[] transforms = Stream.of(imagesWithInvalidate).map(i -> i.transform).toArray(AffineTransform3D[]::new);
-		InvalidateAll invalidateAll = () -> Stream.of(imagesWithInvalidate).forEach( i -> {i.invalidate.invalidateAll(); i.vinvalidate.invalidateAll();});
+		InvalidateAll invalidateAll = new InvalidateBlocks() {
+			@Override
+			public void invalidate(final int level, final Collection<Long> blocks) {
+				imagesWithInvalidate[level].invalidate.invalidate(blocks);
+				imagesWithInvalidate[level].vinvalidate.invalidate(blocks);
+			}
+
+			@Override
+			public void invalidateAll() {
+				Stream.of(imagesWithInvalidate).forEach( i -> {i.invalidate.invalidateAll(); i.vinvalidate.invalidateAll();});
+			}
+		};
 		return new RandomAccessibleIntervalDataSource.DataWithInvalidate(data, vdata, transforms, invalidateAll);
 	}
 
@@ -251,4 +264,12 @@ public class RandomAccessibleIntervalDataSource<D extends Type<D>, T extends Typ
 	public void invalidateAll() {
 		this.invalidateAll.invalidateAll();
 	}
+
+	@Override
+	public void invalidate(final int level, final Collection<Long> blocks) {
+		if (this.invalidateAll instanceof InvalidateBlocks)
+			((InvalidateBlocks) this.invalidateAll).invalidate(level, blocks);
+		else
+			this.invalidateAll.invalidateAll();
+	}
 }
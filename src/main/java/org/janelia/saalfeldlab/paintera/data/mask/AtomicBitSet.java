@@ -0,0 +1,97 @@
+package org.janelia.saalfeldlab.paintera.data.mask;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Fixed-size bit set that can be written to by multiple threads and read without synchronization. In contrast to
+ * {@link java.util.BitSet}, concurrent updates of different bits in the same word are not lost.
+ */
+public class AtomicBitSet
+{
+
+	private static final int ADDRESS_BITS_PER_WORD = 6;
+
+	private final int numBits;
+
+	private final AtomicLongArray words;
+
+	/**
+	 *
+	 * @param numBits number of bits, all initially cleared
+	 */
+	public AtomicBitSet(final int numBits)
+	{
+		this.numBits = numBits;
+		this.words = new AtomicLongArray(wordIndex(numBits - 1) + 1);
+	}
+
+	public boolean get(final int bitIndex)
+	{
+		return (words.get(wordIndex(bitIndex)) & (1L << bitIndex)) != 0;
+	}
+
+	public void set(final int bitIndex)
+	{
+		final int index = wordIndex(bitIndex);
+		final long mask = 1L << bitIndex;
+		long word;
+		do
+		{
+			word = words.get(index);
+			if ((word & mask) != 0)
+				return;
+		} while (!words.compareAndSet(index, word, word | mask));
+	}
+
+	public void clear(final int bitIndex)
+	{
+		final int index = wordIndex(bitIndex);
+		final long mask = 1L << bitIndex;
+		long word;
+		do
+		{
+			word = words.get(index);
+			if ((word & mask) == 0)
+				return;
+		} while (!words.compareAndSet(index, word, word & ~mask));
+	}
+
+	/**
+	 * Clear all bits. Not atomic with respect to concurrent updates of other bits.
+	 */
+	public void clear()
+	{
+		for (int i = 0; i < words.length(); ++i)
+			words.set(i, 0L);
+	}
+
+	/**
+	 *
+	 * @param fromIndex start searching at this index (inclusive)
+	 * @return index of the first set bit at or after {@code fromIndex}, or {@code -1} if there is none
+	 */
+	public int nextSetBit(final int fromIndex)
+	{
+		if (fromIndex < 0 || fromIndex >= numBits)
+			return -1;
+		int index = wordIndex(fromIndex);
+		long word = words.get(index) & (-1L << fromIndex);
+		while (true)
+		{
+			if (word != 0)
+			{
+				final int bitIndex = index * Long.SIZE + Long.numberOfTrailingZeros(word);
+				return bitIndex < numBits ? bitIndex : -1;
+			}
+			if (++index == words.length())
+				return -1;
+			word = words.get(index);
+		}
+	}
+
+	private static int wordIndex(final int bitIndex)
+	{
+		return bitIndex >> ADDRESS_BITS_PER_WORD;
+	}
+
+}
@@ -0,0 +1,191 @@
+package org.janelia.saalfeldlab.paintera.data.mask;
+
+import java.util.Arrays;
+import java.util.function.LongPredicate;
+
+import net.imglib2.RealInterval;
+import net.imglib2.RealPoint;
+import net.imglib2.RealRandomAccess;
+import net.imglib2.RealRandomAccessible;
+import net.imglib2.img.cell.CellGrid;
+import net.imglib2.util.IntervalIndexer;
+import net.imglib2.util.Triple;
+import org.janelia.saalfeldlab.paintera.data.mask.PickOne.PickAndConvert;
+
+/**
+ * Like {@link PickOne} over a {@link net.imglib2.view.RealRandomAccessibleTriple} of background, canvas, and mask
+ * but only composes the three sources inside of blocks of a {@link CellGrid} that are affected (as determined by a
+ * {@link LongPredicate} on the flat block index). Outside of affected blocks, the background is returned without
+ * evaluating canvas, mask, or {@link PickAndConvert}.
+ *
+ * Real positions are rounded to the nearest voxel to determine the block, consistent with nearest-neighbor
+ * interpolation of canvas and mask.
+ *
+ * @param <A> background and target type
+ * @param <B> canvas type
+ * @param <C> mask type
+ */
+public class BlockAwarePickOne<A, B, C> implements RealRandomAccessible<A>
+{
+
+	private final RealRandomAccessible<A> background;
+
+	private final RealRandomAccessible<B> canvas;
+
+	private final RealRandomAccessible<C> mask;
+
+	private final PickAndConvert<A, B, C, A> pac;
+
+	private final CellGrid grid;
+
+	private final LongPredicate isAffected;
+
+	/**
+	 *
+	 * @param background background
+	 * @param canvas canvas, only evaluated inside affected blocks
+	 * @param mask mask, only evaluated inside affected blocks
+	 * @param pac compose background, canvas, and mask
+	 * @param grid block grid of canvas and mask
+	 * @param isAffected {@code true} for flat indices of blocks in {@code grid} that hold canvas or mask data
+	 */
+	public BlockAwarePickOne(
+			final RealRandomAccessible<A> background,
+			final RealRandomAccessible<B> canvas,
+			final RealRandomAccessible<C> mask,
+			final PickAndConvert<A, B, C, A> pac,
+			final CellGrid grid,
+			final LongPredicate isAffected)
+	{
+		this.background = background;
+		this.canvas = canvas;
+		this.mask = mask;
+		this.pac = pac;
+		this.grid = grid;
+		this.isAffected = isAffected;
+	}
+
+	@Override
+	public int numDimensions()
+	{
+		return background.numDimensions();
+	}
+
+	@Override
+	public BlockAwarePickOneAccess realRandomAccess()
+	{
+		return new BlockAwarePickOneAccess();
+	}
+
+	@Override
+	public BlockAwarePickOneAccess realRandomAccess(final RealInterval interval)
+	{
+		return realRandomAccess();
+	}
+
+	public class BlockAwarePickOneAccess extends RealPoint implements RealRandomAccess<A>, Triple<A, B, C>
+	{
+
+		private final RealRandomAccess<A> backgroundAccess = background.realRandomAccess();
+
+		private final RealRandomAccess<B> canvasAccess = canvas.realRandomAccess();
+
+		private final RealRandomAccess<C> maskAccess = mask.realRandomAccess();
+
+		private final PickAndConvert<A, B, C, A> pac = BlockAwarePickOne.this.pac.copy();
+
+		private final long[] gridDimensions = grid.getGridDimensions();
+
+		private final int[] blockSize = new int[n];
+
+		private final long[] blockPosition = new long[n];
+
+		// cache the most recent block: consecutive accesses typically fall into the same block
+		private final long[] lastBlockMin = new long[n];
+
+		private final long[] lastBlockMax = new long[n];
+
+		private boolean lastBlockAffected = false;
+
+		public BlockAwarePickOneAccess()
+		{
+			super(background.numDimensions());
+			grid.cellDimensions(blockSize);
+			// empty interval: first access always evaluates the predicate
+			Arrays.fill(lastBlockMax, -1);
+		}
+
+		@Override
+		public A get()
+		{
+			backgroundAccess.setPosition(this);
+			if (!isInAffectedBlock())
+				return backgroundAccess.get();
+			canvasAccess.setPosition(this);
+			maskAccess.setPosition(this);
+			return pac.apply(this);
+		}
+
+		@Override
+		public A getA()
+		{
+			return backgroundAccess.get();
+		}
+
+		@Override
+		public B getB()
+		{
+			return canvasAccess.get();
+		}
+
+		@Override
+		public C getC()
+		{
+			return maskAccess.get();
+		}
+
+		@Override
+		public BlockAwarePickOneAccess copy()
+		{
+			return copyRealRandomAccess();
+		}
+
+		@Override
+		public BlockAwarePickOneAccess copyRealRandomAccess()
+		{
+			final BlockAwarePickOneAccess copy = new BlockAwarePickOneAccess();
+			copy.setPosition(this);
+			return copy;
+		}
+
+		private boolean isInAffectedBlock()
+		{
+			boolean isInLastBlock = true;
+			for (int d = 0; d < n && isInLastBlock; ++d)
+			{
+				final long p = Math.round(position[d]);
+				isInLastBlock = p >= lastBlockMin[d] && p <= lastBlockMax[d];
+			}
+			if (isInLastBlock)
+				return lastBlockAffected;
+
+			for (int d = 0; d < n; ++d)
+			{
+				final long p = Math.round(position[d]);
+				// outside of canvas and mask: compose without updating the most recent block
+				if (p < 0 || p >= grid.imgDimension(d))
+					return true;
+				blockPosition[d] = p / blockSize[d];
+			}
+			for (int d = 0; d < n; ++d)
+			{
+				lastBlockMin[d] = blockPosition[d] * blockSize[d];
+				lastBlockMax[d] = lastBlockMin[d] + blockSize[d] - 1;
+			}
+			lastBlockAffected = isAffected.test(IntervalIndexer.positionToIndex(blockPosition, gridDimensions));
+			return lastBlockAffected;
+		}
+
+	}
+
+}
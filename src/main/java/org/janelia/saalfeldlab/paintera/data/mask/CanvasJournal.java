@@ -0,0 +1,430 @@
+package org.janelia.saalfeldlab.paintera.data.mask;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.lang.invoke.MethodHandles;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.zip.CRC32;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Crash-safe journal of the canvas of a {@link MaskedSource}. The journal directory holds
+ * <ul>
+ *     <li>an append-only log ({@code log-<generation>}) of block records: level, block index, and run-length encoded
+ *     block data (or a marker for cleared blocks), each with a CRC32 checksum, and</li>
+ *     <li>a {@code manifest} with the affected blocks (by label) and the length of the log that is consistent with
+ *     them. The manifest is replaced atomically after the log was synced to disk.</li>
+ * </ul>
+ * When {@link #recover(BlockConsumer) recovering}, the log is replayed up to the length in the manifest. Records
+ * past that length were written by an operation that did not finish and are discarded. The log is validated before
+ * any record is replayed, so a corrupt log is rejected as a whole. Later records of a block
+ * replace earlier records of the same block. The log is {@link #compact(Manifest, BlockSupplier) compacted} into a
+ * new generation that holds only the current state of all blocks once it grows too large.
+ */
+public class CanvasJournal implements Closeable
+{
+
+	private static final Logger LOG = LoggerFactory.getLogger(MethodHandles.lookup().lookupClass());
+
+	private static final int RECORD_MAGIC = 0x504a524c;
+
+	private static final int MANIFEST_MAGIC = 0x504a4d46;
+
+	private static final int VERSION = 1;
+
+	private static final int CLEARED = -1;
+
+	private static final String MANIFEST = "manifest";
+
+	private static final String LOG_PREFIX = "log-";
+
+	private static final long MIN_COMPACTION_SIZE_IN_BYTES = 64L << 20;
+
+	private static final int COMPACTION_GROWTH_FACTOR = 4;
+
+	/**
+	 * Blocks that were painted into at the highest resolution and for each level the blocks that were painted into
+	 * by label, as in {@link MaskedSource#getAffectedBlocks()}.
+	 */
+	public static class Manifest
+	{
+
+		public final long[] affectedBlocks;
+
+		public final Map<Long, long[]>[] affectedBlocksById;
+
+		public Manifest(final long[] affectedBlocks, final Map<Long, long[]>[] affectedBlocksById)
+		{
+			this.affectedBlocks = affectedBlocks;
+			this.affectedBlocksById = affectedBlocksById;
+		}
+	}
+
+	public interface BlockConsumer
+	{
+		/**
+		 *
+		 * @param level scale level
+		 * @param block flat block index at {@code level}
+		 * @param data block data or {@code null} if the block was cleared
+		 */
+		void accept(int level, long block, long[] data) throws IOException;
+	}
+
+	public interface BlockSupplier
+	{
+		/**
+		 * Write current data of all blocks that hold canvas data.
+		 */
+		void writeAll(BlockConsumer consumer) throws IOException;
+	}
+
+	private final Path directory;
+
+	private long generation = 0;
+
+	private FileChannel log = null;
+
+	private long compactedLength = 0;
+
+	/**
+	 *
+	 * @param directory journal directory, created if it does not exist
+	 */
+	public CanvasJournal(final Path directory)
+	{
+		this.directory = directory;
+	}
+
+	public Path getDirectory()
+	{
+		return this.directory;
+	}
+
+	/**
+	 * Replay the journal. The log is truncated to the state in the manifest and subsequent records are appended to it.
+	 *
+	 * @param onBlock called for every record in log order, only after all records were validated
+	 * @return recovered manifest or {@code null} if the journal is empty
+	 * @throws IOException if the journal cannot be read or is corrupt; {@code onBlock} is not called for a corrupt
+	 * journal
+	 */
+	public synchronized Manifest recover(final BlockConsumer onBlock) throws IOException
+	{
+		close();
+		Files.createDirectories(directory);
+		final Path manifestPath = directory.resolve(MANIFEST);
+		if (!Files.exists(manifestPath))
+		{
+			openLog(0, 0);
+			return null;
+		}
+
+		final ByteBuffer manifestBuffer = ByteBuffer.wrap(Files.readAllBytes(manifestPath));
+		if (manifestBuffer.remaining() < 2 * Integer.BYTES + 3 * Long.BYTES || manifestBuffer.getLong(manifestBuffer.limit() - Long.BYTES) != crc(manifestBuffer.array(), 0, manifestBuffer.limit() - Long.BYTES))
+			throw new IOException("Checksum mismatch in canvas journal manifest " + manifestPath);
+		if (manifestBuffer.getInt() != MANIFEST_MAGIC || manifestBuffer.getInt() != VERSION)
+			throw new IOException("Not a canvas journal manifest: " + manifestPath);
+		final long manifestGeneration = manifestBuffer.getLong();
+		final long logLength = manifestBuffer.getLong();
+		final Manifest manifest;
+		try
+		{
+			manifest = readManifest(manifestBuffer);
+		} catch (final BufferUnderflowException | NegativeArraySizeException e)
+		{
+			throw new IOException("Malformed canvas journal manifest " + manifestPath, e);
+		}
+
+		final Path logPath = logPath(manifestGeneration);
+		LOG.info("Recovering canvas from {} ({} bytes)", logPath, logLength);
+		replay(logPath, logLength, (level, block, data) -> {});
+		replay(logPath, logLength, onBlock);
+
+		openLog(manifestGeneration, logLength);
+		this.compactedLength = logLength;
+		return manifest;
+	}
+
+	private static void replay(final Path logPath, final long logLength, final BlockConsumer onBlock) throws IOException
+	{
+		try (final DataInputStream is = new DataInputStream(new BufferedInputStream(Files.newInputStream(logPath))))
+		{
+			long position = 0;
+			while (position < logLength)
+			{
+				final int magic = is.readInt();
+				final int length = is.readInt();
+				if (magic != RECORD_MAGIC || length < 0 || position + 2 * Integer.BYTES + length + Long.BYTES > logLength)
+					throw new IOException(String.format("Invalid record at position %d in %s", position, logPath));
+				final byte[] payload = new byte[length];
+				is.readFully(payload);
+				if (is.readLong() != crc(payload, 0, length))
+					throw new IOException(String.format("Checksum mismatch for record at position %d in %s", position, logPath));
+				try
+				{
+					readRecord(ByteBuffer.wrap(payload), onBlock);
+				} catch (final BufferUnderflowException e)
+				{
+					throw new IOException(String.format("Malformed record at position %d in %s", position, logPath), e);
+				}
+				position += 2 * Integer.BYTES + length + Long.BYTES;
+			}
+		} catch (final EOFException e)
+		{
+			throw new IOException("Canvas journal log is shorter than expected: " + logPath, e);
+		}
+	}
+
+	/**
+	 * Append a record for {@code block}. Records are not durable before the next {@link #commit(Manifest)}.
+	 *
+	 * @param level scale level
+	 * @param block flat block index at {@code level}
+	 * @param data block data or {@code null} if the block was cleared
+	 */
+	public synchronized void append(final int level, final long block, final long[] data) throws IOException
+	{
+		ensureOpen();
+		final ByteArrayOutputStream payload = new ByteArrayOutputStream();
+		try (final DataOutputStream os = new DataOutputStream(payload))
+		{
+			os.writeInt(level);
+			os.writeLong(block);
+			if (data == null)
+				os.writeInt(CLEARED);
+			else
+				writeRunLengthEncoded(os, data);
+		}
+		final byte[] bytes = payload.toByteArray();
+		final ByteBuffer record = ByteBuffer.allocate(2 * Integer.BYTES + bytes.length + Long.BYTES);
+		record.putInt(RECORD_MAGIC).putInt(bytes.length).put(bytes).putLong(crc(bytes, 0, bytes.length));
+		record.flip();
+		while (record.hasRemaining())
+			log.write(record);
+	}
+
+	/**
+	 * Sync all appended records to disk and atomically replace the manifest.
+	 */
+	public synchronized void commit(final Manifest manifest) throws IOException
+	{
+		ensureOpen();
+		log.force(false);
+		writeManifest(manifest, generation, log.position());
+	}
+
+	/**
+	 *
+	 * @return {@code true} if the log grew large enough to {@link #compact(Manifest, BlockSupplier) compact}
+	 */
+	public synchronized boolean needsCompaction() throws IOException
+	{
+		return log != null && log.position() > Math.max(MIN_COMPACTION_SIZE_IN_BYTES, COMPACTION_GROWTH_FACTOR * compactedLength);
+	}
+
+	/**
+	 * Write the current state of all blocks into a new log generation and delete the previous one.
+	 */
+	public synchronized void compact(final Manifest manifest, final BlockSupplier blocks) throws IOException
+	{
+		ensureOpen();
+		final long previousGeneration = this.generation;
+		final long previousLength = this.log.position();
+		close();
+		try
+		{
+			openLog(previousGeneration + 1, 0);
+			blocks.writeAll(this::append);
+			commit(manifest);
+		} catch (final IOException | RuntimeException e)
+		{
+			// the manifest still refers to the previous generation, keep appending to it
+			close();
+			Files.deleteIfExists(logPath(previousGeneration + 1));
+			openLog(previousGeneration, previousLength);
+			throw e;
+		}
+		this.compactedLength = log.position();
+		Files.deleteIfExists(logPath(previousGeneration));
+		LOG.debug("Compacted canvas journal {} into {} bytes", directory, compactedLength);
+	}
+
+	/**
+	 * Discard all records, e.g. when the canvas was cleared.
+	 */
+	@SuppressWarnings("unchecked")
+	public synchronized void reset() throws IOException
+	{
+		compact(new Manifest(new long[0], new Map[0]), consumer -> {});
+	}
+
+	@Override
+	public synchronized void close() throws IOException
+	{
+		if (log != null)
+			log.close();
+		log = null;
+	}
+
+	private void ensureOpen() throws IOException
+	{
+		if (log == null)
+			throw new IOException("Canvas journal " + directory + " is not open -- recover before appending");
+	}
+
+	private void openLog(final long generation, final long length) throws IOException
+	{
+		Files.createDirectories(directory);
+		this.generation = generation;
+		this.log = FileChannel.open(logPath(generation), StandardOpenOption.CREATE, StandardOpenOption.WRITE);
+		this.log.truncate(length);
+		this.log.position(length);
+	}
+
+	private Path logPath(final long generation)
+	{
+		return directory.resolve(LOG_PREFIX + generation);
+	}
+
+	private void writeManifest(final Manifest manifest, final long generation, final long logLength) throws IOException
+	{
+		final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		try (final DataOutputStream os = new DataOutputStream(bytes))
+		{
+			os.writeInt(MANIFEST_MAGIC);
+			os.writeInt(VERSION);
+			os.writeLong(generation);
+			os.writeLong(logLength);
+			writeLongs(os, manifest.affectedBlocks);
+			os.writeInt(manifest.affectedBlocksById.length);
+			for (final Map<Long, long[]> blocksById : manifest.affectedBlocksById)
+			{
+				os.writeInt(blocksById.size());
+				for (final Map.Entry<Long, long[]> entry : blocksById.entrySet())
+				{
+					os.writeLong(entry.getKey());
+					writeLongs(os, entry.getValue());
+				}
+			}
+			os.flush();
+			os.writeLong(crc(bytes.toByteArray(), 0, bytes.size()));
+		}
+
+		final Path tmp = directory.resolve(MANIFEST + ".tmp");
+		try (final FileChannel channel = FileChannel.open(tmp, StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING))
+		{
+			final ByteBuffer buffer = ByteBuffer.wrap(bytes.toByteArray());
+			while (buffer.hasRemaining())
+				channel.write(buffer);
+			channel.force(true);
+		}
+		Files.move(tmp, directory.resolve(MANIFEST), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+	}
+
+	@SuppressWarnings("unchecked")
+	private static Manifest readManifest(final ByteBuffer buffer)
+	{
+		final long[] affectedBlocks = readLongs(buffer);
+		final Map<Long, long[]>[] affectedBlocksById = new Map[buffer.getInt()];
+		for (int level = 0; level < affectedBlocksById.length; ++level)
+		{
+			final int numLabels = buffer.getInt();
+			affectedBlocksById[level] = new HashMap<>();
+			for (int i = 0; i < numLabels; ++i)
+			{
+				final long id = buffer.getLong();
+				affectedBlocksById[level].put(id, readLongs(buffer));
+			}
+		}
+		return new Manifest(affectedBlocks, affectedBlocksById);
+	}
+
+	private static void readRecord(final ByteBuffer payload, final BlockConsumer onBlock) throws IOException
+	{
+		final int level = payload.getInt();
+		final long block = payload.getLong();
+		final int numRuns = payload.getInt();
+		if (numRuns == CLEARED)
+		{
+			onBlock.accept(level, block, null);
+			return;
+		}
+		if (numRuns < 0 || numRuns > payload.remaining() / (Long.BYTES + Integer.BYTES))
+			throw new IOException("Invalid number of runs: " + numRuns);
+		final long[] values = new long[numRuns];
+		final int[] runLengths = new int[numRuns];
+		long numElements = 0;
+		for (int run = 0; run < numRuns; ++run)
+		{
+			values[run] = payload.getLong();
+			runLengths[run] = payload.getInt();
+			if (runLengths[run] < 0)
+				throw new IOException("Invalid run length: " + runLengths[run]);
+			numElements += runLengths[run];
+		}
+		if (numElements > Integer.MAX_VALUE)
+			throw new IOException("Invalid number of elements: " + numElements);
+		final long[] data = new long[(int) numElements];
+		for (int run = 0, index = 0; run < numRuns; index += runLengths[run], ++run)
+			Arrays.fill(data, index, index + runLengths[run], values[run]);
+		onBlock.accept(level, block, data);
+	}
+
+	private static void writeRunLengthEncoded(final DataOutputStream os, final long[] data) throws IOException
+	{
+		int numRuns = 0;
+		for (int index = 0; index < data.length; ++index)
+			if (index == 0 || data[index] != data[index - 1])
+				++numRuns;
+		os.writeInt(numRuns);
+		for (int index = 0; index < data.length; )
+		{
+			int runLength = 1;
+			while (index + runLength < data.length && data[index + runLength] == data[index])
+				++runLength;
+			os.writeLong(data[index]);
+			os.writeInt(runLength);
+			index += runLength;
+		}
+	}
+
+	private static void writeLongs(final DataOutputStream os, final long[] values) throws IOException
+	{
+		os.writeInt(values.length);
+		for (final long value : values)
+			os.writeLong(value);
+	}
+
+	private static long[] readLongs(final ByteBuffer buffer)
+	{
+		final long[] values = new long[buffer.getInt()];
+		for (int i = 0; i < values.length; ++i)
+			values[i] = buffer.getLong();
+		return values;
+	}
+
+	private static long crc(final byte[] bytes, final int offset, final int length)
+	{
+		final CRC32 crc = new CRC32();
+		crc.update(bytes, offset, length);
+		return crc.getValue();
+	}
+
+}
@@ -1,18 +1,28 @@
 package org.janelia.saalfeldlab.paintera.data.mask;
 
+import java.io.IOException;
 import java.lang.invoke.MethodHandles;
 import java.nio.file.Path;
 import java.nio.file.Paths;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collection;
 import java.util.HashMap;
+import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
 import java.util.Optional;
 import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+import java.util.function.LongPredicate;
 import java.util.function.Predicate;
 import java.util.function.Supplier;
+import java.util.stream.Collectors;
 import java.util.stream.DoubleStream;
 import java.util.stream.IntStream;
 import java.util.stream.LongStream;
@@ -29,6 +39,7 @@ import org.janelia.saalfeldlab.paintera.data.mask.persist.UnableToPersistCanvas;
 import org.janelia.saalfeldlab.paintera.data.mask.persist.UnableToUpdateLabelBlockLookup;
 import org.janelia.saalfeldlab.paintera.data.n5.BlockSpec;
 import org.janelia.saalfeldlab.paintera.ui.PainteraAlerts;
+import org.janelia.saalfeldlab.util.NamedThreadFactory;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -41,9 +52,11 @@ import gnu.trove.map.hash.TLongLongHashMap;
 import gnu.trove.set.TLongSet;
 import gnu.trove.set.hash.TLongHashSet;
 import javafx.beans.property.BooleanProperty;
+import javafx.beans.property.LongProperty;
 import javafx.beans.property.ReadOnlyBooleanProperty;
 import javafx.beans.property.ReadOnlyStringProperty;
 import javafx.beans.property.SimpleBooleanProperty;
+import javafx.beans.property.SimpleLongProperty;
 import javafx.beans.property.SimpleStringProperty;
 import javafx.beans.property.StringProperty;
 import javafx.beans.value.ChangeListener;
@@ -55,7 +68,6 @@ import javafx.scene.control.Alert;
 import javafx.scene.control.ButtonType;
 import javafx.scene.layout.VBox;
 import javafx.stage.Modality;
-import javafx.util.Pair;
 import mpicbg.spim.data.sequence.VoxelDimensions;
 import net.imglib2.Cursor;
 import net.imglib2.FinalInterval;
@@ -70,10 +82,6 @@ import net.imglib2.RealRandomAccessible;
 import net.imglib2.RealRandomAccessibleRealInterval;
 import net.imglib2.algorithm.util.Grids;
 import net.imglib2.cache.img.CachedCellImg;
-import net.imglib2.cache.img.CellLoader;
-import net.imglib2.cache.img.DiskCachedCellImg;
-import net.imglib2.cache.img.DiskCachedCellImgFactory;
-import net.imglib2.cache.img.DiskCachedCellImgOptions;
 import net.imglib2.cache.img.DiskCellCache;
 import net.imglib2.converter.Converters;
 import net.imglib2.converter.TypeIdentity;
@@ -99,7 +107,6 @@ import net.imglib2.util.IntervalIndexer;
 import net.imglib2.util.Intervals;
 import net.imglib2.view.ExtendedRealRandomAccessibleRealInterval;
 import net.imglib2.view.IntervalView;
-import net.imglib2.view.RealRandomAccessibleTriple;
 import net.imglib2.view.Views;
 
 /**
@@ -142,10 +149,31 @@ public class MaskedSource<D extends Type<D>, T extends Type<T>> implements DataS
 
 	private static final int NUM_DIMENSIONS = 3;
 
+	/**
+	 * Default memory budget for materialized canvas blocks across all scale levels. Blocks that exceed the budget are
+	 * spilled into the canvas cache directory.
+	 */
+	public static final long DEFAULT_CANVAS_MEMORY_BUDGET_IN_BYTES = 1L << 30;
+
+	/**
+	 * Default time in seconds after which canvas blocks that were not painted into are committed if
+	 * {@link #autoCommitProperty() auto-commit} is enabled.
+	 */
+	public static final long DEFAULT_AUTO_COMMIT_AFTER_SECONDS = 60;
+
+	private static final long AUTO_COMMIT_INTERVAL_SECONDS = 5;
+
+	private static final int MAX_BLOCKS_PER_AUTO_COMMIT = 256;
+
+	private static final ScheduledExecutorService AUTO_COMMIT = Executors.newSingleThreadScheduledExecutor(
+			new NamedThreadFactory("canvas-auto-commit-%d", true));
+
 	private final UnsignedLongType INVALID = new UnsignedLongType(Label.INVALID);
 
 	private final DataSource<D, T> source;
 
+	private final SparseCanvasStore[] canvasStores;
+
 	private final CachedCellImg<UnsignedLongType, LongAccess>[] dataCanvases;
 
 	private final RandomAccessibleInterval<VolatileUnsignedLongType>[] canvases;
@@ -187,10 +215,61 @@ public class MaskedSource<D extends Type<D>, T extends Type<T>> implements DataS
 
 	private final Map<Long, TLongHashSet>[] affectedBlocksByLabel;
 
+	/**
+	 * Blocks with canvas data for each level. Bit sets are pre-allocated for all blocks of a level, are updated
+	 * atomically from the threads that apply masks, auto-commit, and replay the journal, and can be read without
+	 * synchronization while rendering.
+	 */
+	private final AtomicBitSet[] affectedCanvasBlocks;
+
+	private SparseCanvasStore currentMaskStore = null;
+
 	private final List<Runnable> canvasClearedListeners = new ArrayList<>();
 
+	private final List<Consumer<List<TLongObjectMap<PersistCanvas.BlockDiff>>>> canvasCommittedListeners = new ArrayList<>();
+
 	private final BooleanProperty showCanvasOverBackground = new SimpleBooleanProperty(this, "show canvas", true);
 
+	private final LongProperty canvasMemoryBudgetInBytes = new SimpleLongProperty(this, "canvas memory budget", DEFAULT_CANVAS_MEMORY_BUDGET_IN_BYTES);
+
+	private final BooleanProperty autoCommit = new SimpleBooleanProperty(this, "auto commit", false);
+
+	private final LongProperty autoCommitAfterSeconds = new SimpleLongProperty(this, "auto commit after seconds", DEFAULT_AUTO_COMMIT_AFTER_SECONDS);
+
+	/**
+	 * {@link System#nanoTime()} of the last time each block at the highest resolution was painted into. Guarded by
+	 * {@code this}.
+	 */
+	private final TLongLongHashMap lastModified = new TLongLongHashMap();
+
+	/**
+	 * Blocks at the highest resolution that were auto-committed and the {@link #lastModified modification time} of
+	 * the committed state. Blocks are cleared from the canvas only if they were not painted into since. Guarded by
+	 * {@code this}.
+	 */
+	private final TLongLongHashMap committedAt = new TLongLongHashMap();
+
+	/**
+	 * Held while writing into the background, so that auto-commit and {@link #persistCanvas()} do not interleave.
+	 */
+	private final Object commitLock = new Object();
+
+	private boolean isAutoCommitting = false;
+
+	private ScheduledFuture<?> autoCommitTask = null;
+
+	/**
+	 * Journal of all canvas changes for recovery after a crash, {@code null} if not journaled. Guarded by
+	 * {@code this}.
+	 */
+	private CanvasJournal journal = null;
+
+	/**
+	 * Held for all writes into the {@link #journal}, which happen from the threads that apply masks and auto-commit.
+	 * Separate from {@link #commitLock} so that journaling painted blocks does not wait for a commit.
+	 */
+	private final Object journalLock = new Object();
+
 	public MaskedSource(
 			final DataSource<D, T> source,
 			final int[][] blockSizes,
@@ -236,6 +315,11 @@ public class MaskedSource<D extends Type<D>, T extends Type<T>> implements DataS
 				.mapToObj(level -> Intervals.dimensionsAsLongArray(this.source.getSource(0, level)))
 				.toArray(long[][]::new);
 		this.blockSizes = blockSizes;
+		this.affectedCanvasBlocks = IntStream
+				.range(0, source.getNumMipmapLevels())
+				.mapToObj(level -> new AtomicBitSet((int) Intervals.numElements(new CellGrid(dimensions[level], blockSizes[level]).getGridDimensions())))
+				.toArray(AtomicBitSet[]::new);
+		this.canvasStores = new SparseCanvasStore[source.getNumMipmapLevels()];
 		this.dataCanvases = new CachedCellImg[source.getNumMipmapLevels()];
 		this.canvases = new RandomAccessibleInterval[source.getNumMipmapLevels()];
 		this.dMasks = new RealRandomAccessible[this.canvases.length];
@@ -251,6 +335,7 @@ public class MaskedSource<D extends Type<D>, T extends Type<T>> implements DataS
 		this.propagationExecutor = propagationExecutor;
 
 		this.cacheDirectory.addListener(new CanvasBaseDirChangeListener(
+				canvasStores,
 				dataCanvases,
 				canvases,
 				this.dimensions,
@@ -262,6 +347,8 @@ public class MaskedSource<D extends Type<D>, T extends Type<T>> implements DataS
 
 		setMasksConstant();
 
+		this.autoCommit.addListener((obs, oldv, newv) -> setAutoCommitEnabled(newv));
+
 	}
 
 	public ReadOnlyBooleanProperty isApplyingMaskProperty()
@@ -274,6 +361,123 @@ public class MaskedSource<D extends Type<D>, T extends Type<T>> implements DataS
 		return showCanvasOverBackground;
 	}
 
+	public LongProperty canvasMemoryBudgetInBytesProperty()
+	{
+		return canvasMemoryBudgetInBytes;
+	}
+
+	/**
+	 *
+	 * @return if {@code true}, canvas blocks that were not painted into for {@link #autoCommitAfterSecondsProperty()}
+	 * are committed into the background and cleared from the canvas periodically.
+	 */
+	public BooleanProperty autoCommitProperty()
+	{
+		return autoCommit;
+	}
+
+	public LongProperty autoCommitAfterSecondsProperty()
+	{
+		return autoCommitAfterSeconds;
+	}
+
+	/**
+	 * Restore the canvas from {@code journal} and journal all subsequent changes of the canvas into it. Must be
+	 * called before the canvas is painted into.
+	 *
+	 * @param journal canvas journal, empty or of a previous session with the same underlying source
+	 * @return {@code true} if the canvas was restored from {@code journal}, {@code false} if {@code journal} was empty
+	 * @throws IOException if {@code journal} cannot be replayed. The canvas is cleared and not journaled in that case.
+	 */
+	public boolean setJournal(final CanvasJournal journal) throws IOException
+	{
+		final CanvasJournal.Manifest manifest;
+		try
+		{
+			manifest = recover(journal);
+		} catch (final IOException | RuntimeException e)
+		{
+			// do not keep a partially restored canvas
+			clearCanvases();
+			journal.close();
+			throw e;
+		}
+		if (manifest != null)
+		{
+			synchronized (this)
+			{
+				final long now = System.nanoTime();
+				for (final long block : manifest.affectedBlocks)
+					this.lastModified.put(block, now);
+			}
+			LOG.info("Recovered {} painted blocks of {} from {}", manifest.affectedBlocks.length, getName(), journal.getDirectory());
+		}
+		spillCanvasesIfOverBudget();
+		synchronized (this)
+		{
+			this.journal = journal;
+		}
+		return manifest != null;
+	}
+
+	private CanvasJournal.Manifest recover(final CanvasJournal journal) throws IOException
+	{
+		final CanvasJournal.Manifest manifest = journal.recover((level, block, data) -> {
+			if (level < 0 || level >= getNumMipmapLevels())
+				throw new IOException(String.format("Canvas journal has level %d but source has %d levels", level, getNumMipmapLevels()));
+			if (data == null)
+			{
+				this.canvasStores[level].clear(block);
+				this.affectedCanvasBlocks[level].clear((int) block);
+			}
+			else
+			{
+				this.canvasStores[level].restore(block, data);
+				this.affectedCanvasBlocks[level].set((int) block);
+			}
+		});
+		if (manifest != null)
+		{
+			if (manifest.affectedBlocksById.length != getNumMipmapLevels())
+				throw new IOException(String.format("Canvas journal has %d levels but source has %d levels", manifest.affectedBlocksById.length, getNumMipmapLevels()));
+			affectBlocks(manifest.affectedBlocks, manifest.affectedBlocksById);
+		}
+		return manifest;
+	}
+
+	/**
+	 * Stop auto-commit and close the journal, for sources that are not going to be used, e.g. data sources that were
+	 * preloaded for a source state that was not built. Neither the canvas nor the journal or the background are
+	 * modified, so that the journal can be recovered by another source for the same data.
+	 */
+	public void discard()
+	{
+		setAutoCommitEnabled(false);
+		final CanvasJournal journal;
+		synchronized (this)
+		{
+			journal = this.journal;
+			this.journal = null;
+		}
+		if (journal == null)
+			return;
+		synchronized (this.journalLock)
+		{
+			try
+			{
+				journal.close();
+			} catch (final IOException e)
+			{
+				LOG.warn("Unable to close canvas journal {}", journal.getDirectory(), e);
+			}
+		}
+	}
+
+	public synchronized CanvasJournal getJournal()
+	{
+		return this.journal;
+	}
+
 	public Mask<UnsignedLongType> getCurrentMask()
 	{
 		return currentMask;
@@ -302,19 +506,17 @@ public class MaskedSource<D extends Type<D>, T extends Type<T>> implements DataS
 		}
 		LOG.debug("Generating mask: {}", maskInfo);
 
-		final Pair<RandomAccessibleInterval<UnsignedLongType>, RandomAccessibleInterval<VolatileUnsignedLongType>>
-				storeWithVolatile = createMaskStoreWithVolatile(maskInfo.level);
-		final RandomAccessibleInterval<UnsignedLongType> store = storeWithVolatile.getKey();
-		final RandomAccessibleInterval<VolatileUnsignedLongType> vstore  = storeWithVolatile.getValue();
-		setMasks(store, vstore, maskInfo.level, maskInfo.value, isPaintedForeground);
+		final SparseCanvasStore maskStore = createMaskStore(maskInfo.level);
+		setMasks(maskStore.getReadOnlyImg(), maskStore.getVolatileReadOnlyImg(), maskInfo.level, maskInfo.value, isPaintedForeground);
 		final AccessedBlocksRandomAccessible<UnsignedLongType> trackingStore = new AccessedBlocksRandomAccessible<>(
-				store,
-				((AbstractCellImg<?,?,?,?>)store).getCellGrid()
+				maskStore.getImg(),
+				maskStore.getGrid()
 		);
 		final Mask<UnsignedLongType> mask = new Mask<>(maskInfo, trackingStore);
 		synchronized (this)
 		{
 			this.currentMask = mask;
+			this.currentMaskStore = maskStore;
 			this.isCreatingMask = false;
 		}
 		return mask;
@@ -353,6 +555,7 @@ public class MaskedSource<D extends Type<D>, T extends Type<T>> implements DataS
 		synchronized (this)
 		{
 			this.currentMask = mask;
+			this.currentMaskStore = null;
 			this.isCreatingMask = false;
 		}
 	}
@@ -386,6 +589,7 @@ public class MaskedSource<D extends Type<D>, T extends Type<T>> implements DataS
 		{
 			final RandomAccessibleInterval<UnsignedLongType> rasteredMask = Views.interval(Views.raster(mask), source.getSource(0, maskInfo.level));
 			this.currentMask = new Mask<>(maskInfo, rasteredMask);
+			this.currentMaskStore = null;
 			this.isCreatingMask = false;
 		}
 	}
@@ -431,6 +635,14 @@ public class MaskedSource<D extends Type<D>, T extends Type<T>> implements DataS
 					canvas.getCellGrid(),
 					paintedInterval);
 
+			// mark canvas blocks at all levels before the mask is removed, propagation fills them in afterwards
+			final TLongSet[] affectedBlocksByLevel = new TLongSet[getNumMipmapLevels()];
+			for (int level = 0; level < getNumMipmapLevels(); ++level)
+			{
+				affectedBlocksByLevel[level] = scaleBlocksToLevel(affectedBlocks, maskInfo.level, level);
+				markAffectedCanvasBlocks(level, affectedBlocksByLevel[level].toArray());
+			}
+
 			synchronized (this)
 			{
 				this.currentMask = null;
@@ -441,12 +653,17 @@ public class MaskedSource<D extends Type<D>, T extends Type<T>> implements DataS
 					maskInfo.level,
 					0);
 
-			this.affectedBlocksByLabel[maskInfo.level].computeIfAbsent(
-					maskInfo.value.getIntegerLong(),
-					key -> new TLongHashSet()
-			                                                          ).addAll(affectedBlocks);
-			LOG.debug("Added affected block: {}", affectedBlocksByLabel[maskInfo.level]);
+			addAffectedBlocksByLabel(maskInfo.level, maskInfo.value.getIntegerLong(), affectedBlocks);
+			LOG.debug("Added affected blocks for label {}: {}", maskInfo.value, affectedBlocks);
 			this.affectedBlocks.addAll(paintedBlocksAtHighestResolution);
+			synchronized (this)
+			{
+				final long now = System.nanoTime();
+				paintedBlocksAtHighestResolution.forEach(block -> {
+					this.lastModified.put(block, now);
+					return true;
+				});
+			}
 
 			propagationExecutor.submit(() -> {
 				propagateMask(
@@ -458,6 +675,8 @@ public class MaskedSource<D extends Type<D>, T extends Type<T>> implements DataS
 						acceptAsPainted
 					);
 				setMasksConstant();
+				journal(affectedBlocksByLevel);
+				spillCanvasesIfOverBudget();
 				synchronized (this)
 				{
 					LOG.debug("Done applying mask!");
@@ -469,6 +688,90 @@ public class MaskedSource<D extends Type<D>, T extends Type<T>> implements DataS
 
 	}
 
+	private void spillCanvasesIfOverBudget()
+	{
+		final long budgetPerLevel = canvasMemoryBudgetInBytes.get() / canvasStores.length;
+		for (final SparseCanvasStore store : canvasStores)
+		{
+			try
+			{
+				store.spillIfOverBudget(budgetPerLevel);
+			} catch (final IOException e)
+			{
+				LOG.warn("Unable to spill canvas blocks to disk -- keeping them in memory", e);
+			}
+		}
+	}
+
+	/**
+	 * Append the current state of {@code blocksByLevel} to the {@link #setJournal(CanvasJournal) journal}. Must not
+	 * be called while any other thread writes into the canvas. Appends, commits, and compaction of concurrent calls
+	 * are serialized on {@link #journalLock}.
+	 */
+	private void journal(final TLongSet[] blocksByLevel)
+	{
+		synchronized (this.journalLock)
+		{
+			final CanvasJournal journal = getJournal();
+			if (journal == null)
+				return;
+			try
+			{
+				for (int level = 0; level < blocksByLevel.length; ++level)
+					for (final TLongIterator it = blocksByLevel[level].iterator(); it.hasNext(); )
+					{
+						final long block = it.next();
+						journal.append(level, block, this.canvasStores[level].getData(block));
+					}
+				final CanvasJournal.Manifest manifest = new CanvasJournal.Manifest(this.affectedBlocks.toArray(), getAffectedBlocksById());
+				journal.commit(manifest);
+				if (journal.needsCompaction())
+					journal.compact(manifest, this::writeCanvasBlocks);
+			} catch (final IOException e)
+			{
+				LOG.error("Unable to journal canvas into {}", journal.getDirectory(), e);
+			}
+		}
+	}
+
+	private void writeCanvasBlocks(final CanvasJournal.BlockConsumer consumer) throws IOException
+	{
+		for (int level = 0; level < getNumMipmapLevels(); ++level)
+			for (int block = this.affectedCanvasBlocks[level].nextSetBit(0); block >= 0; block = this.affectedCanvasBlocks[level].nextSetBit(block + 1))
+			{
+				final long[] data = this.canvasStores[level].getData(block);
+				if (data != null)
+					consumer.accept(level, block, data);
+			}
+	}
+
+	private void markAffectedCanvasBlocks(final int level, final long[] blocks)
+	{
+		for (final long block : blocks)
+			this.affectedCanvasBlocks[level].set((int) block);
+	}
+
+	/**
+	 * Snapshot of blocks at {@code level} that hold canvas or mask data. Inside the mask level, only blocks that
+	 * were painted into are considered. All blocks are considered at other levels if a mask is present.
+	 */
+	private LongPredicate affectedBlocksPredicate(final int level)
+	{
+		final AtomicBitSet canvasBlocks = this.affectedCanvasBlocks[level];
+		final Mask<UnsignedLongType> mask;
+		final SparseCanvasStore maskStore;
+		synchronized (this)
+		{
+			mask = this.currentMask;
+			maskStore = this.currentMaskStore;
+		}
+		if (mask == null)
+			return block -> canvasBlocks.get((int) block);
+		if (maskStore == null || mask.info.level != level)
+			return block -> true;
+		return block -> canvasBlocks.get((int) block) || maskStore.isMaterialized(block);
+	}
+
 	private void setMasksConstant()
 	{
 		for (int level = 0; level < getNumMipmapLevels(); ++level)
@@ -545,7 +848,7 @@ public class MaskedSource<D extends Type<D>, T extends Type<T>> implements DataS
 	{
 		synchronized (this)
 		{
-			if (this.isPersisting)
+			if (this.isPersisting || this.isAutoCommitting)
 				throw new CannotClearCanvas("Currently persisting canvas -- try again later.");
 			this.currentMask = null;
 		}
@@ -602,13 +905,16 @@ public class MaskedSource<D extends Type<D>, T extends Type<T>> implements DataS
 					throw new RuntimeException(e);
 				}
 				try {
-					states.add("Persisting painted labels...");
-					final List<TLongObjectMap<PersistCanvas.BlockDiff>> blockDiffs = this.persistCanvas.persistCanvas(canvas, affectedBlocks);
-					states.set(states.size() - 1, "Persisting painted labels...   Done");
-					if (this.persistCanvas.supportsLabelBlockLookupUpdate()) {
-						states.add("Updating label-to-block lookup...");
-						this.persistCanvas.updateLabelBlockLookup(blockDiffs);
-						states.set(states.size() - 1, "Updating label-to-block lookup...   Done");
+					synchronized (this.commitLock) {
+						states.add("Persisting painted labels...");
+						final List<TLongObjectMap<PersistCanvas.BlockDiff>> blockDiffs = this.persistCanvas.persistCanvas(canvas, affectedBlocks);
+						states.set(states.size() - 1, "Persisting painted labels...   Done");
+						if (this.persistCanvas.supportsLabelBlockLookupUpdate()) {
+							states.add("Updating label-to-block lookup...");
+							this.persistCanvas.updateLabelBlockLookup(blockDiffs);
+							states.set(states.size() - 1, "Updating label-to-block lookup...   Done");
+						}
+						this.canvasCommittedListeners.forEach(l -> l.accept(blockDiffs));
 					}
 					states.add("Clearing canvases...");
 					clearCanvases();
@@ -642,6 +948,171 @@ public class MaskedSource<D extends Type<D>, T extends Type<T>> implements DataS
 
 	}
 
+	private synchronized void setAutoCommitEnabled(final boolean enabled)
+	{
+		if (this.autoCommitTask != null)
+			this.autoCommitTask.cancel(false);
+		this.autoCommitTask = enabled
+		                      ? AUTO_COMMIT.scheduleWithFixedDelay(
+				                      this::autoCommitColdBlocks,
+				                      AUTO_COMMIT_INTERVAL_SECONDS,
+				                      AUTO_COMMIT_INTERVAL_SECONDS,
+				                      TimeUnit.SECONDS)
+		                      : null;
+	}
+
+	/**
+	 * Commit blocks that were not painted into for {@link #autoCommitAfterSecondsProperty()} into the background
+	 * and clear them from the canvas. A copy of the blocks is committed, so painting is not blocked while writing.
+	 * Blocks that are painted into while they are committed remain in the canvas and are committed again once they
+	 * are cold. Canvas blocks at lower resolutions are cleared once all blocks at the highest resolution that they
+	 * cover are committed.
+	 */
+	private void autoCommitColdBlocks()
+	{
+		try
+		{
+			clearCommittedBlocks();
+
+			final long[] coldBlocks;
+			final long[] modifiedAt;
+			final SparseCanvasStore copy;
+			synchronized (this)
+			{
+				if (this.isCreatingMask || this.isApplyingMask.get() || this.isPersisting)
+					return;
+				final long coldBefore = System.nanoTime() - TimeUnit.SECONDS.toNanos(this.autoCommitAfterSeconds.get());
+				final TLongSet cold = new TLongHashSet();
+				for (final TLongLongIterator it = this.lastModified.iterator(); it.hasNext() && cold.size() < MAX_BLOCKS_PER_AUTO_COMMIT; )
+				{
+					it.advance();
+					if (it.value() <= coldBefore && !this.committedAt.containsKey(it.key()))
+						cold.add(it.key());
+				}
+				if (cold.isEmpty())
+					return;
+				coldBlocks = cold.toArray();
+				modifiedAt = Arrays.stream(coldBlocks).map(this.lastModified::get).toArray();
+				copy = this.canvasStores[0].copyOf(coldBlocks);
+				this.isAutoCommitting = true;
+			}
+
+			final List<TLongObjectMap<PersistCanvas.BlockDiff>> blockDiffs;
+			try
+			{
+				LOG.debug("Auto-committing {} cold canvas blocks", coldBlocks.length);
+				synchronized (this.commitLock)
+				{
+					blockDiffs = this.persistCanvas.persistCanvas(copy.getImg(), coldBlocks);
+					if (this.persistCanvas.supportsLabelBlockLookupUpdate())
+						this.persistCanvas.updateLabelBlockLookup(blockDiffs);
+					this.canvasCommittedListeners.forEach(l -> l.accept(blockDiffs));
+				}
+				synchronized (this)
+				{
+					for (int i = 0; i < coldBlocks.length; ++i)
+						this.committedAt.put(coldBlocks[i], modifiedAt[i]);
+				}
+			} finally
+			{
+				synchronized (this)
+				{
+					this.isAutoCommitting = false;
+				}
+			}
+
+			// only the committed blocks changed in the background
+			for (int level = 0; level < blockDiffs.size() && level < getNumMipmapLevels(); ++level)
+			{
+				final List<Long> committed = LongStream.of(blockDiffs.get(level).keys()).boxed().collect(Collectors.toList());
+				if (!committed.isEmpty())
+					this.source.invalidate(level, committed);
+			}
+			clearCommittedBlocks();
+		} catch (final IOException | UnableToPersistCanvas | UnableToUpdateLabelBlockLookup | RuntimeException e)
+		{
+			// the same failure is likely to repeat with every execution, let the user re-enable auto-commit instead
+			LOG.error("Unable to auto-commit canvas of {} -- disabling auto-commit", getName(), e);
+			InvokeOnJavaFXApplicationThread.invoke(() -> this.autoCommit.set(false));
+		}
+	}
+
+	/**
+	 * Clear committed blocks from the canvas at all levels, unless they were painted into since they were committed.
+	 * Blocks are not cleared while a mask is applied, they are cleared with the next auto-commit.
+	 */
+	private void clearCommittedBlocks() throws IOException
+	{
+		final TLongSet cleared = new TLongHashSet();
+		final TLongSet[] clearedByLevel = new TLongSet[getNumMipmapLevels()];
+		synchronized (this)
+		{
+			if (this.committedAt.isEmpty() || this.isApplyingMask.get() || this.isPersisting)
+				return;
+
+			for (final TLongLongIterator it = this.committedAt.iterator(); it.hasNext(); )
+			{
+				it.advance();
+				final long block = it.key();
+				if (this.lastModified.get(block) == it.value())
+				{
+					this.canvasStores[0].clear(block);
+					this.affectedCanvasBlocks[0].clear((int) block);
+					this.affectedBlocks.remove(block);
+					this.lastModified.remove(block);
+					cleared.add(block);
+				}
+				it.remove();
+			}
+			removeFromAffectedBlocksByLabel(0, cleared);
+
+			clearedByLevel[0] = cleared;
+			for (int level = 1; level < getNumMipmapLevels(); ++level)
+			{
+				final TLongSet clearedAtLevel = new TLongHashSet();
+				clearedByLevel[level] = clearedAtLevel;
+				for (final TLongIterator it = scaleBlocksToLevel(cleared, 0, level).iterator(); it.hasNext(); )
+				{
+					final long block = it.next();
+					final TLongSet covered = scaleBlocksToLevel(new TLongHashSet(new long[] {block}), level, 0);
+					if (covered.forEach(b -> !this.affectedCanvasBlocks[0].get((int) b)))
+					{
+						this.canvasStores[level].clear(block);
+						this.affectedCanvasBlocks[level].clear((int) block);
+						clearedAtLevel.add(block);
+					}
+				}
+				removeFromAffectedBlocksByLabel(level, clearedAtLevel);
+			}
+			LOG.debug("Cleared {} auto-committed canvas blocks", cleared.size());
+		}
+		// journal outside of the lock of this source: syncing the journal to disk must not block painting and
+		// rendering. Blocks that are painted into again in the meantime are journaled again when that mask is applied.
+		journal(clearedByLevel);
+		if (!cleared.isEmpty())
+			this.canvasClearedListeners.forEach(Runnable::run);
+	}
+
+	/**
+	 * {@link #affectedBlocksByLabel} is read from other threads, e.g. to collect all painted labels, and must only be
+	 * accessed while holding the lock of this source.
+	 */
+	private synchronized void addAffectedBlocksByLabel(final int level, final long label, final TLongSet blocks)
+	{
+		this.affectedBlocksByLabel[level].computeIfAbsent(label, key -> new TLongHashSet()).addAll(blocks);
+	}
+
+	private synchronized void removeFromAffectedBlocksByLabel(final int level, final TLongSet blocks)
+	{
+		for (final Iterator<TLongHashSet> it = this.affectedBlocksByLabel[level].values().iterator(); it.hasNext(); )
+		{
+			final TLongHashSet labelBlocks = it.next();
+			labelBlocks.removeAll(blocks);
+			if (labelBlocks.isEmpty())
+				it.remove();
+		}
+	}
+
 	@Override
 	public boolean isPresent(final int t)
 	{
@@ -671,13 +1142,13 @@ public class MaskedSource<D extends Type<D>, T extends Type<T>> implements DataS
 		{
 			final RealRandomAccessible<VolatileUnsignedLongType> canvas = interpolateNearestNeighbor(Views.extendValue(this.canvases[level], new VolatileUnsignedLongType(Label.INVALID)));
 			final RealRandomAccessible<VolatileUnsignedLongType> mask = this.tMasks[level];
-			final RealRandomAccessibleTriple<T, VolatileUnsignedLongType, VolatileUnsignedLongType> composed = new
-					RealRandomAccessibleTriple<>(
+			sourceToExtend = new BlockAwarePickOne<>(
 					interpolatedSource,
 					canvas,
-					mask
-			);
-			sourceToExtend = new PickOne<>(composed, pacT.copy());
+					mask,
+					pacT.copy(),
+					this.canvasStores[level].getGrid(),
+					affectedBlocksPredicate(level));
 		}
 
 		// extend the interpolated source with the specified out of bounds value
@@ -738,14 +1209,15 @@ public class MaskedSource<D extends Type<D>, T extends Type<T>> implements DataS
 		}
 		else
 		{
-			final RealRandomAccessible<UnsignedLongType> dataCanvas = interpolateNearestNeighbor(Views.extendValue(this.dataCanvases[level], new UnsignedLongType(Label.INVALID)));
+			final RealRandomAccessible<UnsignedLongType> dataCanvas = interpolateNearestNeighbor(Views.extendValue(this.canvasStores[level].getReadOnlyImg(), new UnsignedLongType(Label.INVALID)));
 			final RealRandomAccessible<UnsignedLongType> dataMask = this.dMasks[level];
-			final RealRandomAccessibleTriple<D, UnsignedLongType, UnsignedLongType> composed = new RealRandomAccessibleTriple<>(
+			dataSourceToExtend = new BlockAwarePickOne<>(
 					interpolatedDataSource,
 					dataCanvas,
-					dataMask
-			);
-			dataSourceToExtend = new PickOne<>(composed, pacD.copy());
+					dataMask,
+					pacD.copy(),
+					this.canvasStores[level].getGrid(),
+					affectedBlocksPredicate(level));
 		}
 
 		// extend the interpolated source with the specified out of bounds value
@@ -763,7 +1235,7 @@ public class MaskedSource<D extends Type<D>, T extends Type<T>> implements DataS
 	public RandomAccessibleInterval<UnsignedLongType> getReadOnlyDataCanvas(final int t, final int level)
 	{
 		return Converters.convert(
-				(RandomAccessibleInterval<UnsignedLongType>) this.dataCanvases[level],
+				(RandomAccessibleInterval<UnsignedLongType>) this.canvasStores[level].getReadOnlyImg(),
 				new TypeIdentity<>(),
 				new UnsignedLongType()
 		                         );
@@ -883,7 +1355,7 @@ public class MaskedSource<D extends Type<D>, T extends Type<T>> implements DataS
 		}
 	}
 
-	public TLongSet getModifiedBlocks(final int level, final long id)
+	public synchronized TLongSet getModifiedBlocks(final int level, final long id)
 	{
 		LOG.debug("Getting modified blocks for level={} and id={}", level, id);
 		return Optional.ofNullable(this.affectedBlocksByLabel[level].get(id)).map(TLongHashSet::new).orElseGet(
@@ -902,7 +1374,7 @@ public class MaskedSource<D extends Type<D>, T extends Type<T>> implements DataS
 		for (int level = paintedLevel + 1; level < getNumMipmapLevels(); ++level)
 		{
 			final int                                         levelAsFinal          = level;
-			final RandomAccessibleInterval<UnsignedLongType>  atLowerLevel          = dataCanvases[level - 1];
+			final RandomAccessibleInterval<UnsignedLongType>  atLowerLevel          = canvasStores[level - 1].getReadOnlyImg();
 			final CachedCellImg<UnsignedLongType, LongAccess> atHigherLevel         = dataCanvases[level];
 			final double[]                                    relativeScales        = DataSource.getRelativeScales(
 					this,
@@ -932,9 +1404,7 @@ public class MaskedSource<D extends Type<D>, T extends Type<T>> implements DataS
 					paintedLevel,
 					level);
 			LOG.debug("Affected blocks at level {}: {}", level, affectedBlocksAtHigherLevel);
-			this.affectedBlocksByLabel[level].computeIfAbsent(label.getIntegerLong(), key -> new TLongHashSet())
-					.addAll(
-					affectedBlocksAtHigherLevel);
+			addAffectedBlocksByLabel(level, label.getIntegerLong(), affectedBlocksAtHigherLevel);
 
 			LOG.debug("Interval at higher level: {} {}", Intervals.minAsLongArray(intervalAtHigherLevel), Intervals.maxAsLongArray(intervalAtHigherLevel));
 
@@ -964,9 +1434,7 @@ public class MaskedSource<D extends Type<D>, T extends Type<T>> implements DataS
 					level,
 					paintedLevel
 			                                                                                     );
-			this.affectedBlocksByLabel[level].computeIfAbsent(label.getIntegerLong(), key -> new TLongHashSet())
-					.addAll(
-					affectedBlocksAtLowerLevel);
+			addAffectedBlocksByLabel(level, label.getIntegerLong(), affectedBlocksAtLowerLevel);
 
 			final Interval paintedIntervalAtTargetLevel = scaleIntervalToLevel(
 					intervalAtPaintedScale,
@@ -1261,7 +1729,28 @@ public class MaskedSource<D extends Type<D>, T extends Type<T>> implements DataS
 	{
 		this.cacheDirectory.set(this.nextCacheDirectory.get());
 		this.affectedBlocks.clear();
-		Arrays.stream(this.affectedBlocksByLabel).forEach(Map::clear);
+		Arrays.stream(this.affectedCanvasBlocks).forEach(AtomicBitSet::clear);
+		final CanvasJournal journal;
+		synchronized (this)
+		{
+			Arrays.stream(this.affectedBlocksByLabel).forEach(Map::clear);
+			this.lastModified.clear();
+			this.committedAt.clear();
+			journal = this.journal;
+		}
+		if (journal != null)
+		{
+			synchronized (this.journalLock)
+			{
+				try
+				{
+					journal.reset();
+				} catch (final IOException e)
+				{
+					LOG.error("Unable to reset canvas journal {}", journal.getDirectory(), e);
+				}
+			}
+		}
 		this.canvasClearedListeners.forEach(Runnable::run);
 	}
 
@@ -1271,9 +1760,16 @@ public class MaskedSource<D extends Type<D>, T extends Type<T>> implements DataS
 		this.source.invalidateAll();
 	}
 
+	@Override
+	public void invalidate(final int level, final Collection<Long> blocks) {
+		this.source.invalidate(level, blocks);
+	}
+
 	private static class CanvasBaseDirChangeListener implements ChangeListener<String>
 	{
 
+		private final SparseCanvasStore[] canvasStores;
+
 		private final CachedCellImg<UnsignedLongType, ?>[] dataCanvases;
 
 		private final RandomAccessibleInterval<VolatileUnsignedLongType>[] canvases;
@@ -1283,12 +1779,14 @@ public class MaskedSource<D extends Type<D>, T extends Type<T>> implements DataS
 		private final int[][] blockSizes;
 
 		public CanvasBaseDirChangeListener(
+				final SparseCanvasStore[] canvasStores,
 				final CachedCellImg<UnsignedLongType, ?>[] dataCanvases,
 				final RandomAccessibleInterval<VolatileUnsignedLongType>[] canvases,
 				final long[][] dimensions,
 				final int[][] blockSizes)
 		{
 			super();
+			this.canvasStores = canvasStores;
 			this.dataCanvases = dataCanvases;
 			this.canvases = canvases;
 			this.dimensions = dimensions;
@@ -1307,37 +1805,19 @@ public class MaskedSource<D extends Type<D>, T extends Type<T>> implements DataS
 			LOG.info("Updating cache directory: observable={} oldValue={} newValue={}", observable, oldValue,
 					newValue);
 
-			final DiskCachedCellImgOptions opts = DiskCachedCellImgOptions
-					.options()
-					.volatileAccesses(true)
-					.dirtyAccesses(true);
-
 			for (int level = 0; level < canvases.length; ++level)
 			{
 				if (newValue != null)
 				{
-					final Path cacheDir = Paths.get(newValue, String.format("%d", level));
-					final DiskCachedCellImgOptions o = opts
-							.volatileAccesses(true)
-							.dirtyAccesses(true)
-							.cacheDirectory(cacheDir)
-							.deleteCacheDirectoryOnExit(true)
-							.cellDimensions(blockSizes[level]);
-					final DiskCachedCellImgFactory<UnsignedLongType>         f      = new DiskCachedCellImgFactory<>(
-							new UnsignedLongType(),
-							o
-					);
-					final CellLoader<UnsignedLongType>                       loader = img -> img.forEach(t -> t.set(
-							Label.INVALID));
-					final CachedCellImg<UnsignedLongType, ?>                 store  = f.create(
-							dimensions[level],
-							loader,
-							o
-					                                                                          );
-					final RandomAccessibleInterval<VolatileUnsignedLongType> vstore = VolatileViews.wrapAsVolatile(store);
-
-					this.dataCanvases[level] = store;
-					this.canvases[level] = vstore;
+					final Path spillDir = Paths.get(newValue, String.format("%d", level));
+					final SparseCanvasStore store = new SparseCanvasStore(
+							new CellGrid(dimensions[level], blockSizes[level]),
+							Label.INVALID,
+							spillDir);
+
+					this.canvasStores[level] = store;
+					this.dataCanvases[level] = store.getImg();
+					this.canvases[level] = store.getVolatileReadOnlyImg();
 				}
 			}
 		}
@@ -1379,7 +1859,28 @@ public class MaskedSource<D extends Type<D>, T extends Type<T>> implements DataS
 		this.canvasClearedListeners.add(listener);
 	}
 
-	Map<Long, long[]>[] getAffectedBlocksById()
+	/**
+	 * @param listener is notified with the {@link PersistCanvas.BlockDiff block diffs} for each level after blocks
+	 *                 were committed into the background, while holding the commit lock
+	 */
+	public void addOnCanvasCommittedListener(final Consumer<List<TLongObjectMap<PersistCanvas.BlockDiff>>> listener)
+	{
+		this.canvasCommittedListeners.add(listener);
+	}
+
+	/**
+	 *
+	 * @return snapshot of all ids that were painted into the canvas since it was last cleared
+	 */
+	public synchronized TLongSet getPaintedLabels()
+	{
+		final TLongSet paintedLabels = new TLongHashSet();
+		for (final Map<Long, TLongHashSet> affectedBlocks : this.affectedBlocksByLabel)
+			affectedBlocks.keySet().forEach(paintedLabels::add);
+		return paintedLabels;
+	}
+
+	synchronized Map<Long, long[]>[] getAffectedBlocksById()
 	{
 		@SuppressWarnings("unchecked") final Map<Long, long[]>[] maps = new HashMap[this.affectedBlocksByLabel.length];
 
@@ -1405,45 +1906,23 @@ public class MaskedSource<D extends Type<D>, T extends Type<T>> implements DataS
 
 		LOG.debug("Affected blocks: {} to add: {}", this.affectedBlocks, blocks);
 		this.affectedBlocks.addAll(blocks);
+		markAffectedCanvasBlocks(0, blocks);
 		LOG.debug("Affected blocks: {}", this.affectedBlocks);
 
-		LOG.debug("Affected blocks by id: {} to add: {}", this.affectedBlocksByLabel, blocksById);
+		LOG.debug("Affected blocks by id to add: {}", (Object) blocksById);
 		for (int level = 0; level < blocksById.length; ++level)
 		{
-			final Map<Long, TLongHashSet> map = this.affectedBlocksByLabel[level];
 			for (final Entry<Long, long[]> entry : blocksById[level].entrySet())
 			{
-				map.computeIfAbsent(entry.getKey(), key -> new TLongHashSet()).addAll(entry.getValue());
+				addAffectedBlocksByLabel(level, entry.getKey(), new TLongHashSet(entry.getValue()));
+				markAffectedCanvasBlocks(level, entry.getValue());
 			}
 		}
-		LOG.debug("Affected blocks by id: {}", this.affectedBlocksByLabel, null);
-
-	}
-
-	private DiskCachedCellImgOptions getMaskDiskCachedCellImgOptions(final int level)
-	{
-		return DiskCachedCellImgOptions
-				.options()
-				.cacheDirectory(null)
-				.deleteCacheDirectoryOnExit(true)
-				.volatileAccesses(true)
-				.dirtyAccesses(false)
-				.cellDimensions(this.blockSizes[level]);
-	}
-
-	private DiskCachedCellImg<UnsignedLongType, ?> createMaskStore(
-			final DiskCachedCellImgOptions maskOpts,
-			final int level)
-	{
-		return new DiskCachedCellImgFactory<>(new UnsignedLongType(), maskOpts).create(source.getSource(0, level));
 	}
 
-	private Pair<RandomAccessibleInterval<UnsignedLongType>, RandomAccessibleInterval<VolatileUnsignedLongType>> createMaskStoreWithVolatile(final int level)
+	private SparseCanvasStore createMaskStore(final int level)
 	{
-		final DiskCachedCellImgOptions maskOpts = getMaskDiskCachedCellImgOptions(level);
-		final CachedCellImg<UnsignedLongType, ?> store = createMaskStore(maskOpts, level);
-		final RandomAccessibleInterval<VolatileUnsignedLongType> vstore  = VolatileViews.wrapAsVolatile(store);
-		return new Pair<>(store, vstore);
+		return new SparseCanvasStore(new CellGrid(this.dimensions[level], this.blockSizes[level]), 0L, null);
 	}
 
 	private void setMasks(
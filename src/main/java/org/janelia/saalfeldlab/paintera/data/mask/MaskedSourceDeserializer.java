@@ -39,6 +39,8 @@ public class MaskedSourceDeserializer implements JsonDeserializer<MaskedSource<?
 
 	private static final String PERSIST_CANVAS_KEY = MaskedSourceSerializer.PERSIST_CANVAS_KEY;
 
+	private static final String CANVAS_JOURNAL_KEY = MaskedSourceSerializer.CANVAS_JOURNAL_KEY;
+
 	private final Supplier<String> currentProjectDirectory;
 
 	private final ExecutorService propagationExecutor;
@@ -94,7 +96,15 @@ public class MaskedSourceDeserializer implements JsonDeserializer<MaskedSource<?
 			                                     ? (MaskedSource<?, ?>) masked
 			                                     : null;
 
-			if (returnVal != null)
+			final String journalName = Optional
+					.ofNullable(map.get(CANVAS_JOURNAL_KEY))
+					.map(JsonElement::getAsString)
+					.orElse(null);
+			final boolean restoredFromJournal = Masks.journal(masked, Masks.canvasJournalDirectory(currentProjectDirectory.get(), journalName));
+
+			// the journal manifest holds the affected blocks of the restored canvas, the blocks that were saved with the
+			// project may be stale
+			if (returnVal != null && !restoredFromJournal)
 			{
 				final Type mapType = new TypeToken<HashMap<Long, long[]>[]>()
 				{}.getType();
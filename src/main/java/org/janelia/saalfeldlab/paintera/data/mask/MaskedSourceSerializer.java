@@ -2,6 +2,7 @@ package org.janelia.saalfeldlab.paintera.data.mask;
 
 import java.lang.invoke.MethodHandles;
 import java.lang.reflect.Type;
+import java.util.Optional;
 
 import com.google.gson.JsonElement;
 import com.google.gson.JsonObject;
@@ -32,6 +33,8 @@ public class MaskedSourceSerializer implements PainteraSerialization.PainteraSer
 
 	public static final String DIRTY_BLOCKS_BY_ID_KEY = "dirtyBlocksById";
 
+	public static final String CANVAS_JOURNAL_KEY = "canvasJournal";
+
 	@Override
 	public JsonElement serialize(final MaskedSource<?, ?> src, final Type type, final JsonSerializationContext context)
 	{
@@ -41,6 +44,7 @@ public class MaskedSourceSerializer implements PainteraSerialization.PainteraSer
 		LOG.debug("Not using relative directory for canvas directory!");
 		map.addProperty(PERSIST_CANVAS_CLASS_KEY, src.getPersister().getClass().getName());
 		map.add(PERSIST_CANVAS_KEY, context.serialize(src.getPersister(), src.getPersister().getClass()));
+		Optional.ofNullable(src.getJournal()).ifPresent(journal -> map.addProperty(CANVAS_JOURNAL_KEY, journal.getDirectory().getFileName().toString()));
 		// TODO re-use canvas
 		//		map.addProperty( CURRENT_CACHE_DIR_KEY, src.currentCanvasDirectory() );
 		//		LOG.debug( "Trying to relativize '{}' and '{}'", currentProjectDirectory.get(), src
@@ -1,11 +1,25 @@
 package org.janelia.saalfeldlab.paintera.data.mask;
 
+import java.io.IOException;
 import java.lang.invoke.MethodHandles;
+import java.nio.file.Files;
+import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Objects;
 import java.util.Optional;
+import java.util.Set;
+import java.util.UUID;
 import java.util.concurrent.ExecutorService;
 import java.util.function.Supplier;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
 
+import bdv.viewer.Source;
+import org.janelia.saalfeldlab.fx.ui.Exceptions;
+import org.janelia.saalfeldlab.fx.util.InvokeOnJavaFXApplicationThread;
 import org.janelia.saalfeldlab.paintera.data.DataSource;
 import org.janelia.saalfeldlab.paintera.data.mask.persist.PersistCanvas;
 import org.slf4j.Logger;
@@ -28,6 +42,8 @@ public class Masks
 
 	private static final Logger LOG = LoggerFactory.getLogger(MethodHandles.lookup().lookupClass());
 
+	private static final String CANVAS_JOURNAL_PREFIX = "journal-";
+
 	@SuppressWarnings({"unchecked", "rawtypes"})
 	public static <D, T> DataSource<D, T> mask(
 			final DataSource<D, T> source,
@@ -244,4 +260,81 @@ public class Masks
 		return new TmpDirectoryCreator(Paths.get(root, "canvases"), "canvas-");
 	}
 
+	/**
+	 *
+	 * @param root project directory
+	 * @param name name of journal directory, a new name is generated if {@code null}
+	 * @return canvas journal directory inside {@code root}
+	 */
+	public static Path canvasJournalDirectory(final String root, final String name)
+	{
+		return Paths.get(root, "canvases", Optional.ofNullable(name).orElseGet(() -> CANVAS_JOURNAL_PREFIX + UUID.randomUUID()));
+	}
+
+	/**
+	 * Delete canvas journal directories inside {@code root} that are not used by any of {@code sources}, e.g. journals
+	 * of sources that were removed from the project or that were never saved with the project. Call only after the
+	 * project was saved, otherwise the journals of the saved sources may not be referenced by the project anymore.
+	 *
+	 * @param root project directory
+	 * @param sources all sources of the project
+	 */
+	public static void deleteUnusedCanvasJournals(final String root, final Collection<? extends Source<?>> sources) throws IOException
+	{
+		final Path canvases = Paths.get(root, "canvases");
+		if (!Files.isDirectory(canvases))
+			return;
+		final Set<Path> used = sources
+				.stream()
+				.filter(source -> source instanceof MaskedSource<?, ?>)
+				.map(source -> ((MaskedSource<?, ?>) source).getJournal())
+				.filter(Objects::nonNull)
+				.map(journal -> journal.getDirectory().toAbsolutePath().normalize())
+				.collect(Collectors.toSet());
+		final List<Path> unused;
+		try (final Stream<Path> directories = Files.list(canvases))
+		{
+			unused = directories
+					.filter(Files::isDirectory)
+					.filter(directory -> directory.getFileName().toString().startsWith(CANVAS_JOURNAL_PREFIX))
+					.filter(directory -> !used.contains(directory.toAbsolutePath().normalize()))
+					.collect(Collectors.toList());
+		}
+		for (final Path directory : unused)
+		{
+			LOG.info("Deleting unused canvas journal {}", directory);
+			try (final Stream<Path> paths = Files.walk(directory))
+			{
+				for (final Path path : paths.sorted(Comparator.reverseOrder()).collect(Collectors.toList()))
+					Files.deleteIfExists(path);
+			}
+		}
+	}
+
+	/**
+	 * Journal the canvas of {@code source} into {@code directory} and restore the canvas from a previous session, if
+	 * {@code source} is a {@link MaskedSource}. If {@code directory} cannot be read, the canvas is cleared and not
+	 * journaled, and the user is notified.
+	 *
+	 * @param source possibly masked source
+	 * @param directory journal directory
+	 * @return {@code true} if the canvas was restored from a previous session
+	 */
+	public static boolean journal(final DataSource<?, ?> source, final Path directory)
+	{
+		if (!(source instanceof MaskedSource<?, ?>))
+			return false;
+		try
+		{
+			return ((MaskedSource<?, ?>) source).setJournal(new CanvasJournal(directory));
+		} catch (final IOException | RuntimeException e)
+		{
+			LOG.error("Unable to restore canvas of {} from journal {} -- canvas will not be journaled", source.getName(), directory, e);
+			InvokeOnJavaFXApplicationThread.invoke(() -> Exceptions.exceptionAlert(
+					String.format("Unable to restore unsaved paintings of %s from %s. The canvas was cleared and will not be journaled.", source.getName(), directory),
+					e).show());
+			return false;
+		}
+	}
+
 }
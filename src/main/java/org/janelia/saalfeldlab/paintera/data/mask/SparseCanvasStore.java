@@ -0,0 +1,463 @@
+package org.janelia.saalfeldlab.paintera.data.mask;
+
+import net.imglib2.RandomAccessibleInterval;
+import net.imglib2.cache.CacheLoader;
+import net.imglib2.cache.LoaderCache;
+import net.imglib2.cache.img.CachedCellImg;
+import net.imglib2.cache.img.DiskCellCache;
+import net.imglib2.converter.Converters;
+import net.imglib2.img.basictypeaccess.LongAccess;
+import net.imglib2.img.basictypeaccess.volatiles.array.VolatileLongArray;
+import net.imglib2.img.cell.Cell;
+import net.imglib2.img.cell.CellGrid;
+import net.imglib2.type.numeric.integer.UnsignedLongType;
+import net.imglib2.type.volatiles.VolatileUnsignedLongType;
+import net.imglib2.util.Intervals;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.lang.invoke.MethodHandles;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+
+/**
+ * Sparse store for the cells of a canvas (or mask) of {@link MaskedSource}. Only cells that are written to are
+ * materialized as {@code long[]}. Reading a cell that was never written returns a cell that is backed by a single,
+ * shared array filled with a constant value, without allocating memory or touching the disk.
+ *
+ * Two {@link CachedCellImg views} are provided:
+ * <ul>
+ *     <li>{@link #getImg()} materializes every cell that is accessed and must be used for writing.</li>
+ *     <li>{@link #getReadOnlyImg()} does not materialize cells and must not be written to.</li>
+ * </ul>
+ *
+ * Materialized cells can be {@link #spillIfOverBudget(long) spilled} to disk (run-length encoded) if they exceed a
+ * memory budget. Spilled cells are loaded back into memory when accessed through {@link #getImg()}. Reads through
+ * {@link #getReadOnlyImg()} are served from a small read-through cache of at most
+ * {@link #SPILLED_READ_CACHE_SIZE_IN_BYTES} that does not count towards the memory budget, i.e. rendering a spilled
+ * region does not bring it back into memory. Spilling is only safe while no cells are being written to.
+ */
+public class SparseCanvasStore
+{
+
+	private static final Logger LOG = LoggerFactory.getLogger(MethodHandles.lookup().lookupClass());
+
+	public static final long SPILLED_READ_CACHE_SIZE_IN_BYTES = 64 * 1024 * 1024;
+
+	private final CellGrid grid;
+
+	private final long fillValue;
+
+	private final Path spillDirectory;
+
+	private final VolatileLongArray constantAccess;
+
+	private final ConcurrentHashMap<Long, Cell<LongAccess>> cells = new ConcurrentHashMap<>();
+
+	private final Set<Long> spilledCells = ConcurrentHashMap.newKeySet();
+
+	/**
+	 * Guarded by {@code this}.
+	 */
+	private boolean isSpillDirectoryDeletedOnExit = false;
+
+	/**
+	 * Keys of materialized cells in order of materialization. Guarded by {@code this}.
+	 */
+	private final LinkedHashSet<Long> materializationOrder = new LinkedHashSet<>();
+
+	/**
+	 * Least recently read spilled cells, for {@link #getReadOnlyImg()} only. Guarded by {@code this}.
+	 */
+	private final LinkedHashMap<Long, Cell<LongAccess>> spilledReadCache;
+
+	private final CachedCellImg<UnsignedLongType, LongAccess> img;
+
+	private final CachedCellImg<UnsignedLongType, LongAccess> readOnlyImg;
+
+	/**
+	 *
+	 * @param grid cell grid
+	 * @param fillValue value of cells that were never written to
+	 * @param spillDirectory spill cells into this directory. If {@code null}, cells are never spilled. The directory
+	 *                       is deleted on exit once cells were spilled into it.
+	 */
+	public SparseCanvasStore(
+			final CellGrid grid,
+			final long fillValue,
+			final Path spillDirectory)
+	{
+		this.grid = grid;
+		this.fillValue = fillValue;
+		this.spillDirectory = spillDirectory;
+
+		final int[] cellDimensions = new int[grid.numDimensions()];
+		grid.cellDimensions(cellDimensions);
+		final long[] constantData = new long[(int) Intervals.numElements(cellDimensions)];
+		Arrays.fill(constantData, fillValue);
+		this.constantAccess = new VolatileLongArray(constantData, true);
+
+		final long maxNumSpilledReadCells = Math.max(1, SPILLED_READ_CACHE_SIZE_IN_BYTES / (constantData.length * (long) Long.BYTES));
+		this.spilledReadCache = new LinkedHashMap<Long, Cell<LongAccess>>(16, 0.75f, true)
+		{
+			@Override
+			protected boolean removeEldestEntry(final Map.Entry<Long, Cell<LongAccess>> eldest)
+			{
+				return size() > maxNumSpilledReadCells;
+			}
+		};
+
+		this.img = new CachedCellImg<>(
+				grid,
+				new UnsignedLongType(),
+				new PassThroughLoaderCache().withLoader(this::getOrMaterialize),
+				(LongAccess) new VolatileLongArray(1, true));
+		this.readOnlyImg = new CachedCellImg<>(
+				grid,
+				new UnsignedLongType(),
+				new PassThroughLoaderCache().withLoader(this::getOrConstant),
+				(LongAccess) new VolatileLongArray(1, true));
+	}
+
+	public CellGrid getGrid()
+	{
+		return this.grid;
+	}
+
+	/**
+	 *
+	 * @return view that materializes all cells that are accessed. Use for writing.
+	 */
+	public CachedCellImg<UnsignedLongType, LongAccess> getImg()
+	{
+		return this.img;
+	}
+
+	/**
+	 *
+	 * @return view that does not materialize any cells. Must not be written to.
+	 */
+	public CachedCellImg<UnsignedLongType, LongAccess> getReadOnlyImg()
+	{
+		return this.readOnlyImg;
+	}
+
+	/**
+	 *
+	 * @return volatile view of {@link #getReadOnlyImg()}. Canvas data is always available and therefore always valid.
+	 */
+	public RandomAccessibleInterval<VolatileUnsignedLongType> getVolatileReadOnlyImg()
+	{
+		return Converters.convert(
+				(RandomAccessibleInterval<UnsignedLongType>) this.readOnlyImg,
+				(s, t) -> {
+					t.get().set(s);
+					t.setValid(true);
+				},
+				new VolatileUnsignedLongType());
+	}
+
+	/**
+	 *
+	 * @param cell flat index of cell in {@link #getGrid() grid}
+	 * @return {@code true} if {@code cell} was written to (or accessed through {@link #getImg()}).
+	 */
+	public boolean isMaterialized(final long cell)
+	{
+		return cells.containsKey(cell) || spilledCells.contains(cell);
+	}
+
+	/**
+	 *
+	 * @return size of all cells that are materialized in memory. Spilled cells that are cached for reading are not
+	 * included.
+	 */
+	public long getMemoryUsageInBytes()
+	{
+		long numElements = 0;
+		for (final Cell<LongAccess> cell : cells.values())
+			numElements += cell.size();
+		return numElements * Long.BYTES;
+	}
+
+	/**
+	 * Spill the least recently materialized cells to disk until memory usage is within {@code budgetInBytes}. Must
+	 * not be called while cells are written to: Writes to a spilled cell through a previously obtained reference
+	 * are lost.
+	 *
+	 * @param budgetInBytes keep at most this many bytes in memory
+	 * @throws IOException if cells cannot be written to disk
+	 */
+	public synchronized void spillIfOverBudget(final long budgetInBytes) throws IOException
+	{
+		if (spillDirectory == null)
+			return;
+
+		long usage = getMemoryUsageInBytes();
+		if (usage <= budgetInBytes)
+			return;
+
+		LOG.debug("Spilling cells to {}: memory usage {} exceeds budget {}", spillDirectory, usage, budgetInBytes);
+		Files.createDirectories(spillDirectory);
+		if (!isSpillDirectoryDeletedOnExit)
+		{
+			DiskCellCache.addDeleteHook(spillDirectory);
+			isSpillDirectoryDeletedOnExit = true;
+		}
+		for (final Iterator<Long> it = materializationOrder.iterator(); it.hasNext() && usage > budgetInBytes; )
+		{
+			final Long key = it.next();
+			final Cell<LongAccess> cell = cells.get(key);
+			it.remove();
+			if (cell == null)
+				continue;
+			writeRunLengthEncoded(spillPath(key), cell.getData(), (int) cell.size());
+			spilledReadCache.remove(key);
+			spilledCells.add(key);
+			cells.remove(key);
+			usage -= cell.size() * Long.BYTES;
+		}
+	}
+
+	/**
+	 * Copy {@code keys} into a new store that is never spilled, e.g. to persist a consistent state of these cells
+	 * while this store is written to. Spilled cells are read from disk and remain spilled. Cells that are not
+	 * materialized are not copied and read as the fill value in the copy.
+	 *
+	 * @param keys flat indices of cells in {@link #getGrid() grid}
+	 * @return copy of {@code keys}
+	 * @throws IOException if spilled cells cannot be read from disk
+	 */
+	public synchronized SparseCanvasStore copyOf(final long[] keys) throws IOException
+	{
+		final SparseCanvasStore copy = new SparseCanvasStore(grid, fillValue, null);
+		for (final long key : keys)
+		{
+			final long[] data = getData(key);
+			if (data != null)
+				copy.restore(key, data);
+		}
+		return copy;
+	}
+
+	/**
+	 *
+	 * @param key flat index of cell in {@link #getGrid() grid}
+	 * @return copy of the data of {@code key} or {@code null} if {@code key} is not materialized. Spilled cells are
+	 * read from disk and remain spilled.
+	 * @throws IOException if spilled cell cannot be read from disk
+	 */
+	public synchronized long[] getData(final long key) throws IOException
+	{
+		final Cell<LongAccess> cell = cells.get(key);
+		if (cell != null)
+		{
+			final long[] data = new long[(int) cell.size()];
+			for (int i = 0; i < data.length; ++i)
+				data[i] = cell.getData().getValue(i);
+			return data;
+		}
+		if (spilledCells.contains(key))
+		{
+			final long[] data = new long[(int) Intervals.numElements(cellDimensions(key))];
+			readRunLengthEncoded(spillPath(key), data);
+			return data;
+		}
+		return null;
+	}
+
+	/**
+	 * Materialize {@code key} with {@code data}, e.g. when recovering a canvas. Replaces any previous data of
+	 * {@code key}. Must not be called while {@code key} is written to.
+	 *
+	 * @param key flat index of cell in {@link #getGrid() grid}
+	 * @param data cell data, is not copied
+	 * @throws IOException if a previously spilled cell cannot be deleted from disk
+	 */
+	public synchronized void restore(final long key, final long[] data) throws IOException
+	{
+		if (data.length != Intervals.numElements(cellDimensions(key)))
+			throw new IllegalArgumentException(String.format("Expected %d elements for cell %d but got %d", Intervals.numElements(cellDimensions(key)), key, data.length));
+		clear(key);
+		cells.put(key, createCell(key, new VolatileLongArray(data, true)));
+		materializationOrder.add(key);
+	}
+
+	/**
+	 * Discard {@code key}: subsequent reads return the fill value. Must not be called while {@code key} is written to.
+	 *
+	 * @param key flat index of cell in {@link #getGrid() grid}
+	 * @throws IOException if the spilled cell cannot be deleted from disk
+	 */
+	public synchronized void clear(final long key) throws IOException
+	{
+		cells.remove(key);
+		materializationOrder.remove(key);
+		spilledReadCache.remove(key);
+		if (spilledCells.remove(key))
+			Files.deleteIfExists(spillPath(key));
+	}
+
+	private Cell<LongAccess> getOrMaterialize(final Long key) throws IOException
+	{
+		final Cell<LongAccess> cell = cells.get(key);
+		return cell == null ? materialize(key) : cell;
+	}
+
+	private Cell<LongAccess> getOrConstant(final Long key) throws IOException
+	{
+		final Cell<LongAccess> cell = cells.get(key);
+		if (cell != null)
+			return cell;
+		return spilledCells.contains(key) ? readSpilled(key) : createCell(key, constantAccess);
+	}
+
+	/**
+	 * Read a spilled cell without materializing it. The returned cell must not be written to.
+	 */
+	private synchronized Cell<LongAccess> readSpilled(final Long key) throws IOException
+	{
+		final Cell<LongAccess> existing = cells.get(key);
+		if (existing != null)
+			return existing;
+		if (!spilledCells.contains(key))
+			return createCell(key, constantAccess);
+
+		final Cell<LongAccess> cached = spilledReadCache.get(key);
+		if (cached != null)
+			return cached;
+
+		final long[] data = new long[(int) Intervals.numElements(cellDimensions(key))];
+		readRunLengthEncoded(spillPath(key), data);
+		final Cell<LongAccess> cell = createCell(key, new VolatileLongArray(data, true));
+		spilledReadCache.put(key, cell);
+		return cell;
+	}
+
+	private synchronized Cell<LongAccess> materialize(final Long key) throws IOException
+	{
+		final Cell<LongAccess> existing = cells.get(key);
+		if (existing != null)
+			return existing;
+
+		spilledReadCache.remove(key);
+		final long[] data = new long[(int) Intervals.numElements(cellDimensions(key))];
+		if (spilledCells.contains(key))
+		{
+			final Path path = spillPath(key);
+			readRunLengthEncoded(path, data);
+			Files.deleteIfExists(path);
+		}
+		else
+			Arrays.fill(data, fillValue);
+
+		final Cell<LongAccess> cell = createCell(key, new VolatileLongArray(data, true));
+		cells.put(key, cell);
+		spilledCells.remove(key);
+		materializationOrder.add(key);
+		return cell;
+	}
+
+	private Cell<LongAccess> createCell(final long key, final LongAccess access)
+	{
+		final long[] cellMin = new long[grid.numDimensions()];
+		final int[] cellDims = new int[grid.numDimensions()];
+		grid.getCellDimensions(key, cellMin, cellDims);
+		return new Cell<>(cellDims, cellMin, access);
+	}
+
+	private int[] cellDimensions(final long key)
+	{
+		final long[] cellMin = new long[grid.numDimensions()];
+		final int[] cellDims = new int[grid.numDimensions()];
+		grid.getCellDimensions(key, cellMin, cellDims);
+		return cellDims;
+	}
+
+	private Path spillPath(final long key)
+	{
+		return spillDirectory.resolve(Long.toString(key));
+	}
+
+	/**
+	 * Write {@code numElements} values of {@code access} as (value, run length) pairs.
+	 */
+	private static void writeRunLengthEncoded(final Path path, final LongAccess access, final int numElements) throws IOException
+	{
+		try (final DataOutputStream os = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(path))))
+		{
+			int index = 0;
+			while (index < numElements)
+			{
+				final long value = access.getValue(index);
+				int runLength = 1;
+				while (index + runLength < numElements && access.getValue(index + runLength) == value)
+					++runLength;
+				os.writeLong(value);
+				os.writeInt(runLength);
+				index += runLength;
+			}
+		}
+	}
+
+	private static void readRunLengthEncoded(final Path path, final long[] data) throws IOException
+	{
+		try (final DataInputStream is = new DataInputStream(new BufferedInputStream(Files.newInputStream(path))))
+		{
+			int index = 0;
+			while (index < data.length)
+			{
+				final long value = is.readLong();
+				final int runLength = is.readInt();
+				Arrays.fill(data, index, index + runLength, value);
+				index += runLength;
+			}
+		}
+	}
+
+	/**
+	 * All cells are held by the {@link SparseCanvasStore} and the loader determines whether a cell is materialized,
+	 * so no additional caching is required.
+	 */
+	private class PassThroughLoaderCache implements LoaderCache<Long, Cell<LongAccess>>
+	{
+
+		@Override
+		public Cell<LongAccess> getIfPresent(final Long key)
+		{
+			return cells.get(key);
+		}
+
+		@Override
+		public Cell<LongAccess> get(final Long key, final CacheLoader<? super Long, ? extends Cell<LongAccess>> loader) throws ExecutionException
+		{
+			try
+			{
+				return loader.get(key);
+			} catch (final Exception e)
+			{
+				throw new ExecutionException(e);
+			}
+		}
+
+		@Override
+		public void invalidateAll()
+		{
+			// cells are owned by the store and cannot be re-loaded
+		}
+	}
+
+}
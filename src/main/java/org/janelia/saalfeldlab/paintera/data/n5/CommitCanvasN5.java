@@ -44,6 +44,7 @@ import org.janelia.saalfeldlab.paintera.data.mask.persist.PersistCanvas;
 import org.janelia.saalfeldlab.paintera.data.mask.persist.UnableToPersistCanvas;
 import org.janelia.saalfeldlab.paintera.data.mask.persist.UnableToUpdateLabelBlockLookup;
 import org.janelia.saalfeldlab.paintera.exception.PainteraException;
+import org.janelia.saalfeldlab.util.grids.LabelBlockLookupSharded;
 import org.janelia.saalfeldlab.util.math.ArrayMath;
 import org.janelia.saalfeldlab.util.n5.N5Helpers;
 import org.slf4j.Logger;
@@ -158,6 +159,27 @@ public class CommitCanvasN5 implements PersistCanvas
 				modifiedIds.addAll(addedById.keySet());
 				LOG.debug("Removed by id: {}", removedById);
 				LOG.debug("Added by id: {}", addedById);
+				if (labelBlockLoader instanceof LabelBlockLookupSharded)
+				{
+					// read and write each shard only once for all modified ids
+					final LabelBlockLookupSharded shardedLookup = (LabelBlockLookupSharded) labelBlockLoader;
+					final TLongObjectMap<long[]> blocksById = shardedLookup.readBlocks(level, modifiedIds.toArray());
+					for (final TLongObjectIterator<long[]> blocksIt = blocksById.iterator(); blocksIt.hasNext(); )
+					{
+						blocksIt.advance();
+						final TLongSet blockListLinearIndices = new TLongHashSet(blocksIt.value());
+						final TLongSet removed = removedById.get(blocksIt.key());
+						final TLongSet added = addedById.get(blocksIt.key());
+						if (removed != null)
+							blockListLinearIndices.removeAll(removed);
+						if (added != null)
+							blockListLinearIndices.addAll(added);
+						blocksIt.setValue(blockListLinearIndices.toArray());
+					}
+					shardedLookup.writeBlocks(level, blocksById);
+					continue;
+				}
+
 				for (final long modifiedId : modifiedIds.toArray())
 				{
 					final Interval[] blockList = labelBlockLoader.read(level, modifiedId);
@@ -0,0 +1,182 @@
+package org.janelia.saalfeldlab.paintera.data.n5;
+
+import java.io.IOException;
+import java.lang.invoke.MethodHandles;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Optional;
+import java.util.UUID;
+
+import org.janelia.saalfeldlab.n5.DataBlock;
+import org.janelia.saalfeldlab.n5.DataType;
+import org.janelia.saalfeldlab.n5.DatasetAttributes;
+import org.janelia.saalfeldlab.n5.DoubleArrayDataBlock;
+import org.janelia.saalfeldlab.n5.GzipCompression;
+import org.janelia.saalfeldlab.n5.N5FSWriter;
+import org.janelia.saalfeldlab.n5.N5Reader;
+import org.janelia.saalfeldlab.n5.N5Writer;
+import org.janelia.saalfeldlab.paintera.data.BlockStatistics;
+import org.janelia.saalfeldlab.util.PainteraCache;
+import org.janelia.saalfeldlab.util.n5.N5Helpers;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import net.imglib2.img.cell.CellGrid;
+
+/**
+ * Persist {@link BlockStatistics} in an N5 group, with one scale dataset per level: {@code <group>/s<level>}. Each
+ * scale dataset has the same dimensions and block size as the {@link CellGrid} of the statistics at that level and
+ * each block of the scale dataset holds the statistics of the corresponding data block (see
+ * {@link BlockStatistics.Statistics#toArray()}), analogous to the {@code unique-labels} of Paintera label datasets.
+ *
+ * Statistics are written only if the container is writable, otherwise they are cached in memory only.
+ */
+public class N5BlockStatisticsStore implements BlockStatistics.Store
+{
+
+	private static final Logger LOG = LoggerFactory.getLogger(MethodHandles.lookup().lookupClass());
+
+	public static final String BLOCK_STATISTICS_GROUP = "block-statistics";
+
+	public static final String CONTAINER_KEY = "container";
+
+	public static final String DATASET_KEY = "dataset";
+
+	private final N5Reader n5;
+
+	private final String group;
+
+	private final CellGrid[] grids;
+
+	private final DatasetAttributes[] attributes;
+
+	private volatile boolean isWritable;
+
+	/**
+	 *
+	 * @param n5 container
+	 * @param group statistics for level {@code l} are stored in {@code group/s<l>}
+	 * @param grids grids of the statistics for each level
+	 */
+	public N5BlockStatisticsStore(
+			final N5Reader n5,
+			final String group,
+			final CellGrid[] grids)
+	{
+		this.n5 = n5;
+		this.group = group;
+		this.grids = grids;
+		this.attributes = new DatasetAttributes[grids.length];
+		this.isWritable = n5 instanceof N5Writer;
+	}
+
+	/**
+	 * Statistics are derived data and are stored in the Paintera cache directory (see
+	 * {@link PainteraCache#getCacheFile(Class, String)}), in one N5 container per container and dataset of
+	 * {@code source}. The container of {@code source} is never modified. Statistics of sources that are neither
+	 * backed by the file system nor by HDF5 are cached in memory only.
+	 *
+	 * @param source N5 data source
+	 * @param grids grids of the statistics for each level
+	 * @return {@link N5BlockStatisticsStore} in the Paintera cache directory or {@link Optional#empty()}
+	 */
+	public static Optional<N5BlockStatisticsStore> forSource(final N5DataSource<?, ?> source, final CellGrid[] grids)
+	{
+		final String container = N5Helpers.containerLocation(source.meta());
+		if (container == null)
+			return Optional.empty();
+		final String key = container + "\n" + source.dataset();
+		final Path directory = PainteraCache.getCacheFile(
+				N5BlockStatisticsStore.class,
+				UUID.nameUUIDFromBytes(key.getBytes(StandardCharsets.UTF_8)).toString());
+		try
+		{
+			final N5FSWriter n5 = new N5FSWriter(directory.toString());
+			// for reference only, the directory name identifies container and dataset
+			n5.setAttribute("", CONTAINER_KEY, container);
+			n5.setAttribute("", DATASET_KEY, source.dataset());
+			return Optional.of(new N5BlockStatisticsStore(n5, BLOCK_STATISTICS_GROUP, grids));
+		} catch (final IOException e)
+		{
+			LOG.debug("Unable to create block statistics cache for {} in {}", source.dataset(), directory, e);
+			return Optional.empty();
+		}
+	}
+
+	@Override
+	public double[] read(final int level, final long blockIndex) throws IOException
+	{
+		final DatasetAttributes attributes = attributes(level, false);
+		if (attributes == null)
+			return null;
+		final DataBlock<?> block = n5.readBlock(dataset(level), attributes, gridPosition(level, blockIndex));
+		return block instanceof DoubleArrayDataBlock ? ((DoubleArrayDataBlock) block).getData() : null;
+	}
+
+	@Override
+	public void write(final int level, final long blockIndex, final double[] statistics) throws IOException
+	{
+		if (!isWritable)
+			return;
+		try
+		{
+			final DatasetAttributes attributes = attributes(level, true);
+			if (attributes == null)
+				return;
+			((N5Writer) n5).writeBlock(
+					dataset(level),
+					attributes,
+					new DoubleArrayDataBlock(new int[] {statistics.length}, gridPosition(level, blockIndex), statistics));
+		} catch (final IOException e)
+		{
+			// do not try again, e.g. if container is read-only
+			LOG.info("Unable to write block statistics to {}, keeping statistics in memory only: {}", group, e.getMessage());
+			isWritable = false;
+		}
+	}
+
+	private synchronized DatasetAttributes attributes(final int level, final boolean create) throws IOException
+	{
+		if (attributes[level] == null)
+		{
+			final String dataset = dataset(level);
+			if (n5.datasetExists(dataset))
+			{
+				final DatasetAttributes existing = n5.getDatasetAttributes(dataset);
+				final int[] blockSize = new int[grids[level].numDimensions()];
+				grids[level].cellDimensions(blockSize);
+				if (Arrays.equals(existing.getDimensions(), grids[level].getImgDimensions()) && Arrays.equals(existing.getBlockSize(), blockSize))
+					attributes[level] = existing;
+				else
+				{
+					// stale or incompatible statistics, e.g. from a different block size
+					LOG.warn("Block statistics in {} do not match data grid {}, not using stored statistics", dataset, grids[level]);
+					isWritable = false;
+					return null;
+				}
+			}
+			else if (create)
+			{
+				final int[] blockSize = new int[grids[level].numDimensions()];
+				grids[level].cellDimensions(blockSize);
+				((N5Writer) n5).createDataset(dataset, grids[level].getImgDimensions(), blockSize, DataType.FLOAT64, new GzipCompression());
+				attributes[level] = n5.getDatasetAttributes(dataset);
+			}
+		}
+		return attributes[level];
+	}
+
+	private String dataset(final int level)
+	{
+		return group + "/s" + level;
+	}
+
+	private long[] gridPosition(final int level, final long blockIndex)
+	{
+		final long[] gridPosition = new long[grids[level].numDimensions()];
+		grids[level].getCellGridPositionFlat(blockIndex, gridPosition);
+		return gridPosition;
+	}
+
+}
@@ -61,6 +61,11 @@ public class N5HDF5Meta implements N5Meta
 		return dataset;
 	}
 
+	public String file()
+	{
+		return file;
+	}
+
 	private static IHDF5Reader ihdfReaderFromReader(final N5HDF5Reader reader) throws ReflectionException
 	{
 
@@ -9,6 +9,10 @@ import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Optional;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 import java.util.function.BiConsumer;
 import java.util.function.Consumer;
 import java.util.function.IntConsumer;
@@ -30,6 +34,7 @@ import net.imglib2.exception.IncompatibleTypeException;
 import org.janelia.saalfeldlab.paintera.serialization.sourcestate.SourceStateSerialization;
 import org.janelia.saalfeldlab.paintera.state.SourceInfo;
 import org.janelia.saalfeldlab.paintera.state.SourceState;
+import org.janelia.saalfeldlab.util.NamedThreadFactory;
 import org.scijava.plugin.Plugin;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -52,6 +57,10 @@ public class SourceInfoSerializer implements PainteraSerialization.PainteraSeria
 
 	private static final String STATE_TYPE_KEY = "type";
 
+	private static final ExecutorService DATA_SOURCE_PRELOADERS = Executors.newFixedThreadPool(
+			Math.max(Runtime.getRuntime().availableProcessors(), 1),
+			new NamedThreadFactory("data-source-preload-%d", true));
+
 	@Override
 	public JsonElement serialize(final SourceInfo src, final Type typeOfSrc, final JsonSerializationContext context)
 	{
@@ -135,29 +144,39 @@ public class SourceInfoSerializer implements PainteraSerialization.PainteraSeria
 
 		if (hasCycles(dependsOn)) { throw new HasCyclicDependencies(dependsOn); }
 
-		final SourceState<?, ?>[] sourceStates = new SourceState[numStates];
+		// opening data sets is the expensive part: open the data sources of all states in parallel, but build the states
+		// on the calling thread (the JavaFX application thread when a project is loaded), as they attach meshes and
+		// other nodes to the scene graph
+		preloadDataSources(serializedStates, dependsOn, gson);
 
-		for (int i = 0; i < numStates && Arrays.stream(sourceStates).filter(s -> s == null).count() > 0; ++i)
+		final SourceState<?, ?>[] sourceStates = new SourceState[numStates];
+		try
 		{
-			for (int k = 0; k < numStates; ++k)
+			for (int i = 0; i < numStates && Arrays.stream(sourceStates).filter(s -> s == null).count() > 0; ++i)
 			{
-				if (sourceStates[k] == null)
+				for (int k = 0; k < numStates; ++k)
 				{
-					final SourceState<?, ?>[] dependencies = IntStream.of(dependsOn[k].toArray()).mapToObj(m ->
-							sourceStates[m]).toArray(
-							SourceState[]::new);
-					if (Stream.of(dependencies).filter(s -> s == null).count() == 0)
+					if (sourceStates[k] == null)
 					{
-						final JsonObject state = serializedStates.get(k).getAsJsonObject();
-						@SuppressWarnings("unchecked") final Class<? extends SourceState<?, ?>> clazz = (Class<?
-								extends SourceState<?, ?>>) Class.forName(
-								state.get(STATE_TYPE_KEY).getAsString());
-						LOG.debug("Deserializing state={}, class={}", state, clazz);
-						sourceStates[k] = gson.fromJson(state.get(STATE_KEY), clazz);
-						logSourceForDependencies.accept(k, sourceStates[k]);
+						final SourceState<?, ?>[] dependencies = IntStream.of(dependsOn[k].toArray()).mapToObj(m ->
+								sourceStates[m]).toArray(
+								SourceState[]::new);
+						if (Stream.of(dependencies).filter(s -> s == null).count() == 0)
+						{
+							final JsonObject state = serializedStates.get(k).getAsJsonObject();
+							@SuppressWarnings("unchecked") final Class<? extends SourceState<?, ?>> clazz = (Class<?
+									extends SourceState<?, ?>>) Class.forName(
+									state.get(STATE_TYPE_KEY).getAsString());
+							LOG.debug("Deserializing state={}, class={}", state, clazz);
+							sourceStates[k] = gson.fromJson(state.get(STATE_KEY), clazz);
+							logSourceForDependencies.accept(k, sourceStates[k]);
+						}
 					}
 				}
 			}
+		} finally
+		{
+			SourceStateSerialization.clearPreloadedDataSources();
 		}
 
 		if (Arrays.stream(sourceStates).filter(s -> s == null).count() > 0) { throw new RuntimeException("OOPS!"); }
@@ -166,12 +185,59 @@ public class SourceInfoSerializer implements PainteraSerialization.PainteraSeria
 
 	}
 
+	/**
+	 * Open the data sources of all states without dependencies in parallel, if their deserializers use preloaded data
+	 * sources (see {@link SourceStateSerialization#usesPreloadedDataSource(Class)}). Failures are only logged: the
+	 * state is deserialized without preloaded data source and reports the failure then.
+	 */
+	private static void preloadDataSources(final JsonArray serializedStates, final TIntHashSet[] dependsOn, final Gson gson)
+	{
+		final List<Future<?>> futures = new ArrayList<>();
+		for (int k = 0; k < dependsOn.length; ++k)
+		{
+			if (!dependsOn[k].isEmpty())
+				continue;
+			final JsonObject state = serializedStates.get(k).getAsJsonObject();
+			try
+			{
+				if (!SourceStateSerialization.usesPreloadedDataSource(Class.forName(state.get(STATE_TYPE_KEY).getAsString())))
+					continue;
+			} catch (final ClassNotFoundException e)
+			{
+				// reported when the state is deserialized
+				continue;
+			}
+			final JsonObject map = state.get(STATE_KEY).getAsJsonObject();
+			futures.add(DATA_SOURCE_PRELOADERS.submit(() -> {
+				SourceStateSerialization.preloadDataSource(map, gson);
+				return null;
+			}));
+		}
+
+		for (final Future<?> future : futures)
+		{
+			try
+			{
+				future.get();
+			} catch (final ExecutionException e)
+			{
+				LOG.debug("Unable to preload data source", e.getCause());
+			} catch (final InterruptedException e)
+			{
+				Thread.currentThread().interrupt();
+				futures.forEach(f -> f.cancel(true));
+				return;
+			}
+		}
+	}
+
 	private static boolean hasCycles(final TIntHashSet[] nodeEdgeMap)
 	{
 		final TIntHashSet visitedNodes = new TIntHashSet();
 		for (int node = 0; node < nodeEdgeMap.length; ++node)
 		{
-			visit(nodeEdgeMap, node, visitedNodes);
+			if (visit(nodeEdgeMap, node, visitedNodes, new TIntHashSet()))
+				return true;
 		}
 		return false;
 	}
@@ -179,15 +245,19 @@ public class SourceInfoSerializer implements PainteraSerialization.PainteraSeria
 	private static boolean visit(
 			final TIntHashSet[] nodeEdgeMap,
 			final int node,
-			final TIntHashSet hasVisited)
+			final TIntHashSet hasVisited,
+			final TIntHashSet isOnPath)
 	{
-		if (hasVisited.contains(node)) { return true; }
+		if (isOnPath.contains(node)) { return true; }
+		if (hasVisited.contains(node)) { return false; }
 		hasVisited.add(node);
+		isOnPath.add(node);
 		for (final TIntIterator it = nodeEdgeMap[node].iterator(); it.hasNext(); )
 		{
-			final boolean foundAlreadyVisitedNode = visit(nodeEdgeMap, it.next(), hasVisited);
-			if (foundAlreadyVisitedNode) { return foundAlreadyVisitedNode; }
+			final boolean foundCycle = visit(nodeEdgeMap, it.next(), hasVisited, isOnPath);
+			if (foundCycle) { return foundCycle; }
 		}
+		isOnPath.remove(node);
 		return false;
 	}
 
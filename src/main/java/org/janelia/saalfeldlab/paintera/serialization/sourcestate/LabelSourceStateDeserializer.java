@@ -16,8 +16,10 @@ import org.janelia.saalfeldlab.paintera.control.lock.LockedSegmentsOnlyLocal;
 import org.janelia.saalfeldlab.paintera.control.selection.SelectedIds;
 import org.janelia.saalfeldlab.paintera.control.selection.SelectedSegments;
 import org.janelia.saalfeldlab.paintera.data.DataSource;
+import org.janelia.saalfeldlab.paintera.data.LabelBlockIndexer;
 import org.janelia.saalfeldlab.paintera.data.mask.MaskedSource;
 import org.janelia.saalfeldlab.paintera.data.n5.N5DataSource;
+import org.janelia.saalfeldlab.paintera.data.n5.N5FSMeta;
 import org.janelia.saalfeldlab.paintera.data.n5.ReflectionException;
 import org.janelia.saalfeldlab.paintera.id.IdService;
 import org.janelia.saalfeldlab.paintera.meshes.InterruptibleFunction;
@@ -32,6 +34,8 @@ import org.janelia.saalfeldlab.paintera.state.SourceState;
 import org.janelia.saalfeldlab.paintera.stream.AbstractHighlightingARGBStream;
 import org.janelia.saalfeldlab.paintera.stream.HighlightingStreamConverter;
 import org.janelia.saalfeldlab.paintera.ui.PainteraAlerts;
+import org.janelia.saalfeldlab.util.grids.LabelBlockLookupIndexed;
+import org.janelia.saalfeldlab.util.grids.LabelBlockLookupSharded;
 import org.janelia.saalfeldlab.util.n5.N5Helpers;
 import org.scijava.plugin.Plugin;
 import org.slf4j.Logger;
@@ -60,10 +64,18 @@ public class LabelSourceStateDeserializer<C extends HighlightingStreamConverter<
 
 	private final Arguments arguments;
 
+	private final Supplier<String> projectDirectory;
+
 	public LabelSourceStateDeserializer(final Arguments arguments)
+	{
+		this(arguments, () -> null);
+	}
+
+	public LabelSourceStateDeserializer(final Arguments arguments, final Supplier<String> projectDirectory)
 	{
 		super();
 		this.arguments = arguments;
+		this.projectDirectory = projectDirectory;
 	}
 
 	@Plugin(type = StatefulSerializer.DeserializerFactory.class)
@@ -75,7 +87,7 @@ public class LabelSourceStateDeserializer<C extends HighlightingStreamConverter<
 		public LabelSourceStateDeserializer<C> createDeserializer(final Arguments arguments, final Supplier<String>
 				projectDirectory, final IntFunction<SourceState<?, ?>> dependencyFromIndex)
 		{
-			return new LabelSourceStateDeserializer<>(arguments);
+			return new LabelSourceStateDeserializer<>(arguments, projectDirectory);
 		}
 
 		@Override
@@ -124,9 +136,16 @@ public class LabelSourceStateDeserializer<C extends HighlightingStreamConverter<
 				selectedSegments, lockedSegments);
 
 		LOG.debug("Deserializing lookup from map {} with key {}", map, LabelSourceStateSerializer.LABEL_BLOCK_MAPPING_KEY);
-		final LabelBlockLookup lookup = map.has(LabelSourceStateSerializer.LABEL_BLOCK_MAPPING_KEY)
+		final LabelBlockLookup deserializedLookup = map.has(LabelSourceStateSerializer.LABEL_BLOCK_MAPPING_KEY)
 				? context.deserialize(map.get(LabelSourceStateSerializer.LABEL_BLOCK_MAPPING_KEY), LabelBlockLookup.class)
 				: getLabelBlockLookupFromN5IfPossible(isMaskedSource ? ((MaskedSource<?, ?>)source).underlyingSource() : source);
+		// sharded lookups store their root relative to the container
+		if (deserializedLookup instanceof LabelBlockLookupSharded)
+			setShardedLookupContainer((LabelBlockLookupSharded) deserializedLookup, getUnderlyingSource(source));
+		// resume incomplete indices and index data that previously used a lookup that returns all blocks
+		if (deserializedLookup instanceof LabelBlockLookupIndexed)
+			LabelBlockIndexer.indexInBackground((LabelBlockLookupIndexed) deserializedLookup, source);
+		final LabelBlockLookup lookup = LabelBlockIndexer.indexInBackgroundIfAllBlocks(deserializedLookup, source, projectDirectory.get());
 
 		final InterruptibleFunction<Long, Interval[]>[] blockLoaders = IntStream
 				.range(0, source.getNumMipmapLevels())
@@ -210,6 +229,13 @@ public class LabelSourceStateDeserializer<C extends HighlightingStreamConverter<
 		return context.deserialize(map.get(LabelSourceStateSerializer.DATA_KEY), clazz);
 	}
 
+	private static void setShardedLookupContainer(final LabelBlockLookupSharded lookup, final DataSource<?, ?> source) {
+		if (source instanceof N5DataSource<?, ?> && ((N5DataSource<?, ?>) source).meta() instanceof N5FSMeta)
+			lookup.setContainer(((N5FSMeta) ((N5DataSource<?, ?>) source).meta()).basePath());
+		else
+			LOG.warn("Cannot determine container of sharded label block lookup with root {} for source {}", lookup.getRoot(), source);
+	}
+
 	private static LabelBlockLookup getLabelBlockLookupFromN5IfPossible(final DataSource<?, ?> source) throws IOException {
 		return source instanceof N5DataSource<?, ?>
 				? getLabelBlockLookupFromN5((N5DataSource<?, ?>) source)
@@ -2,13 +2,22 @@ package org.janelia.saalfeldlab.paintera.serialization.sourcestate;
 
 import java.lang.invoke.MethodHandles;
 import java.lang.reflect.Type;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
 import java.util.Objects;
 import java.util.Optional;
+import java.util.Set;
 import java.util.function.IntFunction;
 import java.util.function.ToIntFunction;
 
 import bdv.viewer.Interpolation;
+import com.google.gson.Gson;
 import com.google.gson.JsonDeserializationContext;
 import com.google.gson.JsonDeserializer;
 import com.google.gson.JsonElement;
@@ -21,6 +30,10 @@ import net.imglib2.type.numeric.ARGBType;
 import org.janelia.saalfeldlab.paintera.composition.Composite;
 import org.janelia.saalfeldlab.paintera.data.DataSource;
 import org.janelia.saalfeldlab.paintera.data.axisorder.AxisOrder;
+import org.janelia.saalfeldlab.paintera.data.mask.MaskedSource;
+import org.janelia.saalfeldlab.paintera.state.ChannelSourceState;
+import org.janelia.saalfeldlab.paintera.state.LabelSourceState;
+import org.janelia.saalfeldlab.paintera.state.RawSourceState;
 import org.janelia.saalfeldlab.paintera.state.SourceState;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -52,6 +65,88 @@ public class SourceStateSerialization
 
 	public static final String AXIS_ORDER_KEY = "axisOrder";
 
+	/**
+	 * Data sources that were opened before their source states were deserialized, by serialized data source. Guarded
+	 * by its own lock.
+	 */
+	private static final Map<JsonElement, Deque<DataSource<?, ?>>> PRELOADED_DATA_SOURCES = new HashMap<>();
+
+	/**
+	 * Source states whose deserializers use preloaded data sources. Data sources of other states would be opened but
+	 * never used.
+	 */
+	private static final Set<Class<?>> STATES_WITH_PRELOADED_DATA_SOURCE = new HashSet<>(Arrays.asList(
+			RawSourceState.class,
+			LabelSourceState.class,
+			ChannelSourceState.class));
+
+	/**
+	 *
+	 * @param stateClass type of a serialized source state
+	 * @return {@code true} if a data source preloaded with {@link #preloadDataSource(JsonObject, Gson)} is used when a
+	 * state of type {@code stateClass} is deserialized
+	 */
+	public static boolean usesPreloadedDataSource(final Class<?> stateClass)
+	{
+		return STATES_WITH_PRELOADED_DATA_SOURCE.contains(stateClass);
+	}
+
+	/**
+	 * Open the data source of a serialized source state ahead of deserializing the state, e.g. to open the data
+	 * sources of multiple states in parallel. The next source state that is deserialized from an equal data source
+	 * uses the preloaded data source. Opening a data source does not modify any scene graph and may be called from
+	 * any thread.
+	 *
+	 * @param map serialized source state
+	 * @param gson deserialize data source with {@code gson}
+	 * @throws ClassNotFoundException if the data source type is not on the class path
+	 */
+	public static void preloadDataSource(final JsonObject map, final Gson gson) throws ClassNotFoundException
+	{
+		if (!map.has(SOURCE_KEY) || !map.has(SOURCE_TYPE_KEY))
+			return;
+		final Class<?> dataSourceClass = Class.forName(map.get(SOURCE_TYPE_KEY).getAsString());
+		final DataSource<?, ?> dataSource = (DataSource<?, ?>) gson.fromJson(map.get(SOURCE_KEY), dataSourceClass);
+		synchronized (PRELOADED_DATA_SOURCES)
+		{
+			PRELOADED_DATA_SOURCES.computeIfAbsent(map.get(SOURCE_KEY), k -> new ArrayDeque<>()).add(dataSource);
+		}
+	}
+
+	/**
+	 * Discard all preloaded data sources that were not used by any source state. Masked sources have recovered their
+	 * canvas journals when they were opened and are {@link MaskedSource#discard() discarded}.
+	 */
+	public static void clearPreloadedDataSources()
+	{
+		final List<DataSource<?, ?>> unused = new ArrayList<>();
+		synchronized (PRELOADED_DATA_SOURCES)
+		{
+			PRELOADED_DATA_SOURCES.values().forEach(unused::addAll);
+			PRELOADED_DATA_SOURCES.clear();
+		}
+		for (final DataSource<?, ?> dataSource : unused)
+		{
+			LOG.debug("Discarding unused preloaded data source {}", dataSource.getName());
+			if (dataSource instanceof MaskedSource<?, ?>)
+				((MaskedSource<?, ?>) dataSource).discard();
+		}
+	}
+
+	private static DataSource<?, ?> takePreloadedDataSource(final JsonElement serializedDataSource)
+	{
+		synchronized (PRELOADED_DATA_SOURCES)
+		{
+			final Deque<DataSource<?, ?>> dataSources = PRELOADED_DATA_SOURCES.get(serializedDataSource);
+			if (dataSources == null)
+				return null;
+			final DataSource<?, ?> dataSource = dataSources.poll();
+			if (dataSources.isEmpty())
+				PRELOADED_DATA_SOURCES.remove(serializedDataSource);
+			return dataSource;
+		}
+	}
+
 	private static abstract class AbstractSourceStateSerializer<S extends SourceState<?, ?>>
 			implements JsonSerializer<S>
 	{
@@ -149,9 +244,10 @@ public class SourceStateSerialization
 				final Composite<ARGBType, ARGBType> composite  = context.deserialize(
 						map.get(COMPOSITE_KEY),
 						compositeClass);
-				final DataSource<?, ?>              dataSource = context.deserialize(
-						map.get(SOURCE_KEY),
-						dataSourceClass);
+				final DataSource<?, ?>              preloaded  = takePreloadedDataSource(map.get(SOURCE_KEY));
+				final DataSource<?, ?>              dataSource = preloaded == null
+						? context.deserialize(map.get(SOURCE_KEY), dataSourceClass)
+						: preloaded;
 				final String                        name       = map.get(NAME_KEY).getAsString();
 				final boolean                       isVisible  = map.get(IS_VISIBLE_KEY).getAsBoolean();
 				LOG.debug("Is visible? {}", isVisible);
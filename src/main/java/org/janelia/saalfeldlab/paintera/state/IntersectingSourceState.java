@@ -2,12 +2,17 @@ package org.janelia.saalfeldlab.paintera.state;
 
 import java.lang.invoke.MethodHandles;
 import java.util.Arrays;
+import java.util.List;
 import java.util.Optional;
 import java.util.concurrent.ExecutorService;
 import java.util.function.Function;
 import java.util.function.Predicate;
+import java.util.stream.Collectors;
+import java.util.stream.LongStream;
 import java.util.stream.Stream;
 
+import org.janelia.saalfeldlab.fx.util.InvokeOnJavaFXApplicationThread;
+import org.janelia.saalfeldlab.paintera.PainteraBaseView;
 import org.janelia.saalfeldlab.paintera.cache.Invalidate;
 import org.janelia.saalfeldlab.paintera.cache.InvalidateAll;
 import org.janelia.saalfeldlab.paintera.cache.global.GlobalCache;
@@ -26,10 +31,13 @@ import org.janelia.saalfeldlab.paintera.meshes.MeshManager;
 import org.janelia.saalfeldlab.paintera.meshes.MeshManagerSimple;
 import org.janelia.saalfeldlab.paintera.meshes.ShapeKey;
 import org.janelia.saalfeldlab.paintera.meshes.cache.CacheUtils;
+import org.janelia.saalfeldlab.paintera.viewer3d.LatestTaskExecutor;
 import org.janelia.saalfeldlab.util.Colors;
+import org.janelia.saalfeldlab.util.NamedThreadFactory;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import gnu.trove.set.TLongSet;
 import gnu.trove.set.hash.TLongHashSet;
 import javafx.beans.binding.Bindings;
 import javafx.beans.binding.ObjectBinding;
@@ -62,7 +70,6 @@ import net.imglib2.util.Triple;
 import net.imglib2.util.Util;
 import net.imglib2.util.ValueTriple;
 import net.imglib2.view.Views;
-import tmp.bdv.img.cache.VolatileCachedCellImg;
 
 public class IntersectingSourceState
 		extends
@@ -74,6 +81,11 @@ public class IntersectingSourceState
 
 	private final MeshManagerSimple<TLongHashSet, TLongHashSet> meshManager;
 
+	// looking up the cells that contain the selected fragments may read from disk and must not block the FX thread
+	private final LatestTaskExecutor updateExecutor = new LatestTaskExecutor(new NamedThreadFactory("intersection-update-%d", true));
+
+	private Runnable requestRepaint = () -> {};
+
 	public <D extends IntegerType<D>, T extends Type<T>, B extends BooleanType<B>> IntersectingSourceState(
 			final ThresholdingSourceState<?, ?> thresholded,
 			final LabelSourceState<D, T> labels,
@@ -84,9 +96,33 @@ public class IntersectingSourceState
 			final Group meshesGroup,
 			final ExecutorService manager,
 			final ExecutorService workers) throws InvalidAccessException {
+		this(
+				thresholded,
+				labels,
+				composite,
+				name,
+				globalCache,
+				priority,
+				meshesGroup,
+				manager,
+				workers,
+				makeIntersect(thresholded, thresholded.getUnderlyingSource(), labels, globalCache, priority, name));
+	}
+
+	private <D extends IntegerType<D>, T extends Type<T>> IntersectingSourceState(
+			final ThresholdingSourceState<?, ?> thresholded,
+			final LabelSourceState<D, T> labels,
+			final Composite<ARGBType, ARGBType> composite,
+			final String name,
+			final GlobalCache globalCache,
+			final int priority,
+			final Group meshesGroup,
+			final ExecutorService manager,
+			final ExecutorService workers,
+			final Intersection intersection) {
 		// TODO use better converter
 		super(
-				makeIntersect(thresholded, labels, globalCache, priority, name),
+				intersection.source,
 				new ARGBColorConverter.Imp0<>(0, 1),
 				composite,
 				name,
@@ -101,21 +137,13 @@ public class IntersectingSourceState
 
 		final MeshManager<Long, TLongHashSet> meshManager = labels.meshManager();
 
-		final SelectedIds selectedIds = labels.selectedIds();
 		final Pair<InterruptibleFunctionAndCache<ShapeKey<TLongHashSet>, Pair<float[], float[]>>, Invalidate<ShapeKey<TLongHashSet>>>[] meshCaches = CacheUtils
 				.segmentMeshCacheLoaders(
 				source,
 				l -> (s, t) -> t.set(s.get() > 0),
 				globalCache::createNewCache);
 
-		final FragmentSegmentAssignmentState assignment                  = labels.assignment();
-		final SelectedSegments               selectedSegments            = new SelectedSegments(
-				selectedIds,
-				assignment
-		);
-		final FragmentsInSelectedSegments    fragmentsInSelectedSegments = new FragmentsInSelectedSegments(
-				selectedSegments
-		);
+		final FragmentsInSelectedSegments fragmentsInSelectedSegments = intersection.fragmentsInSelectedSegments;
 
 		this.meshManager = new MeshManagerSimple<>(
 				meshManager.blockListCache(),
@@ -145,50 +173,79 @@ public class IntersectingSourceState
 		this.meshManager.smoothingIterationsProperty().bind(meshManager.smoothingIterationsProperty());
 		this.meshManager.smoothingLambdaProperty().bind(meshManager.smoothingLambdaProperty());
 
-		thresholded.getThreshold().minValue().addListener((obs, oldv, newv) -> {
+		final ThresholdingSourceState.Threshold<?> threshold = thresholded.getThreshold();
+		threshold.minValue().addListener((obs, oldv, newv) -> {
 			Arrays.stream(meshCaches).map(Pair::getB).forEach(InvalidateAll::invalidateAll);
-			update(source, fragmentsInSelectedSegments);
+			requestUpdate(intersection, threshold);
 		});
-		thresholded.getThreshold().maxValue().addListener((obs, oldv, newv) -> {
+		threshold.maxValue().addListener((obs, oldv, newv) -> {
 			Arrays.stream(meshCaches).map(Pair::getB).forEach(InvalidateAll::invalidateAll);
-			update(source, fragmentsInSelectedSegments);
+			requestUpdate(intersection, threshold);
 		});
 
-		//		selectedIds.addListener( obs -> update( source, fragmentsInSelectedSegments ) );
-		//		assignment.addListener( obs -> update( source, fragmentsInSelectedSegments ) );
-		fragmentsInSelectedSegments.addListener(obs -> update(source, fragmentsInSelectedSegments));
+		//		selectedIds.addListener( obs -> update( intersection, threshold ) );
+		//		assignment.addListener( obs -> update( intersection, threshold ) );
+		fragmentsInSelectedSegments.addListener(obs -> requestUpdate(intersection, threshold));
+		requestUpdate(intersection, threshold);
+	}
+
+	@Override
+	public void onAdd(final PainteraBaseView paintera) {
+		this.requestRepaint = paintera.orthogonalViews()::requestRepaint;
+	}
+
+	@Override
+	public void onRemove(final SourceInfo sourceInfo) {
+		this.updateExecutor.shutDown();
+	}
+
+	/**
+	 * Read fragments and threshold on the calling thread and update the intersection in the background. Only the
+	 * latest request is processed if requests arrive faster than they can be processed.
+	 */
+	private void requestUpdate(
+			final Intersection intersection,
+			final ThresholdingSourceState.Threshold<?> threshold)
+	{
+		final long[] fragments = Optional.ofNullable(intersection.fragmentsInSelectedSegments.getFragments()).orElseGet(() -> new long[0]);
+		final double min = threshold.minValue().get();
+		final double max = threshold.maxValue().get();
+		updateExecutor.execute(() -> update(intersection, fragments, min, max));
 	}
 
 	private void update(
-			final DataSource<?, ?> source,
-			final FragmentsInSelectedSegments fragmentsInSelectedSegments)
+			final Intersection intersection,
+			final long[] fragments,
+			final double min,
+			final double max)
 	{
-		for (int level = 0; level < source.getNumMipmapLevels(); ++level)
+		// only invalidate cells that contain added or removed fragments, or that are affected by the threshold change
+		final TLongSet[] cellsToInvalidate = intersection.blocks.update(fragments, Math.min(min, max), Math.max(min, max));
+		for (int level = 0; level < intersection.invalidate.length; ++level)
 		{
-			final DataSource<?, ?>            dsource = source instanceof MaskedSource<?, ?>
-			                                            ? ((MaskedSource<?, ?>) source).underlyingSource()
-			                                            : source;
-			final RandomAccessibleInterval<?> data    = dsource.getDataSource(0, level);
-			if (data instanceof CachedCellImg<?, ?>)
+			if (cellsToInvalidate == null)
 			{
-				LOG.debug("Invalidating: data type={}", data.getClass().getName());
-				((CachedCellImg<?, ?>) data).getCache().invalidateAll();
+				LOG.debug("Invalidating all cells at level {}", level);
+				intersection.invalidate[level].invalidateAll();
+				intersection.vinvalidate[level].invalidateAll();
 			}
-
-			final RandomAccessibleInterval<?> vdata = dsource.getSource(0, level);
-			if (vdata instanceof VolatileCachedCellImg)
+			else if (!cellsToInvalidate[level].isEmpty())
 			{
-				LOG.debug("Invalidating: vdata type={}", vdata.getClass().getName());
-				((VolatileCachedCellImg<?, ?>) vdata).getInvalidateAll().run();
+				LOG.debug("Invalidating {} cells at level {}", cellsToInvalidate[level].size(), level);
+				final List<Long> keys = LongStream.of(cellsToInvalidate[level].toArray()).boxed().collect(Collectors.toList());
+				intersection.invalidate[level].invalidate(keys);
+				intersection.vinvalidate[level].invalidate(keys);
 			}
-
 		}
 
-		this.meshManager.removeAllMeshes();
-		if (Optional.ofNullable(fragmentsInSelectedSegments.getFragments()).map(sel -> sel.length).orElse(0) > 0)
-		{
-			this.meshManager.generateMesh(new TLongHashSet(fragmentsInSelectedSegments.getFragments()));
-		}
+		InvokeOnJavaFXApplicationThread.invoke(() -> {
+			this.requestRepaint.run();
+			this.meshManager.removeAllMeshes();
+			if (fragments.length > 0)
+			{
+				this.meshManager.generateMesh(new TLongHashSet(fragments));
+			}
+		});
 	}
 
 	public MeshManager<TLongHashSet, TLongHashSet> meshManager()
@@ -196,9 +253,38 @@ public class IntersectingSourceState
 		return this.meshManager;
 	}
 
+	private static class Intersection
+	{
+
+		private final DataSource<UnsignedByteType, VolatileUnsignedByteType> source;
+
+		private final Invalidate<Long>[] invalidate;
+
+		private final Invalidate<Long>[] vinvalidate;
+
+		private final LabelIntersectionBlocks blocks;
+
+		private final FragmentsInSelectedSegments fragmentsInSelectedSegments;
+
+		private Intersection(
+				final DataSource<UnsignedByteType, VolatileUnsignedByteType> source,
+				final Invalidate<Long>[] invalidate,
+				final Invalidate<Long>[] vinvalidate,
+				final LabelIntersectionBlocks blocks,
+				final FragmentsInSelectedSegments fragmentsInSelectedSegments)
+		{
+			this.source = source;
+			this.invalidate = invalidate;
+			this.vinvalidate = vinvalidate;
+			this.blocks = blocks;
+			this.fragmentsInSelectedSegments = fragmentsInSelectedSegments;
+		}
+	}
+
 	private static <D extends IntegerType<D>, T extends Type<T>, B extends BooleanType<B>>
-	DataSource<UnsignedByteType, VolatileUnsignedByteType> makeIntersect(
+	Intersection makeIntersect(
 			final SourceState<B, Volatile<B>> thresholded,
+			final RawSourceState<?, ?> raw,
 			final LabelSourceState<D, T> labels,
 			final GlobalCache globalCache,
 			final int priority,
@@ -229,11 +315,22 @@ public class IntersectingSourceState
 				selectedSegments
 		);
 
+		final CellGrid[] grids = new CellGrid[transforms.length];
+		for (int level = 0; level < grids.length; ++level)
+		{
+			final RandomAccessibleInterval<D> label = labelsSource(labels).getDataSource(0, level);
+			grids[level] = label instanceof AbstractCellImg<?, ?, ?, ?>
+			               ? ((AbstractCellImg<?, ?, ?, ?>) label).getCellGrid()
+			               : new CellGrid(
+					               Intervals.dimensionsAsLongArray(label),
+					               Arrays.stream(Intervals.dimensionsAsLongArray(label)).mapToInt(l -> (int) l).toArray()
+			               );
+		}
+		final LabelIntersectionBlocks blocks = new LabelIntersectionBlocks(grids, raw.blockStatistics(), labels.labelBlockLookup());
+
 		for (int level = 0; level < thresholded.getDataSource().getNumMipmapLevels(); ++level)
 		{
-			final DataSource<D, T> labelsSource = labels.getDataSource() instanceof MaskedSource<?, ?>
-			                                      ? ((MaskedSource<D, T>) labels.getDataSource()).underlyingSource()
-			                                      : labels.getDataSource();
+			final DataSource<D, T> labelsSource = labelsSource(labels);
 			final AffineTransform3D tf1 = new AffineTransform3D();
 			final AffineTransform3D tf2 = new AffineTransform3D();
 			thresholded.getDataSource().getSourceTransform(0, level, tf1);
@@ -246,14 +343,9 @@ public class IntersectingSourceState
 			final RandomAccessibleInterval<B> thresh = thresholded.getDataSource().getDataSource(0, level);
 			final RandomAccessibleInterval<D> label  = labelsSource.getDataSource(0, level);
 
-			final CellGrid grid = label instanceof AbstractCellImg<?, ?, ?, ?>
-			                      ? ((AbstractCellImg<?, ?, ?, ?>) label).getCellGrid()
-			                      : new CellGrid(
-					                      Intervals.dimensionsAsLongArray(label),
-					                      Arrays.stream(Intervals.dimensionsAsLongArray(label)).mapToInt(l -> (int) l)
-							                      .toArray()
-			                      );
+			final CellGrid grid = grids[level];
 
+			final int fLevel = level;
 			final B extension = Util.getTypeFromInterval(thresh);
 			extension.set(false);
 			final LabelIntersectionCellLoader<D, B> loader = new LabelIntersectionCellLoader<>(
@@ -261,7 +353,8 @@ public class IntersectingSourceState
 					Views.extendValue(thresh, extension),
 					checkForType(labelsSource.getDataType(), fragmentsInSelectedSegments),
 					BooleanType::get,
-					extension::copy
+					extension::copy,
+					cell -> blocks.mayContainIntersection(fLevel, cell)
 			);
 
 			LOG.debug("Making intersect for level={} with grid={}", level, grid);
@@ -277,13 +370,21 @@ public class IntersectingSourceState
 			transforms[level] = tf1;
 		}
 
-		return new RandomAccessibleIntervalDataSource<>(
+		final DataSource<UnsignedByteType, VolatileUnsignedByteType> source = new RandomAccessibleIntervalDataSource<>(
 				new ValueTriple<>(data, vdata, transforms),
 				() -> {Stream.of(invalidate).forEach(InvalidateAll::invalidateAll); Stream.of(vinvalidate).forEach(InvalidateAll::invalidateAll);},
 				Interpolations.nearestNeighbor(),
 				Interpolations.nearestNeighbor(),
 				name
 		);
+		return new Intersection(source, invalidate, vinvalidate, blocks, fragmentsInSelectedSegments);
+	}
+
+	private static <D extends IntegerType<D>, T> DataSource<D, T> labelsSource(final LabelSourceState<D, T> labels)
+	{
+		return labels.getDataSource() instanceof MaskedSource<?, ?>
+		       ? ((MaskedSource<D, T>) labels.getDataSource()).underlyingSource()
+		       : labels.getDataSource();
 	}
 
 	private static <T> Predicate<T> checkForType(final T t, final FragmentsInSelectedSegments fragmentsInSelectedSegments)
@@ -0,0 +1,259 @@
+package org.janelia.saalfeldlab.paintera.state;
+
+import java.io.IOException;
+import java.lang.invoke.MethodHandles;
+import java.util.Arrays;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.stream.Stream;
+
+import org.janelia.saalfeldlab.labels.blocks.LabelBlockLookup;
+import org.janelia.saalfeldlab.paintera.data.BlockStatistics;
+import org.janelia.saalfeldlab.paintera.data.mask.MaskedSource;
+import org.janelia.saalfeldlab.util.grids.LabelBlockLookupAllBlocks;
+import org.janelia.saalfeldlab.util.grids.LabelBlockLookupIndexed;
+import org.janelia.saalfeldlab.util.grids.LabelBlockLookupNoBlocks;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import gnu.trove.set.TLongSet;
+import gnu.trove.set.hash.TLongHashSet;
+import net.imglib2.FinalInterval;
+import net.imglib2.Interval;
+import net.imglib2.img.cell.CellGrid;
+import net.imglib2.util.IntervalIndexer;
+
+/**
+ * Keep track of which cells of a label/threshold intersection (see {@link LabelIntersectionCellLoader}) can be
+ * non-empty and which cells need to be re-computed when the selected fragments or the threshold change:
+ * <ul>
+ *     <li>Cells that do not contain any selected fragment according to a {@link LabelBlockLookup} are empty.</li>
+ *     <li>Cells in which the thresholded data (min/max summary per cell) lies outside the threshold are empty.</li>
+ *     <li>Only cells that contain added or removed fragments, or in which the thresholded data lies within the
+ *     changed part of the threshold range, are invalidated.</li>
+ * </ul>
+ *
+ * The per-cell min/max summary is looked up lazily from the {@link BlockStatistics} of the thresholded data and does
+ * not depend on the threshold.
+ */
+public class LabelIntersectionBlocks
+{
+
+	private static final Logger LOG = LoggerFactory.getLogger(MethodHandles.lookup().lookupClass());
+
+	private final CellGrid[] grids;
+
+	private final BlockStatistics thresholdedStatistics;
+
+	private final LabelBlockLookup labelBlockLookup;
+
+	private final Map<Long, double[]>[] minMax;
+
+	private volatile State state;
+
+	/**
+	 *
+	 * @param grids cell grid of the intersection for each level
+	 * @param thresholdedStatistics block statistics of the data that is thresholded, with the same levels as
+	 *                              {@code grids}
+	 * @param labelBlockLookup blocks that contain a label. If {@code null}, {@link LabelBlockLookupNoBlocks},
+	 *                         {@link LabelBlockLookupAllBlocks}, or a {@link LabelBlockLookupIndexed} whose index is
+	 *                         not complete yet, all cells are assumed to contain all labels.
+	 */
+	@SuppressWarnings("unchecked")
+	public LabelIntersectionBlocks(
+			final CellGrid[] grids,
+			final BlockStatistics thresholdedStatistics,
+			final LabelBlockLookup labelBlockLookup)
+	{
+		this.grids = grids;
+		this.thresholdedStatistics = thresholdedStatistics;
+		this.labelBlockLookup = labelBlockLookup instanceof LabelBlockLookupNoBlocks || labelBlockLookup instanceof LabelBlockLookupAllBlocks
+		                        ? null
+		                        : labelBlockLookup;
+		this.minMax = Stream.generate(ConcurrentHashMap::new).limit(grids.length).toArray(Map[]::new);
+		this.state = new State(new long[0], null, Double.NaN, Double.NaN);
+	}
+
+	/**
+	 *
+	 * @param level level
+	 * @param cell cell of the intersection at {@code level}
+	 * @return {@code false} if the cell is known to be empty for the current fragments and threshold
+	 */
+	public boolean mayContainIntersection(final int level, final Interval cell)
+	{
+		final State state = this.state;
+		final long cellIndex = cellIndex(level, cell);
+		if (state.candidateCells != null && !state.candidateCells[level].contains(cellIndex))
+			return false;
+		final double[] range = minMax(level, cellIndex);
+		return range[1] > state.thresholdMin && range[0] < state.thresholdMax;
+	}
+
+	/**
+	 * Update fragments and threshold. This may read the {@link LabelBlockLookup} and should not be called on the
+	 * JavaFX application thread.
+	 *
+	 * @param fragments selected fragments
+	 * @param thresholdMin lower bound of threshold (exclusive)
+	 * @param thresholdMax upper bound of threshold (exclusive)
+	 * @return cells to invalidate for each level, or {@code null} if all cells need to be invalidated
+	 */
+	public synchronized TLongSet[] update(final long[] fragments, final double thresholdMin, final double thresholdMax)
+	{
+		final State previous = this.state;
+		final long[] sortedFragments = fragments.clone();
+		Arrays.sort(sortedFragments);
+
+		final TLongSet[] candidateCells;
+		final TLongSet[] changedFragmentCells;
+		if (!isLabelBlockLookupUsable())
+		{
+			candidateCells = null;
+			changedFragmentCells = Arrays.equals(sortedFragments, previous.fragments) ? emptySets(grids.length) : null;
+		}
+		else
+		{
+			try
+			{
+				candidateCells = cellsContaining(sortedFragments);
+				changedFragmentCells = cellsContaining(symmetricDifference(sortedFragments, previous.fragments));
+			} catch (final IOException e)
+			{
+				LOG.warn("Unable to read label block lookup -- invalidating all cells", e);
+				this.state = new State(sortedFragments, null, thresholdMin, thresholdMax);
+				return null;
+			}
+		}
+
+		this.state = new State(sortedFragments, candidateCells, thresholdMin, thresholdMax);
+
+		final boolean thresholdChanged = thresholdMin != previous.thresholdMin || thresholdMax != previous.thresholdMax;
+		if (!thresholdChanged || changedFragmentCells == null)
+			return changedFragmentCells;
+
+		// values whose thresholded value changed lie within these ranges
+		final double lowerChangeMin = Math.min(thresholdMin, previous.thresholdMin);
+		final double lowerChangeMax = Math.max(thresholdMin, previous.thresholdMin);
+		final double upperChangeMin = Math.min(thresholdMax, previous.thresholdMax);
+		final double upperChangeMax = Math.max(thresholdMax, previous.thresholdMax);
+		if (Double.isNaN(lowerChangeMin) || Double.isNaN(upperChangeMin))
+			return null;
+
+		final TLongSet[] invalidate = changedFragmentCells;
+		for (int level = 0; level < grids.length; ++level)
+		{
+			final int fLevel = level;
+			final Map<Long, double[]> levelMinMax = minMax[level];
+			if (candidateCells == null)
+			{
+				// without block lookup, only cells that were loaded before have a summary and need to be invalidated
+				levelMinMax.forEach((cell, range) -> {
+					if (overlaps(range, lowerChangeMin, lowerChangeMax) || overlaps(range, upperChangeMin, upperChangeMax))
+						invalidate[fLevel].add(cell);
+				});
+			}
+			else
+				candidateCells[level].forEach(cell -> {
+					final double[] range = levelMinMax.get(cell);
+					if (range == null || overlaps(range, lowerChangeMin, lowerChangeMax) || overlaps(range, upperChangeMin, upperChangeMax))
+						invalidate[fLevel].add(cell);
+					return true;
+				});
+		}
+		return invalidate;
+	}
+
+	/**
+	 * A lookup that returns all blocks for every label does not restrict the candidate cells but would need to be
+	 * mapped onto the cell grid for each fragment. An {@link LabelBlockLookupIndexed indexed lookup} falls back to all
+	 * blocks until its index is complete, which is checked for each update.
+	 */
+	private boolean isLabelBlockLookupUsable()
+	{
+		if (labelBlockLookup == null)
+			return false;
+		if (labelBlockLookup instanceof LabelBlockLookupIndexed)
+			return ((LabelBlockLookupIndexed) labelBlockLookup).isComplete();
+		return true;
+	}
+
+	private TLongSet[] cellsContaining(final long[] fragments) throws IOException
+	{
+		final TLongSet[] cells = emptySets(grids.length);
+		for (int level = 0; level < grids.length; ++level)
+			for (final long fragment : fragments)
+				for (final Interval block : labelBlockLookup.read(level, fragment))
+					cells[level].addAll(MaskedSource.affectedBlocks(grids[level], block));
+		return cells;
+	}
+
+	/**
+	 * Summaries are computed when a cell is loaded for the first time, i.e. cells that were never loaded do not have a
+	 * summary yet.
+	 */
+	private double[] minMax(final int level, final long cellIndex)
+	{
+		return minMax[level].computeIfAbsent(cellIndex, index -> {
+			final long[] cellMin = new long[grids[level].numDimensions()];
+			final int[] cellDims = new int[grids[level].numDimensions()];
+			grids[level].getCellDimensions(index, cellMin, cellDims);
+			final long[] cellMax = new long[cellMin.length];
+			Arrays.setAll(cellMax, d -> cellMin[d] + cellDims[d] - 1);
+			return thresholdedStatistics.range(level, new FinalInterval(cellMin, cellMax));
+		});
+	}
+
+	private long cellIndex(final int level, final Interval cell)
+	{
+		final CellGrid grid = grids[level];
+		final int[] cellDimensions = new int[grid.numDimensions()];
+		grid.cellDimensions(cellDimensions);
+		final long[] gridPosition = new long[grid.numDimensions()];
+		Arrays.setAll(gridPosition, d -> cell.min(d) / cellDimensions[d]);
+		return IntervalIndexer.positionToIndex(gridPosition, grid.getGridDimensions());
+	}
+
+	private static boolean overlaps(final double[] range, final double min, final double max)
+	{
+		return range[0] <= max && range[1] >= min;
+	}
+
+	private static long[] symmetricDifference(final long[] sorted1, final long[] sorted2)
+	{
+		final TLongSet difference = new TLongHashSet(sorted1);
+		for (final long id : sorted2)
+			if (Arrays.binarySearch(sorted1, id) >= 0)
+				difference.remove(id);
+			else
+				difference.add(id);
+		return difference.toArray();
+	}
+
+	private static TLongSet[] emptySets(final int n)
+	{
+		return Stream.generate(TLongHashSet::new).limit(n).toArray(TLongSet[]::new);
+	}
+
+	private static class State
+	{
+
+		private final long[] fragments;
+
+		private final TLongSet[] candidateCells;
+
+		private final double thresholdMin;
+
+		private final double thresholdMax;
+
+		private State(final long[] fragments, final TLongSet[] candidateCells, final double thresholdMin, final double thresholdMax)
+		{
+			this.fragments = fragments;
+			this.candidateCells = candidateCells;
+			this.thresholdMin = thresholdMin;
+			this.thresholdMax = thresholdMax;
+		}
+	}
+
+}
@@ -5,6 +5,7 @@ import java.util.function.Predicate;
 import java.util.function.Supplier;
 
 import net.imglib2.Cursor;
+import net.imglib2.Interval;
 import net.imglib2.RandomAccessible;
 import net.imglib2.algorithm.fill.FloodFill;
 import net.imglib2.algorithm.neighborhood.DiamondShape;
@@ -33,12 +34,30 @@ public class LabelIntersectionCellLoader<T, U> implements CellLoader<UnsignedByt
 
 	private final Supplier<U> extension;
 
+	private final Predicate<Interval> mayContainIntersection;
+
 	public LabelIntersectionCellLoader(
 			final RandomAccessible<T> data1,
 			final RandomAccessible<U> data2,
 			final Predicate<T> check1,
 			final Predicate<U> check2,
 			final Supplier<U> extension)
+	{
+		this(data1, data2, check1, check2, extension, cell -> true);
+	}
+
+	/**
+	 *
+	 * @param mayContainIntersection cells for which this returns {@code false} are known to be empty and are not
+	 *                               populated, e.g. because they do not contain any of the selected labels.
+	 */
+	public LabelIntersectionCellLoader(
+			final RandomAccessible<T> data1,
+			final RandomAccessible<U> data2,
+			final Predicate<T> check1,
+			final Predicate<U> check2,
+			final Supplier<U> extension,
+			final Predicate<Interval> mayContainIntersection)
 	{
 		super();
 		this.data1 = data1;
@@ -46,11 +65,18 @@ public class LabelIntersectionCellLoader<T, U> implements CellLoader<UnsignedByt
 		this.check1 = check1;
 		this.check2 = check2;
 		this.extension = extension;
+		this.mayContainIntersection = mayContainIntersection;
 	}
 
 	@Override
 	public void load(final SingleCellArrayImg<UnsignedByteType, ?> cell) throws Exception
 	{
+		if (!mayContainIntersection.test(cell))
+		{
+			LOG.trace("Skipping empty cell {} {}", Intervals.minAsLongArray(cell), Intervals.maxAsLongArray(cell));
+			return;
+		}
+
 		LOG.debug(
 				"Populating cell {} {} {}",
 				Intervals.minAsLongArray(cell),
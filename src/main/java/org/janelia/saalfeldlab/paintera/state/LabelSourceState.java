@@ -1,5 +1,6 @@
 package org.janelia.saalfeldlab.paintera.state;
 
+import bdv.fx.viewer.ViewerPanelFX;
 import bdv.util.volatiles.VolatileTypeMatcher;
 import com.pivovarit.function.ThrowingFunction;
 import gnu.trove.set.hash.TLongHashSet;
@@ -54,7 +55,6 @@ import org.janelia.saalfeldlab.paintera.cache.global.GlobalCache;
 import org.janelia.saalfeldlab.paintera.composition.ARGBCompositeAlphaYCbCr;
 import org.janelia.saalfeldlab.paintera.composition.Composite;
 import org.janelia.saalfeldlab.paintera.control.ShapeInterpolationMode;
-import org.janelia.saalfeldlab.paintera.control.ShapeInterpolationMode.ActiveSection;
 import org.janelia.saalfeldlab.paintera.control.ShapeInterpolationMode.ModeState;
 import org.janelia.saalfeldlab.paintera.control.assignment.FragmentSegmentAssignmentOnlyLocal;
 import org.janelia.saalfeldlab.paintera.control.assignment.FragmentSegmentAssignmentState;
@@ -63,6 +63,7 @@ import org.janelia.saalfeldlab.paintera.control.lock.LockedSegmentsState;
 import org.janelia.saalfeldlab.paintera.control.selection.SelectedIds;
 import org.janelia.saalfeldlab.paintera.control.selection.SelectedSegments;
 import org.janelia.saalfeldlab.paintera.data.DataSource;
+import org.janelia.saalfeldlab.paintera.data.LabelBlockIndexer;
 import org.janelia.saalfeldlab.paintera.data.RandomAccessibleIntervalDataSource;
 import org.janelia.saalfeldlab.paintera.data.axisorder.AxisOrder;
 import org.janelia.saalfeldlab.paintera.data.mask.Mask;
@@ -78,12 +79,15 @@ import org.janelia.saalfeldlab.paintera.stream.HighlightingStreamConverter;
 import org.janelia.saalfeldlab.paintera.stream.HighlightingStreamConverterIntegerType;
 import org.janelia.saalfeldlab.paintera.stream.ModalGoldenAngleSaturatedHighlightingARGBStream;
 import org.janelia.saalfeldlab.util.Colors;
+import org.janelia.saalfeldlab.util.grids.LabelBlockLookupIndexed;
 import org.janelia.saalfeldlab.util.grids.LabelBlockLookupNoBlocks;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.lang.invoke.MethodHandles;
 import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
 import java.util.concurrent.ExecutorService;
 import java.util.function.Consumer;
 import java.util.function.Function;
@@ -134,6 +138,8 @@ public class LabelSourceState<D extends IntegerType<D>, T>
 
 	private final HBox displayStatus;
 
+	private final Map<ViewerPanelFX, ScreenIdBuffer<D>> screenIdBuffers = new HashMap<>();
+
 	public LabelSourceState(
 			final DataSource<D, T> dataSource,
 			final HighlightingStreamConverter<T> converter,
@@ -155,8 +161,10 @@ public class LabelSourceState<D extends IntegerType<D>, T>
 		this.idService = idService;
 		this.meshManager = meshManager;
 		this.labelBlockLookup = labelBlockLookup;
+		if (dataSource instanceof MaskedSource<?, ?> && labelBlockLookup instanceof LabelBlockLookupIndexed)
+			LabelBlockIndexer.updateOnCommit((MaskedSource<?, ?>) dataSource, (LabelBlockLookupIndexed) labelBlockLookup);
 		this.paintHandler = new LabelSourceStatePaintHandler(selectedIds);
-		this.idSelectorHandler = new LabelSourceStateIdSelectorHandler(dataSource, selectedIds, assignment, lockedSegments);
+		this.idSelectorHandler = new LabelSourceStateIdSelectorHandler(dataSource, selectedIds, assignment, lockedSegments, this::screenIdBuffer);
 		this.mergeDetachHandler = new LabelSourceStateMergeDetachHandler(dataSource, selectedIds, assignment, idService);
 		if (dataSource instanceof MaskedSource<?, ?>)
 			this.shapeInterpolationMode = new ShapeInterpolationMode<>((MaskedSource<D, ?>) dataSource, this, selectedIds, idService, converter, assignment);
@@ -166,12 +174,61 @@ public class LabelSourceState<D extends IntegerType<D>, T>
 		assignment.addListener(obs -> stain());
 		selectedIds.addListener(obs -> stain());
 		lockedSegments.addListener(obs -> stain());
+		isVisibleProperty().addListener((obs, oldv, newv) -> {
+			if (!newv)
+				disposeScreenIdBuffers();
+		});
+		if (dataSource instanceof MaskedSource<?, ?>)
+		{
+			final MaskedSource<?, ?> maskedSource = (MaskedSource<?, ?>) dataSource;
+			maskedSource.isApplyingMaskProperty().addListener(obs -> invalidateScreenIdBuffers());
+			maskedSource.addOnCanvasClearedListener(this::invalidateScreenIdBuffers);
+			maskedSource.addOnCanvasCommittedListener(blockDiffs -> invalidateScreenIdBuffers());
+		}
 	}
 
 	public LabelBlockLookup labelBlockLookup() {
 		return this.labelBlockLookup;
 	}
 
+	/**
+	 *
+	 * @param viewer viewer
+	 * @return {@link ScreenIdBuffer} of the label ids of this source in {@code viewer}. Buffers are created on first
+	 * request and filled whenever {@code viewer} finished rendering a changed view or changed data. Buffers are
+	 * disposed when this source is hidden or removed. {@code null} while this source is hidden.
+	 */
+	public synchronized ScreenIdBuffer<D> screenIdBuffer(final ViewerPanelFX viewer)
+	{
+		if (!isVisibleProperty().get())
+			return null;
+		return this.screenIdBuffers.computeIfAbsent(viewer, vp -> new ScreenIdBuffer<>(
+				getDataSource(),
+				vp,
+				ScreenIdBuffer.DEFAULT_SCREEN_SCALE,
+				this::isPainting));
+	}
+
+	/**
+	 * Paint strokes write into the mask of a {@link MaskedSource} without further notification.
+	 */
+	private boolean isPainting()
+	{
+		final DataSource<D, T> source = getDataSource();
+		return source instanceof MaskedSource<?, ?> && ((MaskedSource<?, ?>) source).getCurrentMask() != null;
+	}
+
+	private synchronized void invalidateScreenIdBuffers()
+	{
+		this.screenIdBuffers.values().forEach(ScreenIdBuffer::invalidate);
+	}
+
+	private synchronized void disposeScreenIdBuffers()
+	{
+		this.screenIdBuffers.values().forEach(ScreenIdBuffer::dispose);
+		this.screenIdBuffers.clear();
+	}
+
 	@Override
 	public LongFunction<Converter<D, BoolType>> maskForLabel()
 	{
@@ -213,6 +270,7 @@ public class LabelSourceState<D extends IntegerType<D>, T>
 	{
 		invalidateAllMeshCaches();
 		invalidateAllBlockCaches();
+		this.idSelectorHandler.invalidateAllIds();
 	}
 
 	public void invalidateAllMeshCaches()
@@ -528,6 +586,11 @@ public class LabelSourceState<D extends IntegerType<D>, T>
 		assignment.addListener(obs -> paintera.orthogonalViews().requestRepaint());
 	}
 
+	@Override
+	public void onRemove(final SourceInfo sourceInfo) {
+		disposeScreenIdBuffers();
+	}
+
 	@Override
 	public Node getDisplayStatus()
 	{
@@ -638,7 +701,7 @@ public class LabelSourceState<D extends IntegerType<D>, T>
 			final InvalidationListener shapeInterpolationModeStatusUpdater = obs -> {
 				InvokeOnJavaFXApplicationThread.invoke(() -> {
 					final ModeState modeState = this.shapeInterpolationMode.modeStateProperty().get();
-					final ActiveSection activeSection = this.shapeInterpolationMode.activeSectionProperty().get();
+					final Integer activeSection = this.shapeInterpolationMode.activeSectionProperty().get();
 					if (modeState != null) {
 						switch (modeState) {
 							case Select:
@@ -2,12 +2,14 @@ package org.janelia.saalfeldlab.paintera.state;
 
 import java.lang.invoke.MethodHandles;
 import java.util.HashMap;
+import java.util.function.Function;
 import java.util.function.LongPredicate;
 
 import org.janelia.saalfeldlab.fx.event.DelegateEventHandlers;
 import org.janelia.saalfeldlab.fx.event.EventFX;
 import org.janelia.saalfeldlab.fx.event.KeyTracker;
 import org.janelia.saalfeldlab.paintera.PainteraBaseView;
+import org.janelia.saalfeldlab.paintera.control.AllIdsCollector;
 import org.janelia.saalfeldlab.paintera.control.IdSelector;
 import org.janelia.saalfeldlab.paintera.control.actions.LabelActionType;
 import org.janelia.saalfeldlab.paintera.control.assignment.FragmentSegmentAssignment;
@@ -42,17 +44,31 @@ public class LabelSourceStateIdSelectorHandler {
 
 	private final LockedSegments lockedSegments;
 
+	private final Function<ViewerPanelFX, ScreenIdBuffer<?>> idBuffers;
+
 	private final HashMap<ViewerPanelFX, EventHandler<Event>> handlers = new HashMap<>();
 
+	private AllIdsCollector allIdsCollector = null;
+
 	public LabelSourceStateIdSelectorHandler(
 			final DataSource<? extends IntegerType<?>, ?> source,
 			final SelectedIds selectedIds,
 			final FragmentSegmentAssignment assignment,
 			final LockedSegments lockedSegments) {
+		this(source, selectedIds, assignment, lockedSegments, vp -> null);
+	}
+
+	public LabelSourceStateIdSelectorHandler(
+			final DataSource<? extends IntegerType<?>, ?> source,
+			final SelectedIds selectedIds,
+			final FragmentSegmentAssignment assignment,
+			final LockedSegments lockedSegments,
+			final Function<ViewerPanelFX, ScreenIdBuffer<?>> idBuffers) {
 		this.source = source;
 		this.selectedIds = selectedIds;
 		this.assignment = assignment;
 		this.lockedSegments = lockedSegments;
+		this.idBuffers = idBuffers;
 	}
 
 	public EventHandler<Event> viewerHandler(final PainteraBaseView paintera, final KeyTracker keyTracker) {
@@ -73,8 +89,23 @@ public class LabelSourceStateIdSelectorHandler {
 		};
 	}
 
+	/**
+	 * Discard cached ids for "select all", e.g. when the label data was modified.
+	 */
+	public synchronized void invalidateAllIds() {
+		if (this.allIdsCollector != null)
+			this.allIdsCollector.invalidate();
+	}
+
+	private synchronized AllIdsCollector allIdsCollector() {
+		// shared between viewers so that collected ids are cached once per source
+		if (this.allIdsCollector == null)
+			this.allIdsCollector = new AllIdsCollector(source);
+		return this.allIdsCollector;
+	}
+
 	private EventHandler<Event> makeHandler(final PainteraBaseView paintera, final KeyTracker keyTracker, final ViewerPanelFX vp) {
-		final IdSelector selector = new IdSelector(source, selectedIds, vp, FOREGROUND_CHECK);
+		final IdSelector selector = new IdSelector(source, selectedIds, vp, FOREGROUND_CHECK, () -> idBuffers.apply(vp), allIdsCollector());
 		final DelegateEventHandlers.AnyHandler handler = DelegateEventHandlers.handleAny();
 		// TODO event handlers should probably not be on ANY/RELEASED but on PRESSED
 		handler.addEventHandler(MouseEvent.ANY, selector.selectFragmentWithMaximumCount(
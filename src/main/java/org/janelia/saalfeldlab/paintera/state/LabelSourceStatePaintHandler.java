@@ -176,7 +176,8 @@ public class LabelSourceStatePaintHandler {
 				paintSelection,
 				brushRadius::get,
 				brushDepth::get,
-				event -> paintera.allowedActionsProperty().get().isAllowed(PaintActionType.Paint) && event.isPrimaryButtonDown() && keyTracker.areOnlyTheseKeysDown(KeyCode.SPACE));
+				event -> paintera.allowedActionsProperty().get().isAllowed(PaintActionType.Paint) && event.isPrimaryButtonDown() && keyTracker.areOnlyTheseKeysDown(KeyCode.SPACE),
+				paintera.orthogonalViews()::requestRepaint);
 		handler.addEventHandler(MouseEvent.ANY, paintDrag.singleEventHandler());
 
 		// erase
@@ -186,7 +187,8 @@ public class LabelSourceStatePaintHandler {
 				() -> Label.TRANSPARENT,
 				brushRadius::get,
 				brushDepth::get,
-				event -> paintera.allowedActionsProperty().get().isAllowed(PaintActionType.Erase) && event.isSecondaryButtonDown() && keyTracker.areOnlyTheseKeysDown(KeyCode.SPACE));
+				event -> paintera.allowedActionsProperty().get().isAllowed(PaintActionType.Erase) && event.isSecondaryButtonDown() && keyTracker.areOnlyTheseKeysDown(KeyCode.SPACE),
+				paintera.orthogonalViews()::requestRepaint);
 		handler.addEventHandler(MouseEvent.ANY, eraseDrag.singleEventHandler());
 
 		// background
@@ -196,7 +198,8 @@ public class LabelSourceStatePaintHandler {
 				() -> Label.BACKGROUND,
 				brushRadius::get,
 				brushDepth::get,
-				event -> paintera.allowedActionsProperty().get().isAllowed(PaintActionType.Background) && event.isSecondaryButtonDown() && keyTracker.areOnlyTheseKeysDown(KeyCode.SPACE, KeyCode.SHIFT));
+				event -> paintera.allowedActionsProperty().get().isAllowed(PaintActionType.Background) && event.isSecondaryButtonDown() && keyTracker.areOnlyTheseKeysDown(KeyCode.SPACE, KeyCode.SHIFT),
+				paintera.orthogonalViews()::requestRepaint);
 		handler.addEventHandler(MouseEvent.ANY, backgroundDrag.singleEventHandler());
 
 		// advanced paint stuff
@@ -23,14 +23,18 @@ import org.janelia.saalfeldlab.paintera.PainteraBaseView;
 import org.janelia.saalfeldlab.paintera.cache.InvalidateAll;
 import org.janelia.saalfeldlab.paintera.composition.Composite;
 import org.janelia.saalfeldlab.paintera.composition.CompositeCopy;
+import org.janelia.saalfeldlab.paintera.data.BlockStatistics;
 import org.janelia.saalfeldlab.paintera.data.DataSource;
 import org.janelia.saalfeldlab.paintera.data.RandomAccessibleIntervalDataSource;
 import org.janelia.saalfeldlab.paintera.data.axisorder.AxisOrder;
 import org.janelia.saalfeldlab.paintera.data.axisorder.AxisOrderNotSupported;
+import org.janelia.saalfeldlab.paintera.data.n5.N5BlockStatisticsStore;
+import org.janelia.saalfeldlab.paintera.data.n5.N5DataSource;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.lang.invoke.MethodHandles;
+import java.util.Optional;
 
 public class RawSourceState<D, T extends RealType<T>>
 		extends MinimalSourceState<D, T, DataSource<D, T>, ARGBColorConverter<T>>
@@ -38,6 +42,12 @@ public class RawSourceState<D, T extends RealType<T>>
 
 	private static final Logger LOG = LoggerFactory.getLogger(MethodHandles.lookup().lookupClass());
 
+	public static final double AUTO_CONTRAST_LOWER_PERCENTILE = 0.5;
+
+	public static final double AUTO_CONTRAST_UPPER_PERCENTILE = 99.5;
+
+	private BlockStatistics blockStatistics = null;
+
 	public RawSourceState(
 			final DataSource<D, T> dataSource,
 			final ARGBColorConverter<T> converter,
@@ -55,6 +65,38 @@ public class RawSourceState<D, T extends RealType<T>>
 		converter().colorProperty().addListener((obs, oldv, newv) -> paintera.orthogonalViews().requestRepaint());
 	}
 
+	/**
+	 * Per-block statistics of the data are computed lazily and persisted in the Paintera cache directory for N5 and
+	 * HDF5 datasets (see {@link N5BlockStatisticsStore}).
+	 *
+	 * @return per-block statistics of the data of this source
+	 */
+	public synchronized BlockStatistics blockStatistics()
+	{
+		if (this.blockStatistics == null)
+		{
+			final DataSource<D, T> source = getDataSource();
+			final BlockStatistics.Store store = source instanceof N5DataSource<?, ?>
+			                                    ? N5BlockStatisticsStore.forSource((N5DataSource<?, ?>) source, BlockStatistics.grids(source)).orElse(null)
+			                                    : null;
+			this.blockStatistics = BlockStatistics.fromDataSource(source, store);
+		}
+		return this.blockStatistics;
+	}
+
+	/**
+	 * Estimate a contrast range from the {@link #blockStatistics() block statistics} at the lowest resolution. This
+	 * may read or compute statistics for all blocks at the lowest resolution and should not be called on the
+	 * JavaFX application thread.
+	 *
+	 * @return values at {@link #AUTO_CONTRAST_LOWER_PERCENTILE} and {@link #AUTO_CONTRAST_UPPER_PERCENTILE} or
+	 * {@link Optional#empty()} if the data is empty
+	 */
+	public Optional<double[]> autoContrastRange()
+	{
+		return Optional.ofNullable(blockStatistics().percentiles(AUTO_CONTRAST_LOWER_PERCENTILE, AUTO_CONTRAST_UPPER_PERCENTILE));
+	}
+
 	public static <D extends RealType<D> & NativeType<D>, T extends AbstractVolatileNativeRealType<D, T>>
 	RawSourceState<D, T> simpleSourceFromSingleRAI(
 			final RandomAccessibleInterval<D> data,
@@ -0,0 +1,329 @@
+package org.janelia.saalfeldlab.paintera.state;
+
+import java.lang.invoke.MethodHandles;
+import java.util.Arrays;
+import java.util.Optional;
+import java.util.OptionalLong;
+import java.util.function.BooleanSupplier;
+
+import org.janelia.saalfeldlab.paintera.data.DataSource;
+import org.janelia.saalfeldlab.paintera.viewer3d.LatestTaskExecutor;
+import org.janelia.saalfeldlab.util.NamedThreadFactory;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import bdv.fx.viewer.ViewerPanelFX;
+import bdv.fx.viewer.ViewerState;
+import bdv.fx.viewer.render.RenderUnit;
+import bdv.viewer.Interpolation;
+import bdv.viewer.SourceAndConverter;
+import gnu.trove.set.TLongSet;
+import gnu.trove.set.hash.TLongHashSet;
+import javafx.beans.value.ChangeListener;
+import net.imglib2.Cursor;
+import net.imglib2.FinalInterval;
+import net.imglib2.realtransform.AffineTransform3D;
+import net.imglib2.realtransform.RealViews;
+import net.imglib2.type.label.Label;
+import net.imglib2.type.label.LabelMultisetType;
+import net.imglib2.type.label.LabelMultisetType.Entry;
+import net.imglib2.type.numeric.IntegerType;
+import net.imglib2.view.Views;
+
+/**
+ * Screen-space buffer of the label ids of a {@link DataSource} as displayed in a {@link ViewerPanelFX viewer}. The
+ * buffer is filled in the background, at a configurable screen scale, whenever the viewer finished rendering at the
+ * highest resolution and the buffer is outdated. The buffer stays valid until the viewer transform, the screen size,
+ * or the data change. Data changes are signaled through {@link #invalidate()}, or detected on render while
+ * {@code isDataChanging} holds, e.g. while a paint mask is active. As long as the buffer is valid, picking an id at
+ * a display position and collecting all ids in the current view are array and set lookups. Otherwise, no id is
+ * returned and callers fall back to sampling the data source directly.
+ *
+ * Call {@link #dispose()} when the buffer is not needed anymore to stop listening to the viewer.
+ *
+ * For {@link LabelMultisetType}, each pixel holds the id with the highest count (consistent with
+ * {@link LabelMultisetType#getIntegerLong()}), and {@link #getIdsInView() all ids in view} include all entries of the
+ * displayed multisets.
+ *
+ * @param <D> data type
+ */
+public class ScreenIdBuffer<D extends IntegerType<?>>
+{
+
+	private static final Logger LOG = LoggerFactory.getLogger(MethodHandles.lookup().lookupClass());
+
+	public static final double DEFAULT_SCREEN_SCALE = 1.0;
+
+	// wait for rendering to settle before filling the buffer
+	private static final long FILL_DELAY_NANO_SECONDS = 1000000 * 50; // 50 msec
+
+	private final DataSource<D, ?> source;
+
+	private final ViewerPanelFX viewer;
+
+	private final double screenScale;
+
+	private final LatestTaskExecutor fillExecutor = new LatestTaskExecutor(
+			FILL_DELAY_NANO_SECONDS,
+			new NamedThreadFactory("screen-id-buffer-%d", true));
+
+	private final BooleanSupplier isDataChanging;
+
+	/**
+	 * Incremented whenever the data may have changed. Buffers that were filled for an older version are outdated.
+	 */
+	private volatile long dataVersion = 0;
+
+	/**
+	 * Whether the most recent render was at the highest resolution, i.e. the buffer can be filled.
+	 */
+	private volatile boolean isFullResolution = false;
+
+	private volatile Buffer buffer = null;
+
+	/**
+	 * Key of the fill that was requested last, to avoid requesting the same fill repeatedly. Fills in progress stop
+	 * early when a different fill is requested.
+	 */
+	private volatile FillKey requestedFill = null;
+
+	private volatile boolean isDisposed = false;
+
+	private final ChangeListener<RenderUnit.RenderResult> renderListener = (obs, oldv, newv) -> rendered(newv);
+
+	/**
+	 *
+	 * @param source fill buffer with ids of this source
+	 * @param viewer fill buffer for this viewer
+	 * @param screenScale size of the buffer relative to the size of the screen, {@code 0 < screenScale <= 1}.
+	 * @param isDataChanging if {@code true} when the viewer rendered, the data is assumed to have changed
+	 */
+	public ScreenIdBuffer(
+			final DataSource<D, ?> source,
+			final ViewerPanelFX viewer,
+			final double screenScale,
+			final BooleanSupplier isDataChanging)
+	{
+		this.source = source;
+		this.viewer = viewer;
+		this.screenScale = screenScale;
+		this.isDataChanging = isDataChanging;
+		this.viewer.getRenderUnit().getRenderedImageProperty().addListener(renderListener);
+	}
+
+	/**
+	 * Stop listening to the viewer, stop filling the buffer, and release the buffer. After this call, no ids are
+	 * returned anymore.
+	 */
+	public void dispose()
+	{
+		isDisposed = true;
+		this.viewer.getRenderUnit().getRenderedImageProperty().removeListener(renderListener);
+		fillExecutor.shutdownNow();
+		this.buffer = null;
+	}
+
+	/**
+	 * Mark the buffer as outdated because the data changed. The buffer is filled again after the viewer rendered the
+	 * change, or on the next request.
+	 */
+	public synchronized void invalidate()
+	{
+		++dataVersion;
+	}
+
+	/**
+	 *
+	 * @param x display x coordinate
+	 * @param y display y coordinate
+	 * @return id at display position {@code (x, y)}, or {@link OptionalLong#empty() empty} if the buffer is not up to
+	 * date with the viewer. In that case, the buffer is filled in the background for subsequent requests.
+	 */
+	public OptionalLong getId(final double x, final double y)
+	{
+		final Buffer buffer = currentBuffer();
+		if (buffer == null)
+			return OptionalLong.empty();
+		final long bx = Math.round(x * screenScale);
+		final long by = Math.round(y * screenScale);
+		if (bx < 0 || by < 0 || bx >= buffer.width || by >= buffer.height)
+			return OptionalLong.empty();
+		return OptionalLong.of(buffer.ids[(int) (by * buffer.width + bx)]);
+	}
+
+	/**
+	 *
+	 * @return all ids in the current view, or {@link Optional#empty() empty} if the buffer is not up to date with the
+	 * viewer. In that case, the buffer is filled in the background for subsequent requests. The returned set must not
+	 * be modified.
+	 */
+	public Optional<TLongSet> getIdsInView()
+	{
+		return Optional.ofNullable(currentBuffer()).map(b -> b.idsInView);
+	}
+
+	private Buffer currentBuffer()
+	{
+		final Buffer buffer = this.buffer;
+		if (buffer != null && buffer.key.equals(currentKey()))
+			return buffer;
+		requestFill();
+		return null;
+	}
+
+	private FillKey currentKey()
+	{
+		final AffineTransform3D viewerTransform = new AffineTransform3D();
+		viewer.getState().getViewerTransform(viewerTransform);
+		return new FillKey(viewerTransform.getRowPackedCopy(), viewer.getRenderUnit().getDimensions().clone(), dataVersion);
+	}
+
+	private void rendered(final RenderUnit.RenderResult result)
+	{
+		if (isDisposed)
+			return;
+		if (isDataChanging.getAsBoolean())
+			invalidate();
+		isFullResolution = result != null && result.getImage() != null && result.getScreenScaleIndex() == 0;
+		final Buffer buffer = this.buffer;
+		if (buffer == null || !buffer.key.equals(currentKey()))
+			requestFill();
+	}
+
+	private synchronized void requestFill()
+	{
+		if (isDisposed || !isFullResolution)
+			return;
+
+		final ViewerState state = viewer.getState().copy();
+		final boolean isDisplayed = state.getSources().stream().map(SourceAndConverter::getSpimSource).anyMatch(s -> s == source);
+		if (!isDisplayed)
+			return;
+
+		final AffineTransform3D viewerTransform = new AffineTransform3D();
+		state.getViewerTransform(viewerTransform);
+		final FillKey key = new FillKey(viewerTransform.getRowPackedCopy(), viewer.getRenderUnit().getDimensions().clone(), dataVersion);
+		if (key.equals(requestedFill))
+			return;
+
+		final AffineTransform3D screenScaleTransform = new AffineTransform3D();
+		viewer.getRenderUnit().getScreenScaleTransform(0, screenScaleTransform);
+		final int level = state.getBestMipMapLevel(screenScaleTransform, source);
+
+		requestedFill = key;
+		fillExecutor.execute(() -> fill(viewerTransform, key, level));
+	}
+
+	private void fill(
+			final AffineTransform3D viewerTransform,
+			final FillKey key,
+			final int level)
+	{
+		final long[] screenDimensions = key.screenDimensions;
+		final int w = (int) Math.ceil(screenDimensions[0] * screenScale);
+		final int h = (int) Math.ceil(screenDimensions[1] * screenScale);
+		LOG.trace("Filling {}x{} id buffer for source {} at level {}", w, h, source, level);
+
+		final AffineTransform3D sourceTransform = new AffineTransform3D();
+		source.getSourceTransform(0, level, sourceTransform);
+
+		final AffineTransform3D sourceToBuffer = viewerTransform.copy();
+		final AffineTransform3D scale = new AffineTransform3D();
+		scale.set(screenScale, 0, 0);
+		scale.set(screenScale, 1, 1);
+		sourceToBuffer.preConcatenate(scale);
+
+		final Cursor<D> cursor = Views.flatIterable(Views.interval(
+				Views.hyperSlice(
+						RealViews.affine(
+								RealViews.transformReal(
+										source.getInterpolatedDataSource(0, level, Interpolation.NEARESTNEIGHBOR),
+										sourceTransform),
+								sourceToBuffer),
+						2,
+						0),
+				new FinalInterval(w, h))).cursor();
+
+		final long[] ids = new long[w * h];
+		final TLongSet idsInView = new TLongHashSet();
+		final boolean isLabelMultisetType = source.getDataType() instanceof LabelMultisetType;
+		for (int index = 0; cursor.hasNext(); ++index)
+		{
+			final D value = cursor.next();
+			ids[index] = value.getIntegerLong();
+			if (isLabelMultisetType)
+				for (final Entry<Label> entry : ((LabelMultisetType) value).entrySet())
+					idsInView.add(entry.getElement().id());
+			else
+				idsInView.add(ids[index]);
+			// stop early if the view or the data changed in the meantime
+			if (key != requestedFill || isDisposed)
+				return;
+		}
+
+		this.buffer = new Buffer(ids, w, h, idsInView, key);
+	}
+
+	private static class FillKey
+	{
+
+		private final double[] viewerTransform;
+
+		private final long[] screenDimensions;
+
+		private final long dataVersion;
+
+		private FillKey(final double[] viewerTransform, final long[] screenDimensions, final long dataVersion)
+		{
+			this.viewerTransform = viewerTransform;
+			this.screenDimensions = screenDimensions;
+			this.dataVersion = dataVersion;
+		}
+
+		@Override
+		public boolean equals(final Object other)
+		{
+			if (!(other instanceof FillKey))
+				return false;
+			final FillKey that = (FillKey) other;
+			return this.dataVersion == that.dataVersion
+					&& Arrays.equals(this.viewerTransform, that.viewerTransform)
+					&& Arrays.equals(this.screenDimensions, that.screenDimensions);
+		}
+
+		@Override
+		public int hashCode()
+		{
+			return 31 * (31 * Arrays.hashCode(viewerTransform) + Arrays.hashCode(screenDimensions)) + Long.hashCode(dataVersion);
+		}
+	}
+
+	private static class Buffer
+	{
+
+		private final long[] ids;
+
+		private final int width;
+
+		private final int height;
+
+		private final TLongSet idsInView;
+
+		private final FillKey key;
+
+		private Buffer(
+				final long[] ids,
+				final int width,
+				final int height,
+				final TLongSet idsInView,
+				final FillKey key)
+		{
+			this.ids = ids;
+			this.width = width;
+			this.height = height;
+			this.idsInView = idsInView;
+			this.key = key;
+		}
+	}
+
+}
@@ -243,6 +243,8 @@ public class SourceInfo
 				0)));
 		this.composites.remove(source);
 		this.removedSources.add(source);
+		if (state != null)
+			state.onRemove(this);
 	}
 
 	public SourceState<?, ?> getState(final Source<?> source)
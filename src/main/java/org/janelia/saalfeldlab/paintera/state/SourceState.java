@@ -85,8 +85,13 @@ public interface SourceState<D, T> extends HasModifiableAxisOrder
 
 	}
 
-//	default void onRemove(PainteraBaseView paintera) {
-//
-//	}
+	/**
+	 * Called after this state was removed from {@code sourceInfo}. Release any resources that are tied to viewers here.
+	 *
+	 * @param sourceInfo {@link SourceInfo} that this state was removed from
+	 */
+	default void onRemove(SourceInfo sourceInfo) {
+
+	}
 
 }
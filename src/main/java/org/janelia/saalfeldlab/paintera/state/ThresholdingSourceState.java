@@ -229,7 +229,7 @@ public class ThresholdingSourceState<D extends RealType<D>, T extends AbstractVo
 
 	}
 
-	private RawSourceState<D, T> getUnderlyingSource() {
+	public RawSourceState<D, T> getUnderlyingSource() {
 		return this.underlyingSource;
 	}
 
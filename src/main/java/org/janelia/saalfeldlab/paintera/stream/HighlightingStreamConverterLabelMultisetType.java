@@ -2,59 +2,239 @@ package org.janelia.saalfeldlab.paintera.stream;
 
 import java.util.Set;
 
+import gnu.trove.map.hash.TLongIntHashMap;
+import javafx.beans.InvalidationListener;
+import javafx.beans.Observable;
+import javafx.beans.property.IntegerProperty;
+import javafx.beans.property.SimpleIntegerProperty;
 import net.imglib2.type.label.Label;
 import net.imglib2.type.label.LabelMultisetType.Entry;
 import net.imglib2.type.label.VolatileLabelMultisetType;
 import net.imglib2.type.numeric.ARGBType;
+import org.janelia.saalfeldlab.paintera.control.selection.SelectedSegments;
 
 public class HighlightingStreamConverterLabelMultisetType extends HighlightingStreamConverter<VolatileLabelMultisetType>
 {
 	final static private double ONE_OVER_255 = 1.0 / 255.0;
 
+	/**
+	 * Show only the color of the entry with the highest count by default. At coarse scale levels, a multiset can hold
+	 * hundreds of entries, most of which are not visible in the blended color. Increase to blend more entries.
+	 */
+	public static final int DEFAULT_NUM_BLENDED_ENTRIES = 1;
+
+	/**
+	 * Upper bound for the number of colors in each per-thread {@link ColorCache color cache}. A cache is cleared when
+	 * it is full.
+	 */
+	public static final int MAX_NUM_CACHED_COLORS = 1 << 16;
+
+	/**
+	 * Maximum number of entries per multiset that are blended into the output color. Use non-positive values to
+	 * blend all entries.
+	 */
+	private final IntegerProperty numBlendedEntries = new SimpleIntegerProperty(DEFAULT_NUM_BLENDED_ENTRIES);
+
+	/**
+	 * Incremented whenever the color of any id may have changed. Per-thread {@link ColorCache color caches} are
+	 * cleared lazily when they observe a new version.
+	 */
+	private volatile int colorStateVersion = 0;
+
+	private final ThreadLocal<ColorCache> colorCache = ThreadLocal.withInitial(ColorCache::new);
+
+	private final InvalidationListener invalidateColors = obs -> ++colorStateVersion;
+
+	private SelectedSegments observedSelectedSegments = null;
+
+	private Object observedLockedSegments = null;
+
 	public HighlightingStreamConverterLabelMultisetType(final AbstractHighlightingARGBStream stream)
 	{
 		super(stream);
+		// selection changes do not notify stream listeners. setSelectedSegments, setLockedSegments, and
+		// setSelectedAndLockedSegments notify stream listeners (through clearCache), so re-subscribe then.
+		stream.addListener(obs -> {
+			updateObservedSegments();
+			++colorStateVersion;
+		});
+		// the stream may have been set up with selected and locked segments already
+		updateObservedSegments();
+	}
+
+	public IntegerProperty numBlendedEntriesProperty()
+	{
+		return this.numBlendedEntries;
 	}
 
 	@Override
 	public void convert(final VolatileLabelMultisetType input, final ARGBType output)
 	{
-		// TODO this needs to use all LabelMultisetType, not just first
 		final boolean isValid = input.isValid();
 		if (!isValid) { return; }
 		// entry
 		final Set<Entry<Label>> entries = input.get().entrySet();
+		final ColorCache cache = colorCache.get();
+		cache.validate(colorStateVersion);
 		if (entries.size() == 0)
 		{
-			output.set(stream.argb(Label.INVALID));
+			output.set(cache.argb(Label.INVALID));
+			return;
 		}
-		else
+
+		final int numEntries = numBlendedEntries.get();
+		if (numEntries > 0 && entries.size() > numEntries)
+		{
+			output.set(blendTopEntries(entries, numEntries, cache));
+			return;
+		}
+
+		double a              = 0;
+		double r              = 0;
+		double g              = 0;
+		double b              = 0;
+		double alphaCountSize = 0;
+		for (final Entry<Label> entry : entries)
 		{
-			double a              = 0;
-			double r              = 0;
-			double g              = 0;
-			double b              = 0;
-			double alphaCountSize = 0;
-			for (final Entry<Label> entry : entries)
+			final int    argb       = cache.argb(entry.getElement().id());
+			final double alpha      = ARGBType.alpha(argb);
+			final double alphaCount = alpha * ONE_OVER_255 * entry.getCount();
+			a += alphaCount * alpha;
+			r += alphaCount * ARGBType.red(argb);
+			g += alphaCount * ARGBType.green(argb);
+			b += alphaCount * ARGBType.blue(argb);
+			alphaCountSize += alphaCount;
+		}
+		output.set(toARGB(a, r, g, b, alphaCountSize));
+	}
+
+	/**
+	 * Blend the {@code numEntries} entries with the highest counts. Stream colors are looked up only for those.
+	 */
+	private int blendTopEntries(final Set<Entry<Label>> entries, final int numEntries, final ColorCache cache)
+	{
+		final long[] ids    = cache.topIds(numEntries);
+		final int[]  counts = cache.topCounts(numEntries);
+		int          size   = 0;
+		for (final Entry<Label> entry : entries)
+		{
+			final int count = entry.getCount();
+			if (size == numEntries && count <= counts[size - 1])
+				continue;
+			// insertion into arrays sorted by descending count
+			int index = size == numEntries ? size - 1 : size++;
+			for (; index > 0 && counts[index - 1] < count; --index)
 			{
-				final int    argb       = stream.argb(entry.getElement().id());
-				final double alpha      = ARGBType.alpha(argb);
-				final double alphaCount = alpha * ONE_OVER_255 * entry.getCount();
-				a += alphaCount * alpha;
-				r += alphaCount * ARGBType.red(argb);
-				g += alphaCount * ARGBType.green(argb);
-				b += alphaCount * ARGBType.blue(argb);
-				alphaCountSize += alphaCount;
+				counts[index] = counts[index - 1];
+				ids[index] = ids[index - 1];
 			}
-			final double iAlphaCountSize = 1.0 / alphaCountSize;
-			final int    aInt            = Math.min(255, (int) (a * iAlphaCountSize));
-			final int    rInt            = Math.min(255, (int) (r * iAlphaCountSize));
-			final int    gInt            = Math.min(255, (int) (g * iAlphaCountSize));
-			final int    bInt            = Math.min(255, (int) (b * iAlphaCountSize));
-			output.set(((aInt << 8 | rInt) << 8 | gInt) << 8 | bInt);
-		}
-		//		final Iterator< LabelMultiset.Entry< Label > > it = input.get().entrySet().iterator();
-		//		output.set( stream.argb( it.hasNext() ? considerMaxUnsignedInt( it.next().getElement().id() ) : Label.INVALID ) );
+			counts[index] = count;
+			ids[index] = entry.getElement().id();
+		}
+
+		double a              = 0;
+		double r              = 0;
+		double g              = 0;
+		double b              = 0;
+		double alphaCountSize = 0;
+		for (int i = 0; i < size; ++i)
+		{
+			final int    argb       = cache.argb(ids[i]);
+			final double alpha      = ARGBType.alpha(argb);
+			final double alphaCount = alpha * ONE_OVER_255 * counts[i];
+			a += alphaCount * alpha;
+			r += alphaCount * ARGBType.red(argb);
+			g += alphaCount * ARGBType.green(argb);
+			b += alphaCount * ARGBType.blue(argb);
+			alphaCountSize += alphaCount;
+		}
+		return toARGB(a, r, g, b, alphaCountSize);
+	}
+
+	private static int toARGB(final double a, final double r, final double g, final double b, final double alphaCountSize)
+	{
+		final double iAlphaCountSize = 1.0 / alphaCountSize;
+		final int    aInt            = Math.min(255, (int) (a * iAlphaCountSize));
+		final int    rInt            = Math.min(255, (int) (r * iAlphaCountSize));
+		final int    gInt            = Math.min(255, (int) (g * iAlphaCountSize));
+		final int    bInt            = Math.min(255, (int) (b * iAlphaCountSize));
+		return ((aInt << 8 | rInt) << 8 | gInt) << 8 | bInt;
+	}
+
+	/**
+	 * Colors of ids depend on the selected and locked segments of the stream. Changes to those are not propagated
+	 * to stream listeners and need to be observed separately.
+	 */
+	private synchronized void updateObservedSegments()
+	{
+		if (observedSelectedSegments != stream.selectedSegments)
+		{
+			if (observedSelectedSegments != null)
+				observedSelectedSegments.removeListener(invalidateColors);
+			observedSelectedSegments = stream.selectedSegments;
+			if (observedSelectedSegments != null)
+				observedSelectedSegments.addListener(invalidateColors);
+		}
+
+		if (observedLockedSegments != stream.lockedSegments)
+		{
+			if (observedLockedSegments instanceof Observable)
+				((Observable) observedLockedSegments).removeListener(invalidateColors);
+			observedLockedSegments = stream.lockedSegments;
+			if (observedLockedSegments instanceof Observable)
+				((Observable) observedLockedSegments).addListener(invalidateColors);
+		}
+	}
+
+	/**
+	 * Per-thread cache of stream colors (including highlighting alpha) and scratch space for top entries. Rendering
+	 * threads look up colors without contention on the stream.
+	 */
+	private class ColorCache
+	{
+
+		private final TLongIntHashMap colors = new TLongIntHashMap();
+
+		private int version = colorStateVersion - 1;
+
+		private long[] topIds = new long[0];
+
+		private int[] topCounts = new int[0];
+
+		private void validate(final int currentVersion)
+		{
+			if (version != currentVersion)
+			{
+				colors.clear();
+				version = currentVersion;
+			}
+		}
+
+		private int argb(final long id)
+		{
+			if (colors.containsKey(id))
+				return colors.get(id);
+			final int argb = stream.argb(id);
+			if (colors.size() >= MAX_NUM_CACHED_COLORS)
+				colors.clear();
+			colors.put(id, argb);
+			return argb;
+		}
+
+		private long[] topIds(final int size)
+		{
+			if (topIds.length < size)
+				topIds = new long[size];
+			return topIds;
+		}
+
+		private int[] topCounts(final int size)
+		{
+			if (topCounts.length < size)
+				topCounts = new int[size];
+			return topCounts;
+		}
+
 	}
 
 }
@@ -15,6 +15,7 @@ import javafx.scene.Scene;
 import javafx.scene.control.Alert;
 import javafx.scene.control.Button;
 import javafx.scene.control.ButtonType;
+import javafx.scene.control.CheckBox;
 import javafx.scene.control.MenuButton;
 import javafx.scene.control.MenuItem;
 import javafx.scene.control.TextField;
@@ -143,6 +144,8 @@ public class CreateDataset
 			ObjectField.SubmitOn.values()
 	                                                                            );
 
+	private final CheckBox useShardedLabelBlockLookup = new CheckBox();
+
 	private final TitledPane scaleLevels = new TitledPane("Scale Levels", mipmapLevelsNode);
 
 	private final VBox pane = new VBox(
@@ -157,6 +160,7 @@ public class CreateDataset
 					resolution.getNode()
 			                ),
 			NamedNode.nameIt("Offset", NAME_WIDTH, false, NamedNode.bufferNode(new Region()), offset.getNode()),
+			NamedNode.nameIt("Sharded Lookup", NAME_WIDTH, false, NamedNode.bufferNode(new Region()), useShardedLabelBlockLookup),
 			setFromCurrentBox,
 			scaleLevels
 	);
@@ -209,7 +213,9 @@ public class CreateDataset
 						resolution.getAs(new double[3]),
 						offset.getAs(new double[3]),
 						mipmapLevels.stream().map(MipMapLevel::downsamplingFactors).toArray(double[][]::new),
-						mipmapLevels.stream().mapToInt(MipMapLevel::maxNumEntries).toArray()
+						mipmapLevels.stream().mapToInt(MipMapLevel::maxNumEntries).toArray(),
+						false,
+						useShardedLabelBlockLookup.isSelected()
 				                                 );
 			} catch (IOException ex)
 			{
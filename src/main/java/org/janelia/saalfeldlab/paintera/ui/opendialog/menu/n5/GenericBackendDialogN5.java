@@ -9,8 +9,11 @@ import java.util.Arrays;
 import java.util.Collections;
 import java.util.List;
 import java.util.Optional;
+import java.util.Queue;
+import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.Callable;
 import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ConcurrentLinkedQueue;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
 import java.util.concurrent.Future;
@@ -42,6 +45,7 @@ import org.janelia.saalfeldlab.paintera.control.lock.LockedSegmentsOnlyLocal;
 import org.janelia.saalfeldlab.paintera.control.selection.SelectedIds;
 import org.janelia.saalfeldlab.paintera.control.selection.SelectedSegments;
 import org.janelia.saalfeldlab.paintera.data.DataSource;
+import org.janelia.saalfeldlab.paintera.data.LabelBlockIndexer;
 import org.janelia.saalfeldlab.paintera.data.axisorder.AxisOrder;
 import org.janelia.saalfeldlab.paintera.data.mask.Masks;
 import org.janelia.saalfeldlab.paintera.data.mask.persist.PersistCanvas;
@@ -63,6 +67,7 @@ import org.janelia.saalfeldlab.paintera.ui.PainteraAlerts;
 import org.janelia.saalfeldlab.paintera.ui.opendialog.DatasetInfo;
 import org.janelia.saalfeldlab.util.MakeUnchecked;
 import org.janelia.saalfeldlab.util.NamedThreadFactory;
+import org.janelia.saalfeldlab.util.n5.DatasetDiscovery;
 import org.janelia.saalfeldlab.util.n5.N5Data;
 import org.janelia.saalfeldlab.util.n5.N5Helpers;
 import org.janelia.saalfeldlab.util.n5.N5Types;
@@ -144,7 +149,7 @@ public class GenericBackendDialogN5 implements Closeable
 
 	private final StringProperty dataset = new SimpleStringProperty();
 
-	private final ArrayList<Thread> discoveryThreads = new ArrayList<>();
+	private final ArrayList<Future<?>> discoveries = new ArrayList<>();
 
 	private final ArrayList<BooleanProperty> discoveryIsActive = new ArrayList<>();
 
@@ -234,29 +239,48 @@ public class GenericBackendDialogN5 implements Closeable
 				this.isTraversingDirectories.set(false);
 				cancelDiscovery();
 				final BooleanProperty keepLooking = new SimpleBooleanProperty(true);
-				final Thread discoveryThread = new Thread(() -> {
-					this.isTraversingDirectories.set(true);
-					final AtomicBoolean discardDatasetList = new AtomicBoolean(false);
-					try
-					{
-						final List<String> datasets = N5Helpers.discoverDatasets(newv, keepLooking::get);
-						if (!Thread.currentThread().isInterrupted() && !discardDatasetList.get() && keepLooking.get())
-						{
-							LOG.debug("Found these datasets: {}", datasets);
-							InvokeOnJavaFXApplicationThread.invoke(() -> datasetChoices.setAll(datasets));
-							if (!newv.equals(oldv))
-							{
-								InvokeOnJavaFXApplicationThread.invoke(() -> this.dataset.set(null));
-							}
-						}
-					} finally
+				final Queue<String> found = new ConcurrentLinkedQueue<>();
+				final AtomicBoolean isPublishScheduled = new AtomicBoolean(false);
+				// publish datasets in batches, every change of the choices re-creates the dataset drop down
+				final Runnable publishFound = () -> {
+					isPublishScheduled.set(false);
+					final List<String> batch = new ArrayList<>();
+					for (String dataset = found.poll(); dataset != null; dataset = found.poll())
+						batch.add(dataset);
+					if (keepLooking.get() && !batch.isEmpty())
+						datasetChoices.addAll(batch);
+				};
+				InvokeOnJavaFXApplicationThread.invoke(() -> {
+					datasetChoices.clear();
+					if (!newv.equals(oldv))
+						this.dataset.set(null);
+				});
+				this.isTraversingDirectories.set(true);
+				final CompletableFuture<List<String>> discovery = DatasetDiscovery.discover(
+						newv,
+						dataset -> {
+							found.add(dataset);
+							if (isPublishScheduled.compareAndSet(false, true))
+								InvokeOnJavaFXApplicationThread.invoke(publishFound);
+						},
+						keepLooking::get);
+				discovery.whenComplete((datasets, error) -> {
+					if (!keepLooking.get())
+						return;
+					this.isTraversingDirectories.set(false);
+					if (datasets != null)
 					{
-						this.isTraversingDirectories.set(false);
+						LOG.debug("Found these datasets: {}", datasets);
+						// remove datasets from a stale listing
+						InvokeOnJavaFXApplicationThread.invoke(() -> {
+							found.clear();
+							if (keepLooking.get())
+								datasetChoices.setAll(datasets);
+						});
 					}
 				});
 				discoveryIsActive.add(keepLooking);
-				discoveryThread.setDaemon(true);
-				discoveryThread.start();
+				discoveries.add(discovery);
 			}
 		});
 		dataset.addListener((obs, oldv, newv) -> Optional.ofNullable(newv).filter(v -> v.length() > 0).ifPresent(v ->
@@ -274,8 +298,8 @@ public class GenericBackendDialogN5 implements Closeable
 		synchronized (discoveryIsActive) {
 			discoveryIsActive.forEach(a -> a.set(false));
 			discoveryIsActive.clear();
-			discoveryThreads.forEach(Thread::interrupt);
-			discoveryThreads.clear();
+			discoveries.forEach(discovery -> discovery.cancel(true));
+			discoveries.clear();
 
 		}
 	}
@@ -640,6 +664,7 @@ public class GenericBackendDialogN5 implements Closeable
 				commitCanvas(),
 				workers
 		                                                                );
+		Masks.journal(masked, Masks.canvasJournalDirectory(projectDirectory, null));
 		final IdService                      idService      = idService();
 		final FragmentSegmentAssignmentState assignment     = assignments();
 		final SelectedIds                    selectedIds    = new SelectedIds();
@@ -653,7 +678,10 @@ public class GenericBackendDialogN5 implements Closeable
 		);
 		final HighlightingStreamConverter<T> converter = HighlightingStreamConverter.forType(stream, masked.getType());
 
-		final LabelBlockLookup lookup =  getLabelBlockLookup(n5.get(), dataset, source);
+		final LabelBlockLookup lookup = LabelBlockIndexer.indexInBackgroundIfAllBlocks(
+				getLabelBlockLookup(n5.get(), dataset, source),
+				source,
+				projectDirectory);
 
 		final IntFunction<InterruptibleFunction<Long, Interval[]>> loaderForLevelFactory = level -> InterruptibleFunction.fromFunction(
 				MakeUnchecked.function(
@@ -1,14 +1,21 @@
 package org.janelia.saalfeldlab.paintera.ui.source;
 
+import javafx.beans.property.LongProperty;
+import javafx.geometry.Pos;
 import javafx.scene.Node;
 import javafx.scene.control.Alert;
 import javafx.scene.control.Button;
 import javafx.scene.control.ButtonType;
 import javafx.scene.control.CheckBox;
+import javafx.scene.control.Label;
 import javafx.scene.control.TextArea;
+import javafx.scene.control.Tooltip;
+import javafx.scene.layout.HBox;
 import javafx.scene.layout.VBox;
 import org.janelia.saalfeldlab.fx.Buttons;
 import org.janelia.saalfeldlab.fx.TitledPanes;
+import org.janelia.saalfeldlab.fx.ui.NumberField;
+import org.janelia.saalfeldlab.fx.ui.ObjectField;
 import org.janelia.saalfeldlab.fx.ui.Exceptions;
 import org.janelia.saalfeldlab.paintera.Paintera;
 import org.janelia.saalfeldlab.paintera.data.mask.exception.CannotClearCanvas;
@@ -31,7 +38,23 @@ public class MaskedSourcePane implements BindUnbindAndNodeSupplier
 		final CheckBox showCanvasCheckBox = new CheckBox("Show Canvas");
 		final Button forgetButton = Buttons.withTooltip("Clear Canvas", e -> showForgetAlert());
 		showCanvasCheckBox.selectedProperty().bindBidirectional(maskedSource.showCanvasOverBackgroundProperty());
-		VBox contents = new VBox(showCanvasCheckBox, forgetButton);
+
+		final CheckBox autoCommitCheckBox = new CheckBox("Auto-Commit");
+		autoCommitCheckBox.setTooltip(new Tooltip("Commit canvas blocks that were not painted into for a while in the background"));
+		autoCommitCheckBox.selectedProperty().bindBidirectional(maskedSource.autoCommitProperty());
+		final NumberField<LongProperty> autoCommitAfterSeconds = NumberField.longField(
+				maskedSource.autoCommitAfterSecondsProperty().get(),
+				s -> s >= 0,
+				ObjectField.SubmitOn.ENTER_PRESSED,
+				ObjectField.SubmitOn.FOCUS_LOST);
+		autoCommitAfterSeconds.valueProperty().addListener((obs, oldv, newv) -> maskedSource.autoCommitAfterSecondsProperty().set(newv.longValue()));
+		autoCommitAfterSeconds.textField().setPrefColumnCount(4);
+		autoCommitAfterSeconds.textField().disableProperty().bind(autoCommitCheckBox.selectedProperty().not());
+		final HBox autoCommitBox = new HBox(autoCommitCheckBox, new Label("after"), autoCommitAfterSeconds.textField(), new Label("s"));
+		autoCommitBox.setAlignment(Pos.CENTER_LEFT);
+		autoCommitBox.setSpacing(5.0);
+
+		VBox contents = new VBox(showCanvasCheckBox, autoCommitBox, forgetButton);
 		return TitledPanes.createCollapsed("Canvas", contents);
 	}
 
@@ -24,6 +24,7 @@ import org.janelia.saalfeldlab.fx.TitledPanes;
 import org.janelia.saalfeldlab.fx.ui.NumberField;
 import org.janelia.saalfeldlab.fx.ui.ObjectField;
 import org.janelia.saalfeldlab.fx.undo.UndoFromEvents;
+import org.janelia.saalfeldlab.fx.util.InvokeOnJavaFXApplicationThread;
 import org.janelia.saalfeldlab.paintera.control.assignment.FragmentSegmentAssignmentState;
 import org.janelia.saalfeldlab.paintera.control.assignment.FragmentSegmentAssignmentStateWithActionTracker;
 import org.janelia.saalfeldlab.paintera.control.assignment.action.AssignmentAction;
@@ -36,6 +37,7 @@ import org.janelia.saalfeldlab.paintera.meshes.ManagedMeshSettings;
 import org.janelia.saalfeldlab.paintera.meshes.MeshInfos;
 import org.janelia.saalfeldlab.paintera.meshes.MeshManager;
 import org.janelia.saalfeldlab.paintera.state.LabelSourceState;
+import org.janelia.saalfeldlab.paintera.state.RawSourceState;
 import org.janelia.saalfeldlab.paintera.state.SourceState;
 import org.janelia.saalfeldlab.paintera.state.ThresholdingSourceState;
 import org.janelia.saalfeldlab.paintera.ui.BindUnbindAndNodeSupplier;
@@ -131,6 +133,46 @@ public class SourceStateUIElementsDefaultFactory implements SourceStateUIElement
 		}
 	}
 
+	@Plugin(type = AdditionalBindUnbindSuppliersFactory.class)
+	public static class RawSourceStateAdditionalBindAndUnbindSupplierFactory implements AdditionalBindUnbindSuppliersFactory<RawSourceState<?, ?>> {
+
+		@Override
+		public BindUnbindAndNodeSupplier[] create(RawSourceState<?, ?> state) {
+
+			final Supplier<Node> contrast = () -> {
+				final Button autoContrast = new Button("Auto contrast");
+				autoContrast.setTooltip(new Tooltip(String.format(
+						"Set min and max to the %.1f and %.1f percentiles, estimated from block statistics at the lowest resolution.",
+						RawSourceState.AUTO_CONTRAST_LOWER_PERCENTILE,
+						RawSourceState.AUTO_CONTRAST_UPPER_PERCENTILE)));
+				autoContrast.setOnAction(event -> {
+					autoContrast.setDisable(true);
+					final Thread thread = new Thread(() -> {
+						try {
+							state.autoContrastRange().ifPresent(range -> InvokeOnJavaFXApplicationThread.invoke(() -> {
+								state.converter().setMin(range[0]);
+								state.converter().setMax(range[1]);
+							}));
+						} catch (final RuntimeException e) {
+							LOG.error("Unable to estimate contrast range for {}", state.nameProperty().get(), e);
+						} finally {
+							InvokeOnJavaFXApplicationThread.invoke(() -> autoContrast.setDisable(false));
+						}
+					}, "auto-contrast");
+					thread.setDaemon(true);
+					thread.start();
+				});
+				return TitledPanes.createCollapsed("Contrast", new HBox(autoContrast));
+			};
+			return new BindUnbindAndNodeSupplier[] {BindUnbindAndNodeSupplier.noBind(contrast)};
+		}
+
+		@Override
+		public Class<RawSourceState<?, ?>> getTargetClass() {
+			return (Class<RawSourceState<?, ?>>) (Class) RawSourceState.class;
+		}
+	}
+
 	@Plugin(type = AdditionalBindUnbindSuppliersFactory.class)
 	public static class ThreshodlingSourceStateBindAndUNbindSupplierFactory implements AdditionalBindUnbindSuppliersFactory<ThresholdingSourceState<?, ?>> {
 
@@ -8,20 +8,15 @@ import javafx.collections.FXCollections;
 import javafx.collections.ListChangeListener;
 import javafx.collections.ObservableList;
 import javafx.scene.Group;
-import javafx.scene.image.PixelReader;
-import javafx.scene.image.PixelWriter;
+import javafx.scene.image.Image;
 import javafx.scene.image.WritableImage;
 import javafx.scene.paint.Color;
 import javafx.scene.paint.PhongMaterial;
 import javafx.scene.shape.CullFace;
 import javafx.scene.shape.MeshView;
 import javafx.scene.transform.Affine;
-import net.imglib2.FinalDimensions;
-import net.imglib2.FinalInterval;
-import net.imglib2.Interval;
 import net.imglib2.RealPoint;
 import net.imglib2.realtransform.AffineTransform3D;
-import net.imglib2.util.Intervals;
 import org.janelia.saalfeldlab.fx.util.InvokeOnJavaFXApplicationThread;
 import org.janelia.saalfeldlab.util.NamedThreadFactory;
 
@@ -41,7 +36,15 @@ public class OrthoSliceFX
 	
 	private final PriorityLatestTaskExecutor delayedTextureUpdateExecutor = new PriorityLatestTaskExecutor(textureUpdateDelayNanoSec, new NamedThreadFactory("texture-update-thread-%d", true));
 
-	private final List<WritableImage> textures = new ArrayList<>();
+	/**
+	 * Most recent render result. Its image is displayed by the 2D viewer and can be used as texture without copying.
+	 */
+	private RenderUnit.RenderResult latestRenderResult = null;
+
+	/**
+	 * Copy of the previous texture that is displayed while a switch to a lower resolution texture is delayed.
+	 */
+	private WritableImage textureSnapshot = null;
 
 	private int currentTextureScreenScaleIndex = -1;
 
@@ -98,10 +101,7 @@ public class OrthoSliceFX
 	{
 		this.screenScales = screenScales.clone();
 		delayedTextureUpdateExecutor.cancel();
-
-		textures.clear();
-		for (int i = 0; i < screenScales.length; ++i)
-			textures.add(null);
+		latestRenderResult = null;
 	}
 
 	private void updateTexture(final RenderUnit.RenderResult newv)
@@ -113,71 +113,71 @@ public class OrthoSliceFX
 		// Screen scales are first initialized with the default setting (see RenderUnit),
 		// then the project metadata is loaded, and the screen scales are changed to the saved configuration.
 		// If the project screen scales are [1.0], sometimes the renderer receives a request to re-render the screen at screen scale 1, which results in the exception.
-		if (newv.getScreenScaleIndex() >= textures.size())
+		if (screenScales == null || newv.getScreenScaleIndex() >= screenScales.length)
 			return;
 
-		final int[] textureImageSize = {(int) newv.getImage().getWidth(), (int) newv.getImage().getHeight()};
-		final WritableImage textureImage = getTextureImage(newv.getScreenScaleIndex(), textureImageSize);
-
-		final Interval roi = Intervals.intersect(
-			Intervals.smallestContainingInterval(newv.getRenderTargetRealInterval()),
-			new FinalInterval(new FinalDimensions(textureImageSize))
-		);
-
-		// copy relevant part of the rendered image into the texture image
-		final PixelReader pixelReader = newv.getImage().getPixelReader();
-		final PixelWriter pixelWriter = textureImage.getPixelWriter();
-		pixelWriter.setPixels(
-			(int) roi.min(0), // dst x
-			(int) roi.min(1), // dst y
-			(int) roi.dimension(0), // w
-			(int) roi.dimension(1),	// h
-			pixelReader, // src
-			(int) roi.min(0), // src x
-			(int) roi.min(1)  // src y
-		);
-
-		// setup a task for setting the texture of the mesh
-		final int newScreenScaleIndex = newv.getScreenScaleIndex();
-		final Runnable updateTextureTask = () -> InvokeOnJavaFXApplicationThread.invoke(
-			() -> {
-				// calculate new texture coordinates depending on the ratio between the screen size and the rendered image
-				final float[] texCoordMin = {0.0f, 0.0f}, texCoordMax = new float[2];
-				for (int d = 0; d < 2; ++d)
-					texCoordMax[d] = (float) (dimensions[d] / (textureImageSize[d] / screenScales[newScreenScaleIndex]));
-
-				((PhongMaterial) this.meshViews.get(0).getMaterial()).setSelfIlluminationMap(textureImage);
-				((OrthoSliceMeshFX) this.meshViews.get(0).getMesh()).setTexCoords(texCoordMin, texCoordMax);
-
-				this.currentTextureScreenScaleIndex = newScreenScaleIndex;
-			}
-		);
+		// The rendered image is shared with the 2D viewer and stays unchanged while it is displayed there.
+		latestRenderResult = newv;
 
 		if (currentTextureScreenScaleIndex == newv.getScreenScaleIndex() || currentTextureScreenScaleIndex == -1)
 		{
 			// got a new texture at the same screen scale, set it immediately
 			delayedTextureUpdateExecutor.cancel();
-			updateTextureTask.run();
+			setTexture(newv);
 		}
 		else
 		{
 			// the new texture has lower resolution than the current one, schedule setting the texture after a delay
 			// (this is to avoid blinking because of constant switching between low-res and high-res)
+			// The current texture will be re-used by the renderer once the 2D viewer stops displaying it, keep a snapshot instead.
+			snapshotCurrentTexture();
 			final int priority = -newv.getScreenScaleIndex();
-			delayedTextureUpdateExecutor.schedule(updateTextureTask, priority);
+			delayedTextureUpdateExecutor.schedule(
+				() -> InvokeOnJavaFXApplicationThread.invoke(() -> setTexture(latestRenderResult)),
+				priority
+			);
 		}
 	}
 
-	private WritableImage getTextureImage(final int screenScaleIndex, final int[] size)
+	private void setTexture(final RenderUnit.RenderResult renderResult)
 	{
-		WritableImage textureImage = textures.get(screenScaleIndex);
-		final boolean create = textureImage == null || (int) textureImage.getWidth() != size[0] || (int) textureImage.getHeight() != size[1];
-		if (create)
-		{
-			textureImage = new WritableImage(size[0], size[1]);
-			textures.set(screenScaleIndex, textureImage);
-		}
-		return textureImage;
+		if (renderResult == null || this.meshViews.isEmpty())
+			return;
+
+		// calculate new texture coordinates depending on the ratio between the screen size and the rendered image
+		final Image textureImage = renderResult.getImage();
+		final int screenScaleIndex = renderResult.getScreenScaleIndex();
+		final float[] texCoordMin = {0.0f, 0.0f}, texCoordMax = new float[2];
+		texCoordMax[0] = (float) (dimensions[0] / (textureImage.getWidth() / screenScales[screenScaleIndex]));
+		texCoordMax[1] = (float) (dimensions[1] / (textureImage.getHeight() / screenScales[screenScaleIndex]));
+
+		((PhongMaterial) this.meshViews.get(0).getMaterial()).setSelfIlluminationMap(textureImage);
+		((OrthoSliceMeshFX) this.meshViews.get(0).getMesh()).setTexCoords(texCoordMin, texCoordMax);
+
+		this.currentTextureScreenScaleIndex = screenScaleIndex;
+	}
+
+	/**
+	 * Copy the current texture into {@link #textureSnapshot} unless it is a snapshot already. Texture coordinates
+	 * remain valid because the snapshot has the same size.
+	 */
+	private void snapshotCurrentTexture()
+	{
+		if (this.meshViews.isEmpty())
+			return;
+
+		final PhongMaterial material = (PhongMaterial) this.meshViews.get(0).getMaterial();
+		final Image currentTexture = material.getSelfIlluminationMap();
+		if (currentTexture == null || currentTexture == textureSnapshot)
+			return;
+
+		final int width = (int) currentTexture.getWidth();
+		final int height = (int) currentTexture.getHeight();
+		if (textureSnapshot == null || (int) textureSnapshot.getWidth() != width || (int) textureSnapshot.getHeight() != height)
+			textureSnapshot = new WritableImage(width, height);
+
+		textureSnapshot.getPixelWriter().setPixels(0, 0, width, height, currentTexture.getPixelReader(), 0, 0);
+		material.setSelfIlluminationMap(textureSnapshot);
 	}
 
 	private void initializeMeshes()
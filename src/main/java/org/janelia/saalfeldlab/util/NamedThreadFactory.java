@@ -12,16 +12,24 @@ public class NamedThreadFactory implements ThreadFactory
 
 	private final boolean createDaemonThreads;
 
+	private final int priority;
+
 	public NamedThreadFactory(final String format)
 	{
 		this(format, false);
 	}
 
 	public NamedThreadFactory(final String format, final boolean createDaemonThreads)
+	{
+		this(format, createDaemonThreads, Thread.NORM_PRIORITY);
+	}
+
+	public NamedThreadFactory(final String format, final boolean createDaemonThreads, final int priority)
 	{
 		super();
 		this.format = format;
 		this.createDaemonThreads = createDaemonThreads;
+		this.priority = priority;
 	}
 
 	@Override
@@ -29,6 +37,7 @@ public class NamedThreadFactory implements ThreadFactory
 	{
 		final Thread t = new Thread(r);
 		t.setDaemon(createDaemonThreads);
+		t.setPriority(priority);
 		t.setName(String.format(format, threadCount.incrementAndGet()));
 		return t;
 	}
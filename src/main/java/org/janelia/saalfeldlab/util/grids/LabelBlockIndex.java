@@ -0,0 +1,249 @@
+package org.janelia.saalfeldlab.util.grids;
+
+import java.io.IOException;
+import java.lang.invoke.MethodHandles;
+import java.util.Arrays;
+
+import org.janelia.saalfeldlab.n5.DataBlock;
+import org.janelia.saalfeldlab.n5.DataType;
+import org.janelia.saalfeldlab.n5.DatasetAttributes;
+import org.janelia.saalfeldlab.n5.GzipCompression;
+import org.janelia.saalfeldlab.n5.IntArrayDataBlock;
+import org.janelia.saalfeldlab.n5.LongArrayDataBlock;
+import org.janelia.saalfeldlab.n5.N5Reader;
+import org.janelia.saalfeldlab.n5.N5Writer;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import gnu.trove.iterator.TLongObjectIterator;
+import gnu.trove.map.TLongIntMap;
+import gnu.trove.map.TLongObjectMap;
+import gnu.trove.map.hash.TLongIntHashMap;
+import net.imglib2.FinalInterval;
+import net.imglib2.Interval;
+import net.imglib2.img.cell.CellGrid;
+
+/**
+ * Compact, immutable label-to-block index for a single level, stored in compressed sparse row format: sorted
+ * {@code ids}, {@code offsets} into {@code blocks} for each id, and flat indices of blocks in a {@link CellGrid}.
+ *
+ * The index is persisted in an N5 group as three one-dimensional datasets {@code ids}, {@code offsets}, and
+ * {@code blocks}.
+ */
+public class LabelBlockIndex
+{
+
+	private static final Logger LOG = LoggerFactory.getLogger(MethodHandles.lookup().lookupClass());
+
+	private static final int SERIALIZATION_BLOCK_SIZE = 1 << 16;
+
+	private static final String IDS_DATASET = "ids";
+
+	private static final String OFFSETS_DATASET = "offsets";
+
+	private static final String BLOCKS_DATASET = "blocks";
+
+	private final CellGrid grid;
+
+	private final long[] ids;
+
+	private final int[] offsets;
+
+	private final int[] blocks;
+
+	private LabelBlockIndex(final CellGrid grid, final long[] ids, final int[] offsets, final int[] blocks)
+	{
+		this.grid = grid;
+		this.ids = ids;
+		this.offsets = offsets;
+		this.blocks = blocks;
+	}
+
+	/**
+	 *
+	 * @param grid block grid
+	 * @param uniqueLabels unique labels for each block, indexed by flat block index
+	 * @return index that maps each label to all blocks that contain the label
+	 */
+	public static LabelBlockIndex fromUniqueLabels(final CellGrid grid, final long[][] uniqueLabels)
+	{
+		final TLongIntMap counts = new TLongIntHashMap();
+		long numEntries = 0;
+		for (final long[] labels : uniqueLabels)
+		{
+			for (final long label : labels)
+				counts.adjustOrPutValue(label, 1, 1);
+			numEntries += labels.length;
+		}
+		if (numEntries > Integer.MAX_VALUE)
+			throw new IllegalArgumentException("Too many label/block pairs for a single index: " + numEntries);
+
+		final long[] ids = counts.keys();
+		Arrays.sort(ids);
+		final int[] offsets = new int[ids.length + 1];
+		for (int i = 0; i < ids.length; ++i)
+			offsets[i + 1] = offsets[i] + counts.get(ids[i]);
+
+		// re-use counts as insertion positions
+		for (int i = 0; i < ids.length; ++i)
+			counts.put(ids[i], offsets[i]);
+		final int[] blocks = new int[(int) numEntries];
+		for (int block = 0; block < uniqueLabels.length; ++block)
+			for (final long label : uniqueLabels[block])
+			{
+				final int position = counts.get(label);
+				blocks[position] = block;
+				counts.put(label, position + 1);
+			}
+
+		LOG.debug("Built index with {} labels and {} label/block pairs for grid {}", ids.length, numEntries, grid);
+		return new LabelBlockIndex(grid, ids, offsets, blocks);
+	}
+
+	/**
+	 *
+	 * @param uniqueLabelsByBlock new unique labels of modified blocks, by flat block index
+	 * @return index in which the labels of the blocks in {@code uniqueLabelsByBlock} are replaced and all other
+	 * blocks are unchanged
+	 */
+	public LabelBlockIndex withUniqueLabels(final TLongObjectMap<long[]> uniqueLabelsByBlock)
+	{
+		final TLongIntMap counts = new TLongIntHashMap();
+		long numEntries = 0;
+		for (int i = 0; i < ids.length; ++i)
+			for (int k = offsets[i]; k < offsets[i + 1]; ++k)
+				if (!uniqueLabelsByBlock.containsKey(blocks[k]))
+				{
+					counts.adjustOrPutValue(ids[i], 1, 1);
+					++numEntries;
+				}
+		for (final long[] labels : uniqueLabelsByBlock.valueCollection())
+		{
+			for (final long label : labels)
+				counts.adjustOrPutValue(label, 1, 1);
+			numEntries += labels.length;
+		}
+		if (numEntries > Integer.MAX_VALUE)
+			throw new IllegalArgumentException("Too many label/block pairs for a single index: " + numEntries);
+
+		final long[] ids = counts.keys();
+		Arrays.sort(ids);
+		final int[] offsets = new int[ids.length + 1];
+		for (int i = 0; i < ids.length; ++i)
+			offsets[i + 1] = offsets[i] + counts.get(ids[i]);
+
+		// re-use counts as insertion positions
+		for (int i = 0; i < ids.length; ++i)
+			counts.put(ids[i], offsets[i]);
+		final int[] blocks = new int[(int) numEntries];
+		for (int i = 0; i < this.ids.length; ++i)
+			for (int k = this.offsets[i]; k < this.offsets[i + 1]; ++k)
+				if (!uniqueLabelsByBlock.containsKey(this.blocks[k]))
+				{
+					final int position = counts.get(this.ids[i]);
+					blocks[position] = this.blocks[k];
+					counts.put(this.ids[i], position + 1);
+				}
+		for (final TLongObjectIterator<long[]> it = uniqueLabelsByBlock.iterator(); it.hasNext(); )
+		{
+			it.advance();
+			for (final long label : it.value())
+			{
+				final int position = counts.get(label);
+				blocks[position] = (int) it.key();
+				counts.put(label, position + 1);
+			}
+		}
+
+		LOG.debug("Updated {} blocks in index with {} labels and {} label/block pairs", uniqueLabelsByBlock.size(), ids.length, numEntries);
+		return new LabelBlockIndex(grid, ids, offsets, blocks);
+	}
+
+	/**
+	 *
+	 * @param id label
+	 * @return all blocks that contain {@code id}
+	 */
+	public Interval[] read(final long id)
+	{
+		final int index = Arrays.binarySearch(ids, id);
+		if (index < 0)
+			return new Interval[0];
+		final Interval[] intervals = new Interval[offsets[index + 1] - offsets[index]];
+		final long[] min = new long[grid.numDimensions()];
+		final int[] size = new int[grid.numDimensions()];
+		for (int i = 0; i < intervals.length; ++i)
+		{
+			grid.getCellDimensions(blocks[offsets[index] + i], min, size);
+			final long[] max = new long[min.length];
+			Arrays.setAll(max, d -> min[d] + size[d] - 1);
+			intervals[i] = new FinalInterval(min, max);
+		}
+		return intervals;
+	}
+
+	public void write(final N5Writer n5, final String group) throws IOException
+	{
+		writeLongs(n5, group + "/" + IDS_DATASET, ids);
+		writeInts(n5, group + "/" + OFFSETS_DATASET, offsets);
+		writeInts(n5, group + "/" + BLOCKS_DATASET, blocks);
+	}
+
+	public static LabelBlockIndex read(final N5Reader n5, final String group, final CellGrid grid) throws IOException
+	{
+		return new LabelBlockIndex(
+				grid,
+				readLongs(n5, group + "/" + IDS_DATASET),
+				readInts(n5, group + "/" + OFFSETS_DATASET),
+				readInts(n5, group + "/" + BLOCKS_DATASET));
+	}
+
+	private static void writeLongs(final N5Writer n5, final String dataset, final long[] data) throws IOException
+	{
+		n5.createDataset(dataset, new long[] {data.length}, new int[] {SERIALIZATION_BLOCK_SIZE}, DataType.UINT64, new GzipCompression());
+		final DatasetAttributes attributes = n5.getDatasetAttributes(dataset);
+		for (int start = 0, block = 0; start < data.length; start += SERIALIZATION_BLOCK_SIZE, ++block)
+		{
+			final int size = Math.min(SERIALIZATION_BLOCK_SIZE, data.length - start);
+			n5.writeBlock(dataset, attributes, new LongArrayDataBlock(new int[] {size}, new long[] {block}, Arrays.copyOfRange(data, start, start + size)));
+		}
+	}
+
+	private static void writeInts(final N5Writer n5, final String dataset, final int[] data) throws IOException
+	{
+		n5.createDataset(dataset, new long[] {data.length}, new int[] {SERIALIZATION_BLOCK_SIZE}, DataType.INT32, new GzipCompression());
+		final DatasetAttributes attributes = n5.getDatasetAttributes(dataset);
+		for (int start = 0, block = 0; start < data.length; start += SERIALIZATION_BLOCK_SIZE, ++block)
+		{
+			final int size = Math.min(SERIALIZATION_BLOCK_SIZE, data.length - start);
+			n5.writeBlock(dataset, attributes, new IntArrayDataBlock(new int[] {size}, new long[] {block}, Arrays.copyOfRange(data, start, start + size)));
+		}
+	}
+
+	private static long[] readLongs(final N5Reader n5, final String dataset) throws IOException
+	{
+		final DatasetAttributes attributes = n5.getDatasetAttributes(dataset);
+		final long[] data = new long[(int) attributes.getDimensions()[0]];
+		for (int start = 0, block = 0; start < data.length; start += SERIALIZATION_BLOCK_SIZE, ++block)
+		{
+			final DataBlock<?> dataBlock = n5.readBlock(dataset, attributes, new long[] {block});
+			final long[] blockData = (long[]) dataBlock.getData();
+			System.arraycopy(blockData, 0, data, start, blockData.length);
+		}
+		return data;
+	}
+
+	private static int[] readInts(final N5Reader n5, final String dataset) throws IOException
+	{
+		final DatasetAttributes attributes = n5.getDatasetAttributes(dataset);
+		final int[] data = new int[(int) attributes.getDimensions()[0]];
+		for (int start = 0, block = 0; start < data.length; start += SERIALIZATION_BLOCK_SIZE, ++block)
+		{
+			final DataBlock<?> dataBlock = n5.readBlock(dataset, attributes, new long[] {block});
+			final int[] blockData = (int[]) dataBlock.getData();
+			System.arraycopy(blockData, 0, data, start, blockData.length);
+		}
+		return data;
+	}
+
+}
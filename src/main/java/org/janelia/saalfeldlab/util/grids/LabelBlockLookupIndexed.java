@@ -0,0 +1,310 @@
+package org.janelia.saalfeldlab.util.grids;
+
+import java.io.IOException;
+import java.lang.invoke.MethodHandles;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.stream.IntStream;
+import java.util.stream.Stream;
+
+import org.janelia.saalfeldlab.labels.blocks.LabelBlockLookup;
+import org.janelia.saalfeldlab.n5.DataBlock;
+import org.janelia.saalfeldlab.n5.DatasetAttributes;
+import org.janelia.saalfeldlab.n5.LongArrayDataBlock;
+import org.janelia.saalfeldlab.n5.N5Reader;
+import org.janelia.saalfeldlab.n5.N5Writer;
+import org.janelia.saalfeldlab.util.n5.N5Helpers;
+import org.jetbrains.annotations.NotNull;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import gnu.trove.iterator.TLongObjectIterator;
+import gnu.trove.map.TLongObjectMap;
+import gnu.trove.map.hash.TLongObjectHashMap;
+import net.imglib2.Interval;
+import net.imglib2.img.cell.CellGrid;
+
+/**
+ * {@link LabelBlockLookup} for datasets without a Paintera label-to-block mapping. Until the {@link LabelBlockIndex}
+ * of a level is available, all blocks of that level are returned for every id (like {@link LabelBlockLookupAllBlocks}).
+ * Indices are built in the background (see {@link org.janelia.saalfeldlab.paintera.data.LabelBlockIndexer}) and stored
+ * in an N5 {@code container} (usually the project directory) at {@code group/label-to-block/s<level>}. Complete
+ * indices are loaded from the container when the lookup is used for the first time, e.g. after re-opening a project.
+ * Changes of the data, e.g. when a canvas is committed, are applied with {@link #update(int, TLongObjectMap)}.
+ */
+@LabelBlockLookup.LookupType("INDEXED")
+public class LabelBlockLookupIndexed implements LabelBlockLookup
+{
+
+	private static final Logger LOG = LoggerFactory.getLogger(MethodHandles.lookup().lookupClass());
+
+	public static final String LABEL_TO_BLOCK_GROUP = "label-to-block";
+
+	public static final String UNIQUE_LABELS_GROUP = "unique-labels";
+
+	public static final String COMPLETE_KEY = "complete";
+
+	@LabelBlockLookup.Parameter
+	private final long[][] dims;
+
+	@LabelBlockLookup.Parameter
+	private final int[][] blockSizes;
+
+	@LabelBlockLookup.Parameter
+	private final String container;
+
+	@LabelBlockLookup.Parameter
+	private final String group;
+
+	private transient LabelBlockLookupAllBlocks allBlocks = null;
+
+	/**
+	 * Loaded lazily from {@link #container} without holding the monitor of this lookup, so that {@link #read(int,
+	 * long)} is not blocked by updates. Individual levels are replaced while holding the monitor.
+	 */
+	private transient volatile AtomicReferenceArray<LabelBlockIndex> indices = null;
+
+	private transient final Object indicesLoadLock = new Object();
+
+	/**
+	 * Unique labels of blocks that were modified while the index of a level was built, applied once it is set.
+	 */
+	private transient TLongObjectMap<long[]>[] pendingUniqueLabels = null;
+
+	private LabelBlockLookupIndexed()
+	{
+		this(null, null, null, null);
+	}
+
+	/**
+	 *
+	 * @param dims dimensions for each level
+	 * @param blockSizes block size for each level
+	 * @param container N5 container that holds the index, usually the project directory
+	 * @param group group of the index inside {@code container}
+	 */
+	public LabelBlockLookupIndexed(
+			final long[][] dims,
+			final int[][] blockSizes,
+			final String container,
+			final String group)
+	{
+		this.dims = dims;
+		this.blockSizes = blockSizes;
+		this.container = container;
+		this.group = group;
+	}
+
+	@NotNull
+	@Override
+	public String getType()
+	{
+		return "INDEXED";
+	}
+
+	@NotNull
+	@Override
+	public Interval[] read(final int level, final long id)
+	{
+		final LabelBlockIndex index = getIndex(level);
+		return index == null
+		       ? getAllBlocks().read(level, id)
+		       : index.read(id);
+	}
+
+	@Override
+	public void write(final int level, final long id, final Interval... intervals)
+	{
+		LOG.debug("Saving blocks by id not supported for indexed lookup, use update(level, uniqueLabelsByBlock) instead");
+	}
+
+	/**
+	 * Replace the unique labels of modified blocks, e.g. after committing a canvas into the data. The stored unique
+	 * labels of the blocks are updated so that they are not stale if indexing is resumed. If the index of
+	 * {@code level} is complete, it is updated and stored, otherwise the update is applied when the index is set.
+	 *
+	 * @param level level
+	 * @param uniqueLabelsByBlock new unique labels of modified blocks, by flat block index
+	 * @throws IOException if the unique labels or the index cannot be stored
+	 */
+	@SuppressWarnings("unchecked")
+	public synchronized void update(final int level, final TLongObjectMap<long[]> uniqueLabelsByBlock) throws IOException
+	{
+		if (uniqueLabelsByBlock.isEmpty())
+			return;
+		final N5Writer n5 = N5Helpers.n5Writer(container);
+		final String uniqueLabelsDataset = uniqueLabelsDataset(level);
+		if (n5.datasetExists(uniqueLabelsDataset))
+		{
+			final DatasetAttributes attributes = n5.getDatasetAttributes(uniqueLabelsDataset);
+			final CellGrid grid = getGrid(level);
+			final long[] gridPosition = new long[grid.numDimensions()];
+			final long[] min = new long[grid.numDimensions()];
+			final int[] size = new int[grid.numDimensions()];
+			for (final TLongObjectIterator<long[]> it = uniqueLabelsByBlock.iterator(); it.hasNext(); )
+			{
+				it.advance();
+				grid.getCellGridPositionFlat(it.key(), gridPosition);
+				grid.getCellDimensions(it.key(), min, size);
+				n5.writeBlock(uniqueLabelsDataset, attributes, new LongArrayDataBlock(size, gridPosition, it.value()));
+			}
+		}
+
+		final LabelBlockIndex index = getIndex(level);
+		if (index == null)
+		{
+			LOG.debug("Index at level {} is not complete, deferring update of {} blocks", level, uniqueLabelsByBlock.size());
+			if (this.pendingUniqueLabels == null)
+				this.pendingUniqueLabels = Stream.generate(TLongObjectHashMap::new).limit(dims.length).toArray(TLongObjectMap[]::new);
+			this.pendingUniqueLabels[level].putAll(uniqueLabelsByBlock);
+			return;
+		}
+		final LabelBlockIndex updated = index.withUniqueLabels(uniqueLabelsByBlock);
+		writeIndex(n5, level, updated);
+		getIndices().set(level, updated);
+	}
+
+	/**
+	 * Store the scanned unique labels of a block, unless unique labels were stored for that block in the meantime,
+	 * e.g. by {@link #update(int, TLongObjectMap)}. Holds the monitor of this lookup so that scanned unique labels
+	 * never overwrite newer ones.
+	 *
+	 * @return unique labels that are stored for the block
+	 */
+	public synchronized long[] storeUniqueLabelsIfAbsent(
+			final N5Writer n5,
+			final int level,
+			final DatasetAttributes attributes,
+			final long[] gridPosition,
+			final int[] size,
+			final long[] uniqueLabels) throws IOException
+	{
+		final String dataset = uniqueLabelsDataset(level);
+		final DataBlock<?> stored = n5.readBlock(dataset, attributes, gridPosition);
+		if (stored != null)
+			return (long[]) stored.getData();
+		n5.writeBlock(dataset, attributes, new LongArrayDataBlock(size, gridPosition, uniqueLabels));
+		return uniqueLabels;
+	}
+
+	public String getContainer()
+	{
+		return container;
+	}
+
+	public String getGroup()
+	{
+		return group;
+	}
+
+	public int getNumLevels()
+	{
+		return dims.length;
+	}
+
+	public CellGrid getGrid(final int level)
+	{
+		return new CellGrid(dims[level], blockSizes[level]);
+	}
+
+	public String labelToBlockGroup(final int level)
+	{
+		return String.format("%s/%s/s%d", group, LABEL_TO_BLOCK_GROUP, level);
+	}
+
+	public String uniqueLabelsDataset(final int level)
+	{
+		return String.format("%s/%s/s%d", group, UNIQUE_LABELS_GROUP, level);
+	}
+
+	/**
+	 * Store {@code index} and use it for all subsequent requests at {@code level}. Updates that were deferred while
+	 * the index was built are applied to {@code index} before it is stored.
+	 */
+	public synchronized void setIndex(final int level, final LabelBlockIndex index) throws IOException
+	{
+		final TLongObjectMap<long[]> pending = this.pendingUniqueLabels == null ? null : this.pendingUniqueLabels[level];
+		final LabelBlockIndex updated;
+		if (pending == null || pending.isEmpty())
+			updated = index;
+		else
+		{
+			LOG.debug("Applying {} deferred block updates to index at level {}", pending.size(), level);
+			updated = index.withUniqueLabels(pending);
+		}
+		writeIndex(N5Helpers.n5Writer(container), level, updated);
+		getIndices().set(level, updated);
+		if (pending != null)
+			pending.clear();
+	}
+
+	public boolean hasIndex(final int level)
+	{
+		return getIndex(level) != null;
+	}
+
+	public boolean isComplete()
+	{
+		final AtomicReferenceArray<LabelBlockIndex> indices = getIndices();
+		return IntStream.range(0, indices.length()).allMatch(level -> indices.get(level) != null);
+	}
+
+	/**
+	 * The index is rewritten in place, so it is marked incomplete while it is written. An index that was only
+	 * partially written, e.g. because Paintera crashed, is not loaded and is rebuilt from the stored unique labels.
+	 */
+	private void writeIndex(final N5Writer n5, final int level, final LabelBlockIndex index) throws IOException
+	{
+		final String indexGroup = labelToBlockGroup(level);
+		if (n5.exists(indexGroup))
+			n5.setAttribute(indexGroup, COMPLETE_KEY, false);
+		index.write(n5, indexGroup);
+		n5.setAttribute(indexGroup, COMPLETE_KEY, true);
+	}
+
+	private LabelBlockIndex getIndex(final int level)
+	{
+		return getIndices().get(level);
+	}
+
+	private synchronized LabelBlockLookupAllBlocks getAllBlocks()
+	{
+		if (this.allBlocks == null)
+			this.allBlocks = new LabelBlockLookupAllBlocks(dims, blockSizes);
+		return this.allBlocks;
+	}
+
+	private AtomicReferenceArray<LabelBlockIndex> getIndices()
+	{
+		final AtomicReferenceArray<LabelBlockIndex> indices = this.indices;
+		if (indices != null)
+			return indices;
+		synchronized (indicesLoadLock)
+		{
+			if (this.indices == null)
+				this.indices = loadIndices();
+			return this.indices;
+		}
+	}
+
+	private AtomicReferenceArray<LabelBlockIndex> loadIndices()
+	{
+		final AtomicReferenceArray<LabelBlockIndex> indices = new AtomicReferenceArray<>(dims.length);
+		try
+		{
+			final N5Reader n5 = N5Helpers.n5Reader(container);
+			for (int level = 0; level < dims.length; ++level)
+			{
+				final String indexGroup = labelToBlockGroup(level);
+				if (n5.exists(indexGroup) && Boolean.TRUE.equals(n5.getAttribute(indexGroup, COMPLETE_KEY, Boolean.class)))
+				{
+					LOG.debug("Loading label to block index from {} in {}", indexGroup, container);
+					indices.set(level, LabelBlockIndex.read(n5, indexGroup, getGrid(level)));
+				}
+			}
+		} catch (final IOException e)
+		{
+			LOG.warn("Unable to load label to block index from {} in {}", group, container, e);
+		}
+		return indices;
+	}
+}
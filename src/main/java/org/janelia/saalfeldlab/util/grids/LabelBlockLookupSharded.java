@@ -0,0 +1,628 @@
+package org.janelia.saalfeldlab.util.grids;
+
+import java.io.IOException;
+import java.lang.invoke.MethodHandles;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.nio.file.attribute.FileTime;
+import java.util.Arrays;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.janelia.saalfeldlab.labels.blocks.LabelBlockLookup;
+import org.jetbrains.annotations.NotNull;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import gnu.trove.iterator.TLongObjectIterator;
+import gnu.trove.list.array.TLongArrayList;
+import gnu.trove.map.TLongObjectMap;
+import gnu.trove.map.hash.TLongObjectHashMap;
+import net.imglib2.FinalInterval;
+import net.imglib2.Interval;
+import net.imglib2.img.cell.CellGrid;
+import net.imglib2.util.IntervalIndexer;
+
+/**
+ * {@link LabelBlockLookup} that stores the label-to-block mapping of each level in a small number of binary shard
+ * files instead of one file per id: ids are assigned to shard {@code floor(id / idsPerShard)} and each shard is
+ * stored in {@code root/s<level>/<shard>}, where {@code root} is relative to the N5 container of the label data (see
+ * {@link #setContainer(String)}). A shard holds the sorted ids in the shard and, for each id, the sorted flat indices
+ * of all blocks in the {@link CellGrid} of that level that contain the id, delta and variable length encoded. Shards
+ * are memory mapped when read and ids are looked up with binary search. Shards are re-mapped when they were replaced,
+ * e.g. by another lookup instance for the same data. Shards without any ids do not exist, but shards that cannot be
+ * read or that are corrupt fail with an {@link IOException}.
+ *
+ * In addition to the {@link LabelBlockLookup} methods, the lookup provides batch reads ({@link #readBlocks(int, long[])}),
+ * range queries ({@link #readBlockRange(int, long, long)}), and batch writes ({@link #writeBlocks(int, TLongObjectMap)})
+ * that read and (atomically) re-write each affected shard only once.
+ *
+ * Shard layout (big endian):
+ * <pre>
+ * int   magic
+ * int   number of ids n
+ * long  ids[n]
+ * int   offsets[n + 1]  (into encoded blocks)
+ * byte  encoded blocks: for each id, number of blocks followed by block index deltas, as variable length longs
+ * </pre>
+ */
+@LabelBlockLookup.LookupType("SHARDED")
+public class LabelBlockLookupSharded implements LabelBlockLookup
+{
+
+	private static final Logger LOG = LoggerFactory.getLogger(MethodHandles.lookup().lookupClass());
+
+	public static final int DEFAULT_IDS_PER_SHARD = 1 << 16;
+
+	private static final int MAGIC = 0x4c42_4c53;
+
+	private static final int HEADER_SIZE = 2 * Integer.BYTES;
+
+	private static final long[] EMPTY = {};
+
+	private static final String LOCK_FILE = ".lock";
+
+	/**
+	 * Writes of all instances in this JVM that share the same shards directory are serialized on the same lock,
+	 * {@link FileLock file locks} serialize writes across processes.
+	 */
+	private static final Map<Path, Object> WRITE_LOCKS = new ConcurrentHashMap<>();
+
+	@LabelBlockLookup.Parameter
+	private final String root;
+
+	@LabelBlockLookup.Parameter
+	private final long[][] dims;
+
+	@LabelBlockLookup.Parameter
+	private final int[][] blockSizes;
+
+	@LabelBlockLookup.Parameter
+	private final long idsPerShard;
+
+	private final transient Map<Path, Shard> shards = new ConcurrentHashMap<>();
+
+	private transient String container = null;
+
+	private LabelBlockLookupSharded()
+	{
+		this(null, null, null, DEFAULT_IDS_PER_SHARD);
+	}
+
+	/**
+	 *
+	 * @param root directory that holds the shards, relative to the container of the label data
+	 * @param dims dimensions for each level
+	 * @param blockSizes block size for each level
+	 */
+	public LabelBlockLookupSharded(final String root, final long[][] dims, final int[][] blockSizes)
+	{
+		this(root, dims, blockSizes, DEFAULT_IDS_PER_SHARD);
+	}
+
+	/**
+	 *
+	 * @param root directory that holds the shards, relative to the container of the label data
+	 * @param dims dimensions for each level
+	 * @param blockSizes block size for each level
+	 * @param idsPerShard number of consecutive ids that are stored in the same shard
+	 */
+	public LabelBlockLookupSharded(final String root, final long[][] dims, final int[][] blockSizes, final long idsPerShard)
+	{
+		this.root = root;
+		this.dims = dims;
+		this.blockSizes = blockSizes;
+		this.idsPerShard = idsPerShard;
+	}
+
+	@NotNull
+	@Override
+	public String getType()
+	{
+		return "SHARDED";
+	}
+
+	public String getRoot()
+	{
+		return root;
+	}
+
+	/**
+	 * Resolve {@link #getRoot() root} against {@code container}. Lookups that were created with an absolute root do
+	 * not depend on the container.
+	 *
+	 * @param container base path of the N5 container of the label data
+	 */
+	public void setContainer(final String container)
+	{
+		this.container = container;
+		this.shards.clear();
+	}
+
+	private Path rootPath()
+	{
+		return container == null ? Paths.get(root) : Paths.get(container).resolve(root);
+	}
+
+	public CellGrid getGrid(final int level)
+	{
+		return new CellGrid(dims[level], blockSizes[level]);
+	}
+
+	@NotNull
+	@Override
+	public Interval[] read(final int level, final long id) throws IOException
+	{
+		return toIntervals(level, readBlocks(level, id));
+	}
+
+	@Override
+	public void write(final int level, final long id, final Interval... intervals) throws IOException
+	{
+		final TLongObjectMap<long[]> blocksById = new TLongObjectHashMap<>();
+		blocksById.put(id, toBlocks(level, intervals));
+		writeBlocks(level, blocksById);
+	}
+
+	/**
+	 *
+	 * @param level level
+	 * @param id label
+	 * @return flat indices of all blocks that contain {@code id}, sorted in ascending order
+	 */
+	public long[] readBlocks(final int level, final long id) throws IOException
+	{
+		final ByteBuffer shard = getShard(level, shardIndex(id));
+		if (shard == null)
+			return EMPTY;
+		final int index = search(shard, id);
+		return index < 0 ? EMPTY : decode(shard, index);
+	}
+
+	/**
+	 *
+	 * @param level level
+	 * @param ids labels
+	 * @return flat indices of all blocks that contain the id, for each of {@code ids}. Ids that are not in any block
+	 * map to empty arrays.
+	 */
+	public TLongObjectMap<long[]> readBlocks(final int level, final long[] ids) throws IOException
+	{
+		final TLongObjectMap<long[]> blocksById = new TLongObjectHashMap<>();
+		final long[] sortedIds = ids.clone();
+		Arrays.sort(sortedIds);
+		ByteBuffer shard = null;
+		long shardIndex = 0;
+		for (int i = 0; i < sortedIds.length; ++i)
+		{
+			final long id = sortedIds[i];
+			if (i == 0 || shardIndex(id) != shardIndex)
+			{
+				shardIndex = shardIndex(id);
+				shard = getShard(level, shardIndex);
+			}
+			final int index = shard == null ? -1 : search(shard, id);
+			blocksById.put(id, index < 0 ? EMPTY : decode(shard, index));
+		}
+		return blocksById;
+	}
+
+	/**
+	 *
+	 * @param level level
+	 * @param minId smallest label, inclusive
+	 * @param maxId largest label, inclusive
+	 * @return flat indices of all blocks that contain the id, for each id in {@code [minId, maxId]} that is
+	 * contained in at least one block
+	 */
+	public TLongObjectMap<long[]> readBlockRange(final int level, final long minId, final long maxId) throws IOException
+	{
+		final TLongObjectMap<long[]> blocksById = new TLongObjectHashMap<>();
+		final long minShard = shardIndex(minId);
+		final long maxShard = shardIndex(maxId);
+		for (final long shardIndex : listShards(level))
+		{
+			if (shardIndex < minShard || shardIndex > maxShard)
+				continue;
+			final ByteBuffer shard = getShard(level, shardIndex);
+			if (shard == null)
+				continue;
+			final int numIds = shard.getInt(Integer.BYTES);
+			final int first = search(shard, minId);
+			for (int index = first < 0 ? -first - 1 : first; index < numIds && id(shard, index) <= maxId; ++index)
+				blocksById.put(id(shard, index), decode(shard, index));
+		}
+		return blocksById;
+	}
+
+	/**
+	 * Replace the blocks for all ids in {@code blocksById}. Ids that map to an empty array are removed from the lookup.
+	 * Each affected shard is read and written only once. Concurrent writes to the same level, by any lookup instance
+	 * or process, are serialized with a lock file in the shards directory of that level.
+	 *
+	 * @param level level
+	 * @param blocksById flat block indices for each id
+	 */
+	public void writeBlocks(final int level, final TLongObjectMap<long[]> blocksById) throws IOException
+	{
+		final TLongObjectMap<TLongObjectMap<long[]>> byShard = new TLongObjectHashMap<>();
+		for (final TLongObjectIterator<long[]> it = blocksById.iterator(); it.hasNext(); )
+		{
+			it.advance();
+			final long shardIndex = shardIndex(it.key());
+			if (!byShard.containsKey(shardIndex))
+				byShard.put(shardIndex, new TLongObjectHashMap<>());
+			byShard.get(shardIndex).put(it.key(), it.value());
+		}
+
+		final Path directory = rootPath().resolve("s" + level).toAbsolutePath().normalize();
+		Files.createDirectories(directory);
+		synchronized (WRITE_LOCKS.computeIfAbsent(directory, d -> new Object()))
+		{
+			try (
+					final FileChannel lockChannel = FileChannel.open(directory.resolve(LOCK_FILE), StandardOpenOption.CREATE, StandardOpenOption.WRITE);
+					final FileLock lock = lockChannel.lock())
+			{
+				for (final TLongObjectIterator<TLongObjectMap<long[]>> it = byShard.iterator(); it.hasNext(); )
+				{
+					it.advance();
+					final TLongObjectMap<long[]> entries = readShard(level, it.key());
+					for (final TLongObjectIterator<long[]> entryIt = it.value().iterator(); entryIt.hasNext(); )
+					{
+						entryIt.advance();
+						if (entryIt.value() == null || entryIt.value().length == 0)
+							entries.remove(entryIt.key());
+						else
+						{
+							final long[] blocks = entryIt.value().clone();
+							Arrays.sort(blocks);
+							entries.put(entryIt.key(), blocks);
+						}
+					}
+					writeShard(level, it.key(), entries);
+				}
+			}
+		}
+		LOG.debug("Updated {} ids in {} shards at level {} in {}", blocksById.size(), byShard.size(), level, root);
+	}
+
+	/**
+	 *
+	 * @return intervals of blocks in the {@link #getGrid(int) grid} at {@code level}
+	 */
+	public Interval[] toIntervals(final int level, final long[] blocks)
+	{
+		final CellGrid grid = getGrid(level);
+		final Interval[] intervals = new Interval[blocks.length];
+		final long[] min = new long[grid.numDimensions()];
+		final int[] size = new int[grid.numDimensions()];
+		for (int i = 0; i < blocks.length; ++i)
+		{
+			grid.getCellDimensions(blocks[i], min, size);
+			final long[] max = new long[min.length];
+			Arrays.setAll(max, d -> min[d] + size[d] - 1);
+			intervals[i] = new FinalInterval(min, max);
+		}
+		return intervals;
+	}
+
+	/**
+	 *
+	 * @return flat indices of the blocks in the {@link #getGrid(int) grid} at {@code level} that contain the min of
+	 * each of {@code intervals}
+	 */
+	public long[] toBlocks(final int level, final Interval... intervals)
+	{
+		final CellGrid grid = getGrid(level);
+		final long[] gridDimensions = grid.getGridDimensions();
+		final long[] min = new long[grid.numDimensions()];
+		final long[] position = new long[grid.numDimensions()];
+		final long[] blocks = new long[intervals.length];
+		for (int i = 0; i < intervals.length; ++i)
+		{
+			intervals[i].min(min);
+			grid.getCellPosition(min, position);
+			blocks[i] = IntervalIndexer.positionToIndex(position, gridDimensions);
+		}
+		return blocks;
+	}
+
+	private long shardIndex(final long id)
+	{
+		return Math.floorDiv(id, idsPerShard);
+	}
+
+	private Path shardPath(final int level, final long shardIndex)
+	{
+		return rootPath().resolve(Paths.get("s" + level, Long.toString(shardIndex)));
+	}
+
+	private long[] listShards(final int level) throws IOException
+	{
+		final Path directory = rootPath().resolve("s" + level);
+		if (!Files.isDirectory(directory))
+			return EMPTY;
+		final TLongArrayList shardIndices = new TLongArrayList();
+		try (final DirectoryStream<Path> stream = Files.newDirectoryStream(directory))
+		{
+			for (final Path path : stream)
+			{
+				try
+				{
+					shardIndices.add(Long.parseLong(path.getFileName().toString()));
+				} catch (final NumberFormatException e)
+				{
+					// not a shard, e.g. lock file or temporary file of an interrupted write
+				}
+			}
+		}
+		shardIndices.sort();
+		return shardIndices.toArray();
+	}
+
+	/**
+	 * Shards are replaced atomically when written, so a cached shard is up to date as long as file, modification time,
+	 * and size did not change.
+	 *
+	 * @return memory mapped shard or {@code null} if the shard does not exist because it does not hold any ids
+	 * @throws IOException if the shard cannot be read or is corrupt, or if the root directory does not exist
+	 */
+	private ByteBuffer getShard(final int level, final long shardIndex) throws IOException
+	{
+		final Path path = shardPath(level, shardIndex);
+		final BasicFileAttributes attributes;
+		try
+		{
+			attributes = Files.readAttributes(path, BasicFileAttributes.class);
+		} catch (final NoSuchFileException e)
+		{
+			shards.remove(path);
+			if (!Files.isDirectory(rootPath()))
+				throw new IOException("Label block lookup directory does not exist: " + rootPath(), e);
+			return null;
+		}
+
+		final Shard cached = shards.get(path);
+		if (cached != null && cached.isUpToDate(attributes))
+			return cached.data;
+
+		final Shard shard = Shard.map(path, attributes);
+		shards.put(path, shard);
+		return shard.data;
+	}
+
+	private TLongObjectMap<long[]> readShard(final int level, final long shardIndex) throws IOException
+	{
+		final TLongObjectMap<long[]> entries = new TLongObjectHashMap<>();
+		final ByteBuffer shard = getShard(level, shardIndex);
+		if (shard != null)
+		{
+			final int numIds = shard.getInt(Integer.BYTES);
+			for (int index = 0; index < numIds; ++index)
+				entries.put(id(shard, index), decode(shard, index));
+		}
+		return entries;
+	}
+
+	private void writeShard(final int level, final long shardIndex, final TLongObjectMap<long[]> entries) throws IOException
+	{
+		final Path path = shardPath(level, shardIndex);
+		shards.remove(path);
+		if (entries.isEmpty())
+		{
+			Files.deleteIfExists(path);
+			return;
+		}
+
+		final ByteBuffer shard = encodeShard(entries);
+
+		Files.createDirectories(path.getParent());
+		final Path tmp = Files.createTempFile(path.getParent(), path.getFileName().toString() + ".", ".tmp");
+		try
+		{
+			try (final FileChannel channel = FileChannel.open(tmp, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING))
+			{
+				while (shard.hasRemaining())
+					channel.write(shard);
+			}
+			Files.move(tmp, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+		} finally
+		{
+			Files.deleteIfExists(tmp);
+		}
+	}
+
+	private static long id(final ByteBuffer shard, final int index)
+	{
+		return shard.getLong(HEADER_SIZE + index * Long.BYTES);
+	}
+
+	private static int offsetsOffset(final int numIds)
+	{
+		return HEADER_SIZE + numIds * Long.BYTES;
+	}
+
+	private static int dataOffset(final int numIds)
+	{
+		return offsetsOffset(numIds) + (numIds + 1) * Integer.BYTES;
+	}
+
+	private static class Shard
+	{
+
+		private final ByteBuffer data;
+
+		private final Object fileKey;
+
+		private final FileTime lastModified;
+
+		private final long size;
+
+		private Shard(final ByteBuffer data, final BasicFileAttributes attributes)
+		{
+			this.data = data;
+			this.fileKey = attributes.fileKey();
+			this.lastModified = attributes.lastModifiedTime();
+			this.size = attributes.size();
+		}
+
+		private boolean isUpToDate(final BasicFileAttributes attributes)
+		{
+			return Objects.equals(fileKey, attributes.fileKey())
+					&& lastModified.equals(attributes.lastModifiedTime())
+					&& size == attributes.size();
+		}
+
+		private static Shard map(final Path path, final BasicFileAttributes attributes) throws IOException
+		{
+			if (!attributes.isRegularFile())
+				throw new IOException("Not a label block lookup shard: " + path);
+			try (final FileChannel channel = FileChannel.open(path, StandardOpenOption.READ))
+			{
+				final ByteBuffer data = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size()).order(ByteOrder.BIG_ENDIAN);
+				validate(data, path);
+				return new Shard(data, attributes);
+			}
+		}
+	}
+
+	/**
+	 * Binary search for {@code id} in the sorted ids of {@code shard}.
+	 *
+	 * @return index of {@code id} or {@code -(insertion point) - 1} as in {@link Arrays#binarySearch(long[], long)}
+	 */
+	static int search(final ByteBuffer shard, final long id)
+	{
+		int low = 0;
+		int high = shard.getInt(Integer.BYTES) - 1;
+		while (low <= high)
+		{
+			final int mid = (low + high) >>> 1;
+			final long midId = id(shard, mid);
+			if (midId < id)
+				low = mid + 1;
+			else if (midId > id)
+				high = mid - 1;
+			else
+				return mid;
+		}
+		return -(low + 1);
+	}
+
+	/**
+	 *
+	 * @param entries sorted flat block indices for each id, must not be empty
+	 * @return shard that holds {@code entries}, ready to be written
+	 */
+	static ByteBuffer encodeShard(final TLongObjectMap<long[]> entries)
+	{
+		final long[] ids = entries.keys();
+		Arrays.sort(ids);
+		final int[] offsets = new int[ids.length + 1];
+		final ByteBuffer encoded = encode(ids, entries, offsets);
+
+		final ByteBuffer shard = ByteBuffer
+				.allocate(dataOffset(ids.length) + encoded.remaining())
+				.order(ByteOrder.BIG_ENDIAN);
+		shard.putInt(MAGIC);
+		shard.putInt(ids.length);
+		for (final long id : ids)
+			shard.putLong(id);
+		for (final int offset : offsets)
+			shard.putInt(offset);
+		shard.put(encoded);
+		shard.flip();
+		return shard;
+	}
+
+	/**
+	 * Check that {@code shard} has a valid header and that its size matches the header.
+	 *
+	 * @throws IOException if {@code shard} is not a valid shard
+	 */
+	static void validate(final ByteBuffer shard, final Object source) throws IOException
+	{
+		if (shard.limit() < HEADER_SIZE || shard.getInt(0) != MAGIC)
+			throw new IOException("Not a label block lookup shard: " + source);
+		final int numIds = shard.getInt(Integer.BYTES);
+		if (numIds <= 0 || (long) dataOffset(numIds) > shard.limit())
+			throw new IOException(String.format("Corrupt label block lookup shard %s: %d ids in %d bytes", source, numIds, shard.limit()));
+		final long expectedSize = (long) dataOffset(numIds) + shard.getInt(offsetsOffset(numIds) + numIds * Integer.BYTES);
+		if (expectedSize != shard.limit())
+			throw new IOException(String.format("Corrupt label block lookup shard %s: expected %d bytes but found %d", source, expectedSize, shard.limit()));
+	}
+
+	static long[] decode(final ByteBuffer shard, final int index)
+	{
+		final int numIds = shard.getInt(Integer.BYTES);
+		final ByteBuffer data = shard.duplicate();
+		data.position(dataOffset(numIds) + shard.getInt(offsetsOffset(numIds) + index * Integer.BYTES));
+		final long[] blocks = new long[(int) readVarLong(data)];
+		long previous = 0;
+		for (int i = 0; i < blocks.length; ++i)
+		{
+			previous += readVarLong(data);
+			blocks[i] = previous;
+		}
+		return blocks;
+	}
+
+	private static ByteBuffer encode(final long[] ids, final TLongObjectMap<long[]> entries, final int[] offsets)
+	{
+		long maxSize = 0;
+		for (final long id : ids)
+			maxSize += (entries.get(id).length + 1) * 10L;
+		if (maxSize > Integer.MAX_VALUE)
+			throw new IllegalArgumentException("Too many blocks for a single shard: " + maxSize);
+		final ByteBuffer encoded = ByteBuffer.allocate((int) maxSize);
+		for (int i = 0; i < ids.length; ++i)
+		{
+			final long[] blocks = entries.get(ids[i]);
+			offsets[i] = encoded.position();
+			writeVarLong(encoded, blocks.length);
+			long previous = 0;
+			for (final long block : blocks)
+			{
+				writeVarLong(encoded, block - previous);
+				previous = block;
+			}
+		}
+		offsets[ids.length] = encoded.position();
+		encoded.flip();
+		return encoded;
+	}
+
+	private static void writeVarLong(final ByteBuffer buffer, long value)
+	{
+		while ((value & ~0x7FL) != 0)
+		{
+			buffer.put((byte) ((value & 0x7F) | 0x80));
+			value >>>= 7;
+		}
+		buffer.put((byte) value);
+	}
+
+	private static long readVarLong(final ByteBuffer buffer)
+	{
+		long value = 0;
+		for (int shift = 0; ; shift += 7)
+		{
+			final byte b = buffer.get();
+			value |= (long) (b & 0x7F) << shift;
+			if ((b & 0x80) == 0)
+				return value;
+		}
+	}
+
+}
@@ -0,0 +1,136 @@
+package org.janelia.saalfeldlab.util.n5;
+
+import org.janelia.saalfeldlab.n5.DataBlock;
+import org.janelia.saalfeldlab.n5.N5FSReader;
+import org.janelia.saalfeldlab.n5.N5Reader;
+import org.janelia.saalfeldlab.paintera.data.n5.N5FSMeta;
+import org.janelia.saalfeldlab.paintera.data.n5.ReflectionException;
+import org.janelia.saalfeldlab.util.NamedThreadFactory;
+
+import java.io.IOException;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+
+/**
+ * Read N5 {@link DataBlock blocks} asynchronously without occupying a thread per request.
+ *
+ * The number of requests in flight is bounded per backend (e.g. per container): All readers for the same backend
+ * share a window of size {@link #DEFAULT_MAX_NUM_IN_FLIGHT}, and {@link #readBlockAsync(long...)} blocks the calling
+ * thread until a slot in that window is available. Requests that do not fit into the window thus stay in the
+ * (prioritized) fetch queue. Readers that need threads for I/O (e.g. {@link N5FSAsyncBlockReader}) run on an I/O
+ * executor that is passed to {@link #forDataset(N5Reader, String, ExecutorService)}, or on a shared executor of
+ * {@link #DEFAULT_NUM_IO_THREADS} threads otherwise.
+ */
+public abstract class AsyncBlockReader
+{
+
+	public static final int DEFAULT_MAX_NUM_IN_FLIGHT = 512;
+
+	public static final int DEFAULT_NUM_IO_THREADS = Math.max(1, Runtime.getRuntime().availableProcessors());
+
+	private static final Map<String, Semaphore> IN_FLIGHT_WINDOWS = new ConcurrentHashMap<>();
+
+	private final Semaphore window;
+
+	/**
+	 *
+	 * @param backend identifier of the backend, e.g. container location
+	 * @param maxNumInFlight size of the window of requests in flight. Ignored if a window for {@code backend}
+	 *                       exists already.
+	 */
+	protected AsyncBlockReader(final String backend, final int maxNumInFlight)
+	{
+		this.window = IN_FLIGHT_WINDOWS.computeIfAbsent(backend, b -> new Semaphore(maxNumInFlight));
+	}
+
+	/**
+	 * Start reading a block. Blocks until a slot in the in-flight window of the backend is available.
+	 *
+	 * @param gridPosition position of block in block grid
+	 * @return future that completes with the block, or {@code null} if the block does not exist.
+	 */
+	public CompletableFuture<DataBlock<?>> readBlockAsync(final long... gridPosition)
+	{
+		window.acquireUninterruptibly();
+		final CompletableFuture<DataBlock<?>> future;
+		try
+		{
+			future = readBlockAsyncImpl(gridPosition);
+		} catch (final RuntimeException e)
+		{
+			window.release();
+			throw e;
+		}
+		future.whenComplete((block, throwable) -> window.release());
+		return future;
+	}
+
+	protected abstract CompletableFuture<DataBlock<?>> readBlockAsyncImpl(final long[] gridPosition);
+
+	/**
+	 *
+	 * @param numIOThreads number of threads
+	 * @return fixed size executor of daemon threads that can be passed to
+	 * {@link #forDataset(N5Reader, String, ExecutorService)}
+	 */
+	public static ExecutorService createIOExecutor(final int numIOThreads)
+	{
+		return Executors.newFixedThreadPool(
+				Math.max(1, numIOThreads),
+				new NamedThreadFactory("paintera-async-block-reader-%d", true));
+	}
+
+	/**
+	 * delegates to {@link #forDataset(N5Reader, String, ExecutorService)} with a shared executor of
+	 * {@link #DEFAULT_NUM_IO_THREADS} threads.
+	 */
+	public static Optional<AsyncBlockReader> forDataset(final N5Reader reader, final String dataset) throws IOException
+	{
+		return forDataset(reader, dataset, DefaultIOExecutor.INSTANCE);
+	}
+
+	/**
+	 *
+	 * @param reader container
+	 * @param dataset dataset
+	 * @param ioExecutor executes I/O and decoding of blocks, e.g. from {@link #createIOExecutor(int)}. Not shut down
+	 *                   by the returned reader.
+	 * @return {@link AsyncBlockReader} for {@code dataset} in {@code reader} if asynchronous reading is supported
+	 * for {@code reader}, {@link Optional#empty()} otherwise.
+	 * @throws IOException if any N5 operation throws {@link IOException}
+	 */
+	public static Optional<AsyncBlockReader> forDataset(
+			final N5Reader reader,
+			final String dataset,
+			final ExecutorService ioExecutor) throws IOException
+	{
+		if (reader instanceof N5FSReader)
+		{
+			try
+			{
+				final String basePath = new N5FSMeta((N5FSReader) reader, dataset).basePath();
+				return Optional.of(new N5FSAsyncBlockReader(
+						basePath,
+						dataset,
+						reader.getDatasetAttributes(dataset),
+						DEFAULT_MAX_NUM_IN_FLIGHT,
+						ioExecutor));
+			} catch (final ReflectionException e)
+			{
+				throw new IOException(e);
+			}
+		}
+		return Optional.empty();
+	}
+
+	private static class DefaultIOExecutor
+	{
+		private static final ExecutorService INSTANCE = createIOExecutor(DEFAULT_NUM_IO_THREADS);
+	}
+
+}
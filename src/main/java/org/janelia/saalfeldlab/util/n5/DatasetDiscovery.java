@@ -0,0 +1,431 @@
+package org.janelia.saalfeldlab.util.n5;
+
+import java.io.IOException;
+import java.lang.invoke.MethodHandles;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.BooleanSupplier;
+import java.util.function.Consumer;
+
+import org.janelia.saalfeldlab.n5.N5FSReader;
+import org.janelia.saalfeldlab.n5.N5Reader;
+import org.janelia.saalfeldlab.n5.hdf5.N5HDF5Reader;
+import org.janelia.saalfeldlab.paintera.data.n5.N5FSMeta;
+import org.janelia.saalfeldlab.paintera.data.n5.ReflectionException;
+import org.janelia.saalfeldlab.util.NamedThreadFactory;
+import org.janelia.saalfeldlab.util.PainteraCache;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Find all datasets inside an N5 container (see {@link N5Helpers#discoverDatasets(N5Reader, BooleanSupplier)}) in
+ * parallel and publish each dataset as soon as it is found.
+ *
+ * For containers on the file system, a listing of all visited groups and datasets is cached (see
+ * {@link PainteraCache}) with the modification times of their directories and attributes files. Datasets in the
+ * listing are published immediately. Groups are not read again while both modification times are unchanged: The
+ * listed children of a group are visited instead and only the modification times are read. Attributes files are
+ * checked in addition to directories because N5 re-writes them in place, which does not modify the directory.
+ */
+public class DatasetDiscovery
+{
+
+	private static final Logger LOG = LoggerFactory.getLogger(MethodHandles.lookup().lookupClass());
+
+	private static final int NUM_THREADS = 12;
+
+	private static final ExecutorService WORKERS = Executors.newFixedThreadPool(
+			NUM_THREADS,
+			new NamedThreadFactory("dataset-discovery-%d", true));
+
+	/**
+	 * HDF5 files cannot be read in parallel.
+	 */
+	private static final ExecutorService HDF5_WORKER = Executors.newSingleThreadExecutor(
+			new NamedThreadFactory("dataset-discovery-hdf5-%d", true));
+
+	private static final String LISTING_SUFFIX = ".listing";
+
+	private static final String DATASET = "D";
+
+	private static final String GROUP = "G";
+
+	private static final String ATTRIBUTES_FILE = "attributes.json";
+
+	private static class Entry
+	{
+
+		private final boolean isDataset;
+
+		private final long modificationTime;
+
+		private final long attributesModificationTime;
+
+		private Entry(final boolean isDataset, final long modificationTime, final long attributesModificationTime)
+		{
+			this.isDataset = isDataset;
+			this.modificationTime = modificationTime;
+			this.attributesModificationTime = attributesModificationTime;
+		}
+	}
+
+	/**
+	 * Discover datasets in {@code n5} in the background.
+	 *
+	 * @param n5 container
+	 * @param onDataset called once for every dataset that is found, from the discovery threads
+	 * @param keepLooking discover datasets while {@code keepLooking.getAsBoolean() == true}
+	 * @return sorted list of all datasets when discovery is complete. Cancel to stop discovery. The future is
+	 * cancelled if {@code keepLooking} returns {@code false} before discovery is complete.
+	 */
+	public static CompletableFuture<List<String>> discover(
+			final N5Reader n5,
+			final Consumer<String> onDataset,
+			final BooleanSupplier keepLooking)
+	{
+		return discover(n5, onDataset, keepLooking, n5 instanceof N5HDF5Reader ? HDF5_WORKER : WORKERS);
+	}
+
+	/**
+	 *
+	 * @param n5 container
+	 * @param onDataset called once for every dataset that is found, from the discovery threads
+	 * @param keepLooking discover datasets while {@code keepLooking.getAsBoolean() == true}
+	 * @param es visit groups on {@code es}
+	 * @return sorted list of all datasets when discovery is complete
+	 */
+	public static CompletableFuture<List<String>> discover(
+			final N5Reader n5,
+			final Consumer<String> onDataset,
+			final BooleanSupplier keepLooking,
+			final ExecutorService es)
+	{
+		final Path root = containerPath(n5);
+		final Map<String, Entry> listing = root == null ? null : readListing(root);
+		return new Discovery(n5, root, listing, onDataset, keepLooking, es).start();
+	}
+
+	private static class Discovery
+	{
+
+		private final N5Reader n5;
+
+		private final Path root;
+
+		private final Map<String, Entry> cachedListing;
+
+		private final Map<String, List<String>> cachedChildren = new HashMap<>();
+
+		private final Map<String, Entry> listing = new ConcurrentHashMap<>();
+
+		private final Set<String> published = ConcurrentHashMap.newKeySet();
+
+		private final Consumer<String> onDataset;
+
+		private final BooleanSupplier keepLooking;
+
+		private final ExecutorService es;
+
+		private final AtomicInteger numPendingTasks = new AtomicInteger(0);
+
+		/**
+		 * Do not cache an incomplete listing: Groups that could not be read would be skipped until their parent
+		 * directory is modified.
+		 */
+		private volatile boolean isListingComplete = true;
+
+		private final CompletableFuture<List<String>> result = new CompletableFuture<>();
+
+		private Discovery(
+				final N5Reader n5,
+				final Path root,
+				final Map<String, Entry> cachedListing,
+				final Consumer<String> onDataset,
+				final BooleanSupplier keepLooking,
+				final ExecutorService es)
+		{
+			this.n5 = n5;
+			this.root = root;
+			this.cachedListing = Optional.ofNullable(cachedListing).orElseGet(Collections::emptyMap);
+			this.onDataset = onDataset;
+			this.keepLooking = keepLooking;
+			this.es = es;
+			for (final String path : this.cachedListing.keySet())
+			{
+				final int separator = path.lastIndexOf('/');
+				if (separator >= 0)
+					this.cachedChildren.computeIfAbsent(path.substring(0, separator), k -> new ArrayList<>()).add(path);
+			}
+		}
+
+		private CompletableFuture<List<String>> start()
+		{
+			this.cachedListing.forEach((path, entry) -> {
+				if (entry.isDataset)
+					publish(path);
+			});
+			submit("");
+			return result;
+		}
+
+		private boolean isCancelled()
+		{
+			return result.isDone() || !keepLooking.getAsBoolean() || Thread.currentThread().isInterrupted();
+		}
+
+		private void submit(final String path)
+		{
+			numPendingTasks.incrementAndGet();
+			try
+			{
+				es.submit(() -> visit(path));
+			} catch (final RejectedExecutionException e)
+			{
+				LOG.debug("Unable to visit {}", path, e);
+				isListingComplete = false;
+				finishTask();
+			}
+		}
+
+		private void visit(final String path)
+		{
+			LOG.trace("Discovering subdirectory {}", path);
+			try
+			{
+				if (isCancelled())
+					return;
+
+				final long modificationTime = modificationTime(path);
+				final long attributesModificationTime = attributesModificationTime(path);
+				final Entry cached = this.cachedListing.get(path);
+				if (cached != null
+						&& modificationTime >= 0
+						&& cached.modificationTime == modificationTime
+						&& cached.attributesModificationTime == attributesModificationTime)
+				{
+					listing.put(path, cached);
+					if (cached.isDataset)
+						publish(path);
+					else
+						cachedChildren.getOrDefault(path, Collections.emptyList()).forEach(this::submit);
+					return;
+				}
+
+				if (N5Helpers.isPainteraDataset(n5, path) || n5.datasetExists(path))
+				{
+					listing.put(path, new Entry(true, modificationTime, attributesModificationTime));
+					publish(path);
+					return;
+				}
+
+				/* based on attribute */
+				boolean isMipmapGroup = Optional.ofNullable(n5.getAttribute(path, N5Helpers.MULTI_SCALE_KEY, Boolean.class)).orElse(false);
+
+				String[] groups = null;
+				/* based on group content (the old way) */
+				if (!isMipmapGroup)
+				{
+					groups = n5.list(path);
+					isMipmapGroup = groups.length > 0;
+					for (final String group : groups)
+					{
+						if (!(group.matches("^s[0-9]+$") && n5.datasetExists(path + "/" + group)))
+						{
+							isMipmapGroup = false;
+							break;
+						}
+					}
+					if (isMipmapGroup)
+					{
+						LOG.warn(
+								"Found multi-scale group without {} tag. Implicit multi-scale detection will be " +
+										"removed in the future. Please add \"{}\":{} to attributes.json in group `{}'.",
+								N5Helpers.MULTI_SCALE_KEY,
+								N5Helpers.MULTI_SCALE_KEY,
+								true,
+								path);
+					}
+				}
+
+				if (isMipmapGroup)
+				{
+					listing.put(path, new Entry(true, modificationTime, attributesModificationTime));
+					publish(path);
+				}
+				else
+				{
+					listing.put(path, new Entry(false, modificationTime, attributesModificationTime));
+					if (!isCancelled())
+						for (final String group : groups)
+							submit(path + "/" + group);
+				}
+			} catch (final IOException e)
+			{
+				LOG.debug(e.toString(), e);
+				isListingComplete = false;
+			} finally
+			{
+				finishTask();
+			}
+		}
+
+		private void publish(final String dataset)
+		{
+			if (published.add(dataset))
+			{
+				LOG.debug("Adding dataset {}", dataset);
+				onDataset.accept(dataset);
+			}
+		}
+
+		private void finishTask()
+		{
+			if (numPendingTasks.decrementAndGet() > 0)
+				return;
+
+			if (result.isDone() || !keepLooking.getAsBoolean())
+			{
+				LOG.debug("Dataset discovery was cancelled.");
+				result.cancel(false);
+				return;
+			}
+
+			final List<String> datasets = new ArrayList<>();
+			listing.forEach((path, entry) -> {
+				if (entry.isDataset)
+					datasets.add(path);
+			});
+			Collections.sort(datasets);
+			LOG.debug("Finished dataset discovery, found {} datasets.", datasets.size());
+			if (root != null && isListingComplete)
+				writeListing(root, listing);
+			result.complete(datasets);
+		}
+
+		/**
+		 *
+		 * @return modification time of directory of {@code path} or {@code -1} if not on the file system
+		 */
+		private long modificationTime(final String path) throws IOException
+		{
+			if (root == null)
+				return -1;
+			return Files.getLastModifiedTime(directory(path)).toMillis();
+		}
+
+		/**
+		 *
+		 * @return modification time of the attributes file of {@code path} or {@code -1} if it does not exist or is
+		 * not on the file system
+		 */
+		private long attributesModificationTime(final String path) throws IOException
+		{
+			if (root == null)
+				return -1;
+			try
+			{
+				return Files.getLastModifiedTime(directory(path).resolve(ATTRIBUTES_FILE)).toMillis();
+			} catch (final NoSuchFileException e)
+			{
+				return -1;
+			}
+		}
+
+		private Path directory(final String path)
+		{
+			return root.resolve(path.replaceFirst("^/+", ""));
+		}
+	}
+
+	private static Path containerPath(final N5Reader n5)
+	{
+		if (!(n5 instanceof N5FSReader))
+			return null;
+		try
+		{
+			return Paths.get(new N5FSMeta((N5FSReader) n5, "").basePath()).toAbsolutePath();
+		} catch (final ReflectionException e)
+		{
+			LOG.debug("Unable to determine base path of {} -- will not cache datasets", n5, e);
+			return null;
+		}
+	}
+
+	private static Path listingFile(final Path root)
+	{
+		final String name = UUID.nameUUIDFromBytes(root.toString().getBytes(StandardCharsets.UTF_8)) + LISTING_SUFFIX;
+		return PainteraCache.getCacheFile(DatasetDiscovery.class, name);
+	}
+
+	/**
+	 * The first line of a listing holds the container path, every other line the type of an entry ({@link #DATASET}
+	 * or {@link #GROUP}), the modification times of its directory and of its attributes file, and its path,
+	 * separated by tabs.
+	 */
+	private static Map<String, Entry> readListing(final Path root)
+	{
+		final Path file = listingFile(root);
+		if (!Files.exists(file))
+			return null;
+		try
+		{
+			final List<String> lines = Files.readAllLines(file, StandardCharsets.UTF_8);
+			if (lines.isEmpty() || !lines.get(0).equals(root.toString()))
+				return null;
+			final Map<String, Entry> listing = new HashMap<>();
+			for (final String line : lines.subList(1, lines.size()))
+			{
+				final String[] fields = line.split("\t", 4);
+				listing.put(fields[3], new Entry(DATASET.equals(fields[0]), Long.parseLong(fields[1]), Long.parseLong(fields[2])));
+			}
+			LOG.debug("Read {} cached entries for {} from {}", listing.size(), root, file);
+			return listing;
+		} catch (final IOException | RuntimeException e)
+		{
+			LOG.debug("Unable to read dataset listing {} -- will discover all datasets", file, e);
+			return null;
+		}
+	}
+
+	private static void writeListing(final Path root, final Map<String, Entry> listing)
+	{
+		final Path file = listingFile(root);
+		final List<String> lines = new ArrayList<>();
+		lines.add(root.toString());
+		listing.forEach((path, entry) -> lines.add(String.join(
+				"\t",
+				entry.isDataset ? DATASET : GROUP,
+				Long.toString(entry.modificationTime),
+				Long.toString(entry.attributesModificationTime),
+				path)));
+		try
+		{
+			Files.createDirectories(file.getParent());
+			final Path tmp = file.resolveSibling(file.getFileName() + ".tmp");
+			Files.write(tmp, lines, StandardCharsets.UTF_8);
+			Files.move(tmp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+		} catch (final IOException e)
+		{
+			LOG.debug("Unable to write dataset listing {}", file, e);
+		}
+	}
+
+}
@@ -0,0 +1,217 @@
+package org.janelia.saalfeldlab.util.n5;
+
+import net.imglib2.cache.CacheLoader;
+import net.imglib2.img.basictypeaccess.volatiles.array.VolatileByteArray;
+import net.imglib2.img.basictypeaccess.volatiles.array.VolatileDoubleArray;
+import net.imglib2.img.basictypeaccess.volatiles.array.VolatileFloatArray;
+import net.imglib2.img.basictypeaccess.volatiles.array.VolatileIntArray;
+import net.imglib2.img.basictypeaccess.volatiles.array.VolatileLongArray;
+import net.imglib2.img.basictypeaccess.volatiles.array.VolatileShortArray;
+import net.imglib2.img.cell.Cell;
+import net.imglib2.img.cell.CellGrid;
+import net.imglib2.type.label.LabelUtils;
+import net.imglib2.type.label.VolatileLabelMultisetArray;
+import net.imglib2.util.Intervals;
+import org.janelia.saalfeldlab.n5.DataBlock;
+import org.janelia.saalfeldlab.n5.DataType;
+import org.janelia.saalfeldlab.paintera.cache.AsyncCacheLoader;
+import org.janelia.saalfeldlab.paintera.data.n5.DataTypeNotSupported;
+
+import java.util.Arrays;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.function.BiFunction;
+import java.util.function.Function;
+
+/**
+ * {@link AsyncCacheLoader} that loads {@link Cell cells} from N5 blocks read by an {@link AsyncBlockReader}.
+ *
+ * For primitive types, the data arrays of the blocks are used as cell accesses directly if the block size matches
+ * the cell size.
+ *
+ * @param <A> access type
+ */
+public class N5AsyncCellLoader<A> extends AsyncCacheLoader<Long, Cell<A>>
+{
+
+	private final CellGrid grid;
+
+	private final AsyncBlockReader reader;
+
+	private final BiFunction<DataBlock<?>, int[], A> toAccess;
+
+	private final CacheLoader<Long, Cell<A>> missingBlockLoader;
+
+	/**
+	 *
+	 * @param grid cell grid
+	 * @param reader read blocks from this
+	 * @param toAccess create access from block and cell dimensions. Block may be {@code null} if
+	 *                 {@code missingBlockLoader} is {@code null}.
+	 * @param missingBlockLoader load cells for blocks that do not exist. If {@code null}, {@code toAccess} is called
+	 *                           with {@code null} block instead.
+	 */
+	public N5AsyncCellLoader(
+			final CellGrid grid,
+			final AsyncBlockReader reader,
+			final BiFunction<DataBlock<?>, int[], A> toAccess,
+			final CacheLoader<Long, Cell<A>> missingBlockLoader)
+	{
+		this.grid = grid;
+		this.reader = reader;
+		this.toAccess = toAccess;
+		this.missingBlockLoader = missingBlockLoader;
+	}
+
+	@Override
+	protected CompletableFuture<Cell<A>> loadAsync(final Long key)
+	{
+		final int n = grid.numDimensions();
+		final long[] cellMin = new long[n];
+		final int[] cellDims = new int[n];
+		final long[] gridPosition = new long[n];
+		grid.getCellDimensions(key, cellMin, cellDims);
+		grid.getCellGridPositionFlat(key, gridPosition);
+		return reader.readBlockAsync(gridPosition).thenApply(block -> {
+			if (block == null && missingBlockLoader != null)
+			{
+				try
+				{
+					return missingBlockLoader.get(key);
+				} catch (final Exception e)
+				{
+					throw new CompletionException(e);
+				}
+			}
+			return new Cell<>(cellDims, cellMin, toAccess.apply(block, cellDims));
+		});
+	}
+
+	/**
+	 *
+	 * @param grid cell grid
+	 * @param reader read blocks from this
+	 * @param dataType data type of the dataset
+	 * @param <A> volatile array access for {@code dataType}
+	 * @return {@link N5AsyncCellLoader} that wraps data of blocks as volatile array accesses
+	 * @throws DataTypeNotSupported if {@code dataType} is not a numeric primitive type
+	 */
+	@SuppressWarnings("unchecked")
+	public static <A> N5AsyncCellLoader<A> forPrimitiveType(
+			final CellGrid grid,
+			final AsyncBlockReader reader,
+			final DataType dataType) throws DataTypeNotSupported
+	{
+		final Function<Object, A> wrap;
+		final Function<Integer, Object> allocate;
+		switch (dataType)
+		{
+			case INT8:
+			case UINT8:
+				wrap = data -> (A) new VolatileByteArray((byte[]) data, true);
+				allocate = byte[]::new;
+				break;
+			case INT16:
+			case UINT16:
+				wrap = data -> (A) new VolatileShortArray((short[]) data, true);
+				allocate = short[]::new;
+				break;
+			case INT32:
+			case UINT32:
+				wrap = data -> (A) new VolatileIntArray((int[]) data, true);
+				allocate = int[]::new;
+				break;
+			case INT64:
+			case UINT64:
+				wrap = data -> (A) new VolatileLongArray((long[]) data, true);
+				allocate = long[]::new;
+				break;
+			case FLOAT32:
+				wrap = data -> (A) new VolatileFloatArray((float[]) data, true);
+				allocate = float[]::new;
+				break;
+			case FLOAT64:
+				wrap = data -> (A) new VolatileDoubleArray((double[]) data, true);
+				allocate = double[]::new;
+				break;
+			default:
+				throw new DataTypeNotSupported("Asynchronous loading not supported for data type " + dataType);
+		}
+
+		return new N5AsyncCellLoader<>(
+				grid,
+				reader,
+				(block, cellDims) -> wrap.apply(blockDataForCell(block, cellDims, allocate)),
+				null);
+	}
+
+	/**
+	 *
+	 * @param grid cell grid
+	 * @param reader read blocks from this
+	 * @param missingBlockLoader load cells for blocks that do not exist
+	 * @return {@link N5AsyncCellLoader} that de-serializes label multisets from blocks
+	 */
+	public static N5AsyncCellLoader<VolatileLabelMultisetArray> forLabelMultisets(
+			final CellGrid grid,
+			final AsyncBlockReader reader,
+			final CacheLoader<Long, Cell<VolatileLabelMultisetArray>> missingBlockLoader)
+	{
+		return new N5AsyncCellLoader<>(
+				grid,
+				reader,
+				(block, cellDims) -> LabelUtils.fromBytes((byte[]) block.getData(), (int) Intervals.numElements(cellDims)),
+				missingBlockLoader);
+	}
+
+	/**
+	 * Use data of {@code block} directly if block size matches {@code cellDims}. Otherwise, copy the overlap of block
+	 * and cell into a newly allocated (zero-initialized) array.
+	 */
+	private static Object blockDataForCell(
+			final DataBlock<?> block,
+			final int[] cellDims,
+			final Function<Integer, Object> allocate)
+	{
+		if (block != null && Arrays.equals(block.getSize(), cellDims))
+			return block.getData();
+
+		final Object data = allocate.apply((int) Intervals.numElements(cellDims));
+		if (block == null)
+			return data;
+
+		final int[] blockDims = block.getSize();
+		final int n = cellDims.length;
+		final int[] overlap = new int[n];
+		Arrays.setAll(overlap, d -> Math.min(blockDims[d], cellDims[d]));
+		if (Arrays.stream(overlap).anyMatch(o -> o <= 0))
+			return data;
+
+		// copy rows along dimension 0
+		final int[] position = new int[n];
+		final Object source = block.getData();
+		while (true)
+		{
+			int sourceOffset = 0;
+			int targetOffset = 0;
+			for (int d = n - 1; d >= 0; --d)
+			{
+				sourceOffset = sourceOffset * blockDims[d] + position[d];
+				targetOffset = targetOffset * cellDims[d] + position[d];
+			}
+			System.arraycopy(source, sourceOffset, data, targetOffset, overlap[0]);
+
+			int d = 1;
+			for (; d < n; ++d)
+			{
+				if (++position[d] < overlap[d])
+					break;
+				position[d] = 0;
+			}
+			if (d >= n)
+				break;
+		}
+		return data;
+	}
+
+}
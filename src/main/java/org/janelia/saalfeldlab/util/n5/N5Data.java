@@ -1,15 +1,19 @@
 package org.janelia.saalfeldlab.util.n5;
 
 import bdv.viewer.Interpolation;
+import com.google.gson.Gson;
+import com.google.gson.GsonBuilder;
 import com.pivovarit.function.ThrowingConsumer;
 import com.pivovarit.function.ThrowingSupplier;
 import net.imglib2.RandomAccessible;
 import net.imglib2.RandomAccessibleInterval;
 import net.imglib2.Volatile;
+import net.imglib2.cache.CacheLoader;
 import net.imglib2.cache.img.CachedCellImg;
 import net.imglib2.cache.img.CellLoader;
 import net.imglib2.cache.volatiles.VolatileCache;
 import net.imglib2.img.NativeImg;
+import net.imglib2.img.basictypeaccess.AccessFlags;
 import net.imglib2.img.basictypeaccess.array.ArrayDataAccess;
 import net.imglib2.img.cell.Cell;
 import net.imglib2.img.cell.CellGrid;
@@ -26,6 +30,8 @@ import net.imglib2.type.label.VolatileLabelMultisetType;
 import net.imglib2.type.numeric.RealType;
 import net.imglib2.util.Pair;
 import net.imglib2.util.Triple;
+import org.janelia.saalfeldlab.labels.blocks.LabelBlockLookup;
+import org.janelia.saalfeldlab.labels.blocks.LabelBlockLookupAdapter;
 import org.janelia.saalfeldlab.n5.DataType;
 import org.janelia.saalfeldlab.n5.DatasetAttributes;
 import org.janelia.saalfeldlab.n5.GzipCompression;
@@ -42,17 +48,20 @@ import org.janelia.saalfeldlab.paintera.data.n5.N5Meta;
 import org.janelia.saalfeldlab.paintera.data.n5.ReflectionException;
 import org.janelia.saalfeldlab.paintera.ui.opendialog.VolatileHelpers;
 import org.janelia.saalfeldlab.util.NamedThreadFactory;
+import org.janelia.saalfeldlab.util.grids.LabelBlockLookupSharded;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.io.IOException;
 import java.lang.invoke.MethodHandles;
+import java.nio.file.Files;
 import java.nio.file.Paths;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.HashMap;
 import java.util.Map;
 import java.util.Objects;
+import java.util.Optional;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
 import java.util.concurrent.Future;
@@ -268,10 +277,21 @@ public class N5Data {
 
 		try {
 			final CellGrid grid = N5Helpers.getGrid(reader, dataset);
-			final CellLoader<T> loader = new N5CellLoader<>(reader, dataset, reader.getDatasetAttributes(dataset).getBlockSize());
-			final T type = N5Types.type(reader.getDatasetAttributes(dataset).getDataType());
-			final Pair<CachedCellImg<T, A>, Invalidate<Long>> raw = globalCache.createVolatileImg(grid, loader, type);
-			final Triple<RandomAccessibleInterval<V>, VolatileCache<Long, Cell<A>>, Invalidate<Long>> vraw = globalCache.wrapAsVolatile(raw.getA(), raw.getB(), priority);
+			final DatasetAttributes attributes = reader.getDatasetAttributes(dataset);
+			final T type = N5Types.type(attributes.getDataType());
+			final Optional<AsyncBlockReader> asyncReader = AsyncBlockReader.forDataset(reader, dataset);
+			final Pair<CachedCellImg<T, A>, Invalidate<Long>> raw;
+			final Triple<RandomAccessibleInterval<V>, VolatileCache<Long, Cell<A>>, Invalidate<Long>> vraw;
+			if (asyncReader.isPresent()) {
+				LOG.debug("Loading blocks of dataset {} asynchronously", dataset);
+				final N5AsyncCellLoader<A> loader = N5AsyncCellLoader.forPrimitiveType(grid, asyncReader.get(), attributes.getDataType());
+				raw = globalCache.createImg(grid, loader, type, AccessFlags.VOLATILE);
+				vraw = globalCache.wrapAsVolatile(raw.getA(), raw.getB(), loader, priority);
+			} else {
+				final CellLoader<T> loader = new N5CellLoader<>(reader, dataset, attributes.getBlockSize());
+				raw = globalCache.createVolatileImg(grid, loader, type);
+				vraw = globalCache.wrapAsVolatile(raw.getA(), raw.getB(), priority);
+			}
 			return new ImagesWithInvalidate<>(raw.getA(), vraw.getA(), transform, raw.getB(), vraw.getC());
 		}
 		catch (final Exception e)
@@ -485,9 +505,15 @@ public class N5Data {
 					dataset,
 					N5LabelMultisetCacheLoader.constantNullReplacement(Label.BACKGROUND)
 			);
+			final CellGrid grid = new CellGrid(attrs.getDimensions(), attrs.getBlockSize());
+			final N5AsyncCellLoader<VolatileLabelMultisetArray> asyncLoader = AsyncBlockReader
+					.forDataset(reader, dataset)
+					.map(r -> N5AsyncCellLoader.forLabelMultisets(grid, r, loader))
+					.orElse(null);
+			final CacheLoader<Long, Cell<VolatileLabelMultisetArray>> cacheLoader = asyncLoader == null ? loader : asyncLoader;
 			final Pair<CachedCellImg<LabelMultisetType, VolatileLabelMultisetArray>, Invalidate<Long>> cachedImg = globalCache.createImg(
-					new CellGrid(attrs.getDimensions(), attrs.getBlockSize()),
-					loader,
+					grid,
+					cacheLoader,
 					new LabelMultisetType().getEntitiesPerPixel(),
 					new VolatileLabelMultisetArray(0, true, new long[]{Label.INVALID})
 			);
@@ -503,6 +529,7 @@ public class N5Data {
 					cachedImg.getB(),
 					linkedTypeFactory,
 					new VolatileHelpers.CreateInvalidVolatileLabelMultisetArray(cachedImg.getA().getCellGrid()),
+					asyncLoader,
 					priority);
 
 			return new ImagesWithInvalidate<>(cachedImg.getA(), vimg.getA(), transform, cachedImg.getB(), vimg.getC());
@@ -712,6 +739,38 @@ public class N5Data {
 			final int[] maxNumEntries,
 			final boolean ignoreExisiting) throws IOException
 	{
+		createEmptyLabeLDataset(container, group, dimensions, blockSize, resolution, offset, relativeScaleFactors, maxNumEntries, ignoreExisiting, false);
+	}
+
+	/**
+	 *
+	 * @param container container
+	 * @param group target group in {@code container}
+	 * @param dimensions size
+	 * @param blockSize chunk size
+	 * @param resolution voxel size
+	 * @param offset in world coordinates
+	 * @param relativeScaleFactors relative scale factors for multi-scale data, e.g.
+	 * {@code [2,2,1], [2,2,2]} will result in absolute factors {@code [1,1,1], [2,2,1], [4,4,2]}.
+	 * @param maxNumEntries limit number of entries in each {@link LabelMultiset} (set to less than or equal to zero for unbounded)
+	 * @param ignoreExisiting overwrite any existing data set
+	 * @param useShardedLabelBlockLookup store the label-to-block mapping in a {@link LabelBlockLookupSharded} instead
+	 * of the default label block lookup
+	 * @throws IOException if any n5 operation throws {@link IOException} or {@code group}
+	 * already exists and {@code ignorExisting} is {@code false}
+	 */
+	public static void createEmptyLabeLDataset(
+			final String container,
+			final String group,
+			final long[] dimensions,
+			final int[] blockSize,
+			final double[] resolution,
+			final double[] offset,
+			final double[][] relativeScaleFactors,
+			final int[] maxNumEntries,
+			final boolean ignoreExisiting,
+			final boolean useShardedLabelBlockLookup) throws IOException
+	{
 
 		//		{"painteraData":{"type":"label"},
 		// "maxId":191985,
@@ -755,6 +814,8 @@ public class N5Data {
 		final String scaleUniqueLabelsPattern = String.format("%s/s%%d", uniqueLabelsGroup);
 		final long[]       scaledDimensions         = dimensions.clone();
 		final double[] accumulatedFactors = new double[] {1.0, 1.0, 1.0};
+		final long[][] lookupDimensions = new long[relativeScaleFactors.length + 1][];
+		final int[][] lookupBlockSizes = new int[relativeScaleFactors.length + 1][];
 		for (int scaleLevel = 0, downscaledLevel = -1; downscaledLevel < relativeScaleFactors.length; ++scaleLevel, ++downscaledLevel)
 		{
 			final double[]     scaleFactors       = downscaledLevel < 0 ? null : relativeScaleFactors[downscaledLevel];
@@ -764,6 +825,8 @@ public class N5Data {
 			final int maxNum = downscaledLevel < 0 ? -1 : maxNumEntries[downscaledLevel];
 			n5.createDataset(dataset, scaledDimensions, blockSize, DataType.UINT8, new GzipCompression());
 			n5.createDataset(uniqeLabelsDataset, scaledDimensions, blockSize, DataType.UINT64, new GzipCompression());
+			lookupDimensions[scaleLevel] = scaledDimensions.clone();
+			lookupBlockSizes[scaleLevel] = blockSize.clone();
 
 			// {"maxNumEntries":-1,"compression":{"type":"gzip","level":-1},"downsamplingFactors":[2.0,2.0,1.0],"blockSize":[64,64,64],"dataType":"uint8","dimensions":[625,625,125]}%
 			n5.setAttribute(dataset, N5Helpers.MAX_NUM_ENTRIES_KEY, maxNum);
@@ -785,5 +848,19 @@ public class N5Data {
 				Arrays.setAll(accumulatedFactors, dim -> accumulatedFactors[dim] * scaleFactors[dim]);
 			}
 		}
+
+		if (!useShardedLabelBlockLookup)
+			return;
+
+		// store the label-to-block mapping in shards instead of one file per id, relative to the container so that the
+		// container can be moved
+		final String shardsRoot = Paths.get(group, N5Helpers.LABEL_TO_BLOCK_SHARDS).toString();
+		Files.createDirectories(Paths.get(container, shardsRoot));
+		final LabelBlockLookup labelBlockLookup = new LabelBlockLookupSharded(
+				shardsRoot,
+				lookupDimensions,
+				lookupBlockSizes);
+		final Gson gson = new GsonBuilder().registerTypeHierarchyAdapter(LabelBlockLookup.class, LabelBlockLookupAdapter.getJsonAdapter()).create();
+		n5.setAttribute(group, N5Helpers.LABEL_BLOCK_LOOKUP_KEY, gson.toJsonTree(labelBlockLookup, LabelBlockLookup.class));
 	}
 }
@@ -0,0 +1,148 @@
+package org.janelia.saalfeldlab.util.n5;
+
+import org.janelia.saalfeldlab.n5.DataBlock;
+import org.janelia.saalfeldlab.n5.DatasetAttributes;
+import org.janelia.saalfeldlab.n5.DefaultBlockReader;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.lang.invoke.MethodHandles;
+import java.nio.ByteBuffer;
+import java.nio.channels.AsynchronousFileChannel;
+import java.nio.channels.CompletionHandler;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.Collections;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+
+/**
+ * {@link AsyncBlockReader} for N5 containers on the file system based on {@link AsynchronousFileChannel}.
+ * Reads and completion handlers (including decompression) run on the I/O executor that is passed on construction,
+ * i.e. the size of that executor bounds the number of concurrent reads, not the number of requests in flight.
+ */
+public class N5FSAsyncBlockReader extends AsyncBlockReader
+{
+
+	private static final Logger LOG = LoggerFactory.getLogger(MethodHandles.lookup().lookupClass());
+
+	private final Path datasetPath;
+
+	private final DatasetAttributes attributes;
+
+	private final ExecutorService ioExecutor;
+
+	/**
+	 *
+	 * @param basePath N5 container on the file system
+	 * @param dataset dataset in {@code basePath}
+	 * @param attributes attributes of {@code dataset}
+	 * @param maxNumInFlight size of the window of requests in flight, see {@link AsyncBlockReader}
+	 * @param ioExecutor executes reads and completion handlers. Not shut down by this reader.
+	 */
+	public N5FSAsyncBlockReader(
+			final String basePath,
+			final String dataset,
+			final DatasetAttributes attributes,
+			final int maxNumInFlight,
+			final ExecutorService ioExecutor)
+	{
+		super(basePath, maxNumInFlight);
+		this.datasetPath = Paths.get(basePath, dataset);
+		this.attributes = attributes;
+		this.ioExecutor = ioExecutor;
+	}
+
+	@Override
+	protected CompletableFuture<DataBlock<?>> readBlockAsyncImpl(final long[] gridPosition)
+	{
+		final CompletableFuture<DataBlock<?>> future = new CompletableFuture<>();
+		final Path path = blockPath(gridPosition);
+
+		final AsynchronousFileChannel channel;
+		final ByteBuffer buffer;
+		try
+		{
+			channel = AsynchronousFileChannel.open(
+					path,
+					Collections.singleton(StandardOpenOption.READ),
+					ioExecutor);
+		} catch (final NoSuchFileException e)
+		{
+			future.complete(null);
+			return future;
+		} catch (final IOException e)
+		{
+			future.completeExceptionally(e);
+			return future;
+		}
+
+		try
+		{
+			buffer = ByteBuffer.allocate(Math.toIntExact(channel.size()));
+		} catch (final IOException | ArithmeticException e)
+		{
+			close(channel);
+			future.completeExceptionally(e);
+			return future;
+		}
+
+		channel.read(buffer, 0, buffer, new CompletionHandler<Integer, ByteBuffer>()
+		{
+			@Override
+			public void completed(final Integer numBytesRead, final ByteBuffer buffer)
+			{
+				if (numBytesRead >= 0 && buffer.hasRemaining())
+				{
+					channel.read(buffer, buffer.position(), buffer, this);
+					return;
+				}
+				close(channel);
+				try
+				{
+					future.complete(DefaultBlockReader.readBlock(
+							new ByteArrayInputStream(buffer.array(), 0, buffer.position()),
+							attributes,
+							gridPosition));
+				} catch (final IOException | RuntimeException e)
+				{
+					future.completeExceptionally(e);
+				}
+			}
+
+			@Override
+			public void failed(final Throwable throwable, final ByteBuffer buffer)
+			{
+				close(channel);
+				LOG.debug("Unable to read block {}", path, throwable);
+				future.completeExceptionally(throwable);
+			}
+		});
+
+		return future;
+	}
+
+	private Path blockPath(final long[] gridPosition)
+	{
+		Path path = datasetPath;
+		for (final long p : gridPosition)
+			path = path.resolve(Long.toString(p));
+		return path;
+	}
+
+	private static void close(final AsynchronousFileChannel channel)
+	{
+		try
+		{
+			channel.close();
+		} catch (final IOException e)
+		{
+			LOG.debug("Unable to close channel {}", channel, e);
+		}
+	}
+
+}
@@ -27,24 +27,21 @@ import org.janelia.saalfeldlab.paintera.data.n5.ReflectionException;
 import org.janelia.saalfeldlab.paintera.exception.PainteraException;
 import org.janelia.saalfeldlab.paintera.id.IdService;
 import org.janelia.saalfeldlab.paintera.id.N5IdService;
-import org.janelia.saalfeldlab.util.NamedThreadFactory;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.io.IOException;
 import java.lang.invoke.MethodHandles;
 import java.nio.file.Paths;
-import java.util.ArrayList;
 import java.util.Arrays;
-import java.util.Collection;
 import java.util.Collections;
 import java.util.Comparator;
 import java.util.List;
 import java.util.Optional;
 import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
 import java.util.concurrent.Future;
-import java.util.concurrent.atomic.AtomicInteger;
 import java.util.function.BiFunction;
 import java.util.function.BooleanSupplier;
 import java.util.function.LongSupplier;
@@ -78,6 +75,10 @@ public class N5Helpers
 
 	public static final String LABEL_TO_BLOCK_MAPPING = "label-to-block-mapping";
 
+	public static final String LABEL_TO_BLOCK_SHARDS = "label-to-block-shards";
+
+	public static final String LABEL_BLOCK_LOOKUP_KEY = "labelBlockLookup";
+
 	private static final Logger LOG = LoggerFactory.getLogger(MethodHandles.lookup().lookupClass());
 
 	/**
@@ -264,6 +265,21 @@ public class N5Helpers
 		return isHDF(base) ? new N5HDF5Writer(base, defaultCellDimensions) : new N5FSWriter(base, gsonBuilder);
 	}
 
+	/**
+	 *
+	 * @param meta container and dataset
+	 * @return absolute location of the container of {@code meta} on the file system, or {@code null} if {@code meta}
+	 * is neither backed by the file system nor by HDF5
+	 */
+	public static String containerLocation(final N5Meta meta)
+	{
+		if (meta instanceof N5FSMeta)
+			return Paths.get(((N5FSMeta) meta).basePath()).toAbsolutePath().toString();
+		if (meta instanceof N5HDF5Meta)
+			return Paths.get(((N5HDF5Meta) meta).file()).toAbsolutePath().toString();
+		return null;
+	}
+
 	/**
 	 * Generate {@link N5Meta} from base path
 	 * @param base base path of n5 container
@@ -304,13 +320,7 @@ public class N5Helpers
 			final N5Reader n5,
 			final BooleanSupplier keepLooking)
 	{
-		final ExecutorService es = Executors.newFixedThreadPool(
-				n5 instanceof N5HDF5Reader ? 1 : 12,
-				new NamedThreadFactory("dataset-discovery-%d", true));
-		final List<String> datasets = discoverDatasets(n5, keepLooking, es);
-		LOG.debug("Shutting down discovery ExecutorService.");
-		es.shutdownNow();
-		return datasets;
+		return waitForDatasets(DatasetDiscovery.discover(n5, dataset -> {}, keepLooking));
 	}
 
 	/**
@@ -329,131 +339,29 @@ public class N5Helpers
 			final BooleanSupplier keepLooking,
 			final ExecutorService es)
 	{
-		final List<String> datasets = new ArrayList<>();
-		final AtomicInteger counter = new AtomicInteger(1);
-		Future<?> f = es.submit(() -> discoverSubdirectories(n5, "", datasets, es, counter, keepLooking));
-		while (true) {
-			try {
-				synchronized (counter) {
-					counter.wait();
-					final int count = counter.get();
-					LOG.debug("Current discovery task count is {}", count);
-					if (counter.get() <= 0) {
-						LOG.debug("Finished all discovery tasks.");
-						break;
-					}
-				}
-			} catch (InterruptedException e) {
-				LOG.debug("Was interrupted -- will stop dataset discovery.");
-				Thread.currentThread().interrupt();
-				break;
-			}
-		}
-		Collections.sort(datasets);
-		return datasets;
+		return waitForDatasets(DatasetDiscovery.discover(n5, dataset -> {}, keepLooking, es));
 	}
 
-	private static void discoverSubdirectories(
-			final N5Reader n5,
-			final String pathName,
-			final Collection<String> datasets,
-			final ExecutorService exec,
-			final AtomicInteger counter,
-			final BooleanSupplier keepLooking)
+	private static List<String> waitForDatasets(final Future<List<String>> discovery)
 	{
-
-		LOG.trace("Discovering subdirectory {}", pathName);
-
 		try
 		{
-			if (!keepLooking.getAsBoolean() || Thread.currentThread().isInterrupted())
-				return;
-
-			if (isPainteraDataset(n5, pathName))
-			{
-				synchronized (datasets)
-				{
-					datasets.add(pathName);
-				}
-			}
-			else if (n5.datasetExists(pathName))
-			{
-				synchronized (datasets)
-				{
-					datasets.add(pathName);
-				}
-			}
-			else
-			{
-
-				String[] groups = null;
-				/* based on attribute */
-
-				boolean isMipmapGroup = Optional.ofNullable(n5.getAttribute(
-						pathName,
-						MULTI_SCALE_KEY,
-						Boolean.class
-				                                                           )).orElse(false);
-
-				/* based on groupd content (the old way) */
-				if (!isMipmapGroup)
-				{
-					groups = n5.list(pathName);
-					isMipmapGroup = groups.length > 0;
-					for (final String group : groups)
-					{
-						if (!(group.matches("^s[0-9]+$") && n5.datasetExists(pathName + "/" + group)))
-						{
-							isMipmapGroup = false;
-							break;
-						}
-					}
-					if (isMipmapGroup)
-					{
-						LOG.warn(
-								"Found multi-scale group without {} tag. Implicit multi-scale detection will be " +
-										"removed in the future. Please add \"{}\":{} to attributes.json in group `{}'.",
-								MULTI_SCALE_KEY,
-								MULTI_SCALE_KEY,
-								true,
-								pathName
-						        );
-					}
-				}
-				if (isMipmapGroup)
-				{
-					synchronized (datasets)
-					{
-						LOG.debug("Adding dataset {}", pathName);
-						datasets.add(pathName);
-					}
-				}
-				else
-				{
-					if (keepLooking.getAsBoolean() && !Thread.currentThread().isInterrupted()) {
-						for (final String group : groups) {
-							final String groupPathName = pathName + "/" + group;
-							final int numThreads = counter.incrementAndGet();
-							LOG.debug("Entering {}, {} tasks created", groupPathName, numThreads);
-							exec.submit(() -> discoverSubdirectories(n5, groupPathName, datasets, exec, counter, keepLooking));
-						}
-					}
-				}
-			}
-		} catch (final IOException e)
+			return discovery.get();
+		} catch (final InterruptedException e)
 		{
-			LOG.debug(e.toString(), e);
-		}
-		finally {
-			synchronized(counter) {
-				final int numThreads = counter.decrementAndGet();
-				counter.notifyAll();
-				LOG.debug("Leaving {}, {} tasks remaining", pathName, numThreads);
-			}
+			LOG.debug("Was interrupted -- will stop dataset discovery.");
+			discovery.cancel(true);
+			Thread.currentThread().interrupt();
+		} catch (final CancellationException e)
+		{
+			LOG.debug("Dataset discovery was cancelled.");
+		} catch (final ExecutionException e)
+		{
+			LOG.debug("Dataset discovery failed.", e);
 		}
+		return Collections.emptyList();
 	}
 
-
 	/**
 	 * Adjust {@link AffineTransform3D} by scaling and translating appropriately.
 	 * @param transform to be adjusted wrt to downsampling factors
@@ -927,7 +835,7 @@ public class N5Helpers
 				N5FSMeta n5fs = new N5FSMeta((N5FSReader) reader, group);
 				final GsonBuilder gsonBuilder = new GsonBuilder().registerTypeHierarchyAdapter(LabelBlockLookup.class, LabelBlockLookupAdapter.getJsonAdapter());
 				final Gson gson = gsonBuilder.create();
-				final JsonElement labelBlockLookupJson = reader.getAttribute(group, "labelBlockLookup", JsonElement.class);
+				final JsonElement labelBlockLookupJson = reader.getAttribute(group, LABEL_BLOCK_LOOKUP_KEY, JsonElement.class);
 				LOG.debug("Got label block lookup json: {}", labelBlockLookupJson);
 				final LabelBlockLookup lookup = Optional
 						.ofNullable(labelBlockLookupJson)
@@ -935,6 +843,8 @@ public class N5Helpers
 						.map(obj -> gson.fromJson(obj, LabelBlockLookup.class))
 						.orElseGet(ThrowingSupplier.unchecked(() -> new LabelBlockLookupFromFile(Paths.get(n5fs.basePath(), group, "/", "label-to-block-mapping", "s%d", "%d").toString())));
 				LOG.debug("Got lookup type: {}", lookup.getClass());
+				if (lookup instanceof LabelBlockLookupSharded)
+					((LabelBlockLookupSharded) lookup).setContainer(n5fs.basePath());
 				return lookup;
 			} else
 				throw new NotAPainteraDataset(reader, group);
@@ -5,8 +5,11 @@ import net.imglib2.RandomAccessibleInterval;
 import net.imglib2.Volatile;
 import net.imglib2.img.array.ArrayImgs;
 import net.imglib2.type.numeric.ARGBType;
+import net.imglib2.type.numeric.RealType;
 import net.imglib2.type.numeric.real.DoubleType;
 import net.imglib2.type.volatiles.VolatileDoubleType;
+import net.imglib2.type.volatiles.VolatileUnsignedByteType;
+import net.imglib2.type.volatiles.VolatileUnsignedShortType;
 import net.imglib2.util.Intervals;
 import net.imglib2.view.Views;
 import net.imglib2.view.composite.RealComposite;
@@ -78,5 +81,73 @@ public class ARGBCompositeColorConverterTest {
 				.forEach(p -> Assert.assertEquals(p.getA().get(), p.getB().get()));
 	}
 
+	@Test
+	public void testUnsignedByteLookupTables()
+	{
+		final ARGBCompositeColorConverter<VolatileUnsignedByteType, RealComposite<VolatileUnsignedByteType>, Volatile<RealComposite<VolatileUnsignedByteType>>> c = ARGBCompositeColorConverter.imp1(3, 0.0, 255.0);
+		c.colorProperty(0).set(Colors.toARGBType(Color.RED));
+		c.colorProperty(1).set(Colors.toARGBType(Color.valueOf("#00ff00")));
+		c.colorProperty(2).set(Colors.toARGBType(Color.BLUE));
+
+		final byte[] data = {
+				(byte) 255, 0, 0, (byte) 128,
+				0, (byte) 255, 0, 64,
+				0, 0, (byte) 255, 0
+		};
+		final RandomAccessibleInterval<ARGBType> asColor = asColor(
+				Converters.convert(ArrayImgs.unsignedBytes(data, data.length / 3, 3), new TypeVolatileConverter<>(), new VolatileUnsignedByteType()),
+				c);
+
+		assertColors(new int[] {0xFFFF0000, 0xFF00FF00, 0xFF0000FF, 0xFF804000}, asColor);
+
+		// lookup tables must be updated when contrast changes
+		c.maxProperty(0).set(128.0);
+		c.maxProperty(1).set(128.0);
+		assertColors(new int[] {0xFFFF0000, 0xFF00FF00, 0xFF0000FF, 0xFFFF8000}, asColor);
+	}
+
+	@Test
+	public void testUnsignedShort()
+	{
+		final ARGBCompositeColorConverter<VolatileUnsignedShortType, RealComposite<VolatileUnsignedShortType>, Volatile<RealComposite<VolatileUnsignedShortType>>> c = ARGBCompositeColorConverter.imp1(3, 0.0, 1000.0);
+		c.colorProperty(0).set(Colors.toARGBType(Color.RED));
+		c.colorProperty(1).set(Colors.toARGBType(Color.valueOf("#00ff00")));
+		c.colorProperty(2).set(Colors.toARGBType(Color.BLUE));
+
+		final short[] data = {
+				1000, 0, 0, 2000,
+				0, 1000, 0, 600,
+				0, 0, 1000, 0
+		};
+		final RandomAccessibleInterval<ARGBType> asColor = asColor(
+				Converters.convert(ArrayImgs.unsignedShorts(data, data.length / 3, 3), new TypeVolatileConverter<>(), new VolatileUnsignedShortType()),
+				c);
+
+		assertColors(new int[] {0xFFFF0000, 0xFF00FF00, 0xFF0000FF, 0xFFFF9900}, asColor);
+
+		// lookup tables must be updated when contrast changes
+		c.maxProperty(1).set(600.0);
+		assertColors(new int[] {0xFFFF0000, 0xFF00FF00, 0xFF0000FF, 0xFFFFFF00}, asColor);
+	}
+
+	private static <R extends RealType<R>> RandomAccessibleInterval<ARGBType> asColor(
+			final RandomAccessibleInterval<R> channels,
+			final ARGBCompositeColorConverter<R, RealComposite<R>, Volatile<RealComposite<R>>> converter)
+	{
+		final Converter<RealComposite<R>, VolatileWithSet<RealComposite<R>>> viewerConverter = (source, target) -> {
+			target.setT(source);
+			target.setValid(true);
+		};
+		final RandomAccessibleInterval<VolatileWithSet<RealComposite<R>>> volatileComposite =
+				Converters.convert(Views.collapseReal(channels), viewerConverter, new VolatileWithSet<>(null, true));
+		return Converters.convert(volatileComposite, converter, new ARGBType(1));
+	}
+
+	private static void assertColors(final int[] expected, final RandomAccessibleInterval<ARGBType> actual)
+	{
+		Views
+				.interval(Views.pair(ArrayImgs.argbs(expected, expected.length), actual), actual)
+				.forEach(p -> Assert.assertEquals(p.getA().get(), p.getB().get()));
+	}
 
 }
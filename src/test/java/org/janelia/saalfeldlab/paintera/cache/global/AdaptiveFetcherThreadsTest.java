@@ -0,0 +1,74 @@
+package org.janelia.saalfeldlab.paintera.cache.global;
+
+import net.imglib2.cache.queue.BlockingFetchQueues;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+public class AdaptiveFetcherThreadsTest {
+
+	private static final int INITIAL_NUM_THREADS = 4;
+
+	private static final long ADJUSTMENT_INTERVAL_MILLIS = 20;
+
+	@Test
+	public void testIdleThenBurst() throws InterruptedException
+	{
+		final BlockingFetchQueues<Callable<?>> queue = new BlockingFetchQueues<>(1);
+		// default minimum is the initial number of threads
+		final AdaptiveFetcherThreads fetcherThreads = new AdaptiveFetcherThreads(queue, INITIAL_NUM_THREADS);
+		try
+		{
+			// idle for several adjustment intervals
+			Thread.sleep(4 * AdaptiveFetcherThreads.DEFAULT_ADJUSTMENT_INTERVAL_MILLIS);
+			Assert.assertEquals(INITIAL_NUM_THREADS, fetcherThreads.getTargetNumThreads());
+			Assert.assertEquals(INITIAL_NUM_THREADS, fetcherThreads.getNumThreads());
+
+			// burst: all loads block until INITIAL_NUM_THREADS of them run concurrently
+			final int numLoads = 4 * INITIAL_NUM_THREADS;
+			final CountDownLatch concurrent = new CountDownLatch(INITIAL_NUM_THREADS);
+			final CountDownLatch done = new CountDownLatch(numLoads);
+			final AtomicInteger maxConcurrent = new AtomicInteger();
+			final AtomicInteger running = new AtomicInteger();
+			for (int i = 0; i < numLoads; ++i)
+				queue.put(() -> {
+					maxConcurrent.accumulateAndGet(running.incrementAndGet(), Math::max);
+					concurrent.countDown();
+					concurrent.await(1, TimeUnit.SECONDS);
+					running.decrementAndGet();
+					done.countDown();
+					return null;
+				}, 0, false);
+
+			Assert.assertTrue("Loads did not run concurrently after idle period", concurrent.await(200, TimeUnit.MILLISECONDS));
+			Assert.assertTrue(done.await(10, TimeUnit.SECONDS));
+			Assert.assertTrue(maxConcurrent.get() >= INITIAL_NUM_THREADS);
+		} finally
+		{
+			fetcherThreads.stop();
+		}
+	}
+
+	@Test
+	public void testNeverBelowMinimum() throws InterruptedException
+	{
+		final BlockingFetchQueues<Callable<?>> queue = new BlockingFetchQueues<>(1);
+		final AdaptiveFetcherThreads fetcherThreads = new AdaptiveFetcherThreads(queue, 8, 3, 64, ADJUSTMENT_INTERVAL_MILLIS);
+		try
+		{
+			Thread.sleep(20 * ADJUSTMENT_INTERVAL_MILLIS);
+			Assert.assertEquals(3, fetcherThreads.getTargetNumThreads());
+			// idle threads retire within one poll interval
+			Thread.sleep(500);
+			Assert.assertEquals(3, fetcherThreads.getNumThreads());
+		} finally
+		{
+			fetcherThreads.stop();
+		}
+	}
+
+}
@@ -0,0 +1,227 @@
+package org.janelia.saalfeldlab.paintera.data.mask;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Stream;
+
+public class CanvasJournalTest {
+
+	private Path directory;
+
+	@Before
+	public void createDirectory() throws IOException
+	{
+		directory = Files.createTempDirectory("canvas-journal-");
+	}
+
+	@After
+	public void deleteDirectory() throws IOException
+	{
+		try (final Stream<Path> paths = Files.walk(directory))
+		{
+			paths.sorted(Comparator.reverseOrder()).forEach(path -> path.toFile().delete());
+		}
+	}
+
+	@Test
+	public void testRoundTrip() throws IOException
+	{
+		try (final CanvasJournal journal = new CanvasJournal(directory))
+		{
+			Assert.assertNull(journal.recover((level, block, data) -> Assert.fail("Empty journal has no records")));
+			journal.append(0, 3, new long[] {1, 1, 1, 2});
+			journal.append(1, 0, new long[] {5});
+			journal.append(0, 4, null);
+			journal.commit(manifest(new long[] {3}, 1L, new long[] {3}));
+		}
+
+		final List<Record> records = new ArrayList<>();
+		final CanvasJournal.Manifest manifest;
+		try (final CanvasJournal journal = new CanvasJournal(directory))
+		{
+			manifest = journal.recover((level, block, data) -> records.add(new Record(level, block, data)));
+		}
+
+		Assert.assertEquals(3, records.size());
+		records.get(0).assertEquals(0, 3, new long[] {1, 1, 1, 2});
+		records.get(1).assertEquals(1, 0, new long[] {5});
+		records.get(2).assertEquals(0, 4, null);
+		Assert.assertArrayEquals(new long[] {3}, manifest.affectedBlocks);
+		Assert.assertEquals(1, manifest.affectedBlocksById.length);
+		Assert.assertArrayEquals(new long[] {3}, manifest.affectedBlocksById[0].get(1L));
+	}
+
+	@Test
+	public void testUncommittedRecordsAreDiscarded() throws IOException
+	{
+		try (final CanvasJournal journal = new CanvasJournal(directory))
+		{
+			journal.recover((level, block, data) -> {});
+			journal.append(0, 1, new long[] {1});
+			journal.commit(manifest(new long[] {1}, 1L, new long[] {1}));
+			journal.append(0, 2, new long[] {2});
+		}
+
+		final List<Record> records = new ArrayList<>();
+		try (final CanvasJournal journal = new CanvasJournal(directory))
+		{
+			journal.recover((level, block, data) -> records.add(new Record(level, block, data)));
+			// log was truncated to the committed length, appending continues from there
+			journal.append(0, 5, new long[] {5});
+			journal.commit(manifest(new long[] {1, 5}, 1L, new long[] {1, 5}));
+		}
+		Assert.assertEquals(1, records.size());
+		records.get(0).assertEquals(0, 1, new long[] {1});
+
+		records.clear();
+		try (final CanvasJournal journal = new CanvasJournal(directory))
+		{
+			journal.recover((level, block, data) -> records.add(new Record(level, block, data)));
+		}
+		Assert.assertEquals(2, records.size());
+		records.get(1).assertEquals(0, 5, new long[] {5});
+	}
+
+	@Test
+	public void testTruncatedLogIsRejectedBeforeReplay() throws IOException
+	{
+		try (final CanvasJournal journal = new CanvasJournal(directory))
+		{
+			journal.recover((level, block, data) -> {});
+			journal.append(0, 1, new long[] {1});
+			journal.append(0, 2, new long[] {2});
+			journal.commit(manifest(new long[] {1, 2}, 1L, new long[] {1, 2}));
+		}
+
+		final Path log = directory.resolve("log-0");
+		final byte[] data = Files.readAllBytes(log);
+		Files.write(log, Arrays.copyOf(data, data.length - 1));
+
+		try (final CanvasJournal journal = new CanvasJournal(directory))
+		{
+			journal.recover((level, block, blockData) -> Assert.fail("No record must be replayed from a corrupt log"));
+			Assert.fail("Truncated log must not be recovered");
+		} catch (final IOException e)
+		{
+			// expected
+		}
+	}
+
+	@Test
+	public void testCorruptRecordIsRejectedBeforeReplay() throws IOException
+	{
+		try (final CanvasJournal journal = new CanvasJournal(directory))
+		{
+			journal.recover((level, block, data) -> {});
+			journal.append(0, 1, new long[] {1});
+			journal.append(0, 2, new long[] {2});
+			journal.commit(manifest(new long[] {1, 2}, 1L, new long[] {1, 2}));
+		}
+
+		// flip a byte in the payload of the last record
+		final Path log = directory.resolve("log-0");
+		final byte[] data = Files.readAllBytes(log);
+		data[data.length - Long.BYTES - 1] ^= 0xFF;
+		Files.write(log, data);
+
+		try (final CanvasJournal journal = new CanvasJournal(directory))
+		{
+			journal.recover((level, block, blockData) -> Assert.fail("No record must be replayed from a corrupt log"));
+			Assert.fail("Corrupt log must not be recovered");
+		} catch (final IOException e)
+		{
+			// expected
+		}
+	}
+
+	@Test
+	public void testCompaction() throws IOException
+	{
+		final CanvasJournal.Manifest manifest = manifest(new long[] {1}, 2L, new long[] {1});
+		try (final CanvasJournal journal = new CanvasJournal(directory))
+		{
+			journal.recover((level, block, data) -> {});
+			for (long value = 0; value < 10; ++value)
+				journal.append(0, 1, new long[] {value});
+			journal.append(0, 2, new long[] {3});
+			journal.append(0, 2, null);
+			journal.commit(manifest);
+			journal.compact(manifest, consumer -> consumer.accept(0, 1, new long[] {9}));
+		}
+
+		Assert.assertFalse(Files.exists(directory.resolve("log-0")));
+		Assert.assertTrue(Files.exists(directory.resolve("log-1")));
+
+		final List<Record> records = new ArrayList<>();
+		final CanvasJournal.Manifest recovered;
+		try (final CanvasJournal journal = new CanvasJournal(directory))
+		{
+			recovered = journal.recover((level, block, data) -> records.add(new Record(level, block, data)));
+		}
+		Assert.assertEquals(1, records.size());
+		records.get(0).assertEquals(0, 1, new long[] {9});
+		Assert.assertArrayEquals(new long[] {1}, recovered.affectedBlocksById[0].get(2L));
+	}
+
+	@Test
+	public void testReset() throws IOException
+	{
+		try (final CanvasJournal journal = new CanvasJournal(directory))
+		{
+			journal.recover((level, block, data) -> {});
+			journal.append(0, 1, new long[] {1});
+			journal.commit(manifest(new long[] {1}, 1L, new long[] {1}));
+			journal.reset();
+		}
+
+		try (final CanvasJournal journal = new CanvasJournal(directory))
+		{
+			final CanvasJournal.Manifest manifest = journal.recover((level, block, data) -> Assert.fail("Journal was reset"));
+			Assert.assertEquals(0, manifest.affectedBlocks.length);
+		}
+	}
+
+	@SuppressWarnings("unchecked")
+	private static CanvasJournal.Manifest manifest(final long[] affectedBlocks, final long id, final long[] blocks)
+	{
+		final Map<Long, long[]> blocksById = new HashMap<>();
+		blocksById.put(id, blocks);
+		return new CanvasJournal.Manifest(affectedBlocks, new Map[] {blocksById});
+	}
+
+	private static class Record
+	{
+		final int level;
+
+		final long block;
+
+		final long[] data;
+
+		Record(final int level, final long block, final long[] data)
+		{
+			this.level = level;
+			this.block = block;
+			this.data = data;
+		}
+
+		void assertEquals(final int level, final long block, final long[] data)
+		{
+			Assert.assertEquals(level, this.level);
+			Assert.assertEquals(block, this.block);
+			Assert.assertArrayEquals(data, this.data);
+		}
+	}
+
+}
@@ -0,0 +1,64 @@
+package org.janelia.saalfeldlab.util.grids;
+
+import gnu.trove.map.TLongObjectMap;
+import gnu.trove.map.hash.TLongObjectHashMap;
+import net.imglib2.Interval;
+import net.imglib2.img.cell.CellGrid;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.Arrays;
+
+public class LabelBlockIndexTest {
+
+	// 2x2 blocks
+	private static final CellGrid GRID = new CellGrid(new long[] {4, 4}, new int[] {2, 2});
+
+	@Test
+	public void testFromUniqueLabels()
+	{
+		final LabelBlockIndex index = LabelBlockIndex.fromUniqueLabels(GRID, new long[][] {{1, 2}, {2}, {}, {3, 2}});
+		Assert.assertArrayEquals(new long[] {0}, blocks(index, 1));
+		Assert.assertArrayEquals(new long[] {0, 1, 3}, blocks(index, 2));
+		Assert.assertArrayEquals(new long[] {3}, blocks(index, 3));
+		Assert.assertArrayEquals(new long[] {}, blocks(index, 4));
+	}
+
+	@Test
+	public void testWithUniqueLabels()
+	{
+		final LabelBlockIndex index = LabelBlockIndex.fromUniqueLabels(GRID, new long[][] {{1, 2}, {2}, {}, {3, 2}});
+		final TLongObjectMap<long[]> modified = new TLongObjectHashMap<>();
+		modified.put(0, new long[] {4});
+		modified.put(2, new long[] {2, 4});
+		final LabelBlockIndex updated = index.withUniqueLabels(modified);
+
+		// label 1 was only in a modified block
+		Assert.assertArrayEquals(new long[] {}, blocks(updated, 1));
+		Assert.assertArrayEquals(new long[] {1, 2, 3}, blocks(updated, 2));
+		Assert.assertArrayEquals(new long[] {3}, blocks(updated, 3));
+		Assert.assertArrayEquals(new long[] {0, 2}, blocks(updated, 4));
+
+		// original index is not modified
+		Assert.assertArrayEquals(new long[] {0}, blocks(index, 1));
+		Assert.assertArrayEquals(new long[] {}, blocks(index, 4));
+	}
+
+	private static long[] blocks(final LabelBlockIndex index, final long id)
+	{
+		final long[] blocks = Arrays
+				.stream(index.read(id))
+				.mapToLong(LabelBlockIndexTest::blockIndex)
+				.toArray();
+		Arrays.sort(blocks);
+		return blocks;
+	}
+
+	private static long blockIndex(final Interval block)
+	{
+		final int[] blockSize = new int[GRID.numDimensions()];
+		GRID.cellDimensions(blockSize);
+		return block.min(0) / blockSize[0] + block.min(1) / blockSize[1] * GRID.getGridDimensions()[0];
+	}
+
+}
@@ -0,0 +1,189 @@
+package org.janelia.saalfeldlab.util.grids;
+
+import gnu.trove.map.TLongObjectMap;
+import gnu.trove.map.hash.TLongObjectHashMap;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.stream.LongStream;
+import java.util.stream.Stream;
+
+public class LabelBlockLookupShardedTest {
+
+	private static final long[][] DIMS = {{1 << 20, 1 << 20, 1 << 20}};
+
+	private static final int[][] BLOCK_SIZES = {{1, 1, 1}};
+
+	private static final long IDS_PER_SHARD = 4;
+
+	private Path container;
+
+	@Before
+	public void createContainer() throws IOException
+	{
+		container = Files.createTempDirectory("label-block-lookup-sharded-");
+		Files.createDirectories(container.resolve("lookup"));
+	}
+
+	@After
+	public void deleteContainer() throws IOException
+	{
+		try (final Stream<Path> paths = Files.walk(container))
+		{
+			paths.sorted(Comparator.reverseOrder()).forEach(path -> path.toFile().delete());
+		}
+	}
+
+	@Test
+	public void testEncodeDecode() throws IOException
+	{
+		final TLongObjectMap<long[]> entries = new TLongObjectHashMap<>();
+		entries.put(7, new long[] {0, 1, 2, 1L << 40, Long.MAX_VALUE});
+		entries.put(3, new long[] {5});
+		entries.put(100, new long[] {});
+
+		final ByteBuffer shard = LabelBlockLookupSharded.encodeShard(entries);
+		LabelBlockLookupSharded.validate(shard, "test");
+
+		Assert.assertArrayEquals(new long[] {5}, LabelBlockLookupSharded.decode(shard, LabelBlockLookupSharded.search(shard, 3)));
+		Assert.assertArrayEquals(entries.get(7), LabelBlockLookupSharded.decode(shard, LabelBlockLookupSharded.search(shard, 7)));
+		Assert.assertArrayEquals(new long[] {}, LabelBlockLookupSharded.decode(shard, LabelBlockLookupSharded.search(shard, 100)));
+		Assert.assertEquals(-2, LabelBlockLookupSharded.search(shard, 5));
+	}
+
+	@Test(expected = IOException.class)
+	public void testValidateTruncated() throws IOException
+	{
+		final TLongObjectMap<long[]> entries = new TLongObjectHashMap<>();
+		entries.put(1, new long[] {1, 2, 3});
+		final ByteBuffer shard = LabelBlockLookupSharded.encodeShard(entries);
+		shard.limit(shard.limit() - 1);
+		LabelBlockLookupSharded.validate(shard, "test");
+	}
+
+	@Test
+	public void testWriteReadBlocks() throws IOException
+	{
+		final LabelBlockLookupSharded lookup = lookup();
+		final TLongObjectMap<long[]> blocksById = new TLongObjectHashMap<>();
+		blocksById.put(1, new long[] {1, 2});
+		blocksById.put(5, new long[] {3});
+		blocksById.put(6, new long[] {1L << 50});
+		lookup.writeBlocks(0, blocksById);
+
+		Assert.assertArrayEquals(new long[] {1, 2}, lookup.readBlocks(0, 1));
+		Assert.assertArrayEquals(new long[] {3}, lookup.readBlocks(0, 5));
+		Assert.assertArrayEquals(new long[] {1L << 50}, lookup.readBlocks(0, 6));
+		// empty shard and id without blocks in existing shard
+		Assert.assertArrayEquals(new long[] {}, lookup.readBlocks(0, 9));
+		Assert.assertArrayEquals(new long[] {}, lookup.readBlocks(0, 2));
+
+		final TLongObjectMap<long[]> range = lookup.readBlockRange(0, 0, 7);
+		Assert.assertEquals(3, range.size());
+		Assert.assertArrayEquals(new long[] {3}, range.get(5));
+	}
+
+	@Test
+	public void testUpdateVisibleToOtherInstance() throws IOException
+	{
+		final LabelBlockLookupSharded reader = lookup();
+		final LabelBlockLookupSharded writer = lookup();
+
+		final TLongObjectMap<long[]> blocksById = new TLongObjectHashMap<>();
+		blocksById.put(1, new long[] {1});
+		writer.writeBlocks(0, blocksById);
+		Assert.assertArrayEquals(new long[] {1}, reader.readBlocks(0, 1));
+
+		blocksById.put(1, new long[] {1, 2, 3});
+		writer.writeBlocks(0, blocksById);
+		Assert.assertArrayEquals(new long[] {1, 2, 3}, reader.readBlocks(0, 1));
+
+		blocksById.put(1, new long[] {});
+		writer.writeBlocks(0, blocksById);
+		Assert.assertArrayEquals(new long[] {}, reader.readBlocks(0, 1));
+	}
+
+	@Test
+	public void testConcurrentWritesFromDifferentInstances() throws IOException, InterruptedException, ExecutionException
+	{
+		final int numWriters = 8;
+		final ExecutorService es = Executors.newFixedThreadPool(numWriters);
+		try
+		{
+			final List<Future<?>> futures = new ArrayList<>();
+			for (int writer = 0; writer < numWriters; ++writer)
+			{
+				final long id = writer;
+				final LabelBlockLookupSharded lookup = lookup();
+				futures.add(es.submit(() -> {
+					for (long block = 0; block < 20; ++block)
+					{
+						final TLongObjectMap<long[]> blocksById = new TLongObjectHashMap<>();
+						blocksById.put(id, LongStream.rangeClosed(0, block).toArray());
+						lookup.writeBlocks(0, blocksById);
+					}
+					return null;
+				}));
+			}
+			for (final Future<?> future : futures)
+				future.get();
+		} finally
+		{
+			es.shutdown();
+		}
+
+		// all ids share two shards, no write may be lost
+		final LabelBlockLookupSharded lookup = lookup();
+		for (long id = 0; id < numWriters; ++id)
+			Assert.assertArrayEquals(LongStream.rangeClosed(0, 19).toArray(), lookup.readBlocks(0, id));
+	}
+
+	@Test(expected = IOException.class)
+	public void testCorruptShard() throws IOException
+	{
+		final LabelBlockLookupSharded lookup = lookup();
+		final TLongObjectMap<long[]> blocksById = new TLongObjectHashMap<>();
+		blocksById.put(1, new long[] {1, 2, 3});
+		lookup.writeBlocks(0, blocksById);
+
+		try (final Stream<Path> paths = Files.walk(container.resolve("lookup")))
+		{
+			final Path shard = paths.filter(Files::isRegularFile).filter(p -> !p.getFileName().toString().startsWith(".")).findFirst().orElseThrow(AssertionError::new);
+			final byte[] data = Files.readAllBytes(shard);
+			Files.write(shard, Arrays.copyOf(data, data.length - 1));
+		}
+
+		lookup().readBlocks(0, 1);
+	}
+
+	@Test(expected = IOException.class)
+	public void testMissingRoot() throws IOException
+	{
+		final LabelBlockLookupSharded lookup = new LabelBlockLookupSharded("does-not-exist", DIMS, BLOCK_SIZES, IDS_PER_SHARD);
+		lookup.setContainer(container.toString());
+		lookup.readBlocks(0, 1);
+	}
+
+	private LabelBlockLookupSharded lookup()
+	{
+		final LabelBlockLookupSharded lookup = new LabelBlockLookupSharded(Paths.get("lookup").toString(), DIMS, BLOCK_SIZES, IDS_PER_SHARD);
+		lookup.setContainer(container.toString());
+		return lookup;
+	}
+
+}
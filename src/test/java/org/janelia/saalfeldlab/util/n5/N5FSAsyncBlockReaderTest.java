@@ -0,0 +1,95 @@
+package org.janelia.saalfeldlab.util.n5;
+
+import org.janelia.saalfeldlab.n5.ByteArrayDataBlock;
+import org.janelia.saalfeldlab.n5.DataBlock;
+import org.janelia.saalfeldlab.n5.DataType;
+import org.janelia.saalfeldlab.n5.DatasetAttributes;
+import org.janelia.saalfeldlab.n5.N5FSWriter;
+import org.janelia.saalfeldlab.n5.RawCompression;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.stream.Stream;
+
+public class N5FSAsyncBlockReaderTest {
+
+	private static final String DATASET = "data";
+
+	private static final int BLOCK_SIZE = 1000;
+
+	private static final int NUM_BLOCKS = 64;
+
+	private static final long MISSING_BLOCK = 5;
+
+	private Path container;
+
+	private ExecutorService ioExecutor;
+
+	@Before
+	public void createContainer() throws IOException
+	{
+		container = Files.createTempDirectory("n5-fs-async-block-reader-");
+		ioExecutor = AsyncBlockReader.createIOExecutor(2);
+	}
+
+	@After
+	public void deleteContainer() throws IOException
+	{
+		ioExecutor.shutdown();
+		try (final Stream<Path> paths = Files.walk(container))
+		{
+			paths.sorted(Comparator.reverseOrder()).forEach(path -> path.toFile().delete());
+		}
+	}
+
+	@Test
+	public void testReadBlocks() throws IOException, InterruptedException, ExecutionException, TimeoutException
+	{
+		final N5FSWriter writer = new N5FSWriter(container.toString());
+		writer.createDataset(DATASET, new long[] {NUM_BLOCKS * BLOCK_SIZE}, new int[] {BLOCK_SIZE}, DataType.UINT8, new RawCompression());
+		final DatasetAttributes attributes = writer.getDatasetAttributes(DATASET);
+		for (long b = 0; b < NUM_BLOCKS; ++b)
+			if (b != MISSING_BLOCK)
+				writer.writeBlock(DATASET, attributes, new ByteArrayDataBlock(new int[] {BLOCK_SIZE}, new long[] {b}, data(b)));
+
+		// fewer I/O threads than in-flight requests
+		final N5FSAsyncBlockReader reader = new N5FSAsyncBlockReader(container.toString(), DATASET, attributes, 16, ioExecutor);
+		final List<CompletableFuture<DataBlock<?>>> futures = new ArrayList<>();
+		for (long b = 0; b < NUM_BLOCKS; ++b)
+			futures.add(reader.readBlockAsync(b));
+
+		for (int b = 0; b < NUM_BLOCKS; ++b)
+		{
+			final DataBlock<?> block = futures.get(b).get(10, TimeUnit.SECONDS);
+			if (b == MISSING_BLOCK)
+				Assert.assertNull(block);
+			else
+			{
+				Assert.assertArrayEquals(new long[] {b}, block.getGridPosition());
+				Assert.assertArrayEquals(data(b), (byte[]) block.getData());
+			}
+		}
+	}
+
+	private static byte[] data(final long block)
+	{
+		final byte[] data = new byte[BLOCK_SIZE];
+		for (int i = 0; i < data.length; ++i)
+			data[i] = (byte) (block + i);
+		return data;
+	}
+
+}